@@ -18,26 +18,22 @@ public class StackMap
 {
   static private final int JDK_SMF_MIN = 50;
 
-  static CP attr = null;
-  static boolean java6 = false;
+  // attribute kind is chosen per instance from the class version,
+  // so several classes can be assembled concurrently
+  private final CP attr;
+  private final boolean java6;
 
   protected Vector frames;
 
-  public static void reinit()
-  { attr = null;
-    java6 = false; }
-
   protected StackMap(CP attr)
   { this.attr = attr;
+    java6 = false;
     frames = new Vector(); }
 
   public StackMap(ClassEnv e)
   {
-    if(attr == null)
-    {
-        if(e.version_hi >= JDK_SMF_MIN) java6 = true;
-        attr = new AsciiCP(java6 ? "StackMapTable" : "StackMap");
-    }
+    java6 = e.version_hi >= JDK_SMF_MIN;
+    attr = new AsciiCP(java6 ? "StackMapTable" : "StackMap");
     frames = new Vector();
   }
 
@@ -131,4 +127,5 @@ public class StackMap
 
 /* --- Revision History ---------------------------------------------------
 --- Iouri Kharon, May 07 2010, reset java6-mode for new compiled file
+--- StackMapTable/StackMap mode is instance state, reinit() removed
 */
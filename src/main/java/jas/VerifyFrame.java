@@ -111,11 +111,9 @@ public class VerifyFrame
         boolean can_compact = true;
         int prev_size = 0;
         if(prev == null) { // first record
-          if(stack_size == 0) {
-            if(locals_size > (APPEND_FRAME_S0_max - SAME_FRAME_S0))
-              can_compact = false;
-          } else if(locals_size != 0)
-              can_compact = false;
+          // a compact first frame is relative to the initial frame built
+          // from the method descriptor, which is not known here
+          can_compact = false;
         } else { // not first record
           int cmpcn = locals_size;
           prev_size = prev.locals.size();
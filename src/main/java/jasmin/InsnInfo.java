@@ -18,7 +18,7 @@ import java.util.Hashtable;
 
 class InsnInfo {
     // maps instruction name -> InsnInfo object
-    private static Hashtable infoTable;
+    private static final Hashtable infoTable;
 
     // information maintained about each instruction:
     public String name;     // instruction name
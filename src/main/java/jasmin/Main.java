@@ -7,7 +7,6 @@
 
 package jasmin;
 
-import jas.StackMap;
 import jas.jasError;
 
 import java.io.*;
@@ -201,7 +200,6 @@ public class Main {
         }
 
         for (i = 0; i < num_files; i++) {
-            StackMap.reinit();
             assemble(files[i]);
         }
     }
@@ -11,10 +11,13 @@ import java_cup.runtime.token;
 import java.util.Hashtable;
 
 abstract class ReservedWords {
-    private static Hashtable reserved_words;
+    private static final Hashtable reserved_words;
 
+    // the parser records its state in the token it is given, so every
+    // lookup hands out a fresh token instead of a shared one
     public static token get(String name) {
-    	return (token)reserved_words.get(name);
+    	Integer sym_num = (Integer)reserved_words.get(name);
+    	return sym_num != null ? new token(sym_num.intValue()) : null;
     }
 
     public static boolean contains(String name) {
@@ -28,78 +31,79 @@ abstract class ReservedWords {
         reserved_words = new Hashtable();
 
         // Jasmin directives
-        reserved_words.put(".annotation", new token(sym.DANNOTATION));
-        reserved_words.put(".attribute", new token(sym.DATTRIBUTE));
-        reserved_words.put(".bytecode", new token(sym.DBYTECODE));
-        reserved_words.put(".catch", new token(sym.DCATCH));
-        reserved_words.put(".class", new token(sym.DCLASS));
-        reserved_words.put(".deprecated", new token(sym.DDEPRECATED));
-        reserved_words.put(".end", new token(sym.DEND));
-        reserved_words.put(".field", new token(sym.DFIELD));
-        reserved_words.put(".implements", new token(sym.DIMPLEMENTS));
-        reserved_words.put(".inner", new token(sym.DINNER));
-        reserved_words.put(".interface", new token(sym.DINTERFACE));
-        reserved_words.put(".limit", new token(sym.DLIMIT));
-        reserved_words.put(".line", new token(sym.DLINE));
-        reserved_words.put(".method", new token(sym.DMETHOD));
-        reserved_words.put(".set", new token(sym.DSET));
-        reserved_words.put(".source", new token(sym.DSOURCE));
-        reserved_words.put(".super", new token(sym.DSUPER));
-        reserved_words.put(".throws", new token(sym.DTHROWS));
-        reserved_words.put(".var", new token(sym.DVAR));
-        reserved_words.put(".debug", new token(sym.DDEBUG));
-        reserved_words.put(".enclosing", new token(sym.DENCLOSING));
-        reserved_words.put(".signature", new token(sym.DSIGNATURE));
-        reserved_words.put(".stack", new token(sym.DSTACK));
+        reserved_words.put(".annotation", Integer.valueOf(sym.DANNOTATION));
+        reserved_words.put(".attribute", Integer.valueOf(sym.DATTRIBUTE));
+        reserved_words.put(".bytecode", Integer.valueOf(sym.DBYTECODE));
+        reserved_words.put(".catch", Integer.valueOf(sym.DCATCH));
+        reserved_words.put(".class", Integer.valueOf(sym.DCLASS));
+        reserved_words.put(".deprecated", Integer.valueOf(sym.DDEPRECATED));
+        reserved_words.put(".end", Integer.valueOf(sym.DEND));
+        reserved_words.put(".field", Integer.valueOf(sym.DFIELD));
+        reserved_words.put(".implements", Integer.valueOf(sym.DIMPLEMENTS));
+        reserved_words.put(".inner", Integer.valueOf(sym.DINNER));
+        reserved_words.put(".interface", Integer.valueOf(sym.DINTERFACE));
+        reserved_words.put(".limit", Integer.valueOf(sym.DLIMIT));
+        reserved_words.put(".line", Integer.valueOf(sym.DLINE));
+        reserved_words.put(".method", Integer.valueOf(sym.DMETHOD));
+        reserved_words.put(".set", Integer.valueOf(sym.DSET));
+        reserved_words.put(".source", Integer.valueOf(sym.DSOURCE));
+        reserved_words.put(".super", Integer.valueOf(sym.DSUPER));
+        reserved_words.put(".throws", Integer.valueOf(sym.DTHROWS));
+        reserved_words.put(".var", Integer.valueOf(sym.DVAR));
+        reserved_words.put(".debug", Integer.valueOf(sym.DDEBUG));
+        reserved_words.put(".enclosing", Integer.valueOf(sym.DENCLOSING));
+        reserved_words.put(".signature", Integer.valueOf(sym.DSIGNATURE));
+        reserved_words.put(".stack", Integer.valueOf(sym.DSTACK));
 
         // reserved_words used in Jasmin directives
-        reserved_words.put("field", new token(sym.FIELD));
-        reserved_words.put("from", new token(sym.FROM));
-        reserved_words.put("method", new token(sym.METHOD));
-        reserved_words.put("to", new token(sym.TO));
-        reserved_words.put("is", new token(sym.IS));
-        reserved_words.put("using", new token(sym.USING));
-        reserved_words.put("signature", new token(sym.SIGNATURE));
-        reserved_words.put("stack", new token(sym.STACK));
-        reserved_words.put("offset", new token(sym.OFFSET));
-        reserved_words.put("locals", new token(sym.LOCALS));
-        reserved_words.put("use", new token(sym.USE));
-        reserved_words.put("inner", new token(sym.INNER));
-        reserved_words.put("outer", new token(sym.OUTER));
-        reserved_words.put("class", new token(sym.CLASS));
-        reserved_words.put("visible", new token(sym.VISIBLE));
-        reserved_words.put("invisible", new token(sym.INVISIBLE));
-        reserved_words.put("visibleparam", new token(sym.VISIBLEPARAM));
-        reserved_words.put("invisibleparam", new token(sym.INVISIBLEPARAM));
+        reserved_words.put("field", Integer.valueOf(sym.FIELD));
+        reserved_words.put("from", Integer.valueOf(sym.FROM));
+        reserved_words.put("method", Integer.valueOf(sym.METHOD));
+        reserved_words.put("to", Integer.valueOf(sym.TO));
+        reserved_words.put("is", Integer.valueOf(sym.IS));
+        reserved_words.put("using", Integer.valueOf(sym.USING));
+        reserved_words.put("signature", Integer.valueOf(sym.SIGNATURE));
+        reserved_words.put("stack", Integer.valueOf(sym.STACK));
+        reserved_words.put("offset", Integer.valueOf(sym.OFFSET));
+        reserved_words.put("locals", Integer.valueOf(sym.LOCALS));
+        reserved_words.put("use", Integer.valueOf(sym.USE));
+        reserved_words.put("inner", Integer.valueOf(sym.INNER));
+        reserved_words.put("outer", Integer.valueOf(sym.OUTER));
+        reserved_words.put("class", Integer.valueOf(sym.CLASS));
+        reserved_words.put("visible", Integer.valueOf(sym.VISIBLE));
+        reserved_words.put("invisible", Integer.valueOf(sym.INVISIBLE));
+        reserved_words.put("visibleparam", Integer.valueOf(sym.VISIBLEPARAM));
+        reserved_words.put("invisibleparam", Integer.valueOf(sym.INVISIBLEPARAM));
 
         // Special-case instructions
-        reserved_words.put("tableswitch", new token(sym.TABLESWITCH));
-        reserved_words.put("lookupswitch", new token(sym.LOOKUPSWITCH));
-        reserved_words.put("default", new token(sym.DEFAULT));
+        reserved_words.put("tableswitch", Integer.valueOf(sym.TABLESWITCH));
+        reserved_words.put("lookupswitch", Integer.valueOf(sym.LOOKUPSWITCH));
+        reserved_words.put("default", Integer.valueOf(sym.DEFAULT));
 
         // Access flags
-        reserved_words.put("public", new token(sym.PUBLIC));
-        reserved_words.put("private", new token(sym.PRIVATE));
-        reserved_words.put("protected", new token(sym.PROTECTED));
-        reserved_words.put("static", new token(sym.STATIC));
-        reserved_words.put("final", new token(sym.FINAL));
-        reserved_words.put("synchronized", new token(sym.SYNCHRONIZED));
-        reserved_words.put("volatile", new token(sym.VOLATILE));
-        reserved_words.put("transient", new token(sym.TRANSIENT));
-        reserved_words.put("native", new token(sym.NATIVE));
-        reserved_words.put("interface", new token(sym.INTERFACE));
-        reserved_words.put("abstract", new token(sym.ABSTRACT));
+        reserved_words.put("public", Integer.valueOf(sym.PUBLIC));
+        reserved_words.put("private", Integer.valueOf(sym.PRIVATE));
+        reserved_words.put("protected", Integer.valueOf(sym.PROTECTED));
+        reserved_words.put("static", Integer.valueOf(sym.STATIC));
+        reserved_words.put("final", Integer.valueOf(sym.FINAL));
+        reserved_words.put("synchronized", Integer.valueOf(sym.SYNCHRONIZED));
+        reserved_words.put("volatile", Integer.valueOf(sym.VOLATILE));
+        reserved_words.put("transient", Integer.valueOf(sym.TRANSIENT));
+        reserved_words.put("native", Integer.valueOf(sym.NATIVE));
+        reserved_words.put("interface", Integer.valueOf(sym.INTERFACE));
+        reserved_words.put("abstract", Integer.valueOf(sym.ABSTRACT));
 
-        reserved_words.put("annotation", new token(sym.ANNOTATION));
-        reserved_words.put("enum", new token(sym.ENUM));
-        reserved_words.put("bridge", new token(sym.BRIDGE));
-        reserved_words.put("varargs", new token(sym.VARARGS));
-        reserved_words.put("fpstrict", new token(sym.STRICT));
-        reserved_words.put("synthetic", new token(sym.SYNTHETIC));
+        reserved_words.put("annotation", Integer.valueOf(sym.ANNOTATION));
+        reserved_words.put("enum", Integer.valueOf(sym.ENUM));
+        reserved_words.put("bridge", Integer.valueOf(sym.BRIDGE));
+        reserved_words.put("varargs", Integer.valueOf(sym.VARARGS));
+        reserved_words.put("fpstrict", Integer.valueOf(sym.STRICT));
+        reserved_words.put("synthetic", Integer.valueOf(sym.SYNTHETIC));
     }
 }
 
 /* --- Revision History ---------------------------------------------------
 --- Iouri Kharon, Aug 10 2006
     Added 'Wide' prefix support to IincOperand
+--- Table holds symbol numbers, get() creates a new token per lookup
 */
@@ -26,7 +26,7 @@ class Scanner {
 
     // temporary buffer
     char chars[];
-    static private int chars_size = 512;
+    private int chars_size = 512;
 
     // Whitespace characters
     static final String WHITESPACE = " \n\t\r";
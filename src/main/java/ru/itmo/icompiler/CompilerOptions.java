@@ -0,0 +1,255 @@
+package ru.itmo.icompiler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ru.itmo.icompiler.cache.CompileCache;
+import ru.itmo.icompiler.codegen.jvm.JVMJarWriter;
+import ru.itmo.icompiler.codegen.jvm.JVMPeepholeOptimizer;
+
+// The command line of ICompiler.main, of its --batch mode and of a CompileDaemon request.
+// Every mode takes the options the output depends on; the others belong to one or two modes.
+// An option of another mode, a bad value or an unknown argument starting with '-' is an
+// IllegalArgumentException with the message to print.
+public class CompilerOptions {
+	public enum Mode {
+		COMPILE, BATCH, DAEMON
+	}
+
+	private final Mode mode;
+
+	private int optimizationLevel = 0;
+	// null to run the peephole pass from -O1 on
+	private Boolean peephole = null;
+	// null for every rule
+	private List<String> peepholeRules = null;
+	private JVMJarWriter.Compression jarCompression = JVMJarWriter.Compression.DEFLATED;
+	// null to write jars
+	private File classDirectory = null;
+	// null to compile without a cache
+	private String cacheDirectory = null;
+	private long cacheSize = CompileCache.DEFAULT_MAX_SIZE;
+	private boolean printCacheStats = false;
+
+	private boolean dumpJasmin = false;
+	private boolean printPeepholeStats = false;
+	private boolean printOptimizationStats = false;
+	private boolean printPhaseTimes = false;
+	private boolean runInMemory = false;
+	private List<String> programArgs = List.of();
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	// null for the working directory
+	private File outputDirectory = null;
+
+	private final List<String> inputPaths = new ArrayList<>();
+
+	private CompilerOptions(Mode mode) {
+		this.mode = mode;
+	}
+
+	// ICompiler [-O<n>] [--no-peephole | --peephole | --peephole=<rules>] [--stored | --parallel-deflate | --class-dir=<dir>]
+	//     [--cache=<dir>] [--cache-size=<bytes>] [--cache-stats] [--dump-jasmin] [--peephole-stats] [--opt-stats]
+	//     [--time] [--run] <file or -> [program arguments with --run...]
+	// the peephole pass runs from -O1 on; --peephole runs it at -O0 as well, --no-peephole never
+	// --batch takes --threads=<n> and --output-dir=<dir> as well, and any number of files or directories;
+	// a daemon request takes the options of ICompiler up to --cache-stats, and any number of files
+	public static CompilerOptions parse(Mode mode, List<String> args) {
+		CompilerOptions options = new CompilerOptions(mode);
+		int argIndex = 0;
+
+		// with --run, everything after the input file is passed to the program
+		for (; argIndex < args.size() && !(options.runInMemory && !options.inputPaths.isEmpty()); ++argIndex)
+			options.parseArgument(args.get(argIndex));
+
+		options.programArgs = List.copyOf(args.subList(argIndex, args.size()));
+
+		if (mode == Mode.COMPILE && options.inputPaths.size() != 1)
+			throw new IllegalArgumentException("Expected one input file, got " + options.inputPaths.size() + ".");
+
+		// every program has an ilang/Program class, so they would overwrite each other
+		if (mode == Mode.DAEMON && options.classDirectory != null && options.inputPaths.size() > 1)
+			throw new IllegalArgumentException("--class-dir takes one input file.");
+
+		return options;
+	}
+
+	private void parseArgument(String arg) {
+		if (arg.equals("-O"))
+			optimizationLevel = 1;
+		else if (arg.matches("-O[0-9]+"))
+			optimizationLevel = (int) parseNumber(arg, "-O", 0, Integer.MAX_VALUE);
+		else if (arg.equals("--no-peephole")) {
+			peephole = false;
+			peepholeRules = null;
+		} else if (arg.equals("--peephole")) {
+			peephole = true;
+			peepholeRules = null;
+		} else if (arg.startsWith("--peephole=")) {
+			peephole = true;
+			peepholeRules = Arrays.asList(arg.substring("--peephole=".length()).split(","));
+
+			for (String rule: peepholeRules) {
+				if (!JVMPeepholeOptimizer.RULE_NAMES.contains(rule))
+					throw new IllegalArgumentException("Unknown peephole rule " + rule + ".");
+			}
+		} else if (arg.equals("--stored"))
+			jarCompression = JVMJarWriter.Compression.STORED;
+		else if (arg.equals("--parallel-deflate"))
+			jarCompression = JVMJarWriter.Compression.PARALLEL_DEFLATED;
+		else if (arg.startsWith("--class-dir="))
+			classDirectory = new File(arg.substring("--class-dir=".length()));
+		else if (arg.startsWith("--cache="))
+			cacheDirectory = arg.substring("--cache=".length());
+		else if (arg.startsWith("--cache-size="))
+			cacheSize = parseNumber(arg, "--cache-size=", 0, Long.MAX_VALUE);
+		else if (arg.equals("--cache-stats")) {
+			only(arg, Mode.COMPILE, Mode.DAEMON);
+			printCacheStats = true;
+		} else if (arg.equals("--dump-jasmin")) {
+			only(arg, Mode.COMPILE);
+			dumpJasmin = true;
+		} else if (arg.equals("--peephole-stats")) {
+			only(arg, Mode.COMPILE);
+			printPeepholeStats = true;
+		} else if (arg.equals("--opt-stats")) {
+			only(arg, Mode.COMPILE);
+			printOptimizationStats = true;
+		} else if (arg.equals("--time")) {
+			only(arg, Mode.COMPILE);
+			printPhaseTimes = true;
+		} else if (arg.equals("--run")) {
+			only(arg, Mode.COMPILE);
+			runInMemory = true;
+		} else if (arg.startsWith("--threads=")) {
+			only(arg, Mode.BATCH);
+			threads = (int) parseNumber(arg, "--threads=", 1, Integer.MAX_VALUE);
+		} else if (arg.startsWith("--output-dir=")) {
+			only(arg, Mode.BATCH);
+			outputDirectory = new File(arg.substring("--output-dir=".length()));
+		} else if (arg.equals("-")) {
+			// standard input
+			only(arg, Mode.COMPILE);
+			inputPaths.add(arg);
+		} else if (arg.startsWith("-"))
+			throw new IllegalArgumentException("Unknown option " + arg + ".");
+		else
+			inputPaths.add(arg);
+	}
+
+	private void only(String arg, Mode... modes) {
+		if (!Arrays.asList(modes).contains(mode))
+			throw new IllegalArgumentException(arg + " cannot be used in " + mode.name().toLowerCase() + " mode.");
+	}
+
+	private static long parseNumber(String arg, String prefix, long min, long max) {
+		try {
+			long value = Long.parseLong(arg.substring(prefix.length()));
+
+			if (value >= min && value <= max)
+				return value;
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+
+		throw new IllegalArgumentException("Bad number in " + arg + ".");
+	}
+
+	// the options the output depends on, spelled as on the command line; part of the cache key.
+	// The peephole flag is only there where it differs from what the level implies
+	public static String outputFlags(int optimizationLevel, boolean peephole, List<String> peepholeRules) {
+		boolean levelPeephole = isPeepholeLevel(optimizationLevel);
+		String peepholeFlag = !peephole ? (levelPeephole ? "--no-peephole" : "")
+				: peepholeRules != null ? "--peephole=" + String.join(",", peepholeRules)
+				: levelPeephole ? "" : "--peephole";
+
+		return "-O" + optimizationLevel + " " + peepholeFlag;
+	}
+
+	public String getOutputFlags() {
+		return outputFlags(optimizationLevel, isPeephole(), peepholeRules);
+	}
+
+	// whether the peephole pass runs at an optimization level unless asked otherwise
+	public static boolean isPeepholeLevel(int optimizationLevel) {
+		return optimizationLevel >= 1;
+	}
+
+	// a new optimizer, so its hit counts are for one run; null without the peephole pass
+	public JVMPeepholeOptimizer createPeepholeOptimizer() {
+		if (!isPeephole())
+			return null;
+
+		return peepholeRules != null ? new JVMPeepholeOptimizer(peepholeRules) : new JVMPeepholeOptimizer();
+	}
+
+	public int getOptimizationLevel() {
+		return optimizationLevel;
+	}
+
+	public boolean isPeephole() {
+		return peephole != null ? peephole : isPeepholeLevel(optimizationLevel);
+	}
+
+	public List<String> getPeepholeRules() {
+		return peepholeRules;
+	}
+
+	public JVMJarWriter.Compression getJarCompression() {
+		return jarCompression;
+	}
+
+	public File getClassDirectory() {
+		return classDirectory;
+	}
+
+	public String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public long getCacheSize() {
+		return cacheSize;
+	}
+
+	public boolean isPrintCacheStats() {
+		return printCacheStats;
+	}
+
+	public boolean isDumpJasmin() {
+		return dumpJasmin;
+	}
+
+	public boolean isPrintPeepholeStats() {
+		return printPeepholeStats;
+	}
+
+	public boolean isPrintOptimizationStats() {
+		return printOptimizationStats;
+	}
+
+	public boolean isPrintPhaseTimes() {
+		return printPhaseTimes;
+	}
+
+	public boolean isRunInMemory() {
+		return runInMemory;
+	}
+
+	public List<String> getProgramArgs() {
+		return programArgs;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public File getOutputDirectory() {
+		return outputDirectory;
+	}
+
+	public List<String> getInputPaths() {
+		return inputPaths;
+	}
+}
@@ -1,50 +1,47 @@
 package ru.itmo.icompiler;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.CharArrayReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.jar.JarOutputStream;
+import java.util.Map;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
 
-import jas.StackMap;
-import jasmin.ClassFile;
+import ru.itmo.icompiler.batch.BatchCompiler;
+import ru.itmo.icompiler.cache.CompileCache;
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeClass;
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeEntity;
+import ru.itmo.icompiler.codegen.jvm.JVMClassAssembler;
+import ru.itmo.icompiler.codegen.jvm.JVMClassLoader;
+import ru.itmo.icompiler.codegen.jvm.JVMJarWriter;
+import ru.itmo.icompiler.codegen.jvm.JVMPeepholeOptimizer;
+import ru.itmo.icompiler.codegen.jvm.JVMPrintRuntime;
 import ru.itmo.icompiler.codegen.jvm.visitor.JVMCodeEmitterVisitor;
 import ru.itmo.icompiler.codegen.jvm.visitor.JVMCodeEmitterVisitor.ExpressionVisitorContext;
+import ru.itmo.icompiler.daemon.CompileClient;
+import ru.itmo.icompiler.daemon.CompileDaemon;
 import ru.itmo.icompiler.exception.CompilerException;
 import ru.itmo.icompiler.lex.DFALexer;
-import ru.itmo.icompiler.lex.LexUtils;
-import ru.itmo.icompiler.lex.Lexer;
-import ru.itmo.icompiler.semantic.SemanticContext;
-import ru.itmo.icompiler.semantic.SemanticContext.Scope;
-import ru.itmo.icompiler.semantic.visitor.CFGASTVisitor;
-import ru.itmo.icompiler.semantic.visitor.SimpleASTVisitor;
-import ru.itmo.icompiler.semantic.visitor.SimpleExpressionVisitor;
-import ru.itmo.icompiler.semantic.visitor.TypealiasResolverASTVisitor;
-import ru.itmo.icompiler.syntax.Parser;
-import ru.itmo.icompiler.syntax.SimpleParser;
+import ru.itmo.icompiler.reader.SourceText;
+import ru.itmo.icompiler.semantic.SemanticChecker;
+import ru.itmo.icompiler.semantic.visitor.ConstexprASTVisitor;
+import ru.itmo.icompiler.syntax.IncrementalParser;
 import ru.itmo.icompiler.syntax.ast.ASTNode;
 import ru.itmo.icompiler.syntax.exception.UnexpectedTokenSyntaxException.UnexpectedEndOfTextSyntaxException;
 
 public class ICompiler {
 	private String sourceName = "<source>";
-	private String[] sourceLines;
+	private SourceText source;
 
 	public List<CompilerException> getCompilerErrors() {
 		return compilerErrors;
@@ -53,34 +50,47 @@ public class ICompiler {
 	private List<CompilerException> compilerErrors = new ArrayList<>();
 	
 	private ASTNode parseResult;
-	private Parser parser;
+	private IncrementalParser parser;
+	private final SemanticChecker semanticChecker = new SemanticChecker();
+	
+	// null to emit the methods without the peephole pass
+	private JVMPeepholeOptimizer peepholeOptimizer = null;
+	
+	// 1 and above fold constants, propagate unchanged locals and drop dead branches
+	// before emitting; the checked tree is rewritten in place. 2 and above also store
+	// nested arrays of primitives as flat ones where no row is used as a value
+	private int optimizationLevel = 0;
+	private ConstexprASTVisitor constexprVisitor;
+	
+	public ICompiler(SourceText source) {
+		this.source = source;
+	}
 	
 	public ICompiler(InputStream in) {
-		StringBuilder sb = new StringBuilder();
-		this.sourceLines = new BufferedReader(new InputStreamReader(in))
-				.lines()
-				.map(line -> line.replace("\t", LexUtils.tabToSpaces(DFALexer.DEFAULT_TAB_SIZE)))
-				.peek(line -> sb
-								.append(line)
-								.append("\n")
-					).toArray(String[]::new);
+		this(readSource(in));
 	}
 	
-	public ICompiler(File file) throws FileNotFoundException {
-		this(new FileInputStream(file));
+	public ICompiler(File file) throws IOException {
+		this(SourceText.map(file, Charset.defaultCharset(), DFALexer.DEFAULT_TAB_SIZE));
 		
 		this.sourceName = file.getName();
 	}
 	
+	private static SourceText readSource(InputStream in) {
+		try {
+			return SourceText.read(in, Charset.defaultCharset(), DFALexer.DEFAULT_TAB_SIZE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	public SourceText getSource() {
+		return source;
+	}
+	
 	public ASTNode parseProgram() {
 		if (parseResult == null) {
-			StringBuilder sb = new StringBuilder();
-			
-			Arrays.stream(sourceLines).forEachOrdered(line -> sb.append(line).append('\n'));
-			
-			Lexer lexer = new DFALexer(sb.toString());
-			
-			parser = new SimpleParser(lexer);
+			parser = new IncrementalParser(source);
 			
 			parseResult = parser.parse(); 
 			
@@ -90,35 +100,73 @@ public class ICompiler {
 		return parseResult; 
 	}
 	
+	// Replaces [offset, offset + removedLength) of the source with text and reparses only the
+	// top-level declarations around the edit; the others keep their nodes. Errors are reset
+	// to the parse errors, so checkSemantic has to run again.
+	public ASTNode applyEdit(int offset, int removedLength, String text) {
+		parseProgram();
+		
+		parseResult = parser.edit(offset, removedLength, text);
+		source = parser.getSource();
+		
+		compilerErrors = new ArrayList<>(parser.getParseErrors());
+		
+		return parseResult;
+	}
+	
+	// Routines that are unchanged since the last check, and see the same globals, are not checked again.
 	public void checkSemantic() {
 		if (parseResult == null)
 			return;
 		
-		SimpleExpressionVisitor exprVisitor = new SimpleExpressionVisitor();
-		
-		Scope globalScope = new Scope(null);
+		compilerErrors = new ArrayList<>(parser.getParseErrors());
 		
-		TypealiasResolverASTVisitor resolver = new TypealiasResolverASTVisitor(exprVisitor);
-		parseResult.accept(resolver, new SemanticContext(compilerErrors, globalScope));
-		
-		globalScope.clear();
-		SimpleASTVisitor vis = new SimpleASTVisitor(exprVisitor);
-		parseResult.accept(vis, new SemanticContext(compilerErrors, globalScope));
-
-		CFGASTVisitor checker = new CFGASTVisitor(exprVisitor);
-		parseResult.accept(checker, new SemanticContext(compilerErrors, globalScope));
+		semanticChecker.check(parser, compilerErrors);
+	}
+	
+	public JVMPeepholeOptimizer getPeepholeOptimizer() {
+		return peepholeOptimizer;
+	}
+	
+	public void setPeepholeOptimizer(JVMPeepholeOptimizer peepholeOptimizer) {
+		this.peepholeOptimizer = peepholeOptimizer;
+	}
+	
+	public int getOptimizationLevel() {
+		return optimizationLevel;
+	}
+	
+	public void setOptimizationLevel(int optimizationLevel) {
+		this.optimizationLevel = optimizationLevel;
+	}
+	
+	// what the AST optimizations did in the last emitCode, empty below -O1
+	public Map<String, Integer> getConstexprCounts() {
+		return constexprVisitor != null ? constexprVisitor.getCounts() : Map.of();
 	}
 	
 	public List<JVMBytecodeEntity> emitCode() {
 		if (parseResult == null)
 			return null;
 		
-		JVMCodeEmitterVisitor codeEmitVisitor = new JVMCodeEmitterVisitor(sourceName);
+		constexprVisitor = null;
+		
+		if (optimizationLevel > 0) {
+			constexprVisitor = new ConstexprASTVisitor();
+			parseResult.accept(constexprVisitor, null);
+		}
+		
+		JVMCodeEmitterVisitor codeEmitVisitor = new JVMCodeEmitterVisitor(sourceName, peepholeOptimizer);
+		codeEmitVisitor.setFlattenArrays(optimizationLevel >= 2);
 		
 		return parseResult.accept(codeEmitVisitor, new ExpressionVisitorContext());
 	}
 	
 	public void printCompilerErrors() {
+		System.err.println(formatCompilerErrors());
+	}
+	
+	public String formatCompilerErrors() {
 		StringBuilder sb = new StringBuilder();
 		
 		compilerErrors.stream()
@@ -128,8 +176,8 @@ public class ICompiler {
 				int spaces = e.getErrorOffset() - 1;
 				
 				if (e.getClass() == UnexpectedEndOfTextSyntaxException.class) {
-					line = sourceLines.length - 1;
-					spaces = sourceLines[sourceLines.length - 1].length();
+					line = Math.max(source.getLineCount() - 1, 0);
+					spaces = source.getLine(line + 1).length();
 				}
 				
 				sb.append(
@@ -140,7 +188,7 @@ public class ICompiler {
 						
 						sourceName,
 						e.getErrorLine(), e.getErrorOffset(), e.getMessage(),
-						sourceLines[line],
+						source.getLine(line + 1),
 						" ".repeat(spaces)
 					)
 				);
@@ -156,7 +204,7 @@ public class ICompiler {
 								String.join(
 									"\n", 
 									Arrays.stream(lines)
-										.mapToObj(linenum -> String.format("%s:%d:%s", sourceName, linenum, sourceLines[linenum - 1])).toList()
+										.mapToObj(linenum -> String.format("%s:%d:%s", sourceName, linenum, source.getLine(linenum))).toList()
 								)
 							)
 						).append("\n");
@@ -164,10 +212,10 @@ public class ICompiler {
 				}
 			});
 		
-		System.err.println(sb.toString());
+		return sb.toString();
 	}
 	
-	private static String replaceFileExtension(String originalFile, String extension) {
+	public static String replaceFileExtension(String originalFile, String extension) {
 		int index = originalFile.indexOf('.');
 		
 		if (index >= 0)
@@ -176,16 +224,133 @@ public class ICompiler {
 		return originalFile + "." + extension;
 	}
 	
-	public static void main(String[] args) throws IOException {
+	// classes are independent, so they are assembled on the common ForkJoinPool;
+	// the map keeps the emission order, which keeps the jar layout stable
+	public static Map<String, byte[]> assembleClasses(List<JVMBytecodeEntity> entities) {
+		JVMClassAssembler assembler = new JVMClassAssembler();
+		
+		List<byte[]> classFiles = entities.parallelStream().map(jvmEntity -> {
+			try {
+				return assembler.assemble((JVMBytecodeClass) jvmEntity);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}).toList();
+		
+		Map<String, byte[]> assembledClasses = new LinkedHashMap<>();
+		
+		for (int i = 0; i < entities.size(); ++i)
+			assembledClasses.put(((JVMBytecodeClass) entities.get(i)).getClassName(), classFiles.get(i));
+		
+		return assembledClasses;
+	}
+	
+	// Defines the classes in a fresh JVMClassLoader and calls ilang.Program.main in this JVM.
+	// What the program printed is flushed before returning, also when it throws; its exception
+	// is rethrown as is.
+	public static void runProgram(Map<String, byte[]> classFiles, String[] args) throws Throwable {
+		ClassLoader loader = new JVMClassLoader(classFiles);
+		Class<?> output = Class.forName(JVMPrintRuntime.CLASS_NAME.replace('/', '.'), true, loader);
+		
+		try {
+			Class.forName(JVMCodeEmitterVisitor.PROGRAM_CLASS_NAME.replace('/', '.'), true, loader)
+				.getMethod("main", String[].class)
+				.invoke(null, (Object) args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		} finally {
+			output.getMethod("flush").invoke(null);
+		}
+	}
+	
+	private static long printPhaseTime(boolean printPhaseTimes, String phase, long startTime) {
+		long now = System.nanoTime();
+		
+		if (printPhaseTimes)
+			System.err.printf("%s: %.3f ms\n", phase, (now - startTime) / 1e6);
+		
+		return now;
+	}
+	
+	private static byte[] jarManifest() {
+		try {
+			String manifestContent = "Manifest-Version: 1.0\r\nMain-Class: ilang.Program\r\n";
+			Manifest man = new Manifest(new ByteArrayInputStream(manifestContent.getBytes()));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			
+			man.write(out);
+			
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// false when the jar already held these classes and was left untouched
+	public static boolean writeJar(File outputFile, Map<String, byte[]> classFiles, JVMJarWriter.Compression compression) throws IOException {
+		JVMJarWriter jarWriter = new JVMJarWriter();
+		jarWriter.setCompression(compression);
+		
+		return jarWriter.write(outputFile, jarManifest(), classFiles);
+	}
+	
+	public static void writeJar(File outputFile, Map<String, byte[]> classFiles) throws IOException {
+		writeJar(outputFile, classFiles, JVMJarWriter.Compression.DEFLATED);
+	}
+	
+	public static void main(String[] args) throws IOException, InterruptedException {
+		// the daemon, its client and the batch mode take the first argument
+		if (args.length > 0 && args[0].equals("--batch")) {
+			BatchCompiler.main(Arrays.copyOfRange(args, 1, args.length));
+			
+			return;
+		} else if (args.length > 0 && args[0].startsWith("--daemon=")) {
+			CompileDaemon.main(new String[] { args[0].substring("--daemon=".length()) });
+			
+			return;
+		} else if (args.length > 0 && args[0].startsWith("--connect=")) {
+			System.exit(CompileClient.send(Path.of(args[0].substring("--connect=".length())), Arrays.asList(args).subList(1, args.length)));
+		}
+		
+		CompilerOptions options;
+		
+		try {
+			options = CompilerOptions.parse(CompilerOptions.Mode.COMPILE, Arrays.asList(args));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			
+			System.exit(-5);
+			
+			return;
+		}
+		
 		ICompiler compiler = null;
 		File outputFile = null;
 		
-		if (args[0].equals("-")) {
+		String inputPath = options.getInputPaths().get(0);
+		boolean dumpJasmin = options.isDumpJasmin();
+		boolean printPeepholeStats = options.isPrintPeepholeStats();
+		boolean printOptimizationStats = options.isPrintOptimizationStats();
+		boolean printPhaseTimes = options.isPrintPhaseTimes();
+		boolean runInMemory = options.isRunInMemory();
+		boolean printCacheStats = options.isPrintCacheStats();
+		String cacheDirectory = options.getCacheDirectory();
+		JVMPeepholeOptimizer peepholeOptimizer = options.createPeepholeOptimizer();
+		
+		String[] programArgs = options.getProgramArgs().toArray(new String[0]);
+		
+		long phaseStartTime = System.nanoTime();
+		
+		File inputProgram = null;
+		
+		if (inputPath.equals("-")) {
 			compiler = new ICompiler(System.in);
 			outputFile = new File("output.jar");
 		}
 		else {
-			File inputProgram = new File(args[0]);
+			inputProgram = new File(inputPath);
 			
 			if (!inputProgram.exists()) {
 				System.err.printf("No such file '%s'.\n", inputProgram.getPath());
@@ -207,80 +372,114 @@ public class ICompiler {
 				);
 		}
 		
-		compiler.parseProgram();
-		compiler.checkSemantic();
+		phaseStartTime = printPhaseTime(printPhaseTimes, "read", phaseStartTime);
 		
-		if (!compiler.compilerErrors.isEmpty()) {
-			compiler.printCompilerErrors();
+		// standard input is not cached, and a hit has no jasmin to dump
+		CompileCache cache = null;
+		String cacheKey = null;
+		CompileCache.Entry cachedEntry = null;
+		
+		if (cacheDirectory != null && inputProgram != null && !dumpJasmin) {
+			cache = new CompileCache(Path.of(cacheDirectory), options.getCacheSize());
+			cacheKey = CompileCache.key(Files.readAllBytes(inputProgram.toPath()), inputProgram.getName(), options.getOutputFlags());
+			cachedEntry = cache.load(cacheKey);
 			
-			System.exit(-3);
+			phaseStartTime = printPhaseTime(printPhaseTimes, "cache", phaseStartTime);
 		}
 		
-		List<JVMBytecodeEntity> entities = compiler.emitCode();
-		File classFilesTmpDir = Files.createTempDirectory(null).toFile();
-		File ilangPackageDir = new File(classFilesTmpDir, "ilang");
-		ilangPackageDir.mkdir();
+		Map<String, byte[]> classFiles;
 		
-		class ClassFileEntity {
-			private final String name;
-			private final byte[] data;
+		if (cachedEntry != null) {
+			if (printCacheStats)
+				System.err.println(cache.getStatistics());
 			
-			public ClassFileEntity(String name, byte[] data) {
-				this.name = name;
-				this.data = data;
+			if (cachedEntry.getDiagnostics() != null) {
+				System.err.println(cachedEntry.getDiagnostics());
+				
+				System.exit(-3);
 			}
-		}
-		
-		List<ClassFileEntity> emittedClassFiles = entities.stream().map(jvmEntity -> {
-			StackMap.reinit();
-			JVMBytecodeClass jvmClass = (JVMBytecodeClass) jvmEntity;
 			
-			ClassFileEntity classFile = null;
+			classFiles = cachedEntry.getClassFiles();
+		} else {
+			compiler.setPeepholeOptimizer(peepholeOptimizer);
+			compiler.setOptimizationLevel(options.getOptimizationLevel());
+			compiler.parseProgram();
 			
-			try {
-				ClassFile jasminClassFile = new ClassFile();
-				jasminClassFile.readJasmin(
-					new BufferedReader(
-						new CharArrayReader(
-							jvmClass.toString().toCharArray()
-						)
-					), 
-					jvmClass.getSourceName(), 
-					false
-				);
+			phaseStartTime = printPhaseTime(printPhaseTimes, "parse", phaseStartTime);
+			
+			compiler.checkSemantic();
+			
+			phaseStartTime = printPhaseTime(printPhaseTimes, "check", phaseStartTime);
+			
+			if (!compiler.compilerErrors.isEmpty()) {
+				String diagnostics = compiler.formatCompilerErrors();
 				
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				jasminClassFile.write(baos);
+				if (cache != null) {
+					cache.store(cacheKey, CompileCache.Entry.failed(diagnostics));
+					
+					if (printCacheStats)
+						System.err.println(cache.getStatistics());
+				}
 				
-				classFile = new ClassFileEntity(jvmClass.getClassName(), baos.toByteArray());
-			} catch (IOException e) {
-				e.printStackTrace();
-			} catch (Exception e) {
-				e.printStackTrace();
+				System.err.println(diagnostics);
+				
+				System.exit(-3);
 			}
 			
-			return classFile;
-		}).toList();
-		
-		String manifestContent = "Manifest-Version: 1.0\r\nMain-Class: ilang.Program\r\n";
-		Manifest man = new Manifest(new ByteArrayInputStream(manifestContent.getBytes()));
-		
-		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(outputFile), man)) {
-			emittedClassFiles.forEach(classFile -> {
-				ZipEntry e = new ZipEntry(classFile.name + ".class");
-				
-				try {
-					jos.putNextEntry(e);
-					
-					OutputStream out = new BufferedOutputStream(jos);
-					out.write(classFile.data);
-					out.flush();
+			List<JVMBytecodeEntity> entities = compiler.emitCode();
+			
+			phaseStartTime = printPhaseTime(printPhaseTimes, "emit", phaseStartTime);
+			
+			if (printPeepholeStats && peepholeOptimizer != null)
+				peepholeOptimizer.getHitCounts().forEach((rule, hits) -> System.err.printf("%s: %d\n", rule, hits));
+			
+			if (printOptimizationStats)
+				compiler.getConstexprCounts().forEach((name, count) -> System.err.printf("%s: %d\n", name, count));
+			
+			if (dumpJasmin) {
+				for (JVMBytecodeEntity jvmEntity: entities) {
+					JVMBytecodeClass jvmClass = (JVMBytecodeClass) jvmEntity;
+					String className = jvmClass.getClassName();
 					
-					jos.closeEntry();
-				} catch (IOException e1) {
-					e1.printStackTrace();
+					Files.writeString(
+						Path.of(className.substring(className.lastIndexOf('/') + 1) + ".j"),
+						jvmClass.toString()
+					);
 				}
-			});
+			}
+			
+			classFiles = assembleClasses(entities);
+			
+			phaseStartTime = printPhaseTime(printPhaseTimes, "assemble", phaseStartTime);
+			
+			if (cache != null) {
+				cache.store(cacheKey, CompileCache.Entry.compiled(classFiles));
+				
+				if (printCacheStats)
+					System.err.println(cache.getStatistics());
+			}
 		}
+		
+		if (runInMemory) {
+			try {
+				runProgram(classFiles, programArgs);
+			} catch (Throwable e) {
+				// reported the way the JVM reports an exception escaping main
+				Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+				
+				System.exit(1);
+			} finally {
+				printPhaseTime(printPhaseTimes, "run", phaseStartTime);
+			}
+			
+			return;
+		}
+		
+		if (options.getClassDirectory() != null)
+			JVMJarWriter.writeClassDirectory(options.getClassDirectory(), classFiles);
+		else
+			writeJar(outputFile, classFiles, options.getJarCompression());
+		
+		printPhaseTime(printPhaseTimes, "write", phaseStartTime);
 	}
 }
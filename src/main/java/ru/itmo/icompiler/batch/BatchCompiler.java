@@ -0,0 +1,390 @@
+package ru.itmo.icompiler.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import ru.itmo.icompiler.CompilerOptions;
+import ru.itmo.icompiler.ICompiler;
+import ru.itmo.icompiler.cache.CompileCache;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeEntity;
+import ru.itmo.icompiler.codegen.jvm.JVMJarWriter;
+import ru.itmo.icompiler.codegen.jvm.JVMPeepholeOptimizer;
+import ru.itmo.icompiler.reader.SourceText;
+
+// Compiles many files in one JVM. Every file goes through the parse, check, emit and
+// assemble stages as separate tasks on one pool, so the stages of different files overlap;
+// at most a fixed number of files are in flight, which bounds the work queue and the memory
+// held by parsed trees. What a file prints is held back until all files before it are done,
+// so the diagnostics come out in input order.
+public class BatchCompiler {
+	private interface Stage {
+		// false when the file is done, with an error or its jar written
+		boolean run(Job job) throws IOException;
+	}
+
+	private static final List<Stage> STAGES = List.of(
+		BatchCompiler::parse,
+		BatchCompiler::check,
+		BatchCompiler::emit,
+		BatchCompiler::assemble
+	);
+
+	private static class Job {
+		private final BatchCompiler batch;
+		private final File inputFile;
+		private final File outputFile;
+
+		private String cacheKey;
+		private ICompiler compiler;
+		private List<JVMBytecodeEntity> entities;
+		private int lineCount;
+
+		private final StringBuilder out = new StringBuilder();
+		private final StringBuilder err = new StringBuilder();
+		private int exitCode;
+
+		private final CompletableFuture<Job> done = new CompletableFuture<>();
+
+		public Job(BatchCompiler batch, File inputFile, File outputFile) {
+			this.batch = batch;
+			this.inputFile = inputFile;
+			this.outputFile = outputFile;
+		}
+	}
+
+	private int optimizationLevel = 0;
+	private boolean peephole = false;
+	private List<String> peepholeRules = null;
+	// null for the working directory
+	private File outputDirectory = null;
+	// the classes of each file go to <dir>/<file name>/ instead of a jar; null for jars
+	private File classDirectory = null;
+	private CompileCache cache = null;
+	private JVMJarWriter.Compression jarCompression = JVMJarWriter.Compression.DEFLATED;
+
+	private final ThreadPoolExecutor stageExecutor;
+	private final Semaphore filesInFlight;
+
+	public BatchCompiler(int threads) {
+		int maxFilesInFlight = threads * 4;
+
+		// a file has at most one stage queued, so the queue never overflows
+		this.stageExecutor = new ThreadPoolExecutor(
+				threads, threads,
+				0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(maxFilesInFlight)
+			);
+		this.filesInFlight = new Semaphore(maxFilesInFlight);
+	}
+
+	public void setOptimizationLevel(int optimizationLevel) {
+		this.optimizationLevel = optimizationLevel;
+	}
+
+	// null rules for the default peephole pass
+	public void setPeephole(boolean peephole, List<String> peepholeRules) {
+		this.peephole = peephole;
+		this.peepholeRules = peepholeRules;
+	}
+
+	public void setOutputDirectory(File outputDirectory) {
+		this.outputDirectory = outputDirectory;
+	}
+
+	public void setClassDirectory(File classDirectory) {
+		this.classDirectory = classDirectory;
+	}
+
+	public void setJarCompression(JVMJarWriter.Compression jarCompression) {
+		this.jarCompression = jarCompression;
+	}
+
+	public void setCache(CompileCache cache) {
+		this.cache = cache;
+	}
+
+	private String getOutputFlags() {
+		return CompilerOptions.outputFlags(optimizationLevel, peephole, peepholeRules);
+	}
+
+	private static boolean parse(Job job) throws IOException {
+		if (!job.inputFile.exists()) {
+			job.err.append(String.format("No such file '%s'.\n", job.inputFile.getPath()));
+			job.exitCode = -1;
+
+			return false;
+		} else if (!job.inputFile.canRead()) {
+			job.err.append(String.format("Permissions denied for file '%s'.\n", job.inputFile.getPath()));
+			job.exitCode = -2;
+
+			return false;
+		} else if (job.outputFile == null) {
+			job.err.append(String.format("'%s' has the same output name as an earlier file.\n", job.inputFile.getPath()));
+			job.exitCode = -4;
+
+			return false;
+		}
+
+		CompileCache cache = job.batch.cache;
+
+		if (cache != null) {
+			byte[] source = Files.readAllBytes(job.inputFile.toPath());
+
+			job.cacheKey = CompileCache.key(source, job.inputFile.getName(), job.batch.getOutputFlags());
+
+			CompileCache.Entry entry = cache.load(job.cacheKey);
+
+			// for the summary, whether the file is compiled or not
+			job.lineCount = SourceText.countLines(source);
+
+			if (entry != null && entry.getDiagnostics() != null) {
+				job.err.append(entry.getDiagnostics()).append('\n');
+				job.exitCode = -3;
+
+				return false;
+			} else if (entry != null) {
+				write(job, entry.getClassFiles());
+
+				return false;
+			}
+		}
+
+		ICompiler compiler = new ICompiler(job.inputFile);
+
+		if (job.batch.peephole) {
+			compiler.setPeepholeOptimizer(
+					job.batch.peepholeRules != null
+						? new JVMPeepholeOptimizer(job.batch.peepholeRules)
+						: new JVMPeepholeOptimizer()
+				);
+		}
+
+		compiler.setOptimizationLevel(job.batch.optimizationLevel);
+		compiler.parseProgram();
+
+		job.compiler = compiler;
+
+		if (cache == null)
+			job.lineCount = compiler.getSource().getLineCount();
+
+		return true;
+	}
+
+	private static boolean check(Job job) throws IOException {
+		job.compiler.checkSemantic();
+
+		if (!job.compiler.getCompilerErrors().isEmpty()) {
+			String diagnostics = job.compiler.formatCompilerErrors();
+
+			if (job.batch.cache != null)
+				job.batch.cache.store(job.cacheKey, CompileCache.Entry.failed(diagnostics));
+
+			job.err.append(diagnostics).append('\n');
+			job.exitCode = -3;
+
+			return false;
+		}
+
+		return true;
+	}
+
+	private static boolean emit(Job job) {
+		job.entities = job.compiler.emitCode();
+
+		return true;
+	}
+
+	private static boolean assemble(Job job) throws IOException {
+		Map<String, byte[]> classFiles = ICompiler.assembleClasses(job.entities);
+
+		if (job.batch.cache != null)
+			job.batch.cache.store(job.cacheKey, CompileCache.Entry.compiled(classFiles));
+
+		write(job, classFiles);
+
+		return false;
+	}
+
+	private static void write(Job job, Map<String, byte[]> classFiles) throws IOException {
+		if (job.batch.classDirectory != null)
+			JVMJarWriter.writeClassDirectory(job.outputFile, classFiles);
+		else
+			ICompiler.writeJar(job.outputFile, classFiles, job.batch.jarCompression);
+
+		job.out.append(job.outputFile.getPath()).append('\n');
+	}
+
+	private void runStage(Job job, int stage) {
+		boolean next;
+
+		try {
+			next = STAGES.get(stage).run(job);
+		} catch (Exception e) {
+			job.err.append(String.format("Could not compile '%s': %s\n", job.inputFile.getPath(), e));
+			job.exitCode = 1;
+			next = false;
+		}
+
+		if (next && stage + 1 < STAGES.size()) {
+			stageExecutor.execute(() -> runStage(job, stage + 1));
+		} else {
+			// the trees are not needed for printing
+			job.compiler = null;
+			job.entities = null;
+
+			filesInFlight.release();
+			job.done.complete(job);
+		}
+	}
+
+	// Compiles the files into jars in the output directory, or into the class directory, and
+	// prints what each file printed in input order; returns the exit code of the first failed
+	// file, or 0
+	public int compile(List<File> inputFiles) throws InterruptedException {
+		List<Job> jobs = new ArrayList<>();
+		Map<String, File> outputFiles = new HashMap<>();
+
+		for (File inputFile: inputFiles) {
+			File outputFile = classDirectory != null
+					? new File(classDirectory, baseName(inputFile))
+					: new File(outputDirectory, ICompiler.replaceFileExtension(inputFile.getName(), "jar"));
+
+			if (outputFiles.putIfAbsent(outputFile.getPath(), inputFile) != null)
+				outputFile = null;
+
+			jobs.add(new Job(this, inputFile, outputFile));
+		}
+
+		Thread feeder = new Thread(() -> {
+			for (Job job: jobs) {
+				filesInFlight.acquireUninterruptibly();
+				stageExecutor.execute(() -> runStage(job, 0));
+			}
+		}, "batch-feeder");
+
+		long startTime = System.nanoTime();
+		int compiledCount = 0;
+		long lineCount = 0;
+		int exitCode = 0;
+
+		feeder.start();
+
+		for (Job job: jobs) {
+			job.done.join();
+
+			System.out.print(job.out);
+			System.err.print(job.err);
+
+			if (job.exitCode == 0) {
+				++compiledCount;
+				lineCount += job.lineCount;
+			} else if (exitCode == 0)
+				exitCode = job.exitCode;
+		}
+
+		feeder.join();
+
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+
+		// the throughput of the files that compiled
+		System.err.printf(
+			"%d files, %d lines in %.3f s: %.1f files/s, %.0f lines/s%s\n",
+			compiledCount, lineCount, seconds, compiledCount / seconds, lineCount / seconds,
+			compiledCount < jobs.size() ? "; " + (jobs.size() - compiledCount) + " failed" : ""
+		);
+
+		if (cache != null)
+			System.err.println(cache.getStatistics());
+
+		return exitCode;
+	}
+
+	public void shutdown() {
+		stageExecutor.shutdown();
+	}
+
+	// the file name up to the extension, cut where replaceFileExtension cuts it
+	private static String baseName(File file) {
+		String name = file.getName();
+		int index = name.indexOf('.');
+
+		return index >= 0 ? name.substring(0, index) : name;
+	}
+
+	// the .ilang files under a directory, in path order, or the path itself when it is not a directory
+	private static List<File> listInputFiles(String inputPath) throws IOException {
+		Path path = Path.of(inputPath);
+
+		if (!Files.isDirectory(path))
+			return List.of(path.toFile());
+
+		try (Stream<Path> paths = Files.walk(path)) {
+			return paths
+				.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(".ilang"))
+				.sorted()
+				.map(Path::toFile)
+				.toList();
+		}
+	}
+
+	// BatchCompiler <the options of ICompiler for the jars> [--threads=<n>] [--output-dir=<dir>] <files or directories...>;
+	// see CompilerOptions
+	public static void main(String[] args) throws IOException, InterruptedException {
+		CompilerOptions options;
+
+		try {
+			options = CompilerOptions.parse(CompilerOptions.Mode.BATCH, Arrays.asList(args));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+
+			System.exit(-5);
+
+			return;
+		}
+
+		File outputDirectory = options.getOutputDirectory();
+
+		if (outputDirectory != null && !outputDirectory.isDirectory()) {
+			System.err.printf("No such directory '%s'.\n", outputDirectory.getPath());
+
+			System.exit(-5);
+
+			return;
+		}
+
+		List<File> inputFiles = new ArrayList<>();
+
+		for (String inputPath: options.getInputPaths())
+			inputFiles.addAll(listInputFiles(inputPath));
+
+		BatchCompiler batch = new BatchCompiler(options.getThreads());
+
+		batch.setOptimizationLevel(options.getOptimizationLevel());
+		batch.setPeephole(options.isPeephole(), options.getPeepholeRules());
+		batch.setOutputDirectory(outputDirectory);
+		batch.setJarCompression(options.getJarCompression());
+		batch.setClassDirectory(options.getClassDirectory());
+
+		if (options.getCacheDirectory() != null)
+			batch.setCache(new CompileCache(Path.of(options.getCacheDirectory()), options.getCacheSize()));
+
+		int exitCode = batch.compile(inputFiles);
+
+		batch.shutdown();
+
+		System.exit(exitCode);
+	}
+}
@@ -0,0 +1,303 @@
+package ru.itmo.icompiler.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import ru.itmo.icompiler.ICompiler;
+
+// Compilation results on disk, keyed by a hash of the compiler, the source and the flags that
+// change the output. An entry holds either the assembled classes or the diagnostics of a file,
+// so a hit needs neither the parser nor the assembler.
+//
+// Entries are written to a temporary file and renamed into place, so concurrent builds sharing
+// the directory see whole entries or none. The least recently used entries are removed when the
+// directory grows past its size; a hit refreshes the entry's modification time.
+public class CompileCache {
+	public static final long DEFAULT_MAX_SIZE = 256L << 20;
+
+	private static final int ENTRY_MAGIC = 0x49434331; // "ICC1"
+	private static final String ENTRY_SUFFIX = ".entry";
+
+	public static class Entry {
+		private final Map<String, byte[]> classFiles;
+		private final String diagnostics;
+
+		private Entry(Map<String, byte[]> classFiles, String diagnostics) {
+			this.classFiles = classFiles;
+			this.diagnostics = diagnostics;
+		}
+
+		public static Entry compiled(Map<String, byte[]> classFiles) {
+			return new Entry(classFiles, null);
+		}
+
+		public static Entry failed(String diagnostics) {
+			return new Entry(null, diagnostics);
+		}
+
+		// null when the file had errors
+		public Map<String, byte[]> getClassFiles() {
+			return classFiles;
+		}
+
+		// null when the file compiled
+		public String getDiagnostics() {
+			return diagnostics;
+		}
+	}
+
+	private final Path directory;
+	private final long maxSize;
+
+	// bytes in the directory as last scanned plus what was stored since; other processes'
+	// entries show up at the next scan
+	private final AtomicLong size = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public CompileCache(Path directory, long maxSize) throws IOException {
+		this.directory = directory;
+		this.maxSize = maxSize;
+
+		Files.createDirectories(directory);
+		size.set(scanEntries().stream().mapToLong(entry -> entry.size).sum());
+
+		if (size.get() > maxSize)
+			evict();
+	}
+
+	public CompileCache(Path directory) throws IOException {
+		this(directory, DEFAULT_MAX_SIZE);
+	}
+
+	private static class CompilerFingerprint {
+		// the name, size and modification time of the compiler's jar, or of every file under its
+		// class directory, so a rebuilt compiler never reads old entries; hashing the contents
+		// would cost more than a hit saves
+		private static final byte[] VALUE = compute();
+
+		private static byte[] compute() {
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				Path location = Path.of(ICompiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+				try (Stream<Path> paths = Files.walk(location)) {
+					for (Path path: paths.filter(Files::isRegularFile).sorted().toList()) {
+						BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+						digest.update((path + " " + attributes.size() + " " + attributes.lastModifiedTime().toMillis() + "\n").getBytes(StandardCharsets.UTF_8));
+					}
+				}
+
+				return digest.digest();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (NoSuchAlgorithmException | URISyntaxException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	// flags are the options that change the output, e.g. "-O2 --no-peephole"; the source name
+	// is part of the key because the diagnostics and the debug info mention it
+	public static String key(byte[] source, String sourceName, String flags) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+			digest.update(CompilerFingerprint.VALUE);
+
+			for (String part: new String[] { sourceName, flags }) {
+				byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+
+				digest.update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length });
+				digest.update(bytes);
+			}
+
+			digest.update(source);
+
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private Path entryPath(String key) {
+		return directory.resolve(key + ENTRY_SUFFIX);
+	}
+
+	// null on a miss; an unreadable entry is a miss too
+	public Entry load(String key) {
+		Path path = entryPath(key);
+
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)))) {
+			if (in.readInt() != ENTRY_MAGIC)
+				throw new IOException("not a cache entry: " + path);
+
+			Entry entry;
+
+			if (in.readBoolean()) {
+				Map<String, byte[]> classFiles = new LinkedHashMap<>();
+
+				for (int count = in.readInt(); count > 0; --count) {
+					String className = in.readUTF();
+					byte[] data = new byte[in.readInt()];
+
+					in.readFully(data);
+					classFiles.put(className, data);
+				}
+
+				entry = Entry.compiled(classFiles);
+			} else {
+				byte[] diagnostics = new byte[in.readInt()];
+
+				in.readFully(diagnostics);
+				entry = Entry.failed(new String(diagnostics, StandardCharsets.UTF_8));
+			}
+
+			try {
+				Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+			} catch (NoSuchFileException e) {
+				// evicted by another build meanwhile
+			}
+
+			hits.incrementAndGet();
+
+			return entry;
+		} catch (IOException e) {
+			misses.incrementAndGet();
+
+			return null;
+		}
+	}
+
+	public void store(String key, Entry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(ENTRY_MAGIC);
+			out.writeBoolean(entry.classFiles != null);
+
+			if (entry.classFiles != null) {
+				out.writeInt(entry.classFiles.size());
+
+				for (Map.Entry<String, byte[]> classFile: entry.classFiles.entrySet()) {
+					out.writeUTF(classFile.getKey());
+					out.writeInt(classFile.getValue().length);
+					out.write(classFile.getValue());
+				}
+			} else {
+				byte[] diagnostics = entry.diagnostics.getBytes(StandardCharsets.UTF_8);
+
+				out.writeInt(diagnostics.length);
+				out.write(diagnostics);
+			}
+		}
+
+		Path tempFile = Files.createTempFile(directory, key, ".tmp");
+
+		try {
+			Files.write(tempFile, bytes.toByteArray());
+			Files.move(tempFile, entryPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+
+		if (size.addAndGet(bytes.size()) > maxSize)
+			evict();
+	}
+
+	private static class ScannedEntry {
+		private final Path path;
+		private final long size;
+		private final FileTime lastUsed;
+
+		public ScannedEntry(Path path, long size, FileTime lastUsed) {
+			this.path = path;
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	private List<ScannedEntry> scanEntries() throws IOException {
+		List<ScannedEntry> entries = new ArrayList<>();
+
+		try (Stream<Path> paths = Files.list(directory)) {
+			for (Path path: paths.filter(path -> path.getFileName().toString().endsWith(ENTRY_SUFFIX)).toList()) {
+				try {
+					BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+					entries.add(new ScannedEntry(path, attributes.size(), attributes.lastModifiedTime()));
+				} catch (NoSuchFileException e) {
+					// evicted by another build meanwhile
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	// removes the least recently used entries until the directory is at 3/4 of its size,
+	// so a full cache is not scanned on every store
+	private synchronized void evict() throws IOException {
+		if (size.get() <= maxSize)
+			return;
+
+		List<ScannedEntry> entries = scanEntries();
+		entries.sort(Comparator.comparing(entry -> entry.lastUsed));
+
+		long total = entries.stream().mapToLong(entry -> entry.size).sum();
+
+		for (ScannedEntry entry: entries) {
+			if (total <= maxSize / 4 * 3)
+				break;
+
+			if (Files.deleteIfExists(entry.path))
+				evictions.incrementAndGet();
+
+			total -= entry.size;
+		}
+
+		size.set(total);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public String getStatistics() {
+		return String.format("cache: %d hits, %d misses, %d evictions", getHits(), getMisses(), getEvictions());
+	}
+}
@@ -4,22 +4,34 @@ import java.util.Arrays;
 import java.util.List;
 
 public class JVMBytecodeClass extends JVMBytecodeEntity {
+	// 52 (Java 8) and newer class files are checked by the type-checking verifier,
+	// which needs the StackMapTable frames the methods carry
+	public static final int BYTECODE_VERSION = 52;
+	
+	public static final String OBJECT_CLASS_NAME = "java/lang/Object";
+	
 	private AccessSpec[] accessSpecs;
 	private String sourceName;
 	private String className;
+	private String superClassName;
 	private List<JVMBytecodeField> fields;
 	private List<JVMBytecodeMethod> methods;
 	
-	public JVMBytecodeClass(AccessSpec[] accessSpecs, String sourceName, String className, List<JVMBytecodeField> fields, List<JVMBytecodeMethod> methods) {
+	public JVMBytecodeClass(AccessSpec[] accessSpecs, String sourceName, String className, String superClassName, List<JVMBytecodeField> fields, List<JVMBytecodeMethod> methods) {
 		this.accessSpecs = accessSpecs;
 		
 		this.sourceName = sourceName;
 		this.className = className;
+		this.superClassName = superClassName;
 		
 		this.fields = fields;
 		this.methods = methods;
 	}
 	
+	public JVMBytecodeClass(AccessSpec[] accessSpecs, String sourceName, String className, List<JVMBytecodeField> fields, List<JVMBytecodeMethod> methods) {
+		this(accessSpecs, sourceName, className, OBJECT_CLASS_NAME, fields, methods);
+	}
+	
 	public JVMBytecodeClass(AccessSpec[] accessSpecs, String className, List<JVMBytecodeField> fields, List<JVMBytecodeMethod> methods) {
 		this(accessSpecs, className, className, fields, methods);
 	}
@@ -36,6 +48,10 @@ public class JVMBytecodeClass extends JVMBytecodeEntity {
 		return className;
 	}
 	
+	public String getSuperClassName() {
+		return superClassName;
+	}
+	
 	public List<JVMBytecodeField> getFields() {
 		return fields;
 	}
@@ -47,12 +63,14 @@ public class JVMBytecodeClass extends JVMBytecodeEntity {
 	@Override
 	public String toString() {
 		return String.format(
-				".source %s\n"
+				".bytecode %d.0\n"
+				+ ".source %s\n"
 				+ ".class %s %s\n"
-				+ ".super java/lang/Object\n"
+				+ ".super %s\n"
 				+ "\n%s\n"
 				+ "\n%s",
 				
+				BYTECODE_VERSION,
 				sourceName,
 				String.join(
 					" ", 
@@ -62,6 +80,7 @@ public class JVMBytecodeClass extends JVMBytecodeEntity {
 						.toList()
 				), 
 				className,
+				superClassName,
 				
 				String.join(
 					"\n", 
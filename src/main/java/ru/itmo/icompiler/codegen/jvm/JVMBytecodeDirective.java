@@ -11,6 +11,14 @@ public class JVMBytecodeDirective extends JVMBytecodeEntity {
 		this.args = Arrays.stream(args).map(Object::toString).toArray(String[]::new);
 	}
 	
+	public String getDirectiveName() {
+		return directiveName;
+	}
+	
+	public String getArg(int i) {
+		return args[i];
+	}
+	
 	@Override
 	public String toString() {
 		return String.format(
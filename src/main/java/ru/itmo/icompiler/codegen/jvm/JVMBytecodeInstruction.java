@@ -1,86 +1,298 @@
 package ru.itmo.icompiler.codegen.jvm;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import ru.itmo.icompiler.codegen.jvm.JVMOpcode.OperandKind;
+
+// One instruction, with the operands its opcode takes: an Integer for locals, pushes and
+// iinc, an Integer, a Float or a String for ldc, a JVMLabel for jumps, a JVMFieldRef or a
+// JVMMethodRef for field and method instructions and a String for class names and array
+// types. They are checked when the instruction is made; toString() gives the Jasmin text.
 public class JVMBytecodeInstruction extends JVMBytecodeEntity {
-	private String label;
-	protected String opcode;
-	private String[] args;
-	
-	public JVMBytecodeInstruction(String opcode, Object... args) {
+	private static final Object[] NO_OPERANDS = {};
+
+	private JVMLabel label;
+	protected JVMOpcode opcode;
+	private Object[] operands;
+
+	public JVMBytecodeInstruction(JVMOpcode opcode, Object... operands) {
+		if (opcode == null)
+			throw new IllegalArgumentException("no opcode given");
+
 		this.opcode = opcode;
-		this.args = Arrays.stream(args).map(Object::toString).toArray(String[]::new);
+		this.operands = operands.length == 0 ? NO_OPERANDS : operands;
+
+		checkOperands();
 	}
 
-	public String getOpcode() {
+	// a label on its own, see JVMBytecodeLabel
+	private JVMBytecodeInstruction(JVMLabel label) {
+		this.operands = NO_OPERANDS;
+		this.label = label;
+	}
+
+	private void checkOperands() {
+		OperandKind kind = opcode.getOperandKind();
+		boolean valid;
+
+		switch (kind) {
+			case NONE:
+			case SWITCH:
+				valid = operands.length == 0;
+				break;
+			case LOCAL:
+				valid = operands.length == 1 && operands[0] instanceof Integer local && local >= 0 && local <= 0xff;
+				break;
+			case BYTE:
+				valid = operands.length == 1 && operands[0] instanceof Integer value && value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE;
+				break;
+			case SHORT:
+				valid = operands.length == 1 && operands[0] instanceof Integer value && value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+				break;
+			case CONSTANT:
+				valid = operands.length == 1 && (operands[0] instanceof Integer || operands[0] instanceof Float || operands[0] instanceof String);
+				break;
+			case LABEL:
+				valid = operands.length == 1 && operands[0] instanceof JVMLabel;
+				break;
+			case FIELD:
+				valid = operands.length == 1 && operands[0] instanceof JVMFieldRef;
+				break;
+			case METHOD:
+				valid = operands.length == 1 && operands[0] instanceof JVMMethodRef;
+				break;
+			case CLASS:
+			case ARRAY_TYPE:
+				valid = operands.length == 1 && operands[0] instanceof String;
+				break;
+			case IINC:
+				valid = operands.length == 2 && operands[0] instanceof Integer && operands[1] instanceof Integer;
+				break;
+			case MULTI_ARRAY:
+				valid = operands.length == 2 && operands[0] instanceof String && operands[1] instanceof Integer;
+				break;
+			default:
+				valid = false;
+		}
+
+		if (!valid)
+			throw new IllegalArgumentException("bad operands for " + opcode + ": " + List.of(operands));
+	}
+
+	// null for a label on its own
+	public JVMOpcode getOpcode() {
 		return opcode;
 	}
 
-	public String getArg(int i) {
-		return args[i];
+	public Object getOperand(int i) {
+		return operands[i];
 	}
-	
-	public void setLabel(String label) {
+
+	public int getIntOperand(int i) {
+		return (Integer) operands[i];
+	}
+
+	public int getOperandsCount() {
+		return operands.length;
+	}
+
+	// the jump target of an instruction that takes a label
+	public JVMLabel getTarget() {
+		return (JVMLabel) operands[0];
+	}
+
+	public JVMFieldRef getFieldRef() {
+		return (JVMFieldRef) operands[0];
+	}
+
+	public JVMMethodRef getMethodRef() {
+		return (JVMMethodRef) operands[0];
+	}
+
+	// the local a load, store, ret or iinc works on, short forms included
+	public int getLocalIndex() {
+		return opcode.hasImplicitLocal() ? opcode.getImplicitLocal() : getIntOperand(0);
+	}
+
+	// the labels execution can go to from here, other than the next instruction
+	public List<JVMLabel> getBranchTargets() {
+		return opcode != null && opcode.getOperandKind() == OperandKind.LABEL && opcode != JVMOpcode.JSR && opcode != JVMOpcode.JSR_W
+				? List.of(getTarget())
+				: List.of();
+	}
+
+	// stack slots the instruction takes
+	public int getPoppedSlots() {
+		switch (opcode) {
+			case GETSTATIC:
+				return 0;
+			case PUTSTATIC:
+				return getFieldRef().getSlots();
+			case GETFIELD:
+				return 1;
+			case PUTFIELD:
+				return 1 + getFieldRef().getSlots();
+			case INVOKESTATIC:
+				return getMethodRef().getArgumentSlots();
+			case INVOKEVIRTUAL:
+			case INVOKESPECIAL:
+			case INVOKEINTERFACE:
+				return 1 + getMethodRef().getArgumentSlots();
+			case MULTIANEWARRAY:
+				return getIntOperand(1);
+			default:
+				return opcode.getPops();
+		}
+	}
+
+	// stack slots the instruction leaves
+	public int getPushedSlots() {
+		switch (opcode) {
+			case GETSTATIC:
+			case GETFIELD:
+				return getFieldRef().getSlots();
+			case PUTSTATIC:
+			case PUTFIELD:
+				return 0;
+			case INVOKESTATIC:
+			case INVOKEVIRTUAL:
+			case INVOKESPECIAL:
+			case INVOKEINTERFACE:
+				return getMethodRef().getReturnSlots();
+			default:
+				return opcode.getPushes();
+		}
+	}
+
+	public JVMLabel getLabel() {
+		return label;
+	}
+
+	public void setLabel(JVMLabel label) {
 		this.label = label;
 	}
-	
+
+	// the operands as Jasmin writes them
+	protected List<String> formatOperands() {
+		List<String> formatted = new ArrayList<>(operands.length + 1);
+
+		if (opcode.getOperandKind() == OperandKind.CONSTANT && operands[0] instanceof String string)
+			formatted.add(quote(string));
+		else {
+			for (Object operand: operands)
+				formatted.add(operand.toString());
+		}
+
+		// the count byte of invokeinterface, the receiver included
+		if (opcode == JVMOpcode.INVOKEINTERFACE)
+			formatted.add(Integer.toString(1 + getMethodRef().getArgumentSlots()));
+
+		return formatted;
+	}
+
+	private static String quote(String string) {
+		StringBuilder sb = new StringBuilder("\"");
+
+		for (char c: string.toCharArray()) {
+			switch (c) {
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					sb.append(c);
+			}
+		}
+
+		return sb.append('"').toString();
+	}
+
 	public String toString(int ident) {
-		String labelStr = label != null && !label.isBlank() ? label + ":\n" : "";
-		
+		String labelStr = label != null ? label.getName() + ":\n" : "";
+
 		if (opcode == null)
 			return labelStr.strip();
-		
+
 		return String.format(
 				"%s%s %s",
 				labelStr,
 				" ".repeat(ident) + opcode,
-				String.join(" ", args)
+				String.join(" ", formatOperands())
 			);
 	}
-	
+
 	public String toString() {
 		return toString(0);
 	}
-	
+
 	public static class JVMBytecodeInstructionLabeled extends JVMBytecodeInstruction {
-		public JVMBytecodeInstructionLabeled(String label, String opcode, Object... args) {
-			super(opcode, args);
-			
+		public JVMBytecodeInstructionLabeled(JVMLabel label, JVMOpcode opcode, Object... operands) {
+			super(opcode, operands);
+
 			setLabel(label);
 		}
+
+		private JVMBytecodeInstructionLabeled(JVMLabel label) {
+			super(label);
+		}
 	}
-	
+
 	public static class JVMBytecodeLabel extends JVMBytecodeInstructionLabeled {
-		public JVMBytecodeLabel(String label) {
-			super(label, null);
+		public JVMBytecodeLabel(JVMLabel label) {
+			super(label);
 		}
 	}
-	
+
 	public static class LookupSwitchInstruction extends JVMBytecodeInstruction {
-		private Map<Integer, String> switchesMap;
-		private String defaultLabel;
-		
-		public LookupSwitchInstruction(Map<Integer, String> switches, String defaultLabel) {
-			super("lookupswitch");
-			
+		private Map<Integer, JVMLabel> switchesMap;
+		private JVMLabel defaultLabel;
+
+		public LookupSwitchInstruction(Map<Integer, JVMLabel> switches, JVMLabel defaultLabel) {
+			super(JVMOpcode.LOOKUPSWITCH);
+
 			this.switchesMap = new LinkedHashMap<>(switches);
 			this.defaultLabel = defaultLabel;
 		}
-		
-		public LookupSwitchInstruction(String defaultLabel) {
+
+		public LookupSwitchInstruction(JVMLabel defaultLabel) {
 			this(Map.of(), defaultLabel);
 		}
-		
-		public void addSwitch(int value, String dest) {
+
+		public void addSwitch(int value, JVMLabel dest) {
 			switchesMap.put(value, dest);
 		}
-		
+
+		public Map<Integer, JVMLabel> getSwitches() {
+			return switchesMap;
+		}
+
+		public JVMLabel getDefaultLabel() {
+			return defaultLabel;
+		}
+
+		@Override
+		public List<JVMLabel> getBranchTargets() {
+			List<JVMLabel> targets = new ArrayList<>(switchesMap.values());
+			targets.add(defaultLabel);
+
+			return targets;
+		}
+
 		@Override
 		public String toString(int ident) {
 			StringBuilder sb = new StringBuilder(" ".repeat(ident)).append(this.opcode);
-			
+
 			switchesMap.forEach((value, dest) -> {
 				sb.append("\n\t")
 				.append(value)
@@ -88,7 +300,7 @@ public class JVMBytecodeInstruction extends JVMBytecodeEntity {
 				.append(dest);
 			});
 			sb.append("\n\tdefault: ").append(defaultLabel);
-			
+
 			return sb.toString();
 		}
 	}
@@ -55,6 +55,17 @@ public class JVMBytecodeMethod extends JVMBytecodeEntity {
 		this(accessSpecs, methodName, argsDescriptors, returnTypeDescriptor, localVariablesLimit, stackLimit, new ArrayList<>());
 	}
 	
+	// the limits are left to JVMMethodLimits
+	public JVMBytecodeMethod(
+		AccessSpec[] accessSpecs, 
+		String methodName, 
+		List<String> argsDescriptors, 
+		String returnTypeDescriptor,
+		List<JVMBytecodeEntity> instructions
+	) {
+		this(accessSpecs, methodName, argsDescriptors, returnTypeDescriptor, 0, 0, instructions);
+	}
+	
 	public AccessSpec[] getAccessSpecs() {
 		return accessSpecs;
 	}
@@ -62,6 +73,42 @@ public class JVMBytecodeMethod extends JVMBytecodeEntity {
 	public String getMethodName() {
 		return methodName;
 	}
+	
+	public List<String> getArgsDescriptors() {
+		return argsDescriptors;
+	}
+	
+	public String getReturnTypeDescriptor() {
+		return returnTypeDescriptor;
+	}
+	
+	public String getMethodDescriptor() {
+		return "(" + String.join("", argsDescriptors) + ")" + returnTypeDescriptor;
+	}
+	
+	public int getLocalVariablesLimit() {
+		return localVariablesLimit;
+	}
+	
+	public void setLocalVariablesLimit(int localVariablesLimit) {
+		this.localVariablesLimit = localVariablesLimit;
+	}
+	
+	public int getStackLimit() {
+		return stackLimit;
+	}
+	
+	public void setStackLimit(int stackLimit) {
+		this.stackLimit = stackLimit;
+	}
+	
+	public List<JVMBytecodeEntity> getInstructions() {
+		return instructions;
+	}
+
+	public void setInstructions(List<JVMBytecodeEntity> instructions) {
+		this.instructions = instructions;
+	}
 
 	public void addBytecodeEntity(JVMBytecodeInstruction instruction) {
 		instructions.add(instruction);
@@ -0,0 +1,37 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import java.util.List;
+
+// The verification types of the locals and of the operand stack at the instruction
+// that follows the frame. Types are written as in Jasmin: "Integer", "Float", "Top",
+// "Null", "UninitializedThis" or "Object <class name or array descriptor>".
+public class JVMBytecodeStackMapFrame extends JVMBytecodeEntity {
+	private List<String> locals;
+	private List<String> stack;
+
+	public JVMBytecodeStackMapFrame(List<String> locals, List<String> stack) {
+		this.locals = locals;
+		this.stack = stack;
+	}
+
+	public List<String> getLocals() {
+		return locals;
+	}
+
+	public List<String> getStack() {
+		return stack;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(".stack\n");
+
+		for (String local: locals)
+			sb.append("    locals ").append(local).append('\n');
+
+		for (String item: stack)
+			sb.append("    stack ").append(item).append('\n');
+
+		return sb.append(".end stack").toString();
+	}
+}
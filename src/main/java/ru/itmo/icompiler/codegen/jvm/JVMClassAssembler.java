@@ -0,0 +1,322 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import static jas.RuntimeConstants.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import jas.AsciiCP;
+import jas.CP;
+import jas.ClassCP;
+import jas.ClassEnv;
+import jas.CodeAttr;
+import jas.FieldCP;
+import jas.FloatCP;
+import jas.IincInsn;
+import jas.Insn;
+import jas.IntegerCP;
+import jas.InterfaceCP;
+import jas.InvokeinterfaceInsn;
+import jas.Label;
+import jas.LabelOrOffset;
+import jas.LineTableAttr;
+import jas.LookupswitchInsn;
+import jas.Method;
+import jas.MethodCP;
+import jas.MultiarrayInsn;
+import jas.StackMap;
+import jas.StringCP;
+import jas.Var;
+import jas.VerifyFrame;
+import jas.jasError;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.LookupSwitchInstruction;
+
+// Builds class files straight from the bytecode model, without printing it
+// as Jasmin source and parsing it back. The produced bytes are the same as
+// jasmin.ClassFile gives for JVMBytecodeClass.toString().
+public class JVMClassAssembler {
+
+	private static final Map<String, Integer> ARRAY_TYPES = Map.ofEntries(
+			Map.entry("boolean", T_BOOLEAN),
+			Map.entry("char", T_CHAR),
+			Map.entry("float", T_FLOAT),
+			Map.entry("double", T_DOUBLE),
+			Map.entry("byte", T_BYTE),
+			Map.entry("short", T_SHORT),
+			Map.entry("int", T_INT),
+			Map.entry("long", T_LONG)
+		);
+
+	private static final Map<JVMBytecodeClass.AccessSpec, Integer> CLASS_ACCESS_FLAGS = Map.ofEntries(
+			Map.entry(JVMBytecodeClass.AccessSpec.PUBLIC, ACC_PUBLIC),
+			Map.entry(JVMBytecodeClass.AccessSpec.FINAL, ACC_FINAL),
+			Map.entry(JVMBytecodeClass.AccessSpec.SUPER, ACC_SUPER),
+			Map.entry(JVMBytecodeClass.AccessSpec.ABSTRACT, ACC_ABSTRACT),
+			Map.entry(JVMBytecodeClass.AccessSpec.INTERFACE, ACC_INTERFACE)
+		);
+
+	private static final Map<JVMBytecodeField.AccessSpec, Integer> FIELD_ACCESS_FLAGS = Map.ofEntries(
+			Map.entry(JVMBytecodeField.AccessSpec.PUBLIC, ACC_PUBLIC),
+			Map.entry(JVMBytecodeField.AccessSpec.PRIVATE, ACC_PRIVATE),
+			Map.entry(JVMBytecodeField.AccessSpec.PROTECTED, ACC_PROTECTED),
+			Map.entry(JVMBytecodeField.AccessSpec.STATIC, ACC_STATIC),
+			Map.entry(JVMBytecodeField.AccessSpec.FINAL, ACC_FINAL),
+			Map.entry(JVMBytecodeField.AccessSpec.VOLATILE, ACC_VOLATILE),
+			Map.entry(JVMBytecodeField.AccessSpec.TRANSIENT, ACC_TRANSIENT)
+		);
+
+	private static final Map<JVMBytecodeMethod.AccessSpec, Integer> METHOD_ACCESS_FLAGS = Map.ofEntries(
+			Map.entry(JVMBytecodeMethod.AccessSpec.PUBLIC, ACC_PUBLIC),
+			Map.entry(JVMBytecodeMethod.AccessSpec.PRIVATE, ACC_PRIVATE),
+			Map.entry(JVMBytecodeMethod.AccessSpec.PROTECTED, ACC_PROTECTED),
+			Map.entry(JVMBytecodeMethod.AccessSpec.STATIC, ACC_STATIC),
+			Map.entry(JVMBytecodeMethod.AccessSpec.FINAL, ACC_FINAL)
+		);
+
+	public byte[] assemble(JVMBytecodeClass jvmClass) throws IOException, jasError {
+		ClassEnv classEnv = new ClassEnv();
+		classEnv.setVersion((short) JVMBytecodeClass.BYTECODE_VERSION, (short) 0);
+
+		int classAccess = ACC_SUPER;
+		for (JVMBytecodeClass.AccessSpec spec: jvmClass.getAccessSpecs())
+			classAccess |= CLASS_ACCESS_FLAGS.get(spec);
+
+		classEnv.setClass(new ClassCP(jvmClass.getClassName()));
+		classEnv.setClassAccess((short) classAccess);
+		classEnv.setSuperClass(new ClassCP(jvmClass.getSuperClassName()));
+		classEnv.endHeader();
+
+		for (JVMBytecodeField field: jvmClass.getFields())
+			classEnv.addField(assembleField(field));
+
+		for (JVMBytecodeMethod method: jvmClass.getMethods())
+			classEnv.addMethod(assembleMethod(method, classEnv));
+
+		classEnv.setSource(jvmClass.getSourceName());
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		classEnv.write(new DataOutputStream(baos));
+
+		return baos.toByteArray();
+	}
+
+	private static Var assembleField(JVMBytecodeField field) {
+		int access = 0;
+		for (JVMBytecodeField.AccessSpec spec: field.getAccessSpecs())
+			access |= FIELD_ACCESS_FLAGS.get(spec);
+
+		return new Var(
+				(short) access,
+				new AsciiCP(field.getFieldName()),
+				new AsciiCP(field.getFieldDescriptor()),
+				null
+			);
+	}
+
+	private static Method assembleMethod(JVMBytecodeMethod method, ClassEnv classEnv) throws jasError {
+		int access = 0;
+		for (JVMBytecodeMethod.AccessSpec spec: method.getAccessSpecs())
+			access |= METHOD_ACCESS_FLAGS.get(spec);
+
+		Method jasMethod = new Method(
+				(short) access,
+				new AsciiCP(method.getMethodName()),
+				new AsciiCP(method.getMethodDescriptor())
+			);
+
+		CodeAttr code = new CodeAttr();
+		code.setVarSize(checkLimit(method.getLocalVariablesLimit()));
+		code.setStackSize(checkLimit(method.getStackLimit()));
+
+		MethodContext ctx = new MethodContext();
+
+		for (JVMBytecodeEntity entity: method.getInstructions()) {
+			if (entity instanceof JVMBytecodeDirective directive)
+				assembleDirective(directive, code, ctx);
+			else if (entity instanceof JVMBytecodeStackMapFrame frame)
+				assembleStackMapFrame(frame, code, classEnv, ctx);
+			else if (entity instanceof JVMBytecodeInstruction instruction) {
+				JVMLabel label = instruction.getLabel();
+
+				if (label != null)
+					code.addInsn(ctx.getLabel(label));
+
+				if (instruction.getOpcode() != null)
+					code.addInsn(assembleInstruction(instruction, ctx));
+			} else
+				throw new jasError("Unexpected entity in method body: " + entity);
+		}
+
+		if (ctx.lineTable != null)
+			code.setLineTable(ctx.lineTable);
+
+		if (ctx.stackMap != null)
+			code.setStackMap(ctx.stackMap);
+
+		jasMethod.setCode(code, null);
+
+		return jasMethod;
+	}
+
+	private static void assembleDirective(JVMBytecodeDirective directive, CodeAttr code, MethodContext ctx) throws jasError {
+		switch (directive.getDirectiveName()) {
+			case "line": {
+				Label lineLabel = new Label("line#" + ctx.lineLabelCount++);
+
+				if (ctx.lineTable == null)
+					ctx.lineTable = new LineTableAttr();
+
+				code.addInsn(lineLabel);
+				ctx.lineTable.addEntry(lineLabel, Integer.parseInt(directive.getArg(0)));
+
+				break;
+			}
+			default:
+				throw new jasError("Unsupported directive ." + directive.getDirectiveName());
+		}
+	}
+
+	// like jasmin's .stack without an offset, the frame is for the instruction that follows
+	private static void assembleStackMapFrame(JVMBytecodeStackMapFrame frame, CodeAttr code, ClassEnv classEnv, MethodContext ctx) throws jasError {
+		Label frameLabel = new Label("stack#" + ctx.frameLabelCount++);
+		code.addInsn(frameLabel);
+
+		VerifyFrame verifyFrame = new VerifyFrame(null);
+		verifyFrame.setOffset(frameLabel);
+
+		for (String local: frame.getLocals())
+			verifyFrame.addLocalsItem(verificationItem(local), verificationValue(local));
+
+		for (String item: frame.getStack())
+			verifyFrame.addStackItem(verificationItem(item), verificationValue(item));
+
+		if (ctx.stackMap == null)
+			ctx.stackMap = new StackMap(classEnv);
+
+		ctx.stackMap.addFrame(verifyFrame);
+	}
+
+	private static String verificationItem(String type) {
+		int sep = type.indexOf(' ');
+
+		return sep >= 0 ? type.substring(0, sep) : type;
+	}
+
+	private static String verificationValue(String type) {
+		int sep = type.indexOf(' ');
+
+		return sep >= 0 ? type.substring(sep + 1) : null;
+	}
+
+	private static Insn assembleInstruction(JVMBytecodeInstruction instruction, MethodContext ctx) throws jasError {
+		if (instruction instanceof LookupSwitchInstruction lookupSwitch)
+			return assembleLookupSwitch(lookupSwitch, ctx);
+
+		JVMOpcode opcode = instruction.getOpcode();
+		int code = opcode.getCode();
+
+		switch (opcode.getOperandKind()) {
+			case NONE:
+				return new Insn(code);
+			case LOCAL:
+			case BYTE:
+			case SHORT:
+				return new Insn(code, instruction.getIntOperand(0), false);
+			case ARRAY_TYPE: {
+				Integer arrayType = ARRAY_TYPES.get((String) instruction.getOperand(0));
+
+				if (arrayType == null)
+					throw new jasError("Bad array type: " + instruction.getOperand(0));
+
+				return new Insn(code, arrayType, false);
+			}
+			case IINC:
+				return new IincInsn(instruction.getIntOperand(0), instruction.getIntOperand(1), false);
+			case LABEL:
+				return new Insn(code, ctx.getLabel(instruction.getTarget()), 0);
+			case CONSTANT:
+				if (opcode == JVMOpcode.LDC2_W)
+					break;
+
+				// jasmin always plants ldc as ldc_w
+				return new Insn(opc_ldc_w, constant(instruction.getOperand(0)));
+			case FIELD: {
+				JVMFieldRef fieldRef = instruction.getFieldRef();
+
+				return new Insn(code, new FieldCP(fieldRef.getClassName(), fieldRef.getFieldName(), fieldRef.getDescriptor()));
+			}
+			case METHOD: {
+				JVMMethodRef methodRef = instruction.getMethodRef();
+
+				if (opcode == JVMOpcode.INVOKEINTERFACE) {
+					return new InvokeinterfaceInsn(
+							new InterfaceCP(methodRef.getClassName(), methodRef.getMethodName(), methodRef.getDescriptor()),
+							1 + methodRef.getArgumentSlots()
+						);
+				}
+
+				return new Insn(code, new MethodCP(methodRef.getClassName(), methodRef.getMethodName(), methodRef.getDescriptor()));
+			}
+			case CLASS:
+				return new Insn(code, new ClassCP((String) instruction.getOperand(0)));
+			case MULTI_ARRAY:
+				return new MultiarrayInsn(new ClassCP((String) instruction.getOperand(0)), instruction.getIntOperand(1));
+			default:
+				break;
+		}
+
+		throw new jasError("Unsupported instruction " + opcode);
+	}
+
+	private static Insn assembleLookupSwitch(LookupSwitchInstruction lookupSwitch, MethodContext ctx) {
+		Map<Integer, JVMLabel> switches = lookupSwitch.getSwitches();
+
+		int[] matches = new int[switches.size()];
+		LabelOrOffset[] targets = new LabelOrOffset[switches.size()];
+
+		int i = 0;
+		for (Map.Entry<Integer, JVMLabel> entry: switches.entrySet()) {
+			matches[i] = entry.getKey();
+			targets[i] = new LabelOrOffset(ctx.getLabel(entry.getValue()));
+			++i;
+		}
+
+		return new LookupswitchInsn(
+				new LabelOrOffset(ctx.getLabel(lookupSwitch.getDefaultLabel())),
+				matches,
+				targets
+			);
+	}
+
+	private static CP constant(Object value) {
+		if (value instanceof String string)
+			return new StringCP(string);
+
+		if (value instanceof Integer integer)
+			return new IntegerCP(integer);
+
+		return new FloatCP((Float) value);
+	}
+
+	private static short checkLimit(int limit) throws jasError {
+		if (limit < 0 || limit > 65535)
+			throw new jasError("Illegal limit value " + limit);
+
+		return (short) limit;
+	}
+
+	private static class MethodContext {
+		private final Map<JVMLabel, Label> labels = new HashMap<>();
+		private LineTableAttr lineTable;
+		private int lineLabelCount;
+		private StackMap stackMap;
+		private int frameLabelCount;
+
+		private Label getLabel(JVMLabel label) {
+			return labels.computeIfAbsent(label, l -> new Label(l.getName()));
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import java.util.Map;
+
+// Defines assembled classes straight from their bytes, so a program can run
+// in the compiler's JVM without a jar; only the platform classes are visible to it
+public class JVMClassLoader extends ClassLoader {
+	private final Map<String, byte[]> classFiles;
+
+	// keys are internal class names, as in JVMBytecodeClass.getClassName()
+	public JVMClassLoader(Map<String, byte[]> classFiles) {
+		super(ClassLoader.getPlatformClassLoader());
+
+		this.classFiles = classFiles;
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		byte[] data = classFiles.get(name.replace('.', '/'));
+
+		if (data == null)
+			throw new ClassNotFoundException(name);
+
+		return defineClass(name, data, 0, data.length);
+	}
+}
@@ -0,0 +1,37 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+// The operand of getstatic, putstatic, getfield and putfield
+public class JVMFieldRef {
+	private final String className;
+	private final String fieldName;
+	private final String descriptor;
+
+	public JVMFieldRef(String className, String fieldName, String descriptor) {
+		this.className = className;
+		this.fieldName = fieldName;
+		this.descriptor = descriptor;
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	public String getFieldName() {
+		return fieldName;
+	}
+
+	public String getDescriptor() {
+		return descriptor;
+	}
+
+	// stack slots the value takes
+	public int getSlots() {
+		return JVMMethodRef.slots(descriptor);
+	}
+
+	// as Jasmin writes it: class/field descriptor
+	@Override
+	public String toString() {
+		return className + "/" + fieldName + " " + descriptor;
+	}
+}
@@ -0,0 +1,33 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The code of one method while it is emitted. The emitters only append to it, so every
+// instruction is stored once however deeply nested the node that emitted it is, and the
+// list is handed over to the method as it is.
+public class JVMInstructionBuffer {
+	private final List<JVMBytecodeEntity> instructions = new ArrayList<>();
+
+	public void add(JVMBytecodeEntity instruction) {
+		instructions.add(instruction);
+	}
+
+	public void add(JVMBytecodeEntity... instructions) {
+		for (JVMBytecodeEntity instruction: instructions)
+			this.instructions.add(instruction);
+	}
+
+	public void addAll(List<? extends JVMBytecodeEntity> instructions) {
+		this.instructions.addAll(instructions);
+	}
+
+	public int size() {
+		return instructions.size();
+	}
+
+	// the code emitted so far, for the method it belongs to
+	public List<JVMBytecodeEntity> getInstructions() {
+		return instructions;
+	}
+}
@@ -0,0 +1,240 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+// Writes the assembled classes as a jar, or as a directory of class files. The zip records are
+// written here rather than through JarOutputStream, so that entries can be deflated in parallel
+// into byte arrays and appended in order. Entry times are fixed, so the same classes always
+// give the same bytes, and a jar that would not change is not rewritten.
+public class JVMJarWriter {
+	public enum Compression {
+		// no compression, the fastest to write
+		STORED,
+		DEFLATED,
+		// the entries are deflated on the common ForkJoinPool
+		PARALLEL_DEFLATED
+	}
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+	// MS-DOS date and time of 1980-01-01 00:00
+	private static final int ENTRY_DOS_DATE = (1 << 5) | 1;
+	private static final int ENTRY_DOS_TIME = 0;
+
+	// names are UTF-8
+	private static final int ENTRY_FLAGS = 1 << 11;
+
+	private static class Entry {
+		private final byte[] name;
+		private final byte[] data;
+		private final int method;
+
+		private long crc;
+		// the data itself for STORED entries
+		private byte[] compressedData;
+		private long offset;
+
+		public Entry(String name, byte[] data, int method) {
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+			this.data = data;
+			this.method = method;
+		}
+
+		private void prepare() {
+			CRC32 crc32 = new CRC32();
+			crc32.update(data);
+
+			crc = crc32.getValue();
+			compressedData = method == ZipEntry.STORED ? data : deflate(data);
+		}
+
+		private int versionNeeded() {
+			return method == ZipEntry.STORED ? 10 : 20;
+		}
+	}
+
+	private Compression compression = Compression.DEFLATED;
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+		byte[] buffer = new byte[8192];
+
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+
+			while (!deflater.finished())
+				out.write(buffer, 0, deflater.deflate(buffer));
+		} finally {
+			deflater.end();
+		}
+
+		return out.toByteArray();
+	}
+
+	// Writes the manifest and the classes, keyed by internal name, in map order. Returns false when
+	// the file already has exactly these bytes; it is then left untouched.
+	public boolean write(File outputFile, byte[] manifest, Map<String, byte[]> classFiles) throws IOException {
+		int method = compression == Compression.STORED ? ZipEntry.STORED : ZipEntry.DEFLATED;
+		List<Entry> entries = new ArrayList<>(classFiles.size() + 1);
+
+		entries.add(new Entry(JarFile.MANIFEST_NAME, manifest, method));
+		classFiles.forEach((className, data) -> entries.add(new Entry(className + ".class", data, method)));
+
+		if (compression == Compression.PARALLEL_DEFLATED)
+			entries.parallelStream().forEach(Entry::prepare);
+		else
+			entries.forEach(Entry::prepare);
+
+		if (entries.size() > 0xffff)
+			throw new IOException("too many jar entries: " + entries.size());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(
+				entries.stream().mapToInt(entry -> entry.compressedData.length + 2 * entry.name.length + 76).sum() + 22
+			);
+		ZipRecordWriter writer = new ZipRecordWriter(out);
+
+		for (Entry entry: entries) {
+			entry.offset = writer.getOffset();
+
+			writer.writeInt(LOCAL_HEADER_SIGNATURE);
+			writer.writeShort(entry.versionNeeded());
+			writeEntryFields(writer, entry);
+			writer.writeShort(0); // extra field length
+			writer.write(entry.name);
+			writer.write(entry.compressedData);
+		}
+
+		long centralDirectoryOffset = writer.getOffset();
+
+		for (Entry entry: entries) {
+			writer.writeInt(CENTRAL_HEADER_SIGNATURE);
+			writer.writeShort(20); // version made by
+			writer.writeShort(entry.versionNeeded());
+			writeEntryFields(writer, entry);
+			writer.writeShort(0); // extra field length
+			writer.writeShort(0); // comment length
+			writer.writeShort(0); // disk number
+			writer.writeShort(0); // internal attributes
+			writer.writeInt(0);   // external attributes
+			writer.writeInt(checkedInt(entry.offset));
+			writer.write(entry.name);
+		}
+
+		long centralDirectorySize = writer.getOffset() - centralDirectoryOffset;
+
+		writer.writeInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+		writer.writeShort(0); // this disk
+		writer.writeShort(0); // central directory disk
+		writer.writeShort(entries.size());
+		writer.writeShort(entries.size());
+		writer.writeInt(checkedInt(centralDirectorySize));
+		writer.writeInt(checkedInt(centralDirectoryOffset));
+		writer.writeShort(0); // comment length
+
+		return writeIfChanged(outputFile.toPath(), out.toByteArray());
+	}
+
+	// the fields the local and the central header share, from the flags to the name length
+	private static void writeEntryFields(ZipRecordWriter writer, Entry entry) throws IOException {
+		writer.writeShort(ENTRY_FLAGS);
+		writer.writeShort(entry.method);
+		writer.writeShort(ENTRY_DOS_TIME);
+		writer.writeShort(ENTRY_DOS_DATE);
+		writer.writeInt((int) entry.crc);
+		writer.writeInt(checkedInt(entry.compressedData.length));
+		writer.writeInt(checkedInt(entry.data.length));
+		writer.writeShort(entry.name.length);
+	}
+
+	// without zip64 every size and offset has to fit in 32 bits
+	private static int checkedInt(long value) throws IOException {
+		if (value >= 0xffffffffL)
+			throw new IOException("jar too large");
+
+		return (int) value;
+	}
+
+	private static boolean writeIfChanged(Path path, byte[] data) throws IOException {
+		if (Files.isRegularFile(path) && Files.size(path) == data.length && Arrays.equals(Files.readAllBytes(path), data))
+			return false;
+
+		Files.write(path, data);
+
+		return true;
+	}
+
+	// Writes each class to directory/<internal name>.class, skipping the files whose bytes are
+	// already there; returns how many files were written
+	public static int writeClassDirectory(File directory, Map<String, byte[]> classFiles) throws IOException {
+		int written = 0;
+
+		for (Map.Entry<String, byte[]> classFile: classFiles.entrySet()) {
+			Path path = directory.toPath().resolve(classFile.getKey() + ".class");
+
+			Files.createDirectories(path.getParent());
+
+			if (writeIfChanged(path, classFile.getValue()))
+				++written;
+		}
+
+		return written;
+	}
+
+	// little-endian fields, as the zip format has them
+	private static class ZipRecordWriter {
+		private final OutputStream out;
+		private long offset;
+
+		public ZipRecordWriter(OutputStream out) {
+			this.out = out;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public void writeShort(int value) throws IOException {
+			out.write(value);
+			out.write(value >>> 8);
+
+			offset += 2;
+		}
+
+		public void writeInt(int value) throws IOException {
+			writeShort(value & 0xffff);
+			writeShort(value >>> 16);
+		}
+
+		public void write(byte[] bytes) throws IOException {
+			out.write(bytes);
+
+			offset += bytes.length;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+// A position in the code of a method. Labels are told apart by identity; the name is only
+// what the Jasmin dump prints, so two labels of one method must not share it.
+public class JVMLabel {
+	private final String name;
+
+	public JVMLabel(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,164 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Computes the .limit stack and .limit locals of a method. The stack height is propagated
+// along the control flow with a worklist over the branch targets, as the verifier does. An
+// instruction has the same height however it is reached, so each one is visited once and
+// the pass is linear in the length of the method.
+//
+// Only the code some path reaches counts, which is the code JVMStackMapFrames keeps.
+public final class JVMMethodLimits {
+	private static final int UNREACHED = -1;
+
+	private JVMMethodLimits() {}
+
+	public static JVMBytecodeMethod computeLimits(JVMBytecodeMethod method) {
+		List<JVMBytecodeEntity> entities = method.getInstructions();
+
+		List<JVMBytecodeInstruction> code = new ArrayList<>(entities.size());
+		Map<JVMLabel, Integer> labels = new HashMap<>();
+
+		for (JVMBytecodeEntity entity: entities) {
+			if (entity instanceof JVMBytecodeInstruction instruction) {
+				JVMLabel label = instruction.getLabel();
+
+				if (label != null)
+					labels.put(label, code.size());
+
+				if (instruction.getOpcode() != null)
+					code.add(instruction);
+			}
+		}
+
+		Analysis analysis = new Analysis(method.getMethodName(), code.size());
+
+		int maxStack = 0;
+		int maxLocals = argumentSlots(method);
+
+		if (!code.isEmpty())
+			analysis.reach(0, 0);
+
+		while (analysis.hasWork()) {
+			int index = analysis.next();
+
+			// straight-line code is followed here, without a round trip through the worklist
+			while (true) {
+				JVMBytecodeInstruction instruction = code.get(index);
+				JVMOpcode opcode = instruction.getOpcode();
+
+				if (opcode == JVMOpcode.JSR || opcode == JVMOpcode.JSR_W || opcode == JVMOpcode.RET)
+					throw new IllegalArgumentException("no limits support for instruction " + opcode);
+
+				int height = analysis.heights[index] - instruction.getPoppedSlots();
+
+				if (height < 0)
+					throw new IllegalStateException("operand stack underflow at " + opcode + " in " + method.getMethodName());
+
+				height += instruction.getPushedSlots();
+				maxStack = Math.max(maxStack, height);
+
+				if (opcode.isLoad() || opcode.isStore() || opcode == JVMOpcode.IINC)
+					maxLocals = Math.max(maxLocals, instruction.getLocalIndex() + localSlots(opcode));
+
+				for (JVMLabel targetLabel: instruction.getBranchTargets()) {
+					Integer target = labels.get(targetLabel);
+
+					if (target == null)
+						throw new IllegalStateException("undefined label " + targetLabel + " in " + method.getMethodName());
+
+					if (target == code.size())
+						throw new IllegalStateException("execution falls off the end of " + method.getMethodName());
+
+					analysis.reach(target, height);
+				}
+
+				if (opcode.endsBlock())
+					break;
+
+				if (++index == code.size())
+					throw new IllegalStateException("execution falls off the end of " + method.getMethodName());
+
+				if (!analysis.follow(index, height))
+					break;
+			}
+		}
+
+		method.setLocalVariablesLimit(maxLocals);
+		method.setStackLimit(maxStack);
+
+		return method;
+	}
+
+	// the stack heights found so far and the branch targets still to be followed
+	private static class Analysis {
+		private final String methodName;
+		private final int[] heights;
+		private final int[] worklist;
+		private int worklistSize;
+
+		public Analysis(String methodName, int codeSize) {
+			this.methodName = methodName;
+			this.heights = new int[codeSize];
+			this.worklist = new int[codeSize];
+
+			Arrays.fill(heights, UNREACHED);
+		}
+
+		public boolean hasWork() {
+			return worklistSize > 0;
+		}
+
+		public int next() {
+			return worklist[--worklistSize];
+		}
+
+		// queues index if it is reached for the first time
+		public void reach(int index, int height) {
+			if (follow(index, height))
+				worklist[worklistSize++] = index;
+		}
+
+		// whether index is reached for the first time
+		public boolean follow(int index, int height) {
+			if (heights[index] == UNREACHED) {
+				heights[index] = height;
+
+				return true;
+			}
+
+			if (heights[index] != height)
+				throw new IllegalStateException("stack heights differ at a branch target in " + methodName);
+
+			return false;
+		}
+	}
+
+	private static int argumentSlots(JVMBytecodeMethod method) {
+		int slots = Arrays.asList(method.getAccessSpecs()).contains(JVMBytecodeMethod.AccessSpec.STATIC) ? 0 : 1;
+
+		for (String argDescriptor: method.getArgsDescriptors())
+			slots += JVMMethodRef.slots(argDescriptor);
+
+		return slots;
+	}
+
+	// locals taken by the value a load or a store works on
+	private static int localSlots(JVMOpcode opcode) {
+		JVMOpcode longForm = opcode.hasImplicitLocal() ? opcode.getLongForm() : opcode;
+
+		switch (longForm) {
+			case LLOAD:
+			case DLOAD:
+			case LSTORE:
+			case DSTORE:
+				return 2;
+			default:
+				return 1;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The operand of the invoke instructions. The descriptor is split into the argument and
+// the return descriptors once, when the reference is made.
+public class JVMMethodRef {
+	private final String className;
+	private final String methodName;
+	private final String descriptor;
+
+	private final List<String> argumentDescriptors;
+	private final String returnDescriptor;
+	private final int argumentSlots;
+
+	public JVMMethodRef(String className, String methodName, String descriptor) {
+		this.className = className;
+		this.methodName = methodName;
+		this.descriptor = descriptor;
+
+		int returnPos = descriptor.indexOf(')');
+
+		if (!descriptor.startsWith("(") || returnPos < 0)
+			throw new IllegalArgumentException("bad method descriptor " + descriptor);
+
+		List<String> arguments = new ArrayList<>();
+		int slots = 0;
+
+		for (int start = 1; start < returnPos; ) {
+			int end = start;
+
+			while (descriptor.charAt(end) == '[')
+				++end;
+
+			end = descriptor.charAt(end) == 'L' ? descriptor.indexOf(';', end) + 1 : end + 1;
+
+			String argument = descriptor.substring(start, end);
+
+			arguments.add(argument);
+			slots += slots(argument);
+			start = end;
+		}
+
+		this.argumentDescriptors = Collections.unmodifiableList(arguments);
+		this.returnDescriptor = descriptor.substring(returnPos + 1);
+		this.argumentSlots = slots;
+	}
+
+	// a reference as Jasmin writes it, class/method(arguments)return
+	public static JVMMethodRef parse(String methodRef) {
+		int sigPos = methodRef.indexOf('(');
+		int sep = methodRef.lastIndexOf('/', sigPos);
+
+		return new JVMMethodRef(methodRef.substring(0, sep), methodRef.substring(sep + 1, sigPos), methodRef.substring(sigPos));
+	}
+
+	// stack slots a value of the type takes
+	static int slots(String descriptor) {
+		switch (descriptor.charAt(0)) {
+			case 'V':
+				return 0;
+			case 'J':
+			case 'D':
+				return 2;
+			default:
+				return 1;
+		}
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	public String getMethodName() {
+		return methodName;
+	}
+
+	public String getDescriptor() {
+		return descriptor;
+	}
+
+	public boolean isConstructor() {
+		return methodName.equals("<init>");
+	}
+
+	public List<String> getArgumentDescriptors() {
+		return argumentDescriptors;
+	}
+
+	public String getReturnDescriptor() {
+		return returnDescriptor;
+	}
+
+	// stack slots the arguments take, without the receiver
+	public int getArgumentSlots() {
+		return argumentSlots;
+	}
+
+	public int getReturnSlots() {
+		return slots(returnDescriptor);
+	}
+
+	@Override
+	public String toString() {
+		return className + "/" + methodName + descriptor;
+	}
+}
@@ -0,0 +1,378 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// The JVM instruction set, without wide, invokedynamic and the reserved opcodes. Every opcode
+// knows its encoding, the kind of operands it takes and what it does to the operand stack,
+// counted in slots as max_stack counts them; a long or a double takes two.
+//
+// The stack effect of field and method instructions and of multianewarray depends on their
+// operands, see JVMBytecodeInstruction.getPoppedSlots() and getPushedSlots().
+public enum JVMOpcode {
+	NOP(0x00, 0, 0),
+	ACONST_NULL(0x01, 0, 1),
+	ICONST_M1(0x02, 0, 1),
+	ICONST_0(0x03, 0, 1),
+	ICONST_1(0x04, 0, 1),
+	ICONST_2(0x05, 0, 1),
+	ICONST_3(0x06, 0, 1),
+	ICONST_4(0x07, 0, 1),
+	ICONST_5(0x08, 0, 1),
+	LCONST_0(0x09, 0, 2),
+	LCONST_1(0x0a, 0, 2),
+	FCONST_0(0x0b, 0, 1),
+	FCONST_1(0x0c, 0, 1),
+	FCONST_2(0x0d, 0, 1),
+	DCONST_0(0x0e, 0, 2),
+	DCONST_1(0x0f, 0, 2),
+	BIPUSH(0x10, OperandKind.BYTE, 0, 1),
+	SIPUSH(0x11, OperandKind.SHORT, 0, 1),
+	LDC(0x12, OperandKind.CONSTANT, 0, 1),
+	LDC_W(0x13, OperandKind.CONSTANT, 0, 1),
+	LDC2_W(0x14, OperandKind.CONSTANT, 0, 2),
+
+	ILOAD(0x15, OperandKind.LOCAL, 0, 1),
+	LLOAD(0x16, OperandKind.LOCAL, 0, 2),
+	FLOAD(0x17, OperandKind.LOCAL, 0, 1),
+	DLOAD(0x18, OperandKind.LOCAL, 0, 2),
+	ALOAD(0x19, OperandKind.LOCAL, 0, 1),
+	ILOAD_0(0x1a, ILOAD, 0),
+	ILOAD_1(0x1b, ILOAD, 1),
+	ILOAD_2(0x1c, ILOAD, 2),
+	ILOAD_3(0x1d, ILOAD, 3),
+	LLOAD_0(0x1e, LLOAD, 0),
+	LLOAD_1(0x1f, LLOAD, 1),
+	LLOAD_2(0x20, LLOAD, 2),
+	LLOAD_3(0x21, LLOAD, 3),
+	FLOAD_0(0x22, FLOAD, 0),
+	FLOAD_1(0x23, FLOAD, 1),
+	FLOAD_2(0x24, FLOAD, 2),
+	FLOAD_3(0x25, FLOAD, 3),
+	DLOAD_0(0x26, DLOAD, 0),
+	DLOAD_1(0x27, DLOAD, 1),
+	DLOAD_2(0x28, DLOAD, 2),
+	DLOAD_3(0x29, DLOAD, 3),
+	ALOAD_0(0x2a, ALOAD, 0),
+	ALOAD_1(0x2b, ALOAD, 1),
+	ALOAD_2(0x2c, ALOAD, 2),
+	ALOAD_3(0x2d, ALOAD, 3),
+	IALOAD(0x2e, 2, 1),
+	LALOAD(0x2f, 2, 2),
+	FALOAD(0x30, 2, 1),
+	DALOAD(0x31, 2, 2),
+	AALOAD(0x32, 2, 1),
+	BALOAD(0x33, 2, 1),
+	CALOAD(0x34, 2, 1),
+	SALOAD(0x35, 2, 1),
+
+	ISTORE(0x36, OperandKind.LOCAL, 1, 0),
+	LSTORE(0x37, OperandKind.LOCAL, 2, 0),
+	FSTORE(0x38, OperandKind.LOCAL, 1, 0),
+	DSTORE(0x39, OperandKind.LOCAL, 2, 0),
+	ASTORE(0x3a, OperandKind.LOCAL, 1, 0),
+	ISTORE_0(0x3b, ISTORE, 0),
+	ISTORE_1(0x3c, ISTORE, 1),
+	ISTORE_2(0x3d, ISTORE, 2),
+	ISTORE_3(0x3e, ISTORE, 3),
+	LSTORE_0(0x3f, LSTORE, 0),
+	LSTORE_1(0x40, LSTORE, 1),
+	LSTORE_2(0x41, LSTORE, 2),
+	LSTORE_3(0x42, LSTORE, 3),
+	FSTORE_0(0x43, FSTORE, 0),
+	FSTORE_1(0x44, FSTORE, 1),
+	FSTORE_2(0x45, FSTORE, 2),
+	FSTORE_3(0x46, FSTORE, 3),
+	DSTORE_0(0x47, DSTORE, 0),
+	DSTORE_1(0x48, DSTORE, 1),
+	DSTORE_2(0x49, DSTORE, 2),
+	DSTORE_3(0x4a, DSTORE, 3),
+	ASTORE_0(0x4b, ASTORE, 0),
+	ASTORE_1(0x4c, ASTORE, 1),
+	ASTORE_2(0x4d, ASTORE, 2),
+	ASTORE_3(0x4e, ASTORE, 3),
+	IASTORE(0x4f, 3, 0),
+	LASTORE(0x50, 4, 0),
+	FASTORE(0x51, 3, 0),
+	DASTORE(0x52, 4, 0),
+	AASTORE(0x53, 3, 0),
+	BASTORE(0x54, 3, 0),
+	CASTORE(0x55, 3, 0),
+	SASTORE(0x56, 3, 0),
+
+	POP(0x57, 1, 0),
+	POP2(0x58, 2, 0),
+	DUP(0x59, 1, 2),
+	DUP_X1(0x5a, 2, 3),
+	DUP_X2(0x5b, 3, 4),
+	DUP2(0x5c, 2, 4),
+	DUP2_X1(0x5d, 3, 5),
+	DUP2_X2(0x5e, 4, 6),
+	SWAP(0x5f, 2, 2),
+
+	IADD(0x60, 2, 1),
+	LADD(0x61, 4, 2),
+	FADD(0x62, 2, 1),
+	DADD(0x63, 4, 2),
+	ISUB(0x64, 2, 1),
+	LSUB(0x65, 4, 2),
+	FSUB(0x66, 2, 1),
+	DSUB(0x67, 4, 2),
+	IMUL(0x68, 2, 1),
+	LMUL(0x69, 4, 2),
+	FMUL(0x6a, 2, 1),
+	DMUL(0x6b, 4, 2),
+	IDIV(0x6c, 2, 1),
+	LDIV(0x6d, 4, 2),
+	FDIV(0x6e, 2, 1),
+	DDIV(0x6f, 4, 2),
+	IREM(0x70, 2, 1),
+	LREM(0x71, 4, 2),
+	FREM(0x72, 2, 1),
+	DREM(0x73, 4, 2),
+	INEG(0x74, 1, 1),
+	LNEG(0x75, 2, 2),
+	FNEG(0x76, 1, 1),
+	DNEG(0x77, 2, 2),
+	ISHL(0x78, 2, 1),
+	LSHL(0x79, 3, 2),
+	ISHR(0x7a, 2, 1),
+	LSHR(0x7b, 3, 2),
+	IUSHR(0x7c, 2, 1),
+	LUSHR(0x7d, 3, 2),
+	IAND(0x7e, 2, 1),
+	LAND(0x7f, 4, 2),
+	IOR(0x80, 2, 1),
+	LOR(0x81, 4, 2),
+	IXOR(0x82, 2, 1),
+	LXOR(0x83, 4, 2),
+	IINC(0x84, OperandKind.IINC, 0, 0),
+
+	I2L(0x85, 1, 2),
+	I2F(0x86, 1, 1),
+	I2D(0x87, 1, 2),
+	L2I(0x88, 2, 1),
+	L2F(0x89, 2, 1),
+	L2D(0x8a, 2, 2),
+	F2I(0x8b, 1, 1),
+	F2L(0x8c, 1, 2),
+	F2D(0x8d, 1, 2),
+	D2I(0x8e, 2, 1),
+	D2L(0x8f, 2, 2),
+	D2F(0x90, 2, 1),
+	I2B(0x91, 1, 1),
+	I2C(0x92, 1, 1),
+	I2S(0x93, 1, 1),
+
+	LCMP(0x94, 4, 1),
+	FCMPL(0x95, 2, 1),
+	FCMPG(0x96, 2, 1),
+	DCMPL(0x97, 4, 1),
+	DCMPG(0x98, 4, 1),
+	IFEQ(0x99, OperandKind.LABEL, 1, 0),
+	IFNE(0x9a, OperandKind.LABEL, 1, 0),
+	IFLT(0x9b, OperandKind.LABEL, 1, 0),
+	IFGE(0x9c, OperandKind.LABEL, 1, 0),
+	IFGT(0x9d, OperandKind.LABEL, 1, 0),
+	IFLE(0x9e, OperandKind.LABEL, 1, 0),
+	IF_ICMPEQ(0x9f, OperandKind.LABEL, 2, 0),
+	IF_ICMPNE(0xa0, OperandKind.LABEL, 2, 0),
+	IF_ICMPLT(0xa1, OperandKind.LABEL, 2, 0),
+	IF_ICMPGE(0xa2, OperandKind.LABEL, 2, 0),
+	IF_ICMPGT(0xa3, OperandKind.LABEL, 2, 0),
+	IF_ICMPLE(0xa4, OperandKind.LABEL, 2, 0),
+	IF_ACMPEQ(0xa5, OperandKind.LABEL, 2, 0),
+	IF_ACMPNE(0xa6, OperandKind.LABEL, 2, 0),
+
+	GOTO(0xa7, OperandKind.LABEL, 0, 0),
+	JSR(0xa8, OperandKind.LABEL, 0, 1),
+	RET(0xa9, OperandKind.LOCAL, 0, 0),
+	TABLESWITCH(0xaa, OperandKind.SWITCH, 1, 0),
+	LOOKUPSWITCH(0xab, OperandKind.SWITCH, 1, 0),
+	IRETURN(0xac, 1, 0),
+	LRETURN(0xad, 2, 0),
+	FRETURN(0xae, 1, 0),
+	DRETURN(0xaf, 2, 0),
+	ARETURN(0xb0, 1, 0),
+	RETURN(0xb1, 0, 0),
+
+	GETSTATIC(0xb2, OperandKind.FIELD, JVMOpcode.VARIABLE, JVMOpcode.VARIABLE),
+	PUTSTATIC(0xb3, OperandKind.FIELD, JVMOpcode.VARIABLE, JVMOpcode.VARIABLE),
+	GETFIELD(0xb4, OperandKind.FIELD, JVMOpcode.VARIABLE, JVMOpcode.VARIABLE),
+	PUTFIELD(0xb5, OperandKind.FIELD, JVMOpcode.VARIABLE, JVMOpcode.VARIABLE),
+	INVOKEVIRTUAL(0xb6, OperandKind.METHOD, JVMOpcode.VARIABLE, JVMOpcode.VARIABLE),
+	INVOKESPECIAL(0xb7, OperandKind.METHOD, JVMOpcode.VARIABLE, JVMOpcode.VARIABLE),
+	INVOKESTATIC(0xb8, OperandKind.METHOD, JVMOpcode.VARIABLE, JVMOpcode.VARIABLE),
+	INVOKEINTERFACE(0xb9, OperandKind.METHOD, JVMOpcode.VARIABLE, JVMOpcode.VARIABLE),
+
+	NEW(0xbb, OperandKind.CLASS, 0, 1),
+	NEWARRAY(0xbc, OperandKind.ARRAY_TYPE, 1, 1),
+	ANEWARRAY(0xbd, OperandKind.CLASS, 1, 1),
+	ARRAYLENGTH(0xbe, 1, 1),
+	ATHROW(0xbf, 1, 0),
+	CHECKCAST(0xc0, OperandKind.CLASS, 1, 1),
+	INSTANCEOF(0xc1, OperandKind.CLASS, 1, 1),
+	MONITORENTER(0xc2, 1, 0),
+	MONITOREXIT(0xc3, 1, 0),
+	MULTIANEWARRAY(0xc5, OperandKind.MULTI_ARRAY, JVMOpcode.VARIABLE, 1),
+	IFNULL(0xc6, OperandKind.LABEL, 1, 0),
+	IFNONNULL(0xc7, OperandKind.LABEL, 1, 0),
+	GOTO_W(0xc8, OperandKind.LABEL, 0, 0),
+	JSR_W(0xc9, OperandKind.LABEL, 0, 1);
+
+	public enum OperandKind {
+		NONE,
+		// a local variable index, an Integer
+		LOCAL,
+		// an Integer in the range of the operand
+		BYTE,
+		SHORT,
+		// an Integer, a Float or a String
+		CONSTANT,
+		// a JVMLabel
+		LABEL,
+		// a JVMFieldRef
+		FIELD,
+		// a JVMMethodRef
+		METHOD,
+		// an internal class name or an array descriptor
+		CLASS,
+		// a primitive type name, as newarray takes it in Jasmin: "int", "boolean", ...
+		ARRAY_TYPE,
+		// the local variable index and the increment
+		IINC,
+		// the array descriptor and the number of dimensions
+		MULTI_ARRAY,
+		// kept by LookupSwitchInstruction itself
+		SWITCH
+	}
+
+	// pops or pushes that depend on the operands
+	public static final int VARIABLE = -1;
+
+	private static final Map<String, JVMOpcode> BY_MNEMONIC = new HashMap<>();
+	private static final Map<JVMOpcode, JVMOpcode[]> SHORT_FORMS = new EnumMap<>(JVMOpcode.class);
+
+	static {
+		for (JVMOpcode opcode: values()) {
+			BY_MNEMONIC.put(opcode.mnemonic, opcode);
+
+			if (opcode.longForm != null)
+				SHORT_FORMS.computeIfAbsent(opcode.longForm, longForm -> new JVMOpcode[4])[opcode.implicitLocal] = opcode;
+		}
+	}
+
+	private final int code;
+	private final String mnemonic;
+	private final OperandKind operandKind;
+	private final int pops;
+	private final int pushes;
+
+	// for the xload_<n> and xstore_<n> forms
+	private final JVMOpcode longForm;
+	private final int implicitLocal;
+
+	private JVMOpcode(int code, OperandKind operandKind, int pops, int pushes, JVMOpcode longForm, int implicitLocal) {
+		this.code = code;
+		this.mnemonic = name().toLowerCase(Locale.ROOT);
+		this.operandKind = operandKind;
+		this.pops = pops;
+		this.pushes = pushes;
+		this.longForm = longForm;
+		this.implicitLocal = implicitLocal;
+	}
+
+	private JVMOpcode(int code, OperandKind operandKind, int pops, int pushes) {
+		this(code, operandKind, pops, pushes, null, -1);
+	}
+
+	private JVMOpcode(int code, int pops, int pushes) {
+		this(code, OperandKind.NONE, pops, pushes);
+	}
+
+	private JVMOpcode(int code, JVMOpcode longForm, int implicitLocal) {
+		this(code, OperandKind.NONE, longForm.pops, longForm.pushes, longForm, implicitLocal);
+	}
+
+	public static JVMOpcode forMnemonic(String mnemonic) {
+		JVMOpcode opcode = BY_MNEMONIC.get(mnemonic);
+
+		if (opcode == null)
+			throw new IllegalArgumentException("unknown opcode " + mnemonic);
+
+		return opcode;
+	}
+
+	public int getCode() {
+		return code;
+	}
+
+	public String getMnemonic() {
+		return mnemonic;
+	}
+
+	public OperandKind getOperandKind() {
+		return operandKind;
+	}
+
+	// stack slots taken, or VARIABLE
+	public int getPops() {
+		return pops;
+	}
+
+	// stack slots left, or VARIABLE
+	public int getPushes() {
+		return pushes;
+	}
+
+	// iload for iload_2; null for the opcodes without an implicit local
+	public JVMOpcode getLongForm() {
+		return longForm;
+	}
+
+	public boolean hasImplicitLocal() {
+		return longForm != null;
+	}
+
+	public int getImplicitLocal() {
+		return implicitLocal;
+	}
+
+	// iload_2 for iload and 2; null when there is no such form
+	public JVMOpcode getShortForm(int local) {
+		JVMOpcode[] shortForms = SHORT_FORMS.get(this);
+
+		return shortForms != null && local >= 0 && local < shortForms.length ? shortForms[local] : null;
+	}
+
+	public boolean isLoad() {
+		return this == ILOAD || this == LLOAD || this == FLOAD || this == DLOAD || this == ALOAD
+				|| longForm != null && longForm.isLoad();
+	}
+
+	public boolean isStore() {
+		return this == ISTORE || this == LSTORE || this == FSTORE || this == DSTORE || this == ASTORE
+				|| longForm != null && longForm.isStore();
+	}
+
+	// a conditional jump
+	public boolean isConditionalJump() {
+		return operandKind == OperandKind.LABEL && this != GOTO && this != GOTO_W && this != JSR && this != JSR_W;
+	}
+
+	public boolean isReturn() {
+		return this == IRETURN || this == LRETURN || this == FRETURN || this == DRETURN || this == ARETURN || this == RETURN;
+	}
+
+	// whether execution never goes on to the next instruction
+	public boolean endsBlock() {
+		return this == GOTO || this == GOTO_W || this == RET || this == ATHROW || operandKind == OperandKind.SWITCH || isReturn();
+	}
+
+	@Override
+	public String toString() {
+		return mnemonic;
+	}
+}
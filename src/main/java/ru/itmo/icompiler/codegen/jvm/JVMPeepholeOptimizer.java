@@ -0,0 +1,947 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.JVMBytecodeLabel;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.LookupSwitchInstruction;
+
+// Rewrites the instruction list of a method with a table of local rules, until none of them
+// applies. It runs before the stack map frames are computed, since it changes the control flow.
+// After an edit the rules are only tried again where they can see it, so one method takes
+// time linear in its length rather than a pass over it per round of rewrites.
+//
+// The rules look at a few neighbouring instructions; labels stop a match, since other paths
+// join there, while .line directives are left where they are. One optimizer can be shared by
+// routines emitted in parallel, and it counts how many times each rule has fired.
+public class JVMPeepholeOptimizer {
+	// how many instructions before an edit a rule can start and still see it
+	private static final int WINDOW = 3;
+
+	// a bound on the rewrites, in case two rules keep undoing each other
+	private static final int MAX_REWRITES_PER_ENTITY = 16;
+
+	@FunctionalInterface
+	private interface Rewriter {
+		// tries to rewrite the code at node; returns whether it did
+		boolean rewrite(Code code, Node node);
+	}
+
+	private static class Rule {
+		private final String name;
+		private final Rewriter rewriter;
+
+		public Rule(String name, Rewriter rewriter) {
+			this.name = name;
+			this.rewriter = rewriter;
+		}
+	}
+
+	private static final List<Rule> RULES = List.of(
+			new Rule("unreachable-code", JVMPeepholeOptimizer::removeUnreachableCode),
+			new Rule("unused-label", JVMPeepholeOptimizer::removeUnusedLabel),
+			new Rule("jump-to-next", JVMPeepholeOptimizer::removeJumpToNext),
+			new Rule("jump-to-jump", JVMPeepholeOptimizer::threadJump),
+			new Rule("jump-to-return", JVMPeepholeOptimizer::replaceJumpToReturn),
+			new Rule("constant-condition", JVMPeepholeOptimizer::resolveConstantCondition),
+			new Rule("compare-with-zero", JVMPeepholeOptimizer::compareWithZero),
+			new Rule("constant-folding", JVMPeepholeOptimizer::foldConstants),
+			new Rule("merge-additions", JVMPeepholeOptimizer::mergeAdditions),
+			new Rule("identity-arithmetic", JVMPeepholeOptimizer::removeIdentityArithmetic),
+			new Rule("iinc", JVMPeepholeOptimizer::useIinc),
+			new Rule("dead-store", JVMPeepholeOptimizer::removeDeadStore),
+			new Rule("short-form", JVMPeepholeOptimizer::useShortForm),
+			new Rule("redundant-line", JVMPeepholeOptimizer::removeRedundantLine)
+		);
+
+	private static final Set<JVMOpcode> INT_TESTS = EnumSet.of(
+			JVMOpcode.IFEQ, JVMOpcode.IFNE, JVMOpcode.IFLT, JVMOpcode.IFGE, JVMOpcode.IFGT, JVMOpcode.IFLE
+		);
+
+	private static final Map<JVMOpcode, JVMOpcode> ZERO_TESTS = Map.of(
+			JVMOpcode.IF_ICMPEQ, JVMOpcode.IFEQ,
+			JVMOpcode.IF_ICMPNE, JVMOpcode.IFNE,
+			JVMOpcode.IF_ICMPLT, JVMOpcode.IFLT,
+			JVMOpcode.IF_ICMPGE, JVMOpcode.IFGE,
+			JVMOpcode.IF_ICMPGT, JVMOpcode.IFGT,
+			JVMOpcode.IF_ICMPLE, JVMOpcode.IFLE
+		);
+
+	// push one value without side effects
+	private static final Set<JVMOpcode> PURE_PUSHES = EnumSet.of(
+			JVMOpcode.ACONST_NULL,
+			JVMOpcode.ICONST_M1, JVMOpcode.ICONST_0, JVMOpcode.ICONST_1, JVMOpcode.ICONST_2,
+			JVMOpcode.ICONST_3, JVMOpcode.ICONST_4, JVMOpcode.ICONST_5,
+			JVMOpcode.FCONST_0, JVMOpcode.FCONST_1, JVMOpcode.FCONST_2,
+			JVMOpcode.BIPUSH, JVMOpcode.SIPUSH, JVMOpcode.LDC, JVMOpcode.LDC_W,
+			JVMOpcode.ILOAD, JVMOpcode.ILOAD_0, JVMOpcode.ILOAD_1, JVMOpcode.ILOAD_2, JVMOpcode.ILOAD_3,
+			JVMOpcode.FLOAD, JVMOpcode.FLOAD_0, JVMOpcode.FLOAD_1, JVMOpcode.FLOAD_2, JVMOpcode.FLOAD_3,
+			JVMOpcode.ALOAD, JVMOpcode.ALOAD_0, JVMOpcode.ALOAD_1, JVMOpcode.ALOAD_2, JVMOpcode.ALOAD_3
+		);
+
+	private static final JVMOpcode[] INT_CONSTANTS = {
+			JVMOpcode.ICONST_0, JVMOpcode.ICONST_1, JVMOpcode.ICONST_2, JVMOpcode.ICONST_3, JVMOpcode.ICONST_4, JVMOpcode.ICONST_5
+		};
+
+	private static final JVMOpcode[] FLOAT_CONSTANTS = {JVMOpcode.FCONST_0, JVMOpcode.FCONST_1, JVMOpcode.FCONST_2};
+
+	public static final List<String> RULE_NAMES = RULES.stream().map(rule -> rule.name).toList();
+
+	private final boolean[] enabled = new boolean[RULES.size()];
+	private final LongAdder[] hits = new LongAdder[RULES.size()];
+
+	public JVMPeepholeOptimizer() {
+		this(RULE_NAMES);
+	}
+
+	public JVMPeepholeOptimizer(Collection<String> enabledRules) {
+		for (String ruleName: enabledRules) {
+			int rule = RULE_NAMES.indexOf(ruleName);
+
+			if (rule < 0)
+				throw new IllegalArgumentException("Unknown peephole rule " + ruleName);
+
+			enabled[rule] = true;
+		}
+
+		for (int rule = 0; rule < hits.length; ++rule)
+			hits[rule] = new LongAdder();
+	}
+
+	// how many times each rule has fired, in table order
+	public Map<String, Long> getHitCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+
+		for (int rule = 0; rule < RULES.size(); ++rule)
+			counts.put(RULES.get(rule).name, hits[rule].sum());
+
+		return counts;
+	}
+
+	public JVMBytecodeMethod optimize(JVMBytecodeMethod method) {
+		Code code = new Code(method.getInstructions());
+		int rewritesLeft = MAX_REWRITES_PER_ENTITY * code.size();
+
+		for (Node node = code.nextQueued(); node != null && rewritesLeft > 0; node = code.nextQueued()) {
+			for (int rule = 0; rule < RULES.size(); ++rule) {
+				// the edit queues the node again if it is still there
+				if (enabled[rule] && RULES.get(rule).rewriter.rewrite(code, node)) {
+					hits[rule].increment();
+					--rewritesLeft;
+
+					break;
+				}
+			}
+		}
+
+		method.setInstructions(code.toList());
+
+		return method;
+	}
+
+	private static class Node {
+		private JVMBytecodeEntity entity;
+		private Node prev;
+		private Node next;
+
+		private boolean queued;
+		private boolean removed;
+
+		public Node(JVMBytecodeEntity entity) {
+			this.entity = entity;
+		}
+	}
+
+	// The entities of a method as a linked list, with every label on its own. The node of
+	// each label and the jumps to it are kept up to date, so edits take constant time and
+	// never move the labels.
+	//
+	// Every node starts out queued. An edit queues the nodes whose rules can see it: the ones
+	// up to WINDOW instructions before it and, if the code a label leads to has changed, the
+	// jumps to that label.
+	private static class Code {
+		private final Map<JVMLabel, Node> labelNodes = new HashMap<>();
+		private final Map<JVMLabel, Set<Node>> labelUsers = new HashMap<>();
+		private final Set<String> labelNames = new HashSet<>();
+		private final ArrayDeque<Node> queue = new ArrayDeque<>();
+
+		private Node first;
+		private Node last;
+		private int size;
+		private int newLabelCount;
+
+		public Code(List<JVMBytecodeEntity> source) {
+			for (JVMBytecodeEntity entity: source) {
+				if (entity instanceof JVMBytecodeInstruction instruction && hasLabel(instruction)) {
+					labelNames.add(instruction.getLabel().getName());
+
+					if (instruction.getOpcode() != null) {
+						append(new JVMBytecodeLabel(instruction.getLabel()));
+						entity = copy(instruction);
+					}
+				}
+
+				append(entity);
+			}
+		}
+
+		private void append(JVMBytecodeEntity entity) {
+			Node node = new Node(entity);
+
+			if (last == null)
+				first = node;
+			else {
+				last.next = node;
+				node.prev = last;
+			}
+
+			last = node;
+			++size;
+
+			added(node);
+			node.queued = true;
+			queue.addLast(node);
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public List<JVMBytecodeEntity> toList() {
+			List<JVMBytecodeEntity> entities = new ArrayList<>(size);
+
+			for (Node node = first; node != null; node = node.next)
+				entities.add(node.entity);
+
+			return entities;
+		}
+
+		// the next node to try the rules on, or null when the code has settled
+		public Node nextQueued() {
+			while (!queue.isEmpty()) {
+				Node node = queue.pollFirst();
+				node.queued = false;
+
+				if (!node.removed)
+					return node;
+			}
+
+			return null;
+		}
+
+		// opcode of the instruction at node, or null for labels, directives and the end
+		public JVMOpcode opcode(Node node) {
+			return node != null && node.entity instanceof JVMBytecodeInstruction instruction
+					? instruction.getOpcode()
+					: null;
+		}
+
+		public JVMBytecodeInstruction instruction(Node node) {
+			return (JVMBytecodeInstruction) node.entity;
+		}
+
+		public boolean isLabel(Node node) {
+			return node != null
+					&& node.entity instanceof JVMBytecodeInstruction instruction
+					&& instruction.getOpcode() == null;
+		}
+
+		public boolean isDirective(Node node) {
+			return node != null && !(node.entity instanceof JVMBytecodeInstruction);
+		}
+
+		public int uses(JVMLabel label) {
+			Set<Node> users = labelUsers.get(label);
+
+			return users != null ? users.size() : 0;
+		}
+
+		public void set(Node node, JVMBytecodeEntity entity) {
+			removed(node);
+			node.entity = entity;
+			added(node);
+
+			queueWindow(node);
+			queueJumpsTo(node.prev);
+		}
+
+		// the node after the removed one
+		public Node remove(Node node) {
+			removed(node);
+			node.removed = true;
+			--size;
+
+			if (node.prev == null)
+				first = node.next;
+			else
+				node.prev.next = node.next;
+
+			if (node.next == null)
+				last = node.prev;
+			else
+				node.next.prev = node.prev;
+
+			queueWindow(node.prev);
+			queueJumpsTo(node.prev);
+
+			return node.next;
+		}
+
+		public Node insertAfter(Node node, JVMBytecodeEntity entity) {
+			Node inserted = new Node(entity);
+
+			inserted.prev = node;
+			inserted.next = node.next;
+
+			if (node.next == null)
+				last = inserted;
+			else
+				node.next.prev = inserted;
+
+			node.next = inserted;
+			++size;
+
+			added(inserted);
+			queueWindow(inserted);
+
+			return inserted;
+		}
+
+		// the first instruction executed after jumping to label, or null for the end
+		public Node target(JVMLabel label) {
+			Node node = labelNodes.get(label);
+
+			if (node == null)
+				throw new IllegalStateException("undefined label " + label);
+
+			while (node != null && opcode(node) == null)
+				node = node.next;
+
+			return node;
+		}
+
+		// a label right after the instruction at node, added if there is none
+		public JVMLabel labelAfter(Node node) {
+			if (isLabel(node.next))
+				return instruction(node.next).getLabel();
+
+			String name;
+
+			// the names still have to differ in the Jasmin dump
+			do
+				name = "P" + newLabelCount++;
+			while (!labelNames.add(name));
+
+			JVMLabel label = new JVMLabel(name);
+
+			insertAfter(node, new JVMBytecodeLabel(label));
+
+			return label;
+		}
+
+		private void added(Node node) {
+			if (isLabel(node))
+				labelNodes.put(instruction(node).getLabel(), node);
+			else if (node.entity instanceof JVMBytecodeInstruction instruction) {
+				for (JVMLabel label: instruction.getBranchTargets())
+					labelUsers.computeIfAbsent(label, key -> new HashSet<>()).add(node);
+			}
+		}
+
+		private void removed(Node node) {
+			if (isLabel(node))
+				labelNodes.remove(instruction(node).getLabel());
+			else if (node.entity instanceof JVMBytecodeInstruction instruction) {
+				for (JVMLabel label: instruction.getBranchTargets()) {
+					Set<Node> users = labelUsers.get(label);
+
+					if (users.remove(node) && users.isEmpty())
+						queue(labelNodes.get(label));
+				}
+			}
+		}
+
+		private void queue(Node node) {
+			if (node != null && !node.queued && !node.removed) {
+				node.queued = true;
+				queue.addFirst(node);
+			}
+		}
+
+		// node and the nodes before it up to WINDOW more instructions back, first in code order
+		private void queueWindow(Node node) {
+			int instructions = 0;
+
+			for (; node != null && instructions <= WINDOW; node = node.prev) {
+				queue(node);
+
+				if (opcode(node) != null)
+					++instructions;
+			}
+		}
+
+		// the jumps to the labels that lead to the code after node
+		private void queueJumpsTo(Node node) {
+			for (; node != null && opcode(node) == null; node = node.prev) {
+				if (isLabel(node)) {
+					Set<Node> users = labelUsers.get(instruction(node).getLabel());
+
+					if (users != null) {
+						for (Node user: users)
+							queueWindow(user);
+					}
+				}
+			}
+		}
+	}
+
+	private static Node next(Node node) {
+		return node != null ? node.next : null;
+	}
+
+	private static boolean removeUnreachableCode(Code code, Node at) {
+		if (!isUnconditionalJump(code.opcode(at)))
+			return false;
+
+		boolean removed = false;
+
+		// directives stay: a .line before the next label is for the code after it
+		for (Node node = at.next; node != null && !code.isLabel(node); ) {
+			if (code.isDirective(node))
+				node = node.next;
+			else {
+				node = code.remove(node);
+				removed = true;
+			}
+		}
+
+		return removed;
+	}
+
+	private static boolean removeUnusedLabel(Code code, Node at) {
+		if (!code.isLabel(at) || code.uses(code.instruction(at).getLabel()) > 0)
+			return false;
+
+		code.remove(at);
+
+		return true;
+	}
+
+	private static boolean removeJumpToNext(Code code, Node at) {
+		JVMOpcode opcode = code.opcode(at);
+
+		if (opcode == null || code.instruction(at).getBranchTargets().size() != 1 || opcode == JVMOpcode.LOOKUPSWITCH)
+			return false;
+
+		JVMLabel label = code.instruction(at).getTarget();
+
+		for (Node node = at.next; node != null && code.opcode(node) == null; node = node.next) {
+			if (code.isLabel(node) && code.instruction(node).getLabel() == label) {
+				// a conditional jump to the next instruction still has to drop its operands
+				if (opcode.isConditionalJump() && opcode.getPops() == 2)
+					code.set(at, new JVMBytecodeInstruction(JVMOpcode.POP2));
+				else if (opcode.isConditionalJump())
+					code.set(at, new JVMBytecodeInstruction(JVMOpcode.POP));
+				else
+					code.remove(at);
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean threadJump(Code code, Node at) {
+		if (code.opcode(at) == null)
+			return false;
+
+		JVMBytecodeInstruction instruction = code.instruction(at);
+		List<JVMLabel> targets = instruction.getBranchTargets();
+
+		for (JVMLabel label: targets) {
+			JVMLabel finalLabel = finalTarget(code, label);
+
+			if (finalLabel != label) {
+				code.set(at, retarget(instruction, label, finalLabel));
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// where a chain of gotos starting at label ends, or label itself if the chain loops
+	private static JVMLabel finalTarget(Code code, JVMLabel label) {
+		Set<JVMLabel> visited = new HashSet<>();
+		JVMLabel current = label;
+
+		while (visited.add(current)) {
+			Node target = code.target(current);
+
+			if (code.opcode(target) != JVMOpcode.GOTO)
+				return current;
+
+			current = code.instruction(target).getTarget();
+		}
+
+		return label;
+	}
+
+	private static boolean replaceJumpToReturn(Code code, Node at) {
+		if (code.opcode(at) != JVMOpcode.GOTO)
+			return false;
+
+		JVMOpcode targetOpcode = code.opcode(code.target(code.instruction(at).getTarget()));
+
+		if (targetOpcode == null || !targetOpcode.isReturn())
+			return false;
+
+		code.set(at, new JVMBytecodeInstruction(targetOpcode));
+
+		return true;
+	}
+
+	// a constant tested right away, or after a goto, jumps straight to where the test goes
+	private static boolean resolveConstantCondition(Code code, Node at) {
+		Integer value = intConstant(code, at);
+
+		if (value == null)
+			return false;
+
+		Node next = at.next;
+
+		if (code.opcode(next) == JVMOpcode.GOTO) {
+			Node test = code.target(code.instruction(next).getTarget());
+
+			if (!isIntTest(code.opcode(test)))
+				return false;
+
+			boolean taken = isTestTaken(code.opcode(test), value);
+			JVMLabel destination = taken ? code.instruction(test).getTarget() : code.labelAfter(test);
+
+			code.remove(at);
+			code.set(next, new JVMBytecodeInstruction(JVMOpcode.GOTO, destination));
+
+			return true;
+		}
+
+		Node test = next;
+
+		while (code.isLabel(test))
+			test = test.next;
+
+		if (!isIntTest(code.opcode(test)))
+			return false;
+
+		boolean taken = isTestTaken(code.opcode(test), value);
+
+		if (test == next) {
+			if (taken)
+				code.set(test, new JVMBytecodeInstruction(JVMOpcode.GOTO, code.instruction(test).getTarget()));
+			else
+				code.remove(test);
+
+			code.remove(at);
+		} else {
+			// other paths reach the test through the labels
+			JVMLabel destination = taken ? code.instruction(test).getTarget() : code.labelAfter(test);
+
+			code.set(at, new JVMBytecodeInstruction(JVMOpcode.GOTO, destination));
+		}
+
+		return true;
+	}
+
+	// iconst_0; if_icmpXX L is ifXX L
+	private static boolean compareWithZero(Code code, Node at) {
+		Integer value = intConstant(code, at);
+		JVMOpcode opcode = code.opcode(at.next);
+		JVMOpcode test = opcode != null ? ZERO_TESTS.get(opcode) : null;
+
+		if (value == null || value != 0 || test == null)
+			return false;
+
+		code.set(at.next, new JVMBytecodeInstruction(test, code.instruction(at.next).getTarget()));
+		code.remove(at);
+
+		return true;
+	}
+
+	private static boolean foldConstants(Code code, Node at) {
+		Node second = at.next;
+		Node third = next(second);
+
+		Integer left = intConstant(code, at);
+		Integer right = intConstant(code, second);
+
+		if (left == null)
+			return false;
+
+		if (code.opcode(second) == JVMOpcode.INEG) {
+			code.remove(second);
+			code.set(at, pushInt(-left));
+
+			return true;
+		}
+
+		JVMOpcode opcode = code.opcode(third);
+
+		if (right == null || opcode == null)
+			return false;
+
+		int result;
+
+		switch (opcode) {
+			case IADD:
+				result = left + right;
+				break;
+			case ISUB:
+				result = left - right;
+				break;
+			case IMUL:
+				result = left * right;
+				break;
+			case IAND:
+				result = left & right;
+				break;
+			case IOR:
+				result = left | right;
+				break;
+			case IXOR:
+				result = left ^ right;
+				break;
+			default:
+				return false;
+		}
+
+		code.remove(third);
+		code.remove(second);
+		code.set(at, pushInt(result));
+
+		return true;
+	}
+
+	// x + c1 + c2, as in the -1 of an array index computed as i + 1
+	private static boolean mergeAdditions(Code code, Node at) {
+		Node second = at.next;
+		Node third = next(second);
+		Node fourth = next(third);
+
+		Integer first = intConstant(code, at);
+		Integer other = intConstant(code, third);
+
+		if (first == null || other == null || !isAddOrSub(code.opcode(second)) || !isAddOrSub(code.opcode(fourth)))
+			return false;
+
+		int sum = (code.opcode(second) == JVMOpcode.IADD ? first : -first)
+				+ (code.opcode(fourth) == JVMOpcode.IADD ? other : -other);
+
+		code.remove(fourth);
+		code.remove(third);
+
+		if (sum == 0) {
+			code.remove(second);
+			code.remove(at);
+		} else if (sum > 0 || sum == Integer.MIN_VALUE) {
+			code.set(at, pushInt(sum));
+			code.set(second, new JVMBytecodeInstruction(JVMOpcode.IADD));
+		} else {
+			code.set(at, pushInt(-sum));
+			code.set(second, new JVMBytecodeInstruction(JVMOpcode.ISUB));
+		}
+
+		return true;
+	}
+
+	private static boolean removeIdentityArithmetic(Code code, Node at) {
+		Integer value = intConstant(code, at);
+		JVMOpcode opcode = code.opcode(at.next);
+
+		if (value == null || opcode == null)
+			return false;
+
+		boolean isIdentity = value == 0 && (opcode == JVMOpcode.IADD || opcode == JVMOpcode.ISUB || opcode == JVMOpcode.IOR || opcode == JVMOpcode.IXOR)
+				|| value == 1 && (opcode == JVMOpcode.IMUL || opcode == JVMOpcode.IDIV);
+
+		if (!isIdentity)
+			return false;
+
+		code.remove(at.next);
+		code.remove(at);
+
+		return true;
+	}
+
+	// iload n; c; iadd; istore n (or c; iload n; iadd; istore n) is iinc n c
+	private static boolean useIinc(Code code, Node at) {
+		Node second = at.next;
+		Node third = next(second);
+		Node fourth = next(third);
+
+		JVMOpcode arithmetic = code.opcode(third);
+		JVMOpcode store = code.opcode(fourth);
+
+		if (!isAddOrSub(arithmetic) || store == null || longForm(store) != JVMOpcode.ISTORE)
+			return false;
+
+		int local = code.instruction(fourth).getLocalIndex();
+		Integer value;
+
+		if (isLoadOf(code, at, JVMOpcode.ILOAD, local))
+			value = intConstant(code, second);
+		else if (arithmetic == JVMOpcode.IADD && isLoadOf(code, second, JVMOpcode.ILOAD, local))
+			value = intConstant(code, at);
+		else
+			return false;
+
+		if (value == null)
+			return false;
+
+		int increment = arithmetic == JVMOpcode.IADD ? value : -value;
+
+		if (increment < Byte.MIN_VALUE || increment > Byte.MAX_VALUE || value == Integer.MIN_VALUE)
+			return false;
+
+		code.remove(fourth);
+		code.remove(third);
+		code.remove(second);
+		code.set(at, new JVMBytecodeInstruction(JVMOpcode.IINC, local, increment));
+
+		return true;
+	}
+
+	// a value stored and overwritten before anything can read it, as in var x is 0; x := 2
+	private static boolean removeDeadStore(Code code, Node at) {
+		Node storeNode = at.next;
+		JVMOpcode store = code.opcode(storeNode);
+
+		if (!isPurePush(code.opcode(at)) || store == null || !store.isStore())
+			return false;
+
+		int local = code.instruction(storeNode).getLocalIndex();
+		Node next = storeNode.next;
+
+		while (code.isDirective(next))
+			next = next.next;
+
+		Node nextStoreNode = next(next);
+		JVMOpcode nextPush = code.opcode(next);
+		JVMOpcode nextStore = code.opcode(nextStoreNode);
+
+		if (!isPurePush(nextPush) || nextStore == null || !nextStore.isStore() || code.instruction(nextStoreNode).getLocalIndex() != local)
+			return false;
+
+		if (nextPush.isLoad() && code.instruction(next).getLocalIndex() == local)
+			return false;
+
+		code.remove(storeNode);
+		code.remove(at);
+
+		return true;
+	}
+
+	private static boolean useShortForm(Code code, Node at) {
+		JVMOpcode opcode = code.opcode(at);
+
+		if (opcode == null)
+			return false;
+
+		JVMBytecodeInstruction instruction = code.instruction(at);
+
+		switch (opcode) {
+			case ILOAD:
+			case FLOAD:
+			case ALOAD:
+			case ISTORE:
+			case FSTORE:
+			case ASTORE: {
+				int local = instruction.getLocalIndex();
+
+				if (local > 3)
+					return false;
+
+				code.set(at, new JVMBytecodeInstruction(opcode.getShortForm(local)));
+
+				return true;
+			}
+			case BIPUSH:
+			case SIPUSH:
+			case LDC:
+			case LDC_W: {
+				Integer value = intConstant(code, at);
+
+				if (value != null) {
+					JVMBytecodeInstruction shortest = pushInt(value);
+
+					if (shortest.getOpcode() == opcode)
+						return false;
+
+					code.set(at, shortest);
+
+					return true;
+				}
+
+				if (instruction.getOperand(0) instanceof Float constant) {
+					for (int i = 0; i < FLOAT_CONSTANTS.length; ++i) {
+						if (Float.floatToIntBits(constant) == Float.floatToIntBits(i)) {
+							code.set(at, new JVMBytecodeInstruction(FLOAT_CONSTANTS[i]));
+
+							return true;
+						}
+					}
+				}
+
+				return false;
+			}
+			default:
+				return false;
+		}
+	}
+
+	// a .line followed by another one covers no instruction
+	private static boolean removeRedundantLine(Code code, Node at) {
+		if (!isLineDirective(code, at) || !isLineDirective(code, at.next))
+			return false;
+
+		code.remove(at);
+
+		return true;
+	}
+
+	private static boolean isLineDirective(Code code, Node node) {
+		return code.isDirective(node)
+				&& node.entity instanceof JVMBytecodeDirective directive
+				&& directive.getDirectiveName().equals("line");
+	}
+
+	private static boolean hasLabel(JVMBytecodeInstruction instruction) {
+		return instruction.getLabel() != null;
+	}
+
+	private static JVMBytecodeInstruction copy(JVMBytecodeInstruction instruction) {
+		if (instruction instanceof LookupSwitchInstruction lookupSwitch)
+			return new LookupSwitchInstruction(lookupSwitch.getSwitches(), lookupSwitch.getDefaultLabel());
+
+		Object[] operands = new Object[instruction.getOperandsCount()];
+
+		for (int i = 0; i < operands.length; ++i)
+			operands[i] = instruction.getOperand(i);
+
+		return new JVMBytecodeInstruction(instruction.getOpcode(), operands);
+	}
+
+	private static JVMBytecodeInstruction retarget(JVMBytecodeInstruction instruction, JVMLabel from, JVMLabel to) {
+		if (instruction instanceof LookupSwitchInstruction lookupSwitch) {
+			Map<Integer, JVMLabel> switches = new LinkedHashMap<>(lookupSwitch.getSwitches());
+			switches.replaceAll((value, label) -> label == from ? to : label);
+
+			return new LookupSwitchInstruction(
+					switches,
+					lookupSwitch.getDefaultLabel() == from ? to : lookupSwitch.getDefaultLabel()
+				);
+		}
+
+		return new JVMBytecodeInstruction(instruction.getOpcode(), to);
+	}
+
+	private static boolean isUnconditionalJump(JVMOpcode opcode) {
+		return opcode != null && opcode.endsBlock();
+	}
+
+	// a conditional jump on one int
+	private static boolean isIntTest(JVMOpcode opcode) {
+		return INT_TESTS.contains(opcode);
+	}
+
+	private static boolean isTestTaken(JVMOpcode opcode, int value) {
+		switch (opcode) {
+			case IFEQ:
+				return value == 0;
+			case IFNE:
+				return value != 0;
+			case IFLT:
+				return value < 0;
+			case IFGE:
+				return value >= 0;
+			case IFGT:
+				return value > 0;
+			case IFLE:
+				return value <= 0;
+			default:
+				throw new IllegalArgumentException(opcode.toString());
+		}
+	}
+
+	private static boolean isAddOrSub(JVMOpcode opcode) {
+		return opcode == JVMOpcode.IADD || opcode == JVMOpcode.ISUB;
+	}
+
+	private static boolean isPurePush(JVMOpcode opcode) {
+		return opcode != null && PURE_PUSHES.contains(opcode);
+	}
+
+	// iload for iload_2 as well as for iload
+	private static JVMOpcode longForm(JVMOpcode opcode) {
+		return opcode.hasImplicitLocal() ? opcode.getLongForm() : opcode;
+	}
+
+	private static boolean isLoadOf(Code code, Node node, JVMOpcode load, int local) {
+		JVMOpcode opcode = code.opcode(node);
+
+		return opcode != null && longForm(opcode) == load && code.instruction(node).getLocalIndex() == local;
+	}
+
+	// the int pushed by the instruction at node, or null
+	private static Integer intConstant(Code code, Node node) {
+		JVMOpcode opcode = code.opcode(node);
+
+		if (opcode == null)
+			return null;
+
+		switch (opcode) {
+			case ICONST_M1:
+			case ICONST_0:
+			case ICONST_1:
+			case ICONST_2:
+			case ICONST_3:
+			case ICONST_4:
+			case ICONST_5:
+				return opcode.getCode() - JVMOpcode.ICONST_0.getCode();
+			case BIPUSH:
+			case SIPUSH:
+				return code.instruction(node).getIntOperand(0);
+			case LDC:
+			case LDC_W:
+				return code.instruction(node).getOperand(0) instanceof Integer value ? value : null;
+			default:
+				return null;
+		}
+	}
+
+	private static JVMBytecodeInstruction pushInt(int value) {
+		if (value == -1)
+			return new JVMBytecodeInstruction(JVMOpcode.ICONST_M1);
+
+		if (value >= 0 && value <= 5)
+			return new JVMBytecodeInstruction(INT_CONSTANTS[value]);
+
+		if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+			return new JVMBytecodeInstruction(JVMOpcode.BIPUSH, value);
+
+		if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+			return new JVMBytecodeInstruction(JVMOpcode.SIPUSH, value);
+
+		return new JVMBytecodeInstruction(JVMOpcode.LDC, value);
+	}
+}
@@ -0,0 +1,431 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import static ru.itmo.icompiler.codegen.jvm.utils.JVMBytecodeUtils.classSpecs;
+import static ru.itmo.icompiler.codegen.jvm.utils.JVMBytecodeUtils.fieldSpecs;
+import static ru.itmo.icompiler.codegen.jvm.utils.JVMBytecodeUtils.methodSpecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.JVMBytecodeLabel;
+
+// The output runtime shipped with every program as ilang/Output. Print statements format
+// their values into one static byte buffer, which is written to stdout through a FileChannel
+// when it fills up and, from a shutdown hook that main installs, when the program exits.
+// main also makes ilang/OutputGroup the handler of its thread's uncaught exceptions, which
+// flushes the buffer before the exception is reported on stderr, so what the program printed
+// comes before the stack trace as it did with unbuffered output.
+// A print statement is a single call of a print method generated for its argument types,
+// e.g. print(IFZ)V for "print i, r, b".
+//
+// Routines run without main (from a test or another JVM program) have to call flush()
+// themselves; the channel is public, so such a caller may also point it elsewhere.
+public final class JVMPrintRuntime {
+	public static final String CLASS_NAME = "ilang/Output";
+
+	public static final String GROUP_CLASS_NAME = "ilang/OutputGroup";
+
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	private static final String SUPER_CLASS_NAME = "java/lang/Thread";
+	private static final String GROUP_SUPER_CLASS_NAME = "java/lang/ThreadGroup";
+	private static final String CHANNEL_DESCRIPTOR = "Ljava/nio/channels/WritableByteChannel;";
+
+	// the longest int is "-2147483648"
+	private static final int MAX_INT_LENGTH = 11;
+
+	private static final Map<String, JVMMethodRef> WRITE_METHODS = Map.ofEntries(
+		Map.entry("I", new JVMMethodRef(CLASS_NAME, "writeInt", "(I)V")),
+		Map.entry("F", new JVMMethodRef(CLASS_NAME, "writeReal", "(F)V")),
+		Map.entry("Z", new JVMMethodRef(CLASS_NAME, "writeBoolean", "(Z)V"))
+	);
+
+	private JVMPrintRuntime() {}
+
+	private static JVMBytecodeInstruction insn(JVMOpcode opcode, Object... operands) {
+		return new JVMBytecodeInstruction(opcode, operands);
+	}
+
+	private static JVMFieldRef field(String name, String descriptor) {
+		return new JVMFieldRef(CLASS_NAME, name, descriptor);
+	}
+
+	private static JVMBytecodeMethod method(String name, List<String> argsDescriptors, boolean isStatic, JVMBytecodeEntity... instructions) {
+		return new JVMBytecodeMethod(
+				isStatic
+					? methodSpecs(JVMBytecodeMethod.AccessSpec.PUBLIC, JVMBytecodeMethod.AccessSpec.STATIC)
+					: methodSpecs(JVMBytecodeMethod.AccessSpec.PUBLIC),
+				name,
+				argsDescriptors,
+				"V",
+				new ArrayList<>(Arrays.asList(instructions))
+			);
+	}
+
+	// the call of the print method of a statement with arguments of these types
+	public static JVMMethodRef getPrintMethodRef(String argsDescriptors) {
+		return new JVMMethodRef(CLASS_NAME, "print", "(" + argsDescriptors + ")V");
+	}
+
+	// the call writing one value of a print statement with no separator around it
+	public static JVMMethodRef getWriteMethodRef(String typeDescriptor) {
+		return WRITE_METHODS.get(typeDescriptor);
+	}
+
+	public static JVMMethodRef getWriteByteMethodRef() {
+		return new JVMMethodRef(CLASS_NAME, "writeByte", "(I)V");
+	}
+
+	public static JVMMethodRef getInstallMethodRef() {
+		return new JVMMethodRef(CLASS_NAME, "install", "()V");
+	}
+
+	// printDescriptors holds the argument types of the print methods, like "IFZ";
+	// finisher is applied to every method (limits, frames and the like)
+	public static JVMBytecodeClass emitClass(Collection<String> printDescriptors, UnaryOperator<JVMBytecodeMethod> finisher) {
+		List<JVMBytecodeMethod> methods = new ArrayList<>(
+			List.of(
+				emitClassInit(),
+				method("<init>", Collections.emptyList(), false,
+					insn(JVMOpcode.ALOAD_0),
+					insn(JVMOpcode.INVOKESPECIAL, JVMMethodRef.parse(SUPER_CLASS_NAME + "/<init>()V")),
+					insn(JVMOpcode.RETURN)
+				),
+				method("run", Collections.emptyList(), false,
+					insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse(CLASS_NAME + "/flush()V")),
+					insn(JVMOpcode.RETURN)
+				),
+				method("install", Collections.emptyList(), true,
+					insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse("java/lang/Runtime/getRuntime()Ljava/lang/Runtime;")),
+					insn(JVMOpcode.NEW, CLASS_NAME),
+					insn(JVMOpcode.DUP),
+					insn(JVMOpcode.INVOKESPECIAL, JVMMethodRef.parse(CLASS_NAME + "/<init>()V")),
+					insn(JVMOpcode.INVOKEVIRTUAL, JVMMethodRef.parse("java/lang/Runtime/addShutdownHook(Ljava/lang/Thread;)V")),
+					insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse("java/lang/Thread/currentThread()Ljava/lang/Thread;")),
+					insn(JVMOpcode.NEW, GROUP_CLASS_NAME),
+					insn(JVMOpcode.DUP),
+					insn(JVMOpcode.INVOKESPECIAL, JVMMethodRef.parse(GROUP_CLASS_NAME + "/<init>()V")),
+					insn(JVMOpcode.INVOKEVIRTUAL, JVMMethodRef.parse("java/lang/Thread/setUncaughtExceptionHandler(Ljava/lang/Thread$UncaughtExceptionHandler;)V")),
+					insn(JVMOpcode.RETURN)
+				),
+				emitFlush(),
+				emitEnsure(),
+				emitWriteByte(),
+				emitWriteChars(),
+				emitWriteInt(),
+				method("writeReal", List.of("F"), true,
+					insn(JVMOpcode.FLOAD_0),
+					insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse("java/lang/Float/toString(F)Ljava/lang/String;")),
+					insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse(CLASS_NAME + "/writeChars(Ljava/lang/String;)V")),
+					insn(JVMOpcode.RETURN)
+				),
+				emitWriteBoolean()
+			)
+		);
+
+		for (String descriptor: printDescriptors)
+			methods.add(emitPrint(descriptor));
+
+		return new JVMBytecodeClass(
+				classSpecs(JVMBytecodeClass.AccessSpec.PUBLIC, JVMBytecodeClass.AccessSpec.FINAL),
+				"Output",
+				CLASS_NAME,
+				SUPER_CLASS_NAME,
+				List.of(
+					new JVMBytecodeField(fieldSpecs(JVMBytecodeField.AccessSpec.PRIVATE, JVMBytecodeField.AccessSpec.STATIC), "buffer", "[B"),
+					new JVMBytecodeField(fieldSpecs(JVMBytecodeField.AccessSpec.PRIVATE, JVMBytecodeField.AccessSpec.STATIC), "position", "I"),
+					new JVMBytecodeField(fieldSpecs(JVMBytecodeField.AccessSpec.PUBLIC, JVMBytecodeField.AccessSpec.STATIC), "channel", CHANNEL_DESCRIPTOR)
+				),
+				methods.stream().map(finisher).toList()
+			);
+	}
+
+	// A thread group is the one uncaught exception handler that needs no interface; it flushes
+	// and passes the exception to its parents, which report it the way the JVM does
+	public static JVMBytecodeClass emitGroupClass(UnaryOperator<JVMBytecodeMethod> finisher) {
+		List<JVMBytecodeMethod> methods = List.of(
+				method("<init>", Collections.emptyList(), false,
+					insn(JVMOpcode.ALOAD_0),
+					insn(JVMOpcode.LDC, "ilang"),
+					insn(JVMOpcode.INVOKESPECIAL, JVMMethodRef.parse(GROUP_SUPER_CLASS_NAME + "/<init>(Ljava/lang/String;)V")),
+					insn(JVMOpcode.RETURN)
+				),
+				method("uncaughtException", List.of("Ljava/lang/Thread;", "Ljava/lang/Throwable;"), false,
+					insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse(CLASS_NAME + "/flush()V")),
+					insn(JVMOpcode.ALOAD_0),
+					insn(JVMOpcode.ALOAD_1),
+					insn(JVMOpcode.ALOAD_2),
+					insn(JVMOpcode.INVOKESPECIAL, JVMMethodRef.parse(GROUP_SUPER_CLASS_NAME + "/uncaughtException(Ljava/lang/Thread;Ljava/lang/Throwable;)V")),
+					insn(JVMOpcode.RETURN)
+				)
+			);
+
+		return new JVMBytecodeClass(
+				classSpecs(JVMBytecodeClass.AccessSpec.PUBLIC, JVMBytecodeClass.AccessSpec.FINAL),
+				"OutputGroup",
+				GROUP_CLASS_NAME,
+				GROUP_SUPER_CLASS_NAME,
+				List.of(),
+				methods.stream().map(finisher).toList()
+			);
+	}
+
+	private static JVMBytecodeMethod emitClassInit() {
+		return method("<clinit>", Collections.emptyList(), true,
+				insn(JVMOpcode.LDC, BUFFER_SIZE),
+				insn(JVMOpcode.NEWARRAY, "byte"),
+				insn(JVMOpcode.PUTSTATIC, field("buffer", "[B")),
+
+				insn(JVMOpcode.NEW, "java/io/FileOutputStream"),
+				insn(JVMOpcode.DUP),
+				insn(JVMOpcode.GETSTATIC, new JVMFieldRef("java/io/FileDescriptor", "out", "Ljava/io/FileDescriptor;")),
+				insn(JVMOpcode.INVOKESPECIAL, JVMMethodRef.parse("java/io/FileOutputStream/<init>(Ljava/io/FileDescriptor;)V")),
+				insn(JVMOpcode.INVOKEVIRTUAL, JVMMethodRef.parse("java/io/FileOutputStream/getChannel()Ljava/nio/channels/FileChannel;")),
+				insn(JVMOpcode.PUTSTATIC, field("channel", CHANNEL_DESCRIPTOR)),
+				insn(JVMOpcode.RETURN)
+			);
+	}
+
+	private static JVMBytecodeMethod emitWriteBoolean() {
+		JVMLabel l0 = new JVMLabel("L0");
+
+		return method("writeBoolean", List.of("Z"), true,
+				insn(JVMOpcode.ILOAD_0),
+				insn(JVMOpcode.IFEQ, l0),
+				insn(JVMOpcode.LDC, "true"),
+				insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse(CLASS_NAME + "/writeChars(Ljava/lang/String;)V")),
+				insn(JVMOpcode.RETURN),
+				new JVMBytecodeLabel(l0),
+				insn(JVMOpcode.LDC, "false"),
+				insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse(CLASS_NAME + "/writeChars(Ljava/lang/String;)V")),
+				insn(JVMOpcode.RETURN)
+			);
+	}
+
+	// writes buffer[0, position) out, a channel may take less than asked at a time
+	private static JVMBytecodeMethod emitFlush() {
+		JVMLabel l0 = new JVMLabel("L0");
+		JVMLabel l1 = new JVMLabel("L1");
+
+		return method("flush", Collections.emptyList(), true,
+				insn(JVMOpcode.GETSTATIC, field("buffer", "[B")),
+				insn(JVMOpcode.ICONST_0),
+				insn(JVMOpcode.GETSTATIC, field("position", "I")),
+				insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse("java/nio/ByteBuffer/wrap([BII)Ljava/nio/ByteBuffer;")),
+				insn(JVMOpcode.ASTORE_0),
+
+				new JVMBytecodeLabel(l0),
+				insn(JVMOpcode.ALOAD_0),
+				insn(JVMOpcode.INVOKEVIRTUAL, JVMMethodRef.parse("java/nio/ByteBuffer/hasRemaining()Z")),
+				insn(JVMOpcode.IFEQ, l1),
+				insn(JVMOpcode.GETSTATIC, field("channel", CHANNEL_DESCRIPTOR)),
+				insn(JVMOpcode.ALOAD_0),
+				insn(JVMOpcode.INVOKEINTERFACE, JVMMethodRef.parse("java/nio/channels/WritableByteChannel/write(Ljava/nio/ByteBuffer;)I")),
+				insn(JVMOpcode.POP),
+				insn(JVMOpcode.GOTO, l0),
+
+				new JVMBytecodeLabel(l1),
+				insn(JVMOpcode.ICONST_0),
+				insn(JVMOpcode.PUTSTATIC, field("position", "I")),
+				insn(JVMOpcode.RETURN)
+			);
+	}
+
+	// flushes unless the next length bytes fit into the buffer
+	private static JVMBytecodeMethod emitEnsure() {
+		JVMLabel l0 = new JVMLabel("L0");
+
+		return method("ensure", List.of("I"), true,
+				insn(JVMOpcode.GETSTATIC, field("position", "I")),
+				insn(JVMOpcode.ILOAD_0),
+				insn(JVMOpcode.IADD),
+				insn(JVMOpcode.GETSTATIC, field("buffer", "[B")),
+				insn(JVMOpcode.ARRAYLENGTH),
+				insn(JVMOpcode.IF_ICMPLE, l0),
+				insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse(CLASS_NAME + "/flush()V")),
+				new JVMBytecodeLabel(l0),
+				insn(JVMOpcode.RETURN)
+			);
+	}
+
+	private static JVMBytecodeMethod emitWriteByte() {
+		return method("writeByte", List.of("I"), true,
+				insn(JVMOpcode.ICONST_1),
+				insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse(CLASS_NAME + "/ensure(I)V")),
+				insn(JVMOpcode.GETSTATIC, field("buffer", "[B")),
+				insn(JVMOpcode.GETSTATIC, field("position", "I")),
+				insn(JVMOpcode.ILOAD_0),
+				insn(JVMOpcode.BASTORE),
+				insn(JVMOpcode.GETSTATIC, field("position", "I")),
+				insn(JVMOpcode.ICONST_1),
+				insn(JVMOpcode.IADD),
+				insn(JVMOpcode.PUTSTATIC, field("position", "I")),
+				insn(JVMOpcode.RETURN)
+			);
+	}
+
+	// the chars of s, all of them ASCII, as bytes
+	private static JVMBytecodeMethod emitWriteChars() {
+		JVMLabel l0 = new JVMLabel("L0");
+		JVMLabel l1 = new JVMLabel("L1");
+
+		// locals: 0 s, 1 its length, 2 buffer, 3 position, 4 index
+		return method("writeChars", List.of("Ljava/lang/String;"), true,
+				insn(JVMOpcode.ALOAD_0),
+				insn(JVMOpcode.INVOKEVIRTUAL, JVMMethodRef.parse("java/lang/String/length()I")),
+				insn(JVMOpcode.DUP),
+				insn(JVMOpcode.ISTORE_1),
+				insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse(CLASS_NAME + "/ensure(I)V")),
+				insn(JVMOpcode.GETSTATIC, field("buffer", "[B")),
+				insn(JVMOpcode.ASTORE_2),
+				insn(JVMOpcode.GETSTATIC, field("position", "I")),
+				insn(JVMOpcode.ISTORE_3),
+				insn(JVMOpcode.ICONST_0),
+				insn(JVMOpcode.ISTORE, 4),
+
+				new JVMBytecodeLabel(l0),
+				insn(JVMOpcode.ILOAD, 4),
+				insn(JVMOpcode.ILOAD_1),
+				insn(JVMOpcode.IF_ICMPGE, l1),
+				insn(JVMOpcode.ALOAD_2),
+				insn(JVMOpcode.ILOAD_3),
+				insn(JVMOpcode.ALOAD_0),
+				insn(JVMOpcode.ILOAD, 4),
+				insn(JVMOpcode.INVOKEVIRTUAL, JVMMethodRef.parse("java/lang/String/charAt(I)C")),
+				insn(JVMOpcode.BASTORE),
+				insn(JVMOpcode.IINC, 3, 1),
+				insn(JVMOpcode.IINC, 4, 1),
+				insn(JVMOpcode.GOTO, l0),
+
+				new JVMBytecodeLabel(l1),
+				insn(JVMOpcode.ILOAD_3),
+				insn(JVMOpcode.PUTSTATIC, field("position", "I")),
+				insn(JVMOpcode.RETURN)
+			);
+	}
+
+	// The digits are taken off a non-positive value, so Integer.MIN_VALUE needs no special
+	// case: the digits are counted first and then written from the last one.
+	private static JVMBytecodeMethod emitWriteInt() {
+		JVMLabel l0 = new JVMLabel("L0");
+		JVMLabel l1 = new JVMLabel("L1");
+		JVMLabel l2 = new JVMLabel("L2");
+		JVMLabel l3 = new JVMLabel("L3");
+
+		// locals: 0 value (made non-positive), 1 whether it was negative, 2 digit count,
+		// 3 position of the digit written, 4 value left to count, 5 buffer
+		return method("writeInt", List.of("I"), true,
+				insn(JVMOpcode.BIPUSH, MAX_INT_LENGTH),
+				insn(JVMOpcode.INVOKESTATIC, JVMMethodRef.parse(CLASS_NAME + "/ensure(I)V")),
+				insn(JVMOpcode.ICONST_1),
+				insn(JVMOpcode.ISTORE_1),
+				insn(JVMOpcode.ILOAD_0),
+				insn(JVMOpcode.IFLT, l0),
+				insn(JVMOpcode.ICONST_0),
+				insn(JVMOpcode.ISTORE_1),
+				insn(JVMOpcode.ILOAD_0),
+				insn(JVMOpcode.INEG),
+				insn(JVMOpcode.ISTORE_0),
+
+				new JVMBytecodeLabel(l0),
+				insn(JVMOpcode.ICONST_0),
+				insn(JVMOpcode.ISTORE_2),
+				insn(JVMOpcode.ILOAD_0),
+				insn(JVMOpcode.ISTORE, 4),
+
+				new JVMBytecodeLabel(l1),
+				insn(JVMOpcode.IINC, 2, 1),
+				insn(JVMOpcode.ILOAD, 4),
+				insn(JVMOpcode.BIPUSH, 10),
+				insn(JVMOpcode.IDIV),
+				insn(JVMOpcode.DUP),
+				insn(JVMOpcode.ISTORE, 4),
+				insn(JVMOpcode.IFNE, l1),
+
+				insn(JVMOpcode.GETSTATIC, field("buffer", "[B")),
+				insn(JVMOpcode.ASTORE, 5),
+				insn(JVMOpcode.GETSTATIC, field("position", "I")),
+				insn(JVMOpcode.ILOAD_1),
+				insn(JVMOpcode.IADD),
+				insn(JVMOpcode.ILOAD_2),
+				insn(JVMOpcode.IADD),
+				insn(JVMOpcode.DUP),
+				insn(JVMOpcode.ISTORE_3),
+				insn(JVMOpcode.PUTSTATIC, field("position", "I")),
+
+				new JVMBytecodeLabel(l2),
+				insn(JVMOpcode.IINC, 3, -1),
+				insn(JVMOpcode.ALOAD, 5),
+				insn(JVMOpcode.ILOAD_3),
+				insn(JVMOpcode.BIPUSH, (int) '0'),
+				insn(JVMOpcode.ILOAD_0),
+				insn(JVMOpcode.BIPUSH, 10),
+				insn(JVMOpcode.IREM),
+				insn(JVMOpcode.ISUB),
+				insn(JVMOpcode.BASTORE),
+				insn(JVMOpcode.ILOAD_0),
+				insn(JVMOpcode.BIPUSH, 10),
+				insn(JVMOpcode.IDIV),
+				insn(JVMOpcode.DUP),
+				insn(JVMOpcode.ISTORE_0),
+				insn(JVMOpcode.IFNE, l2),
+
+				insn(JVMOpcode.ILOAD_1),
+				insn(JVMOpcode.IFEQ, l3),
+				insn(JVMOpcode.ALOAD, 5),
+				insn(JVMOpcode.ILOAD_3),
+				insn(JVMOpcode.ICONST_1),
+				insn(JVMOpcode.ISUB),
+				insn(JVMOpcode.BIPUSH, (int) '-'),
+				insn(JVMOpcode.BASTORE),
+
+				new JVMBytecodeLabel(l3),
+				insn(JVMOpcode.RETURN)
+			);
+	}
+
+	// the values separated by spaces and a newline after them
+	private static JVMBytecodeMethod emitPrint(String descriptor) {
+		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+
+		for (int i = 0; i < descriptor.length(); ++i) {
+			String typeDescriptor = descriptor.substring(i, i + 1);
+
+			if (i > 0) {
+				instructions.addAll(
+					List.of(
+						insn(JVMOpcode.BIPUSH, (int) ' '),
+						insn(JVMOpcode.INVOKESTATIC, getWriteByteMethodRef())
+					)
+				);
+			}
+
+			instructions.addAll(
+				List.of(
+					insn(typeDescriptor.equals("F") ? JVMOpcode.FLOAD : JVMOpcode.ILOAD, i),
+					insn(JVMOpcode.INVOKESTATIC, getWriteMethodRef(typeDescriptor))
+				)
+			);
+		}
+
+		instructions.addAll(
+			List.of(
+				insn(JVMOpcode.BIPUSH, (int) '\n'),
+				insn(JVMOpcode.INVOKESTATIC, getWriteByteMethodRef()),
+				insn(JVMOpcode.RETURN)
+			)
+		);
+
+		return method(
+				"print",
+				descriptor.chars().mapToObj(Character::toString).toList(),
+				true,
+				instructions.toArray(JVMBytecodeEntity[]::new)
+			);
+	}
+}
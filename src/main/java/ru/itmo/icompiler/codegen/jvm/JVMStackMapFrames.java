@@ -0,0 +1,633 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.JVMBytecodeLabel;
+
+// Computes the StackMapTable of a method: the verification types of the locals and of the
+// stack are propagated along the control flow, with a worklist over the branch targets,
+// and a frame is put in front of every instruction that is jumped to.
+//
+// Instructions no path reaches are dropped, along with their .line directives, since the
+// type-checking verifier checks dead code too and has no frame to check it against.
+public final class JVMStackMapFrames {
+	private static final String TOP = "Top";
+	private static final String INTEGER = "Integer";
+	private static final String FLOAT = "Float";
+	private static final String NULL = "Null";
+	private static final String UNINITIALIZED_THIS = "UninitializedThis";
+	private static final String OBJECT = "Object ";
+
+	// objects made by new before their <init> is called, "Uninitialized <index of the new>"
+	private static final String UNINITIALIZED = "Uninitialized ";
+
+	private static final Map<String, String> ARRAY_DESCRIPTORS = Map.ofEntries(
+			Map.entry("boolean", "[Z"),
+			Map.entry("char", "[C"),
+			Map.entry("float", "[F"),
+			Map.entry("byte", "[B"),
+			Map.entry("short", "[S"),
+			Map.entry("int", "[I")
+		);
+
+	private JVMStackMapFrames() {}
+
+	public static JVMBytecodeMethod insertFrames(JVMBytecodeMethod method, String className) {
+		method.setInstructions(computeFrames(method, className));
+
+		return method;
+	}
+
+	private static class Frame {
+		private String[] locals;
+		private List<String> stack;
+
+		public Frame(String[] locals, List<String> stack) {
+			this.locals = locals;
+			this.stack = stack;
+		}
+
+		public Frame copy() {
+			return new Frame(locals.clone(), new ArrayList<>(stack));
+		}
+
+		public void push(String type) {
+			stack.add(type);
+		}
+
+		public String pop() {
+			if (stack.isEmpty())
+				throw new IllegalStateException("operand stack underflow");
+
+			return stack.remove(stack.size() - 1);
+		}
+
+		public void pop(int count) {
+			for (int i = 0; i < count; ++i)
+				pop();
+		}
+
+		public String load(int index) {
+			return index < locals.length ? locals[index] : TOP;
+		}
+
+		public void store(int index, String type) {
+			if (index >= locals.length) {
+				int oldLength = locals.length;
+
+				locals = Arrays.copyOf(locals, index + 1);
+				Arrays.fill(locals, oldLength, locals.length, TOP);
+			}
+
+			locals[index] = type;
+		}
+
+		public void replace(String type, String replacement) {
+			for (int i = 0; i < locals.length; ++i) {
+				if (locals[i].equals(type))
+					locals[i] = replacement;
+			}
+
+			stack.replaceAll(item -> item.equals(type) ? replacement : item);
+		}
+
+		// the frame at a join of this and other, or null if it is this frame
+		public Frame join(Frame other) {
+			if (stack.size() != other.stack.size())
+				throw new IllegalStateException("stack heights differ at a branch target");
+
+			boolean changed = false;
+
+			String[] joinedLocals = locals.clone();
+
+			for (int i = 0; i < joinedLocals.length; ++i) {
+				String joined = joinTypes(joinedLocals[i], other.load(i));
+
+				changed |= !joined.equals(joinedLocals[i]);
+				joinedLocals[i] = joined;
+			}
+
+			List<String> joinedStack = new ArrayList<>(stack);
+
+			for (int i = 0; i < joinedStack.size(); ++i) {
+				String joined = joinTypes(joinedStack.get(i), other.stack.get(i));
+
+				if (joined.equals(TOP))
+					throw new IllegalStateException("stack types differ at a branch target");
+
+				changed |= !joined.equals(joinedStack.get(i));
+				joinedStack.set(i, joined);
+			}
+
+			return changed ? new Frame(joinedLocals, joinedStack) : null;
+		}
+
+		public JVMBytecodeStackMapFrame toStackMapFrame() {
+			int localsCount = locals.length;
+
+			while (localsCount > 0 && locals[localsCount - 1].equals(TOP))
+				--localsCount;
+
+			for (String type: locals) {
+				if (type.startsWith(UNINITIALIZED))
+					throw new IllegalStateException("object under construction is live across a branch");
+			}
+
+			for (String type: stack) {
+				if (type.startsWith(UNINITIALIZED))
+					throw new IllegalStateException("object under construction is live across a branch");
+			}
+
+			return new JVMBytecodeStackMapFrame(
+					List.of(Arrays.copyOf(locals, localsCount)),
+					List.copyOf(stack)
+				);
+		}
+	}
+
+	private static String joinTypes(String type1, String type2) {
+		if (type1.equals(type2))
+			return type1;
+
+		boolean isReference1 = type1.equals(NULL) || type1.startsWith(OBJECT);
+		boolean isReference2 = type2.equals(NULL) || type2.startsWith(OBJECT);
+
+		if (!isReference1 || !isReference2)
+			return TOP;
+
+		if (type1.equals(NULL))
+			return type2;
+
+		if (type2.equals(NULL))
+			return type1;
+
+		return OBJECT + "java/lang/Object";
+	}
+
+	private static List<JVMBytecodeEntity> computeFrames(JVMBytecodeMethod method, String className) {
+		List<JVMBytecodeEntity> entities = method.getInstructions();
+
+		// code holds the real instructions; codeIndex[i] is the index in code of entity i,
+		// or of the instruction after it for labels and directives
+		List<JVMBytecodeInstruction> code = new ArrayList<>();
+		int[] codeIndex = new int[entities.size()];
+		Map<JVMLabel, Integer> labels = new HashMap<>();
+
+		for (int i = 0; i < entities.size(); ++i) {
+			codeIndex[i] = code.size();
+
+			if (entities.get(i) instanceof JVMBytecodeInstruction instruction) {
+				JVMLabel label = instruction.getLabel();
+
+				if (label != null)
+					labels.put(label, code.size());
+
+				if (instruction.getOpcode() != null)
+					code.add(instruction);
+			}
+		}
+
+		Frame[] frames = new Frame[code.size()];
+		boolean[] isTarget = new boolean[code.size()];
+		boolean[] isQueued = new boolean[code.size()];
+		Deque<Integer> worklist = new ArrayDeque<>();
+
+		Map<String, String> newClasses = new HashMap<>();
+
+		mergeInto(frames, isQueued, worklist, 0, initialFrame(method, className));
+
+		while (!worklist.isEmpty()) {
+			int index = worklist.pop();
+			isQueued[index] = false;
+
+			JVMBytecodeInstruction instruction = code.get(index);
+			Frame frame = frames[index].copy();
+
+			boolean fallsThrough = execute(instruction, index, frame, method.getMethodName(), className, newClasses);
+
+			for (JVMLabel targetLabel: instruction.getBranchTargets()) {
+				Integer target = labels.get(targetLabel);
+
+				if (target == null)
+					throw new IllegalStateException("undefined label " + targetLabel + " in " + method.getMethodName());
+
+				isTarget[target] = true;
+				mergeInto(frames, isQueued, worklist, target, frame);
+			}
+
+			if (fallsThrough) {
+				if (index + 1 == code.size())
+					throw new IllegalStateException("execution falls off the end of " + method.getMethodName());
+
+				mergeInto(frames, isQueued, worklist, index + 1, frame);
+			}
+		}
+
+		List<JVMBytecodeEntity> framedEntities = new ArrayList<>(entities.size());
+
+		for (int i = 0; i < entities.size(); ++i) {
+			JVMBytecodeEntity entity = entities.get(i);
+			int index = codeIndex[i];
+			boolean isReachable = index < code.size() && frames[index] != null;
+
+			if (entity instanceof JVMBytecodeInstruction instruction && instruction.getOpcode() != null) {
+				if (!isReachable) {
+					JVMLabel label = instruction.getLabel();
+
+					if (label != null)
+						framedEntities.add(new JVMBytecodeLabel(label));
+
+					continue;
+				}
+
+				if (isTarget[index])
+					framedEntities.add(frames[index].toStackMapFrame());
+			} else if (entity instanceof JVMBytecodeDirective && !isReachable)
+				continue;
+
+			framedEntities.add(entity);
+		}
+
+		return framedEntities;
+	}
+
+	private static void mergeInto(Frame[] frames, boolean[] isQueued, Deque<Integer> worklist, int index, Frame frame) {
+		if (frames[index] == null)
+			frames[index] = frame.copy();
+		else {
+			Frame joined = frames[index].join(frame);
+
+			if (joined == null)
+				return;
+
+			frames[index] = joined;
+		}
+
+		if (!isQueued[index]) {
+			isQueued[index] = true;
+			worklist.push(index);
+		}
+	}
+
+	private static Frame initialFrame(JVMBytecodeMethod method, String className) {
+		List<String> locals = new ArrayList<>();
+
+		if (!Arrays.asList(method.getAccessSpecs()).contains(JVMBytecodeMethod.AccessSpec.STATIC))
+			locals.add(method.getMethodName().equals("<init>") ? UNINITIALIZED_THIS : OBJECT + className);
+
+		for (String argDescriptor: method.getArgsDescriptors())
+			locals.add(typeOfDescriptor(argDescriptor));
+
+		String[] localsArray = locals.toArray(String[]::new);
+
+		if (localsArray.length < method.getLocalVariablesLimit()) {
+			localsArray = Arrays.copyOf(localsArray, method.getLocalVariablesLimit());
+			Arrays.fill(localsArray, locals.size(), localsArray.length, TOP);
+		}
+
+		return new Frame(localsArray, new ArrayList<>());
+	}
+
+	// applies the instruction to frame; returns whether execution can go on to the next one
+	private static boolean execute(JVMBytecodeInstruction instruction, int index, Frame frame, String methodName, String className, Map<String, String> newClasses) {
+		JVMOpcode opcode = instruction.getOpcode();
+
+		switch (opcode) {
+			case NOP:
+				return true;
+			case ACONST_NULL:
+				frame.push(NULL);
+				return true;
+			case ICONST_M1:
+			case ICONST_0:
+			case ICONST_1:
+			case ICONST_2:
+			case ICONST_3:
+			case ICONST_4:
+			case ICONST_5:
+			case BIPUSH:
+			case SIPUSH:
+				frame.push(INTEGER);
+				return true;
+			case FCONST_0:
+			case FCONST_1:
+			case FCONST_2:
+				frame.push(FLOAT);
+				return true;
+			case LDC:
+			case LDC_W:
+				frame.push(typeOfConstant(instruction.getOperand(0)));
+				return true;
+			case ILOAD:
+			case ILOAD_0:
+			case ILOAD_1:
+			case ILOAD_2:
+			case ILOAD_3:
+				frame.push(INTEGER);
+				return true;
+			case FLOAD:
+			case FLOAD_0:
+			case FLOAD_1:
+			case FLOAD_2:
+			case FLOAD_3:
+				frame.push(FLOAT);
+				return true;
+			case ALOAD:
+			case ALOAD_0:
+			case ALOAD_1:
+			case ALOAD_2:
+			case ALOAD_3:
+				frame.push(frame.load(instruction.getLocalIndex()));
+				return true;
+			case ISTORE:
+			case ISTORE_0:
+			case ISTORE_1:
+			case ISTORE_2:
+			case ISTORE_3:
+				frame.pop();
+				frame.store(instruction.getLocalIndex(), INTEGER);
+				return true;
+			case FSTORE:
+			case FSTORE_0:
+			case FSTORE_1:
+			case FSTORE_2:
+			case FSTORE_3:
+				frame.pop();
+				frame.store(instruction.getLocalIndex(), FLOAT);
+				return true;
+			case ASTORE:
+			case ASTORE_0:
+			case ASTORE_1:
+			case ASTORE_2:
+			case ASTORE_3:
+				frame.store(instruction.getLocalIndex(), frame.pop());
+				return true;
+			case IINC:
+				return true;
+			case IALOAD:
+			case BALOAD:
+			case CALOAD:
+			case SALOAD:
+				frame.pop(2);
+				frame.push(INTEGER);
+				return true;
+			case FALOAD:
+				frame.pop(2);
+				frame.push(FLOAT);
+				return true;
+			case AALOAD: {
+				frame.pop();
+				String arrayType = frame.pop();
+
+				if (arrayType.equals(NULL))
+					frame.push(NULL);
+				else if (arrayType.startsWith(OBJECT + "["))
+					frame.push(typeOfDescriptor(arrayType.substring(OBJECT.length() + 1)));
+				else
+					throw new IllegalStateException("aaload from " + arrayType + ", not an array, in " + methodName);
+
+				return true;
+			}
+			case IASTORE:
+			case BASTORE:
+			case CASTORE:
+			case SASTORE:
+			case FASTORE:
+			case AASTORE:
+				frame.pop(3);
+				return true;
+			case POP:
+				frame.pop();
+				return true;
+			case POP2:
+				frame.pop(2);
+				return true;
+			case DUP: {
+				String value = frame.pop();
+
+				frame.push(value);
+				frame.push(value);
+				return true;
+			}
+			case DUP_X1: {
+				String value1 = frame.pop();
+				String value2 = frame.pop();
+
+				frame.push(value1);
+				frame.push(value2);
+				frame.push(value1);
+				return true;
+			}
+			case DUP_X2: {
+				String value1 = frame.pop();
+				String value2 = frame.pop();
+				String value3 = frame.pop();
+
+				frame.push(value1);
+				frame.push(value3);
+				frame.push(value2);
+				frame.push(value1);
+				return true;
+			}
+			case DUP2: {
+				String value1 = frame.pop();
+				String value2 = frame.pop();
+
+				frame.push(value2);
+				frame.push(value1);
+				frame.push(value2);
+				frame.push(value1);
+				return true;
+			}
+			case SWAP: {
+				String value1 = frame.pop();
+				String value2 = frame.pop();
+
+				frame.push(value1);
+				frame.push(value2);
+				return true;
+			}
+			case IADD:
+			case ISUB:
+			case IMUL:
+			case IDIV:
+			case IREM:
+			case ISHL:
+			case ISHR:
+			case IUSHR:
+			case IAND:
+			case IOR:
+			case IXOR:
+			case FCMPL:
+			case FCMPG:
+				frame.pop(2);
+				frame.push(INTEGER);
+				return true;
+			case FADD:
+			case FSUB:
+			case FMUL:
+			case FDIV:
+			case FREM:
+				frame.pop(2);
+				frame.push(FLOAT);
+				return true;
+			case INEG:
+			case I2B:
+			case I2C:
+			case I2S:
+			case F2I:
+				frame.pop();
+				frame.push(INTEGER);
+				return true;
+			case FNEG:
+			case I2F:
+				frame.pop();
+				frame.push(FLOAT);
+				return true;
+			case IFEQ:
+			case IFNE:
+			case IFLT:
+			case IFGE:
+			case IFGT:
+			case IFLE:
+			case IFNULL:
+			case IFNONNULL:
+				frame.pop();
+				return true;
+			case IF_ICMPEQ:
+			case IF_ICMPNE:
+			case IF_ICMPLT:
+			case IF_ICMPGE:
+			case IF_ICMPGT:
+			case IF_ICMPLE:
+			case IF_ACMPEQ:
+			case IF_ACMPNE:
+				frame.pop(2);
+				return true;
+			case GOTO:
+			case GOTO_W:
+				return false;
+			case LOOKUPSWITCH:
+				frame.pop();
+				return false;
+			case IRETURN:
+			case FRETURN:
+			case ARETURN:
+			case ATHROW:
+				frame.pop();
+				return false;
+			case RETURN:
+				return false;
+			case GETSTATIC:
+				frame.push(typeOfDescriptor(instruction.getFieldRef().getDescriptor()));
+				return true;
+			case PUTSTATIC:
+				frame.pop();
+				return true;
+			case GETFIELD:
+				frame.pop();
+				frame.push(typeOfDescriptor(instruction.getFieldRef().getDescriptor()));
+				return true;
+			case PUTFIELD:
+				frame.pop(2);
+				return true;
+			case INVOKEVIRTUAL:
+			case INVOKESPECIAL:
+			case INVOKESTATIC:
+			case INVOKEINTERFACE: {
+				JVMMethodRef methodRef = instruction.getMethodRef();
+
+				frame.pop(methodRef.getArgumentDescriptors().size());
+
+				if (opcode != JVMOpcode.INVOKESTATIC) {
+					String receiver = frame.pop();
+
+					if (methodRef.isConstructor()) {
+						if (receiver.equals(UNINITIALIZED_THIS))
+							frame.replace(receiver, OBJECT + className);
+						else if (receiver.startsWith(UNINITIALIZED))
+							frame.replace(receiver, OBJECT + newClasses.get(receiver));
+					}
+				}
+
+				String returnDescriptor = methodRef.getReturnDescriptor();
+
+				if (!returnDescriptor.equals("V"))
+					frame.push(typeOfDescriptor(returnDescriptor));
+
+				return true;
+			}
+			case NEW: {
+				String uninitialized = UNINITIALIZED + index;
+
+				newClasses.put(uninitialized, (String) instruction.getOperand(0));
+				frame.push(uninitialized);
+				return true;
+			}
+			case NEWARRAY: {
+				String descriptor = ARRAY_DESCRIPTORS.get((String) instruction.getOperand(0));
+
+				if (descriptor == null)
+					throw new IllegalArgumentException("unsupported array type " + instruction.getOperand(0));
+
+				frame.pop();
+				frame.push(OBJECT + descriptor);
+				return true;
+			}
+			case ANEWARRAY: {
+				String elementClass = (String) instruction.getOperand(0);
+
+				frame.pop();
+				frame.push(OBJECT + "[" + (elementClass.startsWith("[") ? elementClass : "L" + elementClass + ";"));
+				return true;
+			}
+			case MULTIANEWARRAY:
+				frame.pop(instruction.getIntOperand(1));
+				frame.push(OBJECT + instruction.getOperand(0));
+				return true;
+			case ARRAYLENGTH:
+			case INSTANCEOF:
+				frame.pop();
+				frame.push(INTEGER);
+				return true;
+			case CHECKCAST:
+				frame.pop();
+				frame.push(OBJECT + instruction.getOperand(0));
+				return true;
+			default:
+				throw new IllegalArgumentException("no stack map support for instruction " + opcode);
+		}
+	}
+
+	private static String typeOfConstant(Object constant) {
+		if (constant instanceof String)
+			return OBJECT + "java/lang/String";
+
+		return constant instanceof Integer ? INTEGER : FLOAT;
+	}
+
+	private static String typeOfDescriptor(String descriptor) {
+		switch (descriptor.charAt(0)) {
+			case 'Z':
+			case 'B':
+			case 'C':
+			case 'S':
+			case 'I':
+				return INTEGER;
+			case 'F':
+				return FLOAT;
+			case 'L':
+				return OBJECT + descriptor.substring(1, descriptor.length() - 1);
+			case '[':
+				return OBJECT + descriptor;
+			default:
+				throw new IllegalArgumentException("no stack map support for type " + descriptor);
+		}
+	}
+}
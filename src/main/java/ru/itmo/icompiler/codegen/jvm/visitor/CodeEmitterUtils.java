@@ -1,18 +1,19 @@
 package ru.itmo.icompiler.codegen.jvm.visitor;
 
+import ru.itmo.icompiler.codegen.jvm.JVMLabel;
 import ru.itmo.icompiler.codegen.jvm.visitor.JVMCodeEmitterVisitor.IntCounter;
 
 public final class CodeEmitterUtils {
 	private CodeEmitterUtils() {}
 	
-	public static String allocateLabel(IntCounter labelCounter) {
-		String label = "L" + labelCounter;
+	public static JVMLabel allocateLabel(IntCounter labelCounter) {
+		JVMLabel label = new JVMLabel("L" + labelCounter);
 		labelCounter.incCounter();
 		
 		return label;
 	}
 	
-	public static String getOrAllocateLabel(String label, IntCounter labelCounter) {
+	public static JVMLabel getOrAllocateLabel(JVMLabel label, IntCounter labelCounter) {
 		return label != null ? label : allocateLabel(labelCounter);
 	}
 }
@@ -0,0 +1,472 @@
+package ru.itmo.icompiler.codegen.jvm.visitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import ru.itmo.icompiler.semantic.ArrayType.SizedArrayType;
+import ru.itmo.icompiler.semantic.VarType;
+import ru.itmo.icompiler.semantic.VarType.Tag;
+import ru.itmo.icompiler.semantic.visitor.ASTVisitor;
+import ru.itmo.icompiler.semantic.visitor.ExpressionNodeVisitor;
+import ru.itmo.icompiler.syntax.ast.ASTNode;
+import ru.itmo.icompiler.syntax.ast.BreakStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.CompoundStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.ContinueStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.ForEachStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.ForInRangeStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.IfThenElseStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.PrintStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.ProgramASTNode;
+import ru.itmo.icompiler.syntax.ast.ReturnStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.RoutineDeclarationASTNode;
+import ru.itmo.icompiler.syntax.ast.RoutineDefinitionASTNode;
+import ru.itmo.icompiler.syntax.ast.TypeDeclarationASTNode;
+import ru.itmo.icompiler.syntax.ast.VariableAssignmentASTNode;
+import ru.itmo.icompiler.syntax.ast.VariableDeclarationASTNode;
+import ru.itmo.icompiler.syntax.ast.WhileBodyStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.WhileStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.expression.ArrayAccessExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.BinaryOperatorExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.BooleanValueExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.EmptyExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.ExpressionASTNode;
+import ru.itmo.icompiler.syntax.ast.expression.ImplicitCastExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.IntegerValueExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.PropertyAccessExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.RealValueExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.RoutineCallExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.UnaryOperatorExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.VariableExpressionNode;
+
+// Finds the variables of nested sized array types with a primitive element, like
+// array[N] array[M] integer, that can be stored as one flat array[N * M] integer in row-major
+// order. A variable is flattened if it is only ever indexed down to an element, asked for the
+// length at some level or iterated over by its innermost rows. Anything else lets a sub-array
+// out as a value (an argument, an assignment, a return, a for-each over a row of rows), and
+// such a variable stays nested.
+public class FlatArrayASTVisitor implements ASTVisitor<Void, FlatArrayASTVisitor.Scope> {
+	public static class Layout {
+		private final int[] sizes;
+		private final VarType elementType;
+		private final SizedArrayType storageType;
+
+		public Layout(int[] sizes, VarType elementType) {
+			int totalSize = 1;
+
+			for (int size: sizes)
+				totalSize = Math.multiplyExact(totalSize, size);
+
+			this.sizes = sizes;
+			this.elementType = elementType;
+			this.storageType = new SizedArrayType(elementType, totalSize);
+		}
+
+		public int getDimensions() {
+			return sizes.length;
+		}
+
+		public int getSize(int dimension) {
+			return sizes[dimension];
+		}
+
+		public VarType getElementType() {
+			return elementType;
+		}
+
+		// the one-dimensional array the variable is stored as
+		public SizedArrayType getStorageType() {
+			return storageType;
+		}
+	}
+
+	public static class Scope {
+		private final Scope parentScope;
+		private final Map<String, VariableDeclarationASTNode> declarations = new HashMap<>();
+
+		public Scope(Scope parentScope) {
+			this.parentScope = parentScope;
+		}
+
+		// null declaration for arguments and loop variables
+		public void declare(String name, VariableDeclarationASTNode declaration) {
+			declarations.put(name, declaration);
+		}
+
+		public VariableDeclarationASTNode lookup(String name) {
+			for (Scope scope = this; scope != null; scope = scope.parentScope) {
+				if (scope.declarations.containsKey(name))
+					return scope.declarations.get(name);
+			}
+
+			return null;
+		}
+	}
+
+	private final ExpressionUseVisitor expressionUseVisitor = new ExpressionUseVisitor();
+
+	private final Map<VariableDeclarationASTNode, Layout> candidates = new IdentityHashMap<>();
+	private final Set<VariableDeclarationASTNode> escaped = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Map<VariableExpressionNode, VariableDeclarationASTNode> references = new IdentityHashMap<>();
+
+	private Scope globalScope;
+
+	// the layout of a declaration that is flattened, null for the others
+	public Layout getLayout(VariableDeclarationASTNode declaration) {
+		return escaped.contains(declaration) ? null : candidates.get(declaration);
+	}
+
+	// the layout of the flattened variable an access chain like a[i][j] starts with, or null
+	public Layout getLayout(ExpressionASTNode expr) {
+		VariableExpressionNode base = getChainBase(expr);
+		VariableDeclarationASTNode declaration = base != null ? references.get(base) : null;
+
+		return declaration != null ? getLayout(declaration) : null;
+	}
+
+	public static VariableExpressionNode getChainBase(ExpressionASTNode expr) {
+		while (expr instanceof ArrayAccessExpressionNode arrAccNode)
+			expr = arrAccNode.getHolder();
+
+		return expr instanceof VariableExpressionNode varExprNode ? varExprNode : null;
+	}
+
+	// the indices of an access chain, the outermost first
+	public static List<ExpressionASTNode> getChainIndices(ExpressionASTNode expr) {
+		List<ExpressionASTNode> indices = new ArrayList<>();
+
+		while (expr instanceof ArrayAccessExpressionNode arrAccNode) {
+			indices.add(arrAccNode.getIndex());
+			expr = arrAccNode.getHolder();
+		}
+
+		Collections.reverse(indices);
+
+		return indices;
+	}
+
+	private static Layout getCandidateLayout(VariableDeclarationASTNode node) {
+		List<Integer> sizes = new ArrayList<>();
+		VarType varType = node.getVarType();
+
+		while (varType instanceof SizedArrayType arrayType && arrayType.getSize() >= 0) {
+			sizes.add(arrayType.getSize());
+			varType = arrayType.getElementType();
+		}
+
+		// declarations with an initializer are left as they are
+		if (sizes.size() < 2 || varType.getTag() != Tag.PRIMITIVE || !node.getChildren().isEmpty())
+			return null;
+
+		try {
+			return new Layout(sizes.stream().mapToInt(Integer::intValue).toArray(), varType);
+		} catch (ArithmeticException e) {
+			return null;
+		}
+	}
+
+	private void declare(VariableDeclarationASTNode node, Scope scope) {
+		scope.declare(node.getVarName(), node);
+
+		Layout layout = getCandidateLayout(node);
+
+		if (layout != null)
+			candidates.put(node, layout);
+	}
+
+	private void use(ExpressionASTNode expr, Scope scope) {
+		if (expr != null)
+			expr.accept(expressionUseVisitor, scope);
+	}
+
+	// the candidate an access chain like a[i][j] starts with, or null
+	private VariableDeclarationASTNode getCandidate(ExpressionASTNode expr, Scope scope) {
+		VariableExpressionNode base = getChainBase(expr);
+		VariableDeclarationASTNode declaration = base != null ? scope.lookup(base.getVariable()) : null;
+
+		return declaration != null && candidates.containsKey(declaration) ? declaration : null;
+	}
+
+	// An access chain on a candidate is fine if the lowering handles its depth,
+	// the indices are used as any other expression.
+	private void useChain(ExpressionASTNode expr, Scope scope, VariableDeclarationASTNode declaration, IntPredicate allowedDepth) {
+		List<ExpressionASTNode> indices = getChainIndices(expr);
+
+		for (ExpressionASTNode index: indices)
+			use(index, scope);
+
+		references.put(getChainBase(expr), declaration);
+
+		if (!allowedDepth.test(indices.size()))
+			escaped.add(declaration);
+	}
+
+	private void visitStatements(List<ASTNode> statements, Scope scope) {
+		for (ASTNode statement: statements)
+			statement.accept(this, scope);
+	}
+
+	@Override
+	public Void visit(ProgramASTNode node, Scope scope) {
+		globalScope = new Scope(null);
+
+		for (ASTNode child: node.getChildren()) {
+			if (child instanceof VariableDeclarationASTNode declNode)
+				declare(declNode, globalScope);
+		}
+
+		for (ASTNode child: node.getChildren()) {
+			if (child instanceof VariableDeclarationASTNode declNode && !declNode.getChildren().isEmpty())
+				use(((VariableAssignmentASTNode) declNode.getChild(0)).getValueNode(), globalScope);
+			else
+				child.accept(this, globalScope);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visit(CompoundStatementASTNode node, Scope scope) {
+		visitStatements(node.getChildren(), new Scope(scope));
+
+		return null;
+	}
+
+	@Override
+	public Void visit(WhileBodyStatementASTNode node, Scope scope) {
+		visitStatements(node.getChildren(), new Scope(scope));
+
+		return null;
+	}
+
+	@Override
+	public Void visit(VariableDeclarationASTNode node, Scope scope) {
+		if (!node.getChildren().isEmpty())
+			use(((VariableAssignmentASTNode) node.getChild(0)).getValueNode(), scope);
+
+		declare(node, scope);
+
+		return null;
+	}
+
+	@Override
+	public Void visit(VariableAssignmentASTNode node, Scope scope) {
+		ExpressionASTNode lhs = node.getLeftSide();
+
+		// a whole candidate assigned is a use as a value, like any other
+		use(lhs, scope);
+
+		use(node.getValueNode(), scope);
+
+		return null;
+	}
+
+	@Override
+	public Void visit(TypeDeclarationASTNode node, Scope scope) {
+		return null;
+	}
+
+	@Override
+	public Void visit(RoutineDeclarationASTNode node, Scope scope) {
+		return null;
+	}
+
+	@Override
+	public Void visit(RoutineDefinitionASTNode node, Scope scope) {
+		Scope routineScope = new Scope(globalScope);
+
+		for (VariableDeclarationASTNode argDecl: node.getRoutineDeclaration().getArgumentsDeclarations())
+			routineScope.declare(argDecl.getVarName(), null);
+
+		node.getBody().accept(this, routineScope);
+
+		return null;
+	}
+
+	@Override
+	public Void visit(ReturnStatementASTNode node, Scope scope) {
+		use(node.getResultNode(), scope);
+
+		return null;
+	}
+
+	@Override
+	public Void visit(IfThenElseStatementASTNode node, Scope scope) {
+		use(node.getConditionExpression(), scope);
+
+		node.getTrueBranch().accept(this, scope);
+
+		if (node.getElseBranch() != null)
+			node.getElseBranch().accept(this, scope);
+
+		return null;
+	}
+
+	@Override
+	public Void visit(ForInRangeStatementASTNode node, Scope scope) {
+		use(node.getFromExpression(), scope);
+		use(node.getToExpression(), scope);
+
+		Scope bodyScope = new Scope(scope);
+		bodyScope.declare(node.getIterVariable(), null);
+
+		visitStatements(node.getBodyNode().getChildren(), bodyScope);
+
+		return null;
+	}
+
+	// the emitter reads the elements as arrayExpr[counter] and the bound as arrayExpr.length,
+	// so a row of elements is as good as any access of the flattened variable
+	@Override
+	public Void visit(ForEachStatementASTNode node, Scope scope) {
+		ExpressionASTNode arrayExpr = node.getArrayExpression();
+		VariableDeclarationASTNode declaration = getCandidate(arrayExpr, scope);
+
+		if (declaration != null)
+			useChain(arrayExpr, scope, declaration, depth -> depth == candidates.get(declaration).getDimensions() - 1);
+		else
+			use(arrayExpr, scope);
+
+		Scope bodyScope = new Scope(scope);
+		bodyScope.declare(node.getIterVariable(), null);
+
+		visitStatements(node.getBodyNode().getChildren(), bodyScope);
+
+		return null;
+	}
+
+	@Override
+	public Void visit(WhileStatementASTNode node, Scope scope) {
+		use(node.getConditionExpression(), scope);
+
+		visitStatements(node.getBodyNode().getChildren(), new Scope(scope));
+
+		return null;
+	}
+
+	@Override
+	public Void visit(BreakStatementASTNode node, Scope scope) {
+		return null;
+	}
+
+	@Override
+	public Void visit(ContinueStatementASTNode node, Scope scope) {
+		return null;
+	}
+
+	@Override
+	public Void visit(PrintStatementASTNode node, Scope scope) {
+		for (ASTNode child: node.getChildren())
+			use((ExpressionASTNode) child, scope);
+
+		return null;
+	}
+
+	@Override
+	public Void visit(ExpressionASTNode node, Scope scope) {
+		use(node, scope);
+
+		return null;
+	}
+
+	private class ExpressionUseVisitor implements ExpressionNodeVisitor<Void, Scope> {
+		@Override
+		public Void visit(BooleanValueExpressionNode node, Scope scope) {
+			return null;
+		}
+
+		@Override
+		public Void visit(IntegerValueExpressionNode node, Scope scope) {
+			return null;
+		}
+
+		@Override
+		public Void visit(RealValueExpressionNode node, Scope scope) {
+			return null;
+		}
+
+		// a candidate read as a whole value
+		@Override
+		public Void visit(VariableExpressionNode node, Scope scope) {
+			VariableDeclarationASTNode declaration = scope.lookup(node.getVariable());
+
+			if (declaration != null && candidates.containsKey(declaration))
+				escaped.add(declaration);
+
+			return null;
+		}
+
+		@Override
+		public Void visit(RoutineCallExpressionNode node, Scope scope) {
+			for (ExpressionASTNode arg: node.getArguments())
+				use(arg, scope);
+
+			return null;
+		}
+
+		@Override
+		public Void visit(UnaryOperatorExpressionNode node, Scope scope) {
+			use(node.getValue(), scope);
+
+			return null;
+		}
+
+		@Override
+		public Void visit(BinaryOperatorExpressionNode node, Scope scope) {
+			use(node.getLeftChild(), scope);
+			use(node.getRightChild(), scope);
+
+			return null;
+		}
+
+		@Override
+		public Void visit(ArrayAccessExpressionNode node, Scope scope) {
+			VariableDeclarationASTNode declaration = getCandidate(node, scope);
+
+			if (declaration != null)
+				useChain(node, scope, declaration, depth -> depth == candidates.get(declaration).getDimensions());
+			else {
+				use(node.getHolder(), scope);
+				use(node.getIndex(), scope);
+			}
+
+			return null;
+		}
+
+		@Override
+		public Void visit(PropertyAccessExpressionNode node, Scope scope) {
+			ExpressionASTNode holder = node.getPropertyHolder();
+
+			if (holder.getExpressionType().getTag() == Tag.ARRAY && "length".equals(node.getPropertyName())) {
+				VariableDeclarationASTNode declaration = getCandidate(holder, scope);
+
+				if (declaration != null) {
+					useChain(holder, scope, declaration, depth -> depth < candidates.get(declaration).getDimensions());
+
+					return null;
+				}
+			}
+
+			use(holder, scope);
+
+			return null;
+		}
+
+		@Override
+		public Void visit(ImplicitCastExpressionNode node, Scope scope) {
+			use(node.getArgument(), scope);
+
+			return null;
+		}
+
+		@Override
+		public Void visit(EmptyExpressionNode node, Scope scope) {
+			return null;
+		}
+	}
+}
@@ -1,8 +1,5 @@
 package ru.itmo.icompiler.codegen.jvm.visitor;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -10,7 +7,13 @@ import ru.itmo.icompiler.codegen.jvm.JVMBytecodeEntity;
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction;
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.JVMBytecodeInstructionLabeled;
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.JVMBytecodeLabel;
+import ru.itmo.icompiler.codegen.jvm.JVMFieldRef;
+import ru.itmo.icompiler.codegen.jvm.JVMInstructionBuffer;
+import ru.itmo.icompiler.codegen.jvm.JVMLabel;
+import ru.itmo.icompiler.codegen.jvm.JVMMethodRef;
+import ru.itmo.icompiler.codegen.jvm.JVMOpcode;
 import ru.itmo.icompiler.codegen.jvm.utils.JVMBytecodeUtils;
+import ru.itmo.icompiler.codegen.jvm.visitor.FlatArrayASTVisitor.Layout;
 import ru.itmo.icompiler.codegen.jvm.visitor.JVMCodeEmitterExpressionVisitor.BranchContext;
 import ru.itmo.icompiler.codegen.jvm.visitor.JVMCodeEmitterVisitor.IntCounter;
 import ru.itmo.icompiler.codegen.jvm.visitor.JVMCodeEmitterVisitor.LocalVariableContext;
@@ -37,70 +40,84 @@ import ru.itmo.icompiler.syntax.ast.expression.UnaryOperatorExpressionNode;
 import ru.itmo.icompiler.syntax.ast.expression.UnaryOperatorExpressionNode.UnaryOperatorType;
 import ru.itmo.icompiler.syntax.ast.expression.VariableExpressionNode;
 
-public class JVMCodeEmitterExpressionVisitor implements ExpressionNodeVisitor<List<JVMBytecodeEntity>, BranchContext> {
+public class JVMCodeEmitterExpressionVisitor implements ExpressionNodeVisitor<Void, BranchContext> {
 	public static class BranchContext {
 		private Boolean condition;
-		private String thenLabel;
-		private String elseLabel;
+		private JVMLabel thenLabel;
+		private JVMLabel elseLabel;
 		private LocalVariableContext localVariableContext;
 		private IntCounter labelCounter;
+		private JVMInstructionBuffer code;
 		
-		public BranchContext(Boolean condition, String thenLabel, String elseLabel, LocalVariableContext localVariableContext, IntCounter labelCounter) {
+		public BranchContext(Boolean condition, JVMLabel thenLabel, JVMLabel elseLabel, LocalVariableContext localVariableContext, IntCounter labelCounter, JVMInstructionBuffer code) {
 			this.condition = condition;
 			this.thenLabel = thenLabel;
 			this.elseLabel = elseLabel;
 			this.localVariableContext = localVariableContext;
 			this.labelCounter = labelCounter;
+			this.code = code;
 		}
 		
-		public BranchContext copy(Boolean condition, String thenLabel, String elseLabel) {
+		public BranchContext copy(Boolean condition, JVMLabel thenLabel, JVMLabel elseLabel) {
 			return new BranchContext(
 						condition,
 						thenLabel, 
 						elseLabel, 
 						localVariableContext, 
-						labelCounter
+						labelCounter,
+						code
 					);
 		}
 		
 		public IntCounter getLabelCounter() {
 			return labelCounter;
 		}
+		
+		public JVMInstructionBuffer getCode() {
+			return code;
+		}
 	}
 	
-	private static final Map<BinaryOperatorType, String> INTEGER_COMPARISON_OPCODE_MAPPER = Map.ofEntries(
-			Map.entry(BinaryOperatorType.LT_BINOP, "if_icmplt"),
-			Map.entry(BinaryOperatorType.LE_BINOP, "if_icmple"),
+	private static final Map<BinaryOperatorType, JVMOpcode> INTEGER_COMPARISON_OPCODE_MAPPER = Map.ofEntries(
+			Map.entry(BinaryOperatorType.LT_BINOP, JVMOpcode.IF_ICMPLT),
+			Map.entry(BinaryOperatorType.LE_BINOP, JVMOpcode.IF_ICMPLE),
 			
-			Map.entry(BinaryOperatorType.EQ_BINOP, "if_icmpeq"),
-			Map.entry(BinaryOperatorType.NE_BINOP, "if_icmpne"),
+			Map.entry(BinaryOperatorType.EQ_BINOP, JVMOpcode.IF_ICMPEQ),
+			Map.entry(BinaryOperatorType.NE_BINOP, JVMOpcode.IF_ICMPNE),
 			
-			Map.entry(BinaryOperatorType.GT_BINOP, "if_icmpgt"),
-			Map.entry(BinaryOperatorType.GE_BINOP, "if_icmpge")
+			Map.entry(BinaryOperatorType.GT_BINOP, JVMOpcode.IF_ICMPGT),
+			Map.entry(BinaryOperatorType.GE_BINOP, JVMOpcode.IF_ICMPGE)
 	);
 	
-	private static final Map<BinaryOperatorType, String> REAL_COMPARISON_OPCODE_MAPPER = Map.ofEntries(
-			Map.entry(BinaryOperatorType.EQ_BINOP, "ifeq"),
-			Map.entry(BinaryOperatorType.NE_BINOP, "ifne"),
+	private static final Map<BinaryOperatorType, JVMOpcode> REAL_COMPARISON_OPCODE_MAPPER = Map.ofEntries(
+			Map.entry(BinaryOperatorType.EQ_BINOP, JVMOpcode.IFEQ),
+			Map.entry(BinaryOperatorType.NE_BINOP, JVMOpcode.IFNE),
 			
-			Map.entry(BinaryOperatorType.LT_BINOP, "iflt"),
-			Map.entry(BinaryOperatorType.LE_BINOP, "ifle"),
+			Map.entry(BinaryOperatorType.LT_BINOP, JVMOpcode.IFLT),
+			Map.entry(BinaryOperatorType.LE_BINOP, JVMOpcode.IFLE),
 			
-			Map.entry(BinaryOperatorType.GT_BINOP, "ifgt"),
-			Map.entry(BinaryOperatorType.GE_BINOP, "ifge")
+			Map.entry(BinaryOperatorType.GT_BINOP, JVMOpcode.IFGT),
+			Map.entry(BinaryOperatorType.GE_BINOP, JVMOpcode.IFGE)
 	);
 	
-	private static final Map<BinaryOperatorType, String> BINOP_OPCODE_MAPPER = Map.ofEntries(
-			Map.entry(BinaryOperatorType.ADD_BINOP, "add"),
-			Map.entry(BinaryOperatorType.SUB_BINOP, "sub"),
+	private static final Map<BinaryOperatorType, JVMOpcode> INTEGER_BINOP_OPCODE_MAPPER = Map.ofEntries(
+			Map.entry(BinaryOperatorType.ADD_BINOP, JVMOpcode.IADD),
+			Map.entry(BinaryOperatorType.SUB_BINOP, JVMOpcode.ISUB),
+			
+			Map.entry(BinaryOperatorType.MUL_BINOP, JVMOpcode.IMUL),
+			Map.entry(BinaryOperatorType.DIV_BINOP, JVMOpcode.IDIV),
+			Map.entry(BinaryOperatorType.MOD_BINOP, JVMOpcode.IREM),
 			
-			Map.entry(BinaryOperatorType.MUL_BINOP, "mul"),
-			Map.entry(BinaryOperatorType.DIV_BINOP, "div"),
-			Map.entry(BinaryOperatorType.MOD_BINOP, "rem"),
+			Map.entry(BinaryOperatorType.XOR_BINOP, JVMOpcode.IXOR)
+	);
+	
+	private static final Map<BinaryOperatorType, JVMOpcode> REAL_BINOP_OPCODE_MAPPER = Map.ofEntries(
+			Map.entry(BinaryOperatorType.ADD_BINOP, JVMOpcode.FADD),
+			Map.entry(BinaryOperatorType.SUB_BINOP, JVMOpcode.FSUB),
 			
-			Map.entry(BinaryOperatorType.AND_BINOP, "iand"),
-			Map.entry(BinaryOperatorType.OR_BINOP, "ior"),
-			Map.entry(BinaryOperatorType.XOR_BINOP, "ixor")
+			Map.entry(BinaryOperatorType.MUL_BINOP, JVMOpcode.FMUL),
+			Map.entry(BinaryOperatorType.DIV_BINOP, JVMOpcode.FDIV),
+			Map.entry(BinaryOperatorType.MOD_BINOP, JVMOpcode.FREM)
 	);
 	
 	private static final Map<BinaryOperatorType, BinaryOperatorType> REVERSED_BINOP_TYPE_MAPPER = Map.ofEntries(
@@ -114,142 +131,138 @@ public class JVMCodeEmitterExpressionVisitor implements ExpressionNodeVisitor<Li
 			Map.entry(BinaryOperatorType.GE_BINOP, BinaryOperatorType.LT_BINOP)
 	);
 
+	private static final JVMMethodRef CHECK_INDEX = new JVMMethodRef("java/util/Objects", "checkIndex", "(II)I");
+
+	// the layouts of the arrays stored flat, see FlatArrayASTVisitor
+	private final FlatArrayASTVisitor flatArrays;
+	
+	public JVMCodeEmitterExpressionVisitor(FlatArrayASTVisitor flatArrays) {
+		this.flatArrays = flatArrays;
+	}
+	
+	public JVMCodeEmitterExpressionVisitor() {
+		this(new FlatArrayASTVisitor());
+	}
+	
 	public static JVMBytecodeEntity getLoadIntConstInstruction(int i) {
 		if (i == -1)
-			return new JVMBytecodeInstruction("iconst_m1");
+			return new JVMBytecodeInstruction(JVMOpcode.ICONST_M1);
 		else if (i >= 0 && i <= 5)
-			return new JVMBytecodeInstruction("iconst_" + i);
+			return new JVMBytecodeInstruction(JVMOpcode.forMnemonic("iconst_" + i));
 		else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE)
-			return new JVMBytecodeInstruction("bipush", i);
+			return new JVMBytecodeInstruction(JVMOpcode.BIPUSH, i);
 		else
-			return new JVMBytecodeInstruction("ldc", i);
+			return new JVMBytecodeInstruction(JVMOpcode.LDC, i);
 	}
 	
 	public static JVMBytecodeEntity getLoadVariableInstr(String varName, VarType varType, LocalVariableContext localVariableContext) {
 		if (localVariableContext.containsLocalVarIndex(varName)) {
 			int lvIndex = localVariableContext.getLocalVarIndex(varName);
 			
-			final String opcode = JVMBytecodeUtils.getOpcodePrefix(varType) + "load";
+			final JVMOpcode opcode = JVMOpcode.forMnemonic(JVMBytecodeUtils.getOpcodePrefix(varType) + "load");
 			
 			return lvIndex <= 3
-					? new JVMBytecodeInstruction(opcode + "_" + lvIndex)
+					? new JVMBytecodeInstruction(opcode.getShortForm(lvIndex))
 					: new JVMBytecodeInstruction(opcode, lvIndex)
 					;
 		} else {
 			return new JVMBytecodeInstruction(
-					"getstatic", 
-					JVMCodeEmitterVisitor.PROGRAM_CLASS_NAME + "/" + varName, 
-					JVMCodeEmitterVisitor.getMangledTypeName(varType)
+					JVMOpcode.GETSTATIC, 
+					new JVMFieldRef(JVMCodeEmitterVisitor.PROGRAM_CLASS_NAME, varName, JVMCodeEmitterVisitor.getMangledTypeName(varType))
 				);
 		}
 	}
 	
-	public static List<JVMBytecodeEntity> generateBooleanValueInstructions(BranchContext ctx) {
+	public static void emitBooleanValue(BranchContext ctx) {
 		if (ctx == null || ctx.condition == null)
-			return Collections.emptyList();
+			return;
 		
-		String thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
-		String elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
-		String endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+		JVMLabel thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
+		JVMLabel elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
+		JVMLabel endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 		
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
-		instructions.add(
+		JVMInstructionBuffer code = ctx.code;
+		code.add(
 			ctx.condition
-			? new JVMBytecodeInstruction("ifne", thenLabel)
-			: new JVMBytecodeInstruction("ifeq", elseLabel)
+			? new JVMBytecodeInstruction(JVMOpcode.IFNE, thenLabel)
+			: new JVMBytecodeInstruction(JVMOpcode.IFEQ, elseLabel)
 		);
 		
 		if (ctx.thenLabel == null) {
-			instructions.addAll(
-				Arrays.asList(
-					new JVMBytecodeInstructionLabeled(thenLabel, "iconst_1"),
-					new JVMBytecodeInstruction("goto", endLabel)
-				)
+			code.add(
+				new JVMBytecodeInstructionLabeled(thenLabel, JVMOpcode.ICONST_1),
+				new JVMBytecodeInstruction(JVMOpcode.GOTO, endLabel)
 			);
 		}
 		
 		if (ctx.elseLabel == null) {
-			instructions.add(
-				new JVMBytecodeInstructionLabeled(elseLabel, "iconst_0")
+			code.add(
+				new JVMBytecodeInstructionLabeled(elseLabel, JVMOpcode.ICONST_0)
 			);
 		}
 		
-		instructions.add(
+		code.add(
 			new JVMBytecodeLabel(endLabel)
 		);
-		
-		return instructions;
 	}
 	
 	@Override
-	public List<JVMBytecodeEntity> visit(BooleanValueExpressionNode node, BranchContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+	public Void visit(BooleanValueExpressionNode node, BranchContext ctx) {
+		JVMInstructionBuffer code = ctx.code;
 		
-		instructions.add(
-			new JVMBytecodeInstruction("iconst_" + (node.getValue() ? 1 : 0)) 
+		code.add(
+			new JVMBytecodeInstruction(node.getValue() ? JVMOpcode.ICONST_1 : JVMOpcode.ICONST_0) 
 		);
 		
-		instructions.addAll(
-			generateBooleanValueInstructions(ctx)
-		);
+		emitBooleanValue(ctx);
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
-	public List<JVMBytecodeEntity> visit(IntegerValueExpressionNode node, BranchContext ctx) {
+	public Void visit(IntegerValueExpressionNode node, BranchContext ctx) {
 		int val = node.getValue();
 
-		return Arrays.asList(getLoadIntConstInstruction(val));
+		ctx.code.add(getLoadIntConstInstruction(val));
+		
+		return null;
 	}
 
 	@Override
-	public List<JVMBytecodeEntity> visit(RealValueExpressionNode node, BranchContext ctx) {
-		return Arrays.asList(new JVMBytecodeInstruction("ldc", node.getValue()));
+	public Void visit(RealValueExpressionNode node, BranchContext ctx) {
+		ctx.code.add(new JVMBytecodeInstruction(JVMOpcode.LDC, node.getValue()));
+		
+		return null;
 	}
 
 	@Override
-	public List<JVMBytecodeEntity> visit(VariableExpressionNode node, BranchContext ctx) {
+	public Void visit(VariableExpressionNode node, BranchContext ctx) {
 		String varName = node.getVariable();
 		VarType varType = node.getExpressionType();
 		
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+		JVMInstructionBuffer code = ctx.code;
 		
-		instructions.addAll(
-			Arrays.asList(
-				getLoadVariableInstr(varName, varType, ctx.localVariableContext)
-			)
-		);
+		code.add(getLoadVariableInstr(varName, varType, ctx.localVariableContext));
 		
 		if (varType == VarType.BOOLEAN_PRIMITIVE_TYPE) {
-			instructions.addAll(
-				generateBooleanValueInstructions(ctx)
-			);
+			emitBooleanValue(ctx);
 		}
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
-	public List<JVMBytecodeEntity> visit(RoutineCallExpressionNode node, BranchContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+	public Void visit(RoutineCallExpressionNode node, BranchContext ctx) {
+		JVMInstructionBuffer code = ctx.code;
 		
-		StringBuilder sb = new StringBuilder();
-		
-		sb.append(JVMCodeEmitterVisitor.PROGRAM_CLASS_NAME)
-			.append('/')
-			.append("_" + node.getRoutineName())
-			.append('(')
-		;
+		StringBuilder sb = new StringBuilder("(");
 		
 		FunctionType routineType = node.getRoutineType();
 		
 		node.getArguments().forEach(child -> {
 			ExpressionASTNode arg = (ExpressionASTNode) child;
 			
-			instructions.addAll(
-				arg.accept(this, ctx.copy(null, null, null))
-			);
+			arg.accept(this, ctx.copy(null, null, null));
 			
 			sb.append(JVMCodeEmitterVisitor.getMangledTypeName(arg.getExpressionType()));
 		});
@@ -257,22 +270,20 @@ public class JVMCodeEmitterExpressionVisitor implements ExpressionNodeVisitor<Li
 		sb.append(')')
 			.append(JVMCodeEmitterVisitor.getMangledTypeName(routineType.getReturnType()));
 		
-		instructions.add(
-			new JVMBytecodeInstruction("invokestatic", sb.toString())
+		code.add(
+			new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, new JVMMethodRef(JVMCodeEmitterVisitor.PROGRAM_CLASS_NAME, "_" + node.getRoutineName(), sb.toString()))
 		);
 		
 		if (routineType.getReturnType() == VarType.BOOLEAN_PRIMITIVE_TYPE) {
-			instructions.addAll(
-				generateBooleanValueInstructions(ctx)
-			);
+			emitBooleanValue(ctx);
 		}
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
-	public List<JVMBytecodeEntity> visit(UnaryOperatorExpressionNode node, BranchContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+	public Void visit(UnaryOperatorExpressionNode node, BranchContext ctx) {
+		JVMInstructionBuffer code = ctx.code;
 		
 		ExpressionASTNode unopValue = node.getValue(); 
 		
@@ -281,42 +292,38 @@ public class JVMCodeEmitterExpressionVisitor implements ExpressionNodeVisitor<Li
 		switch (unopType) {
 			case PLUS_BINOP:
 			case MINUS_BINOP:
-				instructions.addAll(unopValue.accept(this, ctx.copy(null, null, null)));
+				unopValue.accept(this, ctx.copy(null, null, null));
 				
 				if (unopType == UnaryOperatorType.MINUS_BINOP)
-					instructions.add(new JVMBytecodeInstruction(JVMBytecodeUtils.getOpcodePrefix(unopValue.getExpressionType()) + "neg"));
+					code.add(new JVMBytecodeInstruction(JVMOpcode.forMnemonic(JVMBytecodeUtils.getOpcodePrefix(unopValue.getExpressionType()) + "neg")));
 					
 				break;
 			case NOT_BINOP: {
-				String thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
-				String elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
+				JVMLabel thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
+				JVMLabel elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
 				
-				instructions.addAll(
-					node.getValue().accept(this, ctx.copy(
-								ctx.condition != null ? !ctx.condition : true, 
-								elseLabel, 
-								thenLabel
-							))
-				);
+				node.getValue().accept(this, ctx.copy(
+							ctx.condition != null ? !ctx.condition : true, 
+							elseLabel, 
+							thenLabel
+						));
 				
-				String endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+				JVMLabel endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 				
 				if (ctx.thenLabel == null) {
-					instructions.addAll(
-						Arrays.asList(
-							new JVMBytecodeInstructionLabeled(thenLabel, "iconst_1"),
-							new JVMBytecodeInstruction("goto", endLabel)
-						)
+					code.add(
+						new JVMBytecodeInstructionLabeled(thenLabel, JVMOpcode.ICONST_1),
+						new JVMBytecodeInstruction(JVMOpcode.GOTO, endLabel)
 					);
 				}
 				
 				if (ctx.elseLabel == null) {
-					instructions.add(
-						new JVMBytecodeInstructionLabeled(elseLabel, "iconst_0")
+					code.add(
+						new JVMBytecodeInstructionLabeled(elseLabel, JVMOpcode.ICONST_0)
 					);
 				}
 				
-				instructions.add(
+				code.add(
 					new JVMBytecodeLabel(endLabel)
 				);
 				
@@ -324,56 +331,54 @@ public class JVMCodeEmitterExpressionVisitor implements ExpressionNodeVisitor<Li
 			}
 		}
 		
-		return instructions;
+		return null;
 	}
 	
-	private List<JVMBytecodeInstruction> emitIntegerComparisonOpConditionalInstrs(BinaryOperatorType binopType, BranchContext ctx) {
+	private void emitIntegerComparisonOpConditionalInstrs(BinaryOperatorType binopType, BranchContext ctx) {
 		boolean condition = ctx.condition != null ? ctx.condition : false;
-		String label = condition ? ctx.thenLabel : ctx.elseLabel;
+		JVMLabel label = condition ? ctx.thenLabel : ctx.elseLabel;
 		
 		if (!condition)
 			binopType = REVERSED_BINOP_TYPE_MAPPER.get(binopType);
 		
-		return Arrays.asList(
-					new JVMBytecodeInstruction(INTEGER_COMPARISON_OPCODE_MAPPER.get(binopType), label)
-				);
+		ctx.code.add(
+			new JVMBytecodeInstruction(INTEGER_COMPARISON_OPCODE_MAPPER.get(binopType), label)
+		);
 	}
 	
-	private List<JVMBytecodeInstruction> emitRealComparisonOpConditionalInstrs(BinaryOperatorType binopType, BranchContext ctx) {
-		List<JVMBytecodeInstruction> instructions = new ArrayList<>();
+	private void emitRealComparisonOpConditionalInstrs(BinaryOperatorType binopType, BranchContext ctx) {
+		JVMInstructionBuffer code = ctx.code;
 		
 		switch (binopType) {
 			case GT_BINOP:
 			case GE_BINOP:
-				instructions.add(new JVMBytecodeInstruction("fcmpg"));
+				code.add(new JVMBytecodeInstruction(JVMOpcode.FCMPG));
 				break;
 			default:
-				instructions.add(new JVMBytecodeInstruction("fcmpl"));
+				code.add(new JVMBytecodeInstruction(JVMOpcode.FCMPL));
 				break;
 		}
 		
 		boolean condition = ctx.condition != null ? ctx.condition : false;
-		String label = condition ? ctx.thenLabel : ctx.elseLabel;
+		JVMLabel label = condition ? ctx.thenLabel : ctx.elseLabel;
 		
 		if (!condition)
 			binopType = REVERSED_BINOP_TYPE_MAPPER.get(binopType);
 		
-		instructions.add(
+		code.add(
 			new JVMBytecodeInstruction(REAL_COMPARISON_OPCODE_MAPPER.get(binopType), label)
 		);
-		
-		return instructions;
 	}
 	
-	private List<JVMBytecodeEntity> emitSCEJVMCode(BinaryOperatorExpressionNode node, BranchContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+	private void emitSCEJVMCode(BinaryOperatorExpressionNode node, BranchContext ctx) {
+		JVMInstructionBuffer code = ctx.code;
 
 		Boolean isORBinop = node.getBinaryOperatorType() == BinaryOperatorType.OR_BINOP;
 		
-		String thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
-		String elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
+		JVMLabel thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
+		JVMLabel elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
 		
-		String rightOperandLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+		JVMLabel rightOperandLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 		
 		BranchContext leftOpCtx = ctx.copy(
 				isORBinop,
@@ -381,154 +386,213 @@ public class JVMCodeEmitterExpressionVisitor implements ExpressionNodeVisitor<Li
 				isORBinop ? rightOperandLabel : elseLabel
 			);
 		
-		instructions.addAll(
-			node.getLeftChild().accept(this, leftOpCtx)
-		);
+		node.getLeftChild().accept(this, leftOpCtx);
 		
-		instructions.add(new JVMBytecodeLabel(rightOperandLabel));
-		instructions.addAll(
-			node.getRightChild().accept(this, ctx.copy(ctx.condition != null ? ctx.condition : false, thenLabel, elseLabel))
-		);
+		code.add(new JVMBytecodeLabel(rightOperandLabel));
+		node.getRightChild().accept(this, ctx.copy(ctx.condition != null ? ctx.condition : false, thenLabel, elseLabel));
 		
-		String endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+		JVMLabel endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 		
 		if (ctx.thenLabel == null) {
-			instructions.addAll(
-				Arrays.asList(
-					new JVMBytecodeInstructionLabeled(thenLabel, "iconst_1"),
-					new JVMBytecodeInstruction("goto", endLabel)
-				)
+			code.add(
+				new JVMBytecodeInstructionLabeled(thenLabel, JVMOpcode.ICONST_1),
+				new JVMBytecodeInstruction(JVMOpcode.GOTO, endLabel)
 			);
 		}
 		
 		if (ctx.elseLabel == null) {
-			instructions.add(
-				new JVMBytecodeInstructionLabeled(elseLabel, "iconst_0")
+			code.add(
+				new JVMBytecodeInstructionLabeled(elseLabel, JVMOpcode.ICONST_0)
 			);
 		}
 		
-		instructions.add(
+		code.add(
 			new JVMBytecodeLabel(endLabel)
 		);
-		
-		return instructions;
 	}
 	
-	private List<JVMBytecodeEntity> emitComparisonOpCode(BinaryOperatorExpressionNode node, BranchContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+	private void emitComparisonOpCode(BinaryOperatorExpressionNode node, BranchContext ctx) {
+		JVMInstructionBuffer code = ctx.code;
 		
-		instructions.addAll(node.getLeftChild().accept(this, ctx));
-		instructions.addAll(node.getRightChild().accept(this, ctx));
+		node.getLeftChild().accept(this, ctx);
+		node.getRightChild().accept(this, ctx);
 		
-		String thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
-		String elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
+		JVMLabel thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
+		JVMLabel elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
 		
 		BranchContext subctx = ctx.copy(ctx.condition, thenLabel, elseLabel);
 		
 		if (node.getLeftChild().getExpressionType() == VarType.INTEGER_PRIMITIVE_TYPE)
-			instructions.addAll(emitIntegerComparisonOpConditionalInstrs(node.getBinaryOperatorType(), subctx));
+			emitIntegerComparisonOpConditionalInstrs(node.getBinaryOperatorType(), subctx);
 		else
-			instructions.addAll(emitRealComparisonOpConditionalInstrs(node.getBinaryOperatorType(), subctx));
+			emitRealComparisonOpConditionalInstrs(node.getBinaryOperatorType(), subctx);
 		
-		String endLabel = null;
+		JVMLabel endLabel = null;
 		
 		if (ctx.thenLabel == null || ctx.elseLabel == null)
 			endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 		
 		if (ctx.thenLabel == null) {
-			instructions.add(
-				new JVMBytecodeInstructionLabeled(thenLabel, "iconst_1")
+			code.add(
+				new JVMBytecodeInstructionLabeled(thenLabel, JVMOpcode.ICONST_1)
 			);
 			
 			if (endLabel != null) {
-				instructions.add(
-					new JVMBytecodeInstruction("goto", endLabel)
+				code.add(
+					new JVMBytecodeInstruction(JVMOpcode.GOTO, endLabel)
 				);
 			}
 		}
 		
 		if (ctx.elseLabel == null) {
-			instructions.add(
-				new JVMBytecodeInstructionLabeled(elseLabel, "iconst_0")
+			code.add(
+				new JVMBytecodeInstructionLabeled(elseLabel, JVMOpcode.ICONST_0)
 			);
 		}
 		
 		if (endLabel != null) {
-			instructions.add(
+			code.add(
 				new JVMBytecodeLabel(endLabel)
 			);
 		}
-		
-		return instructions;
 	}
 	
 	@Override
-	public List<JVMBytecodeEntity> visit(BinaryOperatorExpressionNode node, BranchContext ctx) {		
-		String instrPrefix = JVMBytecodeUtils.getOpcodePrefix(node.getExpressionType());
-		
+	public Void visit(BinaryOperatorExpressionNode node, BranchContext ctx) {		
 		BinaryOperatorType binop = node.getBinaryOperatorType();
 		
-		String opcode = BINOP_OPCODE_MAPPER.get(binop);
-		
-		if (binop == BinaryOperatorType.AND_BINOP || binop == BinaryOperatorType.OR_BINOP)
-			return emitSCEJVMCode(node, ctx);
-		else if (INTEGER_COMPARISON_OPCODE_MAPPER.keySet().contains(binop))
-			return emitComparisonOpCode(node, ctx);
+		if (binop == BinaryOperatorType.AND_BINOP || binop == BinaryOperatorType.OR_BINOP) {
+			emitSCEJVMCode(node, ctx);
+			
+			return null;
+		} else if (INTEGER_COMPARISON_OPCODE_MAPPER.keySet().contains(binop)) {
+			emitComparisonOpCode(node, ctx);
+			
+			return null;
+		}
 		
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
-		instructions.addAll(node.getLeftChild().accept(this, ctx.copy(null, null, null)));
-		instructions.addAll(node.getRightChild().accept(this, ctx.copy(null, null, null)));
+		JVMInstructionBuffer code = ctx.code;
+		node.getLeftChild().accept(this, ctx.copy(null, null, null));
+		node.getRightChild().accept(this, ctx.copy(null, null, null));
 
-		instructions.add(
-			new JVMBytecodeInstruction(instrPrefix + opcode)
+		JVMOpcode opcode = (node.getExpressionType() == VarType.REAL_PRIMITIVE_TYPE
+				? REAL_BINOP_OPCODE_MAPPER
+				: INTEGER_BINOP_OPCODE_MAPPER
+		).get(binop);
+		
+		if (opcode == null)
+			throw new IllegalStateException("no opcode for " + binop + " on " + node.getExpressionType());
+		
+		code.add(new JVMBytecodeInstruction(opcode));
+		
+		return null;
+	}
+	
+	// Pushes the flat array and the row-major index of the first indices.size() dimensions of
+	// the layout. Each index is checked against its own dimension: past the end of a row it
+	// would still land in the flat array, in the next row.
+	private void emitFlatIndex(VariableExpressionNode base, List<ExpressionASTNode> indices, Layout layout, BranchContext ctx) {
+		JVMInstructionBuffer code = ctx.code;
+		
+		code.add(
+			getLoadVariableInstr(base.getVariable(), layout.getStorageType(), ctx.localVariableContext)
 		);
 		
-		return instructions;
+		for (int dimension = 0; dimension < indices.size(); ++dimension) {
+			if (dimension > 0) {
+				code.add(
+					getLoadIntConstInstruction(layout.getSize(dimension)),
+					new JVMBytecodeInstruction(JVMOpcode.IMUL)
+				);
+			}
+			
+			indices.get(dimension).accept(this, ctx.copy(null, null, null));
+			code.add(
+				getLoadIntConstInstruction(-1),
+				new JVMBytecodeInstruction(JVMOpcode.IADD),
+				getLoadIntConstInstruction(layout.getSize(dimension)),
+				new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, CHECK_INDEX)
+			);
+			
+			if (dimension > 0)
+				code.add(new JVMBytecodeInstruction(JVMOpcode.IADD));
+		}
+	}
+	
+	// the flat array and the index of the element node (a[i][j] of a flattened a) stands for
+	public void emitFlatElement(ArrayAccessExpressionNode node, Layout layout, BranchContext ctx) {
+		emitFlatIndex(
+			FlatArrayASTVisitor.getChainBase(node), 
+			FlatArrayASTVisitor.getChainIndices(node), 
+			layout, 
+			ctx
+		);
 	}
 	
 	@Override
-	public List<JVMBytecodeEntity> visit(ArrayAccessExpressionNode node, BranchContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+	public Void visit(ArrayAccessExpressionNode node, BranchContext ctx) {
+		JVMInstructionBuffer code = ctx.code;
 		
-		instructions.addAll(
-			node.getHolder().accept(this, ctx.copy(null, null, null))
-		);
-		instructions.addAll(
-			node.getIndex().accept(this, ctx.copy(null, null, null))
-		);
-		instructions.addAll(
-			Arrays.asList(
-				getLoadIntConstInstruction(-1),
-				new JVMBytecodeInstruction("iadd")
-			)
+		Layout layout = flatArrays.getLayout(node);
+		
+		if (layout != null) {
+			emitFlatElement(node, layout, ctx);
+			code.add(
+				new JVMBytecodeInstruction(JVMOpcode.forMnemonic(JVMBytecodeUtils.getOpcodePrefixForArray(layout.getElementType()) + "aload"))
+			);
+			
+			return null;
+		}
+		
+		node.getHolder().accept(this, ctx.copy(null, null, null));
+		node.getIndex().accept(this, ctx.copy(null, null, null));
+		code.add(
+			getLoadIntConstInstruction(-1),
+			new JVMBytecodeInstruction(JVMOpcode.IADD)
 		);
 		
 		ArrayType arrayType = (ArrayType) node.getHolder().getExpressionType();
 		
 		final String opcode = JVMBytecodeUtils.getOpcodePrefixForArray(arrayType.getElementType());
 		
-		instructions.add(
-			new JVMBytecodeInstruction(opcode + "aload")
+		code.add(
+			new JVMBytecodeInstruction(JVMOpcode.forMnemonic(opcode + "aload"))
 		);
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
-	public List<JVMBytecodeEntity> visit(PropertyAccessExpressionNode node, BranchContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+	public Void visit(PropertyAccessExpressionNode node, BranchContext ctx) {
+		JVMInstructionBuffer code = ctx.code;
 		
 		ExpressionASTNode holder = node.getPropertyHolder();
 		VarType holderType = holder.getExpressionType();
 		
 		String prop = node.getPropertyName();
 		
-		instructions.addAll(
-			holder.accept(this, ctx.copy(null, null, null))
-		);
+		Layout layout = holderType.getTag() == Tag.ARRAY ? flatArrays.getLayout(holder) : null;
+		
+		// the lengths of a flattened array are constants, the indices are still evaluated and checked
+		if (layout != null) {
+			List<ExpressionASTNode> indices = FlatArrayASTVisitor.getChainIndices(holder);
+			
+			if (!indices.isEmpty()) {
+				emitFlatIndex(FlatArrayASTVisitor.getChainBase(holder), indices, layout, ctx);
+				code.add(new JVMBytecodeInstruction(JVMOpcode.POP2));
+			}
+			
+			code.add(
+				getLoadIntConstInstruction(layout.getSize(indices.size()))
+			);
+			
+			return null;
+		}
+		
+		holder.accept(this, ctx.copy(null, null, null));
 		
 		if (holderType.getTag() == Tag.ARRAY && "length".equals(prop)) {
-			instructions.add(new JVMBytecodeInstruction("arraylength"));
+			code.add(new JVMBytecodeInstruction(JVMOpcode.ARRAYLENGTH));
 		} else {
 			RecordType recordType = (RecordType) holderType;
 			
@@ -545,19 +609,22 @@ public class JVMCodeEmitterExpressionVisitor implements ExpressionNodeVisitor<Li
 				++fieldIndex;
 			}
 			
-			instructions.add(new JVMBytecodeInstruction(
-					"getfield", 
-					JVMCodeEmitterVisitor.PROGRAM_JVM_PACKAGE + "/" + JVMBytecodeUtils.getTypeDescriptor(recordType) + "/field" + fieldIndex,
-					JVMCodeEmitterVisitor.getMangledTypeName(fieldType)
+			code.add(new JVMBytecodeInstruction(
+					JVMOpcode.GETFIELD, 
+					new JVMFieldRef(
+						JVMCodeEmitterVisitor.PROGRAM_JVM_PACKAGE + "/" + JVMBytecodeUtils.getTypeDescriptor(recordType),
+						"field" + fieldIndex,
+						JVMCodeEmitterVisitor.getMangledTypeName(fieldType)
+					)
 				)
 			);
 		}
 		
-		return instructions;
+		return null;
 	}
 	
 	@Override
-	public List<JVMBytecodeEntity> visit(ImplicitCastExpressionNode node, BranchContext ctx) {
+	public Void visit(ImplicitCastExpressionNode node, BranchContext ctx) {
 		ExpressionASTNode castExpr = node.getArgument();
 		
 		VarType targetType = node.getTargetType();
@@ -566,64 +633,54 @@ public class JVMCodeEmitterExpressionVisitor implements ExpressionNodeVisitor<Li
 		if (targetType.equals(actualCastExprType))
 			return castExpr.accept(this, ctx.copy(null, null, null));
 		
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+		JVMInstructionBuffer code = ctx.code;
 		
 		if (actualCastExprType == VarType.BOOLEAN_PRIMITIVE_TYPE 
 				&& (castExpr.getExpressionNodeType() == ExpressionNodeType.UNOP_EXPR_NODE 
 				|| castExpr.getExpressionNodeType() == ExpressionNodeType.BINOP_EXPR_NODE
 			)) {
-			instructions.addAll(
-				castExpr.accept(this, ctx.copy(null, null, null))
-			);
-			instructions.addAll(
-				generateBooleanValueInstructions(ctx.copy(false, null, null))
-			);
+			castExpr.accept(this, ctx.copy(null, null, null));
+			emitBooleanValue(ctx.copy(false, null, null));
 		} else {
-			instructions.addAll(
-				castExpr.accept(this, ctx.copy(null, null, null))
-			);
+			castExpr.accept(this, ctx.copy(null, null, null));
 		}
 	
 		if (actualCastExprType == VarType.INTEGER_PRIMITIVE_TYPE && targetType == VarType.REAL_PRIMITIVE_TYPE)
-			instructions.add(new JVMBytecodeInstruction("i2f"));
+			code.add(new JVMBytecodeInstruction(JVMOpcode.I2F));
 		else if (actualCastExprType == VarType.INTEGER_PRIMITIVE_TYPE && targetType == VarType.BOOLEAN_PRIMITIVE_TYPE) {
-			String afterCheckLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+			JVMLabel afterCheckLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 			
-			instructions.addAll(
-				Arrays.asList(
-					new JVMBytecodeInstruction("dup"),
-					new JVMBytecodeInstruction("ifeq", afterCheckLabel),
-					
-					new JVMBytecodeInstruction("dup"),
-					new JVMBytecodeInstruction("iconst_1"),
-					new JVMBytecodeInstruction("if_icmpeq", afterCheckLabel),
-					
-					new JVMBytecodeInstruction("new", "java/lang/RuntimeException"),
-					new JVMBytecodeInstruction("dup"),
-					new JVMBytecodeInstruction("ldc", "\"unable to convert integer to boolean\""),
-					new JVMBytecodeInstruction("invokespecial", "java/lang/RuntimeException/<init>(Ljava/lang/String;)V"),
-					new JVMBytecodeInstruction("athrow"),
-					
-					new JVMBytecodeLabel(afterCheckLabel) 
-				)
+			code.add(
+				new JVMBytecodeInstruction(JVMOpcode.DUP),
+				new JVMBytecodeInstruction(JVMOpcode.IFEQ, afterCheckLabel),
+				
+				new JVMBytecodeInstruction(JVMOpcode.DUP),
+				new JVMBytecodeInstruction(JVMOpcode.ICONST_1),
+				new JVMBytecodeInstruction(JVMOpcode.IF_ICMPEQ, afterCheckLabel),
+				
+				new JVMBytecodeInstruction(JVMOpcode.NEW, "java/lang/RuntimeException"),
+				new JVMBytecodeInstruction(JVMOpcode.DUP),
+				new JVMBytecodeInstruction(JVMOpcode.LDC, "unable to convert integer to boolean"),
+				new JVMBytecodeInstruction(JVMOpcode.INVOKESPECIAL, new JVMMethodRef("java/lang/RuntimeException", "<init>", "(Ljava/lang/String;)V")),
+				new JVMBytecodeInstruction(JVMOpcode.ATHROW),
+				
+				new JVMBytecodeLabel(afterCheckLabel)
 			);
 			
 			if (ctx.thenLabel != null && ctx.elseLabel != null) {
-				instructions.addAll(
-					generateBooleanValueInstructions(ctx)
-				);	
+				emitBooleanValue(ctx);	
 			}
 		}
 		else if (actualCastExprType == VarType.BOOLEAN_PRIMITIVE_TYPE && targetType == VarType.REAL_PRIMITIVE_TYPE)
-			instructions.add(new JVMBytecodeInstruction("i2f"));
+			code.add(new JVMBytecodeInstruction(JVMOpcode.I2F));
 		else if (actualCastExprType == VarType.REAL_PRIMITIVE_TYPE && targetType == VarType.INTEGER_PRIMITIVE_TYPE)
-			instructions.add(new JVMBytecodeInstruction("f2i"));
+			code.add(new JVMBytecodeInstruction(JVMOpcode.F2I));
 		
-		return instructions;
+		return null;
 	}
 	
 	@Override
-	public List<JVMBytecodeEntity> visit(EmptyExpressionNode node, BranchContext ctx) {
-		return Collections.emptyList();
+	public Void visit(EmptyExpressionNode node, BranchContext ctx) {
+		return null;
 	}
 }
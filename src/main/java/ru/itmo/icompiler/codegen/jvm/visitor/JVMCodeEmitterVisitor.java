@@ -4,13 +4,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinTask;
 
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeClass;
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeDirective;
@@ -20,10 +23,20 @@ import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction;
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.JVMBytecodeInstructionLabeled;
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.JVMBytecodeLabel;
 import ru.itmo.icompiler.codegen.jvm.JVMBytecodeMethod;
+import ru.itmo.icompiler.codegen.jvm.JVMFieldRef;
+import ru.itmo.icompiler.codegen.jvm.JVMInstructionBuffer;
+import ru.itmo.icompiler.codegen.jvm.JVMLabel;
+import ru.itmo.icompiler.codegen.jvm.JVMMethodLimits;
+import ru.itmo.icompiler.codegen.jvm.JVMMethodRef;
+import ru.itmo.icompiler.codegen.jvm.JVMOpcode;
+import ru.itmo.icompiler.codegen.jvm.JVMPeepholeOptimizer;
+import ru.itmo.icompiler.codegen.jvm.JVMPrintRuntime;
+import ru.itmo.icompiler.codegen.jvm.JVMStackMapFrames;
 import ru.itmo.icompiler.codegen.jvm.utils.JVMBytecodeUtils;
 import static ru.itmo.icompiler.codegen.jvm.utils.JVMBytecodeUtils.classSpecs;
 import static ru.itmo.icompiler.codegen.jvm.utils.JVMBytecodeUtils.fieldSpecs;
 import static ru.itmo.icompiler.codegen.jvm.utils.JVMBytecodeUtils.methodSpecs;
+import ru.itmo.icompiler.codegen.jvm.visitor.FlatArrayASTVisitor.Layout;
 import ru.itmo.icompiler.codegen.jvm.visitor.JVMCodeEmitterExpressionVisitor.BranchContext;
 import ru.itmo.icompiler.codegen.jvm.visitor.JVMCodeEmitterVisitor.ExpressionVisitorContext;
 import ru.itmo.icompiler.lex.Token;
@@ -36,6 +49,7 @@ import ru.itmo.icompiler.semantic.RecordType.RecordProperty;
 import ru.itmo.icompiler.semantic.VarType;
 import ru.itmo.icompiler.semantic.VarType.Tag;
 import ru.itmo.icompiler.semantic.visitor.ASTVisitor;
+import ru.itmo.icompiler.semantic.visitor.ExpressionNodeVisitor;
 import ru.itmo.icompiler.syntax.ast.ASTNode;
 import ru.itmo.icompiler.syntax.ast.BreakStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.CompoundStatementASTNode;
@@ -56,29 +70,23 @@ import ru.itmo.icompiler.syntax.ast.WhileStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.expression.ArrayAccessExpressionNode;
 import ru.itmo.icompiler.syntax.ast.expression.BinaryOperatorExpressionNode;
 import ru.itmo.icompiler.syntax.ast.expression.BinaryOperatorExpressionNode.BinaryOperatorType;
+import ru.itmo.icompiler.syntax.ast.expression.BooleanValueExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.EmptyExpressionNode;
 import ru.itmo.icompiler.syntax.ast.expression.ExpressionASTNode;
+import ru.itmo.icompiler.syntax.ast.expression.ImplicitCastExpressionNode;
 import ru.itmo.icompiler.syntax.ast.expression.IntegerValueExpressionNode;
 import ru.itmo.icompiler.syntax.ast.expression.PropertyAccessExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.RealValueExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.RoutineCallExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.UnaryOperatorExpressionNode;
 import ru.itmo.icompiler.syntax.ast.expression.VariableExpressionNode;
 
+// Statements and expressions append their code to the buffer of the method in the context
+// and return null; a program gives its classes and a routine definition its method.
 public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>, ExpressionVisitorContext> {
 	public static final String PROGRAM_JVM_PACKAGE = "ilang"; 
 	public static final String PROGRAM_CLASS_NAME = PROGRAM_JVM_PACKAGE + "/" + "Program"; 
 	
-	private static class Limits implements Cloneable {
-		private int localVariablesCount;
-		private int stackSize;
-		
-		public Limits(int localVariablesCount, int stackSize) {
-			this.localVariablesCount = localVariablesCount;
-			this.stackSize = stackSize;
-		}
-		
-		public Limits clone() {
-			return new Limits(localVariablesCount, stackSize);
-		}
-	}
-	
 	public static class LocalVariableContext {
 		private LocalVariableContext parentContext;
 		private Map<String, Integer> indices;
@@ -151,21 +159,24 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		
 		private IntCounter labelCounter;
 		
-		private String thenLabel; // short-circuit eval
-		private String elseLabel; // short-circuit eval
+		private JVMLabel thenLabel; // short-circuit eval
+		private JVMLabel elseLabel; // short-circuit eval
+		
+		private JVMLabel loopStartLabel; 
+		private JVMLabel loopConditionalLabel;
+		private JVMLabel loopEndLabel;
 		
-		private String loopStartLabel; 
-		private String loopConditionalLabel;
-		private String loopEndLabel;
+		private JVMInstructionBuffer code; // the method being emitted
 		
 		public ExpressionVisitorContext(
 					LocalVariableContext localVarCtx, 
 					IntCounter labelCounter, 
-					String thenLabel, 
-					String elseLabel,
-					String loopStartLabel,
-					String loopConditionalLabel,
-					String loopEndLabel
+					JVMLabel thenLabel, 
+					JVMLabel elseLabel,
+					JVMLabel loopStartLabel,
+					JVMLabel loopConditionalLabel,
+					JVMLabel loopEndLabel,
+					JVMInstructionBuffer code
 				) {
 			this.localVarCtx = localVarCtx;
 			this.labelCounter = labelCounter;
@@ -176,10 +187,12 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			this.loopStartLabel = loopStartLabel;
 			this.loopConditionalLabel = loopConditionalLabel;
 			this.loopEndLabel = loopEndLabel;
+			
+			this.code = code;
 		}
 		
 		public ExpressionVisitorContext() {
-			this(new LocalVariableContext(), new IntCounter(), null, null, null, null, null);
+			this(new LocalVariableContext(), new IntCounter(), null, null, null, null, null, null);
 		}
 		
 		public LocalVariableContext getLocalVariableContext() {
@@ -190,42 +203,149 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			return labelCounter;
 		}
 		
-		public String getThenLabel() {
+		public JVMLabel getThenLabel() {
 			return thenLabel;
 		}
 		
-		public String getElseLabel() {
+		public JVMLabel getElseLabel() {
 			return elseLabel;
 		}
 		
+		public JVMInstructionBuffer getCode() {
+			return code;
+		}
+		
 		public BranchContext toBranchContext(Boolean condition) {
 			return toBranchContext(condition, thenLabel, elseLabel);
 		}
 		
-		public BranchContext toBranchContext(Boolean condition, String thenLabel, String elseLabel) {
-			return new BranchContext(condition, thenLabel, elseLabel, localVarCtx, labelCounter);
+		public BranchContext toBranchContext(Boolean condition, JVMLabel thenLabel, JVMLabel elseLabel) {
+			return new BranchContext(condition, thenLabel, elseLabel, localVarCtx, labelCounter, code);
+		}
+	}
+	
+	// a routine emitted by a visitor of its own, with the records and print methods it uses
+	private static class EmittedRoutine {
+		private final JVMBytecodeMethod method;
+		private final Set<RecordType> declaredRecords;
+		private final Set<String> printDescriptors;
+		
+		public EmittedRoutine(JVMBytecodeMethod method, Set<RecordType> declaredRecords, Set<String> printDescriptors) {
+			this.method = method;
+			this.declaredRecords = declaredRecords;
+			this.printDescriptors = printDescriptors;
 		}
 	}
 	
+	// whether evaluating an expression may call a routine, which may print
+	private static class RoutineCallFinder implements ExpressionNodeVisitor<Boolean, Void> {
+		@Override
+		public Boolean visit(BooleanValueExpressionNode node, Void arg) {
+			return false;
+		}
+		
+		@Override
+		public Boolean visit(IntegerValueExpressionNode node, Void arg) {
+			return false;
+		}
+		
+		@Override
+		public Boolean visit(RealValueExpressionNode node, Void arg) {
+			return false;
+		}
+		
+		@Override
+		public Boolean visit(VariableExpressionNode node, Void arg) {
+			return false;
+		}
+		
+		@Override
+		public Boolean visit(RoutineCallExpressionNode node, Void arg) {
+			return true;
+		}
+		
+		@Override
+		public Boolean visit(UnaryOperatorExpressionNode node, Void arg) {
+			return node.getValue().accept(this, arg);
+		}
+		
+		@Override
+		public Boolean visit(BinaryOperatorExpressionNode node, Void arg) {
+			return node.getLeftChild().accept(this, arg) || node.getRightChild().accept(this, arg);
+		}
+		
+		@Override
+		public Boolean visit(ArrayAccessExpressionNode node, Void arg) {
+			return node.getHolder().accept(this, arg) || node.getIndex().accept(this, arg);
+		}
+		
+		@Override
+		public Boolean visit(PropertyAccessExpressionNode node, Void arg) {
+			return node.getPropertyHolder().accept(this, arg);
+		}
+		
+		@Override
+		public Boolean visit(ImplicitCastExpressionNode node, Void arg) {
+			return node.getArgument().accept(this, arg);
+		}
+		
+		@Override
+		public Boolean visit(EmptyExpressionNode node, Void arg) {
+			return false;
+		}
+	}
+	
+	private static final RoutineCallFinder ROUTINE_CALL_FINDER = new RoutineCallFinder();
+	
+	// the state of the routine being emitted: every routine is emitted by a visitor of its own
 	private int freshVariableCount = 0;
-	private int maxLocalVarNumber = 0;
 	
-	private Stack<Limits> contextStack;
+	// the local the next variable declared gets; a scope gives its locals back when it ends
+	private int localVariablesCount = 0;
+	
 	private JVMCodeEmitterExpressionVisitor expressionVisitor;
 	
 	private FunctionType currentRoutineType;
 	
 	private Set<RecordType> declaredRecords;
 	
+	// the argument types of the print statements, each one is a method of JVMPrintRuntime
+	private Set<String> printDescriptors;
+	
 	private String sourceName;
 	
-	public JVMCodeEmitterVisitor(String sourceName) {
-		contextStack = new Stack<>();
-		expressionVisitor = new JVMCodeEmitterExpressionVisitor();
+	// null when the methods are left as emitted
+	private JVMPeepholeOptimizer peepholeOptimizer;
+	
+	// nested arrays of primitives stored as flat ones where possible, shared by the routine visitors
+	private boolean flattenArrays;
+	private FlatArrayASTVisitor flatArrays;
+	
+	private JVMCodeEmitterVisitor(String sourceName, JVMPeepholeOptimizer peepholeOptimizer, FlatArrayASTVisitor flatArrays) {
+		expressionVisitor = new JVMCodeEmitterExpressionVisitor(flatArrays);
 		
-		declaredRecords = new HashSet<>();
+		declaredRecords = new LinkedHashSet<>();
+		printDescriptors = new TreeSet<>();
 		
 		this.sourceName = sourceName;
+		this.peepholeOptimizer = peepholeOptimizer;
+		this.flatArrays = flatArrays;
+	}
+	
+	public JVMCodeEmitterVisitor(String sourceName, JVMPeepholeOptimizer peepholeOptimizer) {
+		this(sourceName, peepholeOptimizer, new FlatArrayASTVisitor());
+	}
+	
+	public JVMCodeEmitterVisitor(String sourceName) {
+		this(sourceName, null);
+	}
+	
+	public boolean isFlattenArrays() {
+		return flattenArrays;
+	}
+	
+	public void setFlattenArrays(boolean flattenArrays) {
+		this.flattenArrays = flattenArrays;
 	}
 	
 	public static final Map<VarType, String> PRIMITIVE_TYPE_MAPPER = Map.ofEntries(
@@ -250,27 +370,39 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		}
 	}
 		
+	// the type a variable is stored as: the flat array for a flattened one
+	private VarType getStorageType(VariableDeclarationASTNode declNode) {
+		Layout layout = flatArrays.getLayout(declNode);
+		
+		return layout != null ? layout.getStorageType() : declNode.getVarType();
+	}
+	
 	private String newFreshVariable() {
 		return "FV#" + freshVariableCount++;
 	}
 	
-	private static List<JVMBytecodeEntity> initArrayVar(SizedArrayType arrayType) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+	private static void initArrayVar(SizedArrayType arrayType, JVMInstructionBuffer code) {
 		VarType elementType = arrayType.getElementType();
 		
-		instructions.add(
+		code.add(
 			JVMCodeEmitterExpressionVisitor.getLoadIntConstInstruction(arrayType.getSize())
 		);
 		
 		if (elementType.getTag() == Tag.PRIMITIVE)
-			instructions.add(new JVMBytecodeInstruction("newarray", JVMBytecodeUtils.getTypename(elementType)));
-		else if (elementType.getTag() == Tag.ARRAY) {
+			code.add(new JVMBytecodeInstruction(JVMOpcode.NEWARRAY, JVMBytecodeUtils.getTypename(elementType)));
+		else if (elementType.getTag() == Tag.RECORD) {
+			String recordJVMClass = PROGRAM_JVM_PACKAGE + "/" + JVMBytecodeUtils.getTypeDescriptor(elementType);
+			
+			code.add(
+				new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, new JVMMethodRef(recordJVMClass, "array", "(I)" + getMangledTypeName(arrayType)))
+			);
+		} else if (elementType.getTag() == Tag.ARRAY) {
 			int dimensions = 1;
 			
 			while (elementType.getTag() == Tag.ARRAY) {
 				SizedArrayType elementArrayType = (SizedArrayType) elementType; 
 				
-				instructions.add(
+				code.add(
 					JVMCodeEmitterExpressionVisitor.getLoadIntConstInstruction(elementArrayType.getSize())
 				);
 				++dimensions;
@@ -278,34 +410,31 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 				elementType = elementArrayType.getElementType(); 
 			}
 			
-			instructions.add(
+			code.add(
 				new JVMBytecodeInstruction(
-					"multianewarray", 
+					JVMOpcode.MULTIANEWARRAY, 
 					getMangledTypeName(arrayType),
 					dimensions
 				)
 			);
 		}
-		
-		return instructions;
 	}
 	
-	private static List<JVMBytecodeEntity> initRecordVar(RecordType recordType) {
-		String recordJVMClass = PROGRAM_JVM_PACKAGE + "/" + JVMBytecodeUtils.getTypeDescriptor(recordType);
-		
-		return Arrays.asList(
-			new JVMBytecodeInstruction("new", recordJVMClass),
+	private static void initRecordVar(RecordType recordType, JVMInstructionBuffer code) {
+		initRecordVar(PROGRAM_JVM_PACKAGE + "/" + JVMBytecodeUtils.getTypeDescriptor(recordType), code);
+	}
+	
+	private static void initRecordVar(String recordJVMClass, JVMInstructionBuffer code) {
+		code.add(
+			new JVMBytecodeInstruction(JVMOpcode.NEW, recordJVMClass),
 			
-			new JVMBytecodeInstruction("dup"),
-			new JVMBytecodeInstruction("invokespecial", recordJVMClass + "/<init>()V")
+			new JVMBytecodeInstruction(JVMOpcode.DUP),
+			new JVMBytecodeInstruction(JVMOpcode.INVOKESPECIAL, new JVMMethodRef(recordJVMClass, "<init>", "()V"))
 		);
 	}
 	
 	private JVMBytecodeMethod emitCodeForProgramClassInit(Map<String, VariableDeclarationASTNode> globalDeclarations) {
-		List<JVMBytecodeEntity> clinitMethodInstructions = new ArrayList<>();
-		
-		int localVarsCount = 1;
-		int stackSize = 10;
+		JVMInstructionBuffer code = new JVMInstructionBuffer();
 		
 		IntCounter labelCounter = new IntCounter(); 
 		
@@ -313,57 +442,45 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			String varName = entry.getKey();
 			
 			VariableDeclarationASTNode declNode = entry.getValue();
-			VarType varType = declNode.getVarType();
+			VarType varType = getStorageType(declNode);
 			
 			switch (varType.getTag()) {
 				case PRIMITIVE: {
 					if (declNode.getChildren().isEmpty()) {
-						clinitMethodInstructions.addAll(
-							JVMBytecodeUtils.pushDefaultValueForType(varType)
-						);
+						code.addAll(JVMBytecodeUtils.pushDefaultValueForType(varType));
 					} else {
 						VariableAssignmentASTNode assignNode = (VariableAssignmentASTNode) declNode.getChild(0);
 						ExpressionASTNode assignExprNode = assignNode.getValueNode();
-						clinitMethodInstructions.addAll(
-							assignExprNode.accept(expressionVisitor, new BranchContext(null, null, null, null, labelCounter))
-						);
+						assignExprNode.accept(expressionVisitor, new BranchContext(null, null, null, null, labelCounter, code));
 					}
 					
 					break;
 				} 
 				case ARRAY: {
-					clinitMethodInstructions.addAll(
-						initArrayVar((SizedArrayType) varType)
-					);
+					initArrayVar((SizedArrayType) varType, code);
 					break;
 				} 
 				case RECORD: {
-					clinitMethodInstructions.addAll(
-						initRecordVar((RecordType) varType)
-					);
+					initRecordVar((RecordType) varType, code);
 					break;
 				}
 			}
 			
-			clinitMethodInstructions.add(
-				new JVMBytecodeInstruction("putstatic", PROGRAM_CLASS_NAME + "/" + varName, getMangledTypeName(varType))
+			code.add(
+				new JVMBytecodeInstruction(JVMOpcode.PUTSTATIC, new JVMFieldRef(PROGRAM_CLASS_NAME, varName, getMangledTypeName(varType)))
 			);
 		}
 		
-		clinitMethodInstructions.add(
-			new JVMBytecodeInstruction("return")
+		code.add(
+			new JVMBytecodeInstruction(JVMOpcode.RETURN)
 		);
-		
-		stackSize = JVMBytecodeUtils.maxStackSize(clinitMethodInstructions);
 
 		return new JVMBytecodeMethod(
 					methodSpecs(JVMBytecodeMethod.AccessSpec.STATIC),
 					"<clinit>",
 					Collections.emptyList(),
 					"V",
-					localVarsCount,
-					stackSize,
-					clinitMethodInstructions
+					code.getInstructions()
 				);
 	}
 	
@@ -371,10 +488,10 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		class RoutineCaseInfo {
 			String routineName;
 			int hashCode;
-			String label;
+			JVMLabel label;
 			List<JVMBytecodeEntity> caseInstructions;
 			
-			public RoutineCaseInfo(String routineName, int hashCode, String label, List<JVMBytecodeEntity> caseInstructions) {
+			public RoutineCaseInfo(String routineName, int hashCode, JVMLabel label, List<JVMBytecodeEntity> caseInstructions) {
 				this.routineName = routineName;
 				this.hashCode = hashCode;
 				this.label = label;
@@ -391,68 +508,65 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		
 		IntCounter labelCounter = new IntCounter();
 		
-		Map<Integer, String> switchMap = new TreeMap<>();
+		Map<Integer, JVMLabel> switchMap = new TreeMap<>();
 		List<RoutineCaseInfo> routineCaseInfos = new ArrayList<>();
 		
-		int locals = 0;
-		int stackSize = 10;
-		
 		for (RoutineDeclarationASTNode declNode: routines) {
 			final String routineName = declNode.getRoutineName(); 
-			final String caseLabel = CodeEmitterUtils.allocateLabel(labelCounter);
+			final JVMLabel caseLabel = CodeEmitterUtils.allocateLabel(labelCounter);
 			
 			List<VariableDeclarationASTNode> argsDeclarations = declNode.getArgumentsDeclarations(); 
 			
 			List<JVMBytecodeEntity> caseBody = new ArrayList<>();
 			List<JVMBytecodeEntity> loadArgsInstrs = new ArrayList<>();
 			
-			StringBuilder routineFullMangledName = new StringBuilder("_").append(routineName).append("(");
+			StringBuilder routineDescriptor = new StringBuilder("(");
 			
 			for (int i = 1; i <= argsDeclarations.size(); ++i) {
 				VariableDeclarationASTNode argDecl = argsDeclarations.get(i - 1);
 
 				caseBody.addAll(
 					List.of(
-						new JVMBytecodeInstruction("aload_0"),
+						new JVMBytecodeInstruction(JVMOpcode.ALOAD_0),
 						JVMCodeEmitterExpressionVisitor.getLoadIntConstInstruction(i),
-						new JVMBytecodeInstruction("aaload")
+						new JVMBytecodeInstruction(JVMOpcode.AALOAD)
 					)
 				);
 				
 				VarType argType = argDecl.getVarType();
-				routineFullMangledName.append(getMangledTypeName(argType));
+				routineDescriptor.append(getMangledTypeName(argType));
 				
 				if (argType == VarType.BOOLEAN_PRIMITIVE_TYPE) {
 					caseBody.addAll(
 						List.of(
-							new JVMBytecodeInstruction("invokestatic", "java/lang/Boolean/parseBoolean(Ljava/lang/String;)Z"),
-							new JVMBytecodeInstruction("istore", i)
+							new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, new JVMMethodRef("java/lang/Boolean", "parseBoolean", "(Ljava/lang/String;)Z")),
+							new JVMBytecodeInstruction(JVMOpcode.ISTORE, i)
 						)
 					);
 					
-					loadArgsInstrs.add(new JVMBytecodeInstruction("iload", i));
+					loadArgsInstrs.add(new JVMBytecodeInstruction(JVMOpcode.ILOAD, i));
 				} else if (argType == VarType.INTEGER_PRIMITIVE_TYPE) {
 					caseBody.addAll(
 						List.of(
-							new JVMBytecodeInstruction("invokestatic", "java/lang/Integer/parseInt(Ljava/lang/String;)I"),
-							new JVMBytecodeInstruction("istore", i)
+							new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, new JVMMethodRef("java/lang/Integer", "parseInt", "(Ljava/lang/String;)I")),
+							new JVMBytecodeInstruction(JVMOpcode.ISTORE, i)
 						)
 					);
 					
-					loadArgsInstrs.add(new JVMBytecodeInstruction("iload", i));
+					loadArgsInstrs.add(new JVMBytecodeInstruction(JVMOpcode.ILOAD, i));
 				} else {
 					caseBody.addAll(
 						List.of(
-							new JVMBytecodeInstruction("invokestatic", "java/lang/Float/parseFloat(Ljava/lang/String;)F"),
-							new JVMBytecodeInstruction("fstore", i)
+							new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, new JVMMethodRef("java/lang/Float", "parseFloat", "(Ljava/lang/String;)F")),
+							new JVMBytecodeInstruction(JVMOpcode.FSTORE, i)
 						)
 					);
 					
-					loadArgsInstrs.add(new JVMBytecodeInstruction("fload", i));
+					loadArgsInstrs.add(new JVMBytecodeInstruction(JVMOpcode.FLOAD, i));
 				}
 			}
 			
-			routineFullMangledName
+			routineDescriptor
 				.append(")")
 				.append(
 					getMangledTypeName(declNode.getResultType())
@@ -460,17 +574,15 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			
 			caseBody.addAll(loadArgsInstrs);
 			caseBody.add(
-				new JVMBytecodeInstruction("invokestatic", PROGRAM_CLASS_NAME + "/" + routineFullMangledName.toString())
+				new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, new JVMMethodRef(PROGRAM_CLASS_NAME, "_" + routineName, routineDescriptor.toString()))
 			);
 			
 			if (declNode.getResultType() != VarType.VOID_TYPE) {
 				caseBody.add(
-					new JVMBytecodeInstruction("pop")
+					new JVMBytecodeInstruction(JVMOpcode.POP)
 				);
 			}
 			
-			locals = Math.max(locals, argsDeclarations.size());
-			
 			switchMap.put(routineName.hashCode(), caseLabel);
 			
 			RoutineCaseInfo caseInfo = new RoutineCaseInfo(routineName, routineName.hashCode(), caseLabel, caseBody);
@@ -479,15 +591,17 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		
 		List<JVMBytecodeEntity> instructions = new ArrayList<>();
 		
-		String retLabel = CodeEmitterUtils.allocateLabel(labelCounter);
+		JVMLabel retLabel = CodeEmitterUtils.allocateLabel(labelCounter);
 		
 		instructions.addAll(
 			List.of(
-				new JVMBytecodeInstruction("aload_0"),
-				new JVMBytecodeInstruction("iconst_0"),
-				new JVMBytecodeInstruction("aaload"),
+				new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, JVMPrintRuntime.getInstallMethodRef()),
 				
-				new JVMBytecodeInstruction("invokevirtual", "java/lang/String/hashCode()I"),
+				new JVMBytecodeInstruction(JVMOpcode.ALOAD_0),
+				new JVMBytecodeInstruction(JVMOpcode.ICONST_0),
+				new JVMBytecodeInstruction(JVMOpcode.AALOAD),
+				
+				new JVMBytecodeInstruction(JVMOpcode.INVOKEVIRTUAL, new JVMMethodRef("java/lang/String", "hashCode", "()I")),
 				new JVMBytecodeInstruction.LookupSwitchInstruction(switchMap, retLabel)
 			)
 		);
@@ -495,33 +609,26 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		routineCaseInfos.forEach(caseInfo -> {
 			instructions.add(new JVMBytecodeLabel(caseInfo.label));
 			instructions.addAll(caseInfo.caseInstructions);
-			instructions.add(new JVMBytecodeInstruction("goto", retLabel));
+			instructions.add(new JVMBytecodeInstruction(JVMOpcode.GOTO, retLabel));
 		});
 		
-		instructions.add(new JVMBytecodeInstructionLabeled(retLabel, "return"));
+		instructions.add(new JVMBytecodeInstructionLabeled(retLabel, JVMOpcode.RETURN));
 		
 		return new JVMBytecodeMethod(
 					methodSpecs(JVMBytecodeMethod.AccessSpec.PUBLIC, JVMBytecodeMethod.AccessSpec.STATIC), 
 					"main", 
 					List.of("[Ljava/lang/String;"), 
 					"V", 
-					locals + 1,
-					stackSize,
 					instructions
 				);
 	}
 	
-	private static List<JVMBytecodeEntity> emitCodeForRecordClass(RecordType recordType) {
-		List<JVMBytecodeEntity> initMethodInstructions = new ArrayList<>();
-		
-		int localVarsCount = 1;
-		int stackSize = 10;
+	private List<JVMBytecodeEntity> emitCodeForRecordClass(RecordType recordType) {
+		JVMInstructionBuffer code = new JVMInstructionBuffer();
 		
-		initMethodInstructions.addAll(
-			Arrays.asList(
-				new JVMBytecodeInstruction("aload_0"),
-				new JVMBytecodeInstruction("invokespecial", "java/lang/Object/<init>()V")
-			)
+		code.add(
+			new JVMBytecodeInstruction(JVMOpcode.ALOAD_0),
+			new JVMBytecodeInstruction(JVMOpcode.INVOKESPECIAL, new JVMMethodRef("java/lang/Object", "<init>", "()V"))
 		);
 		
 		final String recordClassName = PROGRAM_JVM_PACKAGE + "/" + JVMBytecodeUtils.getTypeDescriptor(recordType);
@@ -542,30 +649,25 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			);
 			
 			if (propType.getTag() != Tag.PRIMITIVE) {
-				initMethodInstructions.add(
-					new JVMBytecodeInstruction("aload_0") // load this
+				code.add(
+					new JVMBytecodeInstruction(JVMOpcode.ALOAD_0) // load this
 				);
 				
 				switch (propType.getTag()) {
 					case RECORD: {
-						initMethodInstructions.addAll(
-							initRecordVar((RecordType) propType)
-						);
+						initRecordVar((RecordType) propType, code);
 						break;
 					}
 					case ARRAY: {
-						initMethodInstructions.addAll(
-							initArrayVar((SizedArrayType) propType)
-						);
+						initArrayVar((SizedArrayType) propType, code);
 						break;
 					}
 				}
 				
-				initMethodInstructions.add(
+				code.add(
 					new JVMBytecodeInstruction(
-							"putfield", 
-							recordClassName + "/" + fieldName,
-							propJVMTypeDesc
+							JVMOpcode.PUTFIELD, 
+							new JVMFieldRef(recordClassName, fieldName, propJVMTypeDesc)
 						)
 				);
 			}
@@ -573,9 +675,7 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			++fieldCounter;
 		}
 		
-		initMethodInstructions.add(new JVMBytecodeInstruction("return"));
-		
-		stackSize = JVMBytecodeUtils.maxStackSize(initMethodInstructions);
+		code.add(new JVMBytecodeInstruction(JVMOpcode.RETURN));
 
 		return Arrays.asList(
 				new JVMBytecodeClass(
@@ -584,20 +684,74 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 					recordClassName,
 					programClassFields,
 					Arrays.asList(
-						new JVMBytecodeMethod(
-							methodSpecs(),
-							"<init>",
-							Collections.emptyList(),
-							"V",
-							localVarsCount,
-							stackSize,
-							initMethodInstructions
-						)
+						finishMethod(
+							new JVMBytecodeMethod(
+								methodSpecs(),
+								"<init>",
+								Collections.emptyList(),
+								"V",
+								code.getInstructions()
+							),
+							recordClassName
+						),
+						finishMethod(emitCodeForRecordArray(recordClassName), recordClassName)
 					)
 				)
 			);
 	}
 	
+	// static R[] array(int size), every element a new record, as records are values
+	private static JVMBytecodeMethod emitCodeForRecordArray(String recordClassName) {
+		JVMLabel loopLabel = new JVMLabel("L0");
+		JVMLabel endLabel = new JVMLabel("L1");
+		
+		JVMInstructionBuffer code = new JVMInstructionBuffer();
+		
+		code.add(
+			new JVMBytecodeInstruction(JVMOpcode.ILOAD_0),
+			new JVMBytecodeInstruction(JVMOpcode.ANEWARRAY, recordClassName),
+			new JVMBytecodeInstruction(JVMOpcode.ASTORE_1),
+			new JVMBytecodeInstruction(JVMOpcode.ICONST_0),
+			new JVMBytecodeInstruction(JVMOpcode.ISTORE_2),
+			
+			new JVMBytecodeLabel(loopLabel),
+			new JVMBytecodeInstruction(JVMOpcode.ILOAD_2),
+			new JVMBytecodeInstruction(JVMOpcode.ILOAD_0),
+			new JVMBytecodeInstruction(JVMOpcode.IF_ICMPGE, endLabel),
+			new JVMBytecodeInstruction(JVMOpcode.ALOAD_1),
+			new JVMBytecodeInstruction(JVMOpcode.ILOAD_2)
+		);
+		
+		initRecordVar(recordClassName, code);
+		
+		code.add(
+			new JVMBytecodeInstruction(JVMOpcode.AASTORE),
+			new JVMBytecodeInstruction(JVMOpcode.IINC, 2, 1),
+			new JVMBytecodeInstruction(JVMOpcode.GOTO, loopLabel),
+			
+			new JVMBytecodeLabel(endLabel),
+			new JVMBytecodeInstruction(JVMOpcode.ALOAD_1),
+			new JVMBytecodeInstruction(JVMOpcode.ARETURN)
+		);
+		
+		return new JVMBytecodeMethod(
+				methodSpecs(JVMBytecodeMethod.AccessSpec.PUBLIC, JVMBytecodeMethod.AccessSpec.STATIC),
+				"array",
+				List.of("I"),
+				"[L" + recordClassName + ";",
+				code.getInstructions()
+			);
+	}
+	
+	// the record classes a variable of varType needs, as an element of its arrays too
+	private void saveRecordsOf(VarType varType) {
+		while (varType.getTag() == Tag.ARRAY)
+			varType = ((ArrayType) varType).getElementType();
+		
+		if (varType.getTag() == Tag.RECORD)
+			saveRecordVarDeclaration((RecordType) varType);
+	}
+	
 	private void saveRecordVarDeclaration(RecordType recordType) {
 		Stack<RecordType> recordTypes = new Stack<>();
 		
@@ -619,13 +773,12 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 	
 	private JVMBytecodeField processGlobalVarDecl(VariableDeclarationASTNode node) {
 		String varName = node.getVarName();
-		VarType varType = node.getVarType();
+		VarType varType = getStorageType(node);
 		
 		String fieldName = varName;
 		String typeDescriptor = getMangledTypeName(varType);
 		
-		if (varType.getTag() == Tag.RECORD)
-			saveRecordVarDeclaration((RecordType) varType);
+		saveRecordsOf(varType);
 		
 		return new JVMBytecodeField(
 				fieldSpecs(
@@ -637,6 +790,24 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			);
 	}
 	
+	// the peephole rules change the control flow, so they run before the limits and the
+	// frames are computed
+	private JVMBytecodeMethod finishMethod(JVMBytecodeMethod method, String className) {
+		if (peepholeOptimizer != null)
+			peepholeOptimizer.optimize(method);
+		
+		JVMMethodLimits.computeLimits(method);
+		
+		return JVMStackMapFrames.insertFrames(method, className);
+	}
+	
+	private EmittedRoutine emitRoutine(RoutineDefinitionASTNode node, ExpressionVisitorContext ctx) {
+		JVMCodeEmitterVisitor routineVisitor = new JVMCodeEmitterVisitor(sourceName, peepholeOptimizer, flatArrays);
+		JVMBytecodeMethod method = finishMethod((JVMBytecodeMethod) node.accept(routineVisitor, ctx).get(0), PROGRAM_CLASS_NAME);
+		
+		return new EmittedRoutine(method, routineVisitor.declaredRecords, routineVisitor.printDescriptors);
+	}
+	
 	@Override
 	public List<JVMBytecodeEntity> visit(ProgramASTNode node, ExpressionVisitorContext ctx) {
 		List<JVMBytecodeField> programClassFields = new ArrayList<>();
@@ -645,6 +816,24 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		Map<String, VariableDeclarationASTNode> globalVarsDeclarations = new LinkedHashMap<>();
 		List<RoutineDeclarationASTNode> declaredRoutines = new ArrayList<>();
 		
+		if (flattenArrays) {
+			flatArrays = new FlatArrayASTVisitor();
+			node.accept(flatArrays, null);
+			
+			expressionVisitor = new JVMCodeEmitterExpressionVisitor(flatArrays);
+		}
+		
+		// routines are emitted in parallel and collected in program order,
+		// so methods and record classes come out as if emitted one by one
+		Map<ASTNode, ForkJoinTask<EmittedRoutine>> emittedRoutines = new IdentityHashMap<>();
+		
+		for (ASTNode child: node.getChildren()) {
+			if (child instanceof RoutineDefinitionASTNode routine)
+				emittedRoutines.put(routine, ForkJoinTask.adapt(() -> emitRoutine(routine, ctx)));
+		}
+		
+		ForkJoinTask.invokeAll(emittedRoutines.values());
+		
 		for (ASTNode child: node.getChildren()) {
 			switch (child.getNodeType()) {
 				case VAR_DECL_NODE: {
@@ -658,8 +847,10 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 				case ROUTINE_DEF_NODE: {
 					RoutineDeclarationASTNode routineDeclNode = ((RoutineDefinitionASTNode) child).getRoutineDeclaration();
 					
-					JVMBytecodeMethod jvmMethod = (JVMBytecodeMethod) child.accept(this, ctx).get(0);
-					programClassMethods.add(jvmMethod);
+					EmittedRoutine routine = emittedRoutines.get(child).join();
+					programClassMethods.add(routine.method);
+					declaredRecords.addAll(routine.declaredRecords);
+					printDescriptors.addAll(routine.printDescriptors);
 					declaredRoutines.add(routineDeclNode);
 					
 					break;
@@ -671,8 +862,8 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		
 		programClassMethods.addAll(
 			List.of(
-				emitCodeForProgramClassInit(globalVarsDeclarations), // add <clinit>
-				emitCodeForMainMethod(declaredRoutines)
+				finishMethod(emitCodeForProgramClassInit(globalVarsDeclarations), PROGRAM_CLASS_NAME), // add <clinit>
+				finishMethod(emitCodeForMainMethod(declaredRoutines), PROGRAM_CLASS_NAME)
 			)
 		);
 		
@@ -685,161 +876,133 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 				programClassMethods
 			));
 		
-		declaredRecords.stream().map(JVMCodeEmitterVisitor::emitCodeForRecordClass).forEachOrdered(programClasses::addAll);
+		declaredRecords.stream().map(this::emitCodeForRecordClass).forEachOrdered(programClasses::addAll);
+		programClasses.add(JVMPrintRuntime.emitClass(printDescriptors, method -> finishMethod(method, JVMPrintRuntime.CLASS_NAME)));
+		programClasses.add(JVMPrintRuntime.emitGroupClass(method -> finishMethod(method, JVMPrintRuntime.GROUP_CLASS_NAME)));
 		
 		return programClasses;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(CompoundStatementASTNode node, ExpressionVisitorContext ctx) {
-		Limits topCtx = contextStack.peek();
-		contextStack.add(topCtx.clone());
+		int scopeLocalVariablesCount = localVariablesCount;
 		
 		LocalVariableContext subctx = new LocalVariableContext(ctx.localVarCtx);
-		ExpressionVisitorContext subexprctx = new ExpressionVisitorContext(subctx, ctx.labelCounter, ctx.thenLabel, ctx.elseLabel, ctx.loopStartLabel, ctx.loopConditionalLabel, ctx.loopEndLabel);
-		
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+		ExpressionVisitorContext subexprctx = new ExpressionVisitorContext(subctx, ctx.labelCounter, ctx.thenLabel, ctx.elseLabel, ctx.loopStartLabel, ctx.loopConditionalLabel, ctx.loopEndLabel, ctx.code);
 		
 		for (ASTNode child: node.getChildren()) {
-			instructions.addAll(
-				child.accept(this, subexprctx)
-			);
+			child.accept(this, subexprctx);
 		}
 		
-		topCtx = contextStack.pop();
-		maxLocalVarNumber = Math.max(topCtx.localVariablesCount, maxLocalVarNumber);
+		localVariablesCount = scopeLocalVariablesCount;
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(WhileBodyStatementASTNode node, ExpressionVisitorContext ctx) {
-		Limits topCtx = contextStack.peek();
-		contextStack.add(topCtx.clone());
+		int scopeLocalVariablesCount = localVariablesCount;
 
 		LocalVariableContext subctx = new LocalVariableContext(ctx.localVarCtx);
-		ExpressionVisitorContext subexprctx = new ExpressionVisitorContext(subctx, ctx.labelCounter, ctx.thenLabel, ctx.elseLabel, ctx.loopStartLabel, ctx.loopConditionalLabel, ctx.loopEndLabel);
-
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+		ExpressionVisitorContext subexprctx = new ExpressionVisitorContext(subctx, ctx.labelCounter, ctx.thenLabel, ctx.elseLabel, ctx.loopStartLabel, ctx.loopConditionalLabel, ctx.loopEndLabel, ctx.code);
 
+		JVMInstructionBuffer code = ctx.code;
 
 		for (int i = 0; i + 1 < node.getChildren().size(); i++) {
-			instructions.addAll(
-					node.getChildren().get(i).accept(this, subexprctx)
-			);
+			node.getChildren().get(i).accept(this, subexprctx);
 		}
-		instructions.addAll(
-				Arrays.asList(
-						new JVMBytecodeLabel(ctx.loopConditionalLabel)
-				)
-		);
-		instructions.addAll(
-			node.getChildren().get(node.getChildren().size() - 1).accept(this, subexprctx)
-		);
+		code.add(new JVMBytecodeLabel(ctx.loopConditionalLabel));
+		node.getChildren().get(node.getChildren().size() - 1).accept(this, subexprctx);
 
-		topCtx = contextStack.pop();
-		maxLocalVarNumber = Math.max(topCtx.localVariablesCount, maxLocalVarNumber);
+		localVariablesCount = scopeLocalVariablesCount;
 
-		return instructions;
+		return null;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(VariableDeclarationASTNode node, ExpressionVisitorContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+		JVMInstructionBuffer code = ctx.code;
 		
 		if (node.getToken() != null)
-			instructions.add(new JVMBytecodeDirective("line", node.getLineNumber()));
+			code.add(new JVMBytecodeDirective("line", node.getLineNumber()));
 		
 		String varName = node.getVarName();
 		VarType varType = node.getVarType();
 		
-		int lvIndex = contextStack.peek().localVariablesCount++;
+		int lvIndex = localVariablesCount++;
 		
 		ctx.localVarCtx.addLocalVariable(varName, lvIndex);
 		
 		switch (varType.getTag()) {
 			case PRIMITIVE: {
-					instructions.addAll(
-						JVMBytecodeUtils.pushDefaultValueForType(varType)
-					);
+					code.addAll(JVMBytecodeUtils.pushDefaultValueForType(varType));
 					String prefix = JVMBytecodeUtils.PRIMITIVE_TYPE_OPCODE_MAPPER.get(varType);
-					instructions.add(new JVMBytecodeInstruction(prefix + "store", lvIndex));
+					code.add(new JVMBytecodeInstruction(JVMOpcode.forMnemonic(prefix + "store"), lvIndex));
 					
 					break;
 				} 
 			case ARRAY: {
-				SizedArrayType arrayType = (SizedArrayType) node.getVarType();
+				SizedArrayType arrayType = (SizedArrayType) getStorageType(node);
+				saveRecordsOf(arrayType);
 				
-				instructions.addAll(
-					initArrayVar(arrayType)
-				);
+				initArrayVar(arrayType, code);
 				
-				instructions.add(new JVMBytecodeInstruction("astore", lvIndex));
+				code.add(new JVMBytecodeInstruction(JVMOpcode.ASTORE, lvIndex));
 				
-				return instructions;
+				return null;
 			}
 			case RECORD: {
 				RecordType varRecordType = (RecordType) varType;
 				saveRecordVarDeclaration(varRecordType);
 				
-				instructions.addAll(
-					initRecordVar(varRecordType)
-				);
-				instructions.add(new JVMBytecodeInstruction("astore", lvIndex));
+				initRecordVar(varRecordType, code);
+				code.add(new JVMBytecodeInstruction(JVMOpcode.ASTORE, lvIndex));
 				
-				return instructions;
+				return null;
 			}
 		}
 		
 		if (node.getChildren().isEmpty())
-			return instructions;
+			return null;
 		
-		instructions.addAll(
-			node.getChild(0).accept(this, ctx)
-		);
+		node.getChild(0).accept(this, ctx);
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(VariableAssignmentASTNode node, ExpressionVisitorContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
-		instructions.add(new JVMBytecodeDirective("line", node.getLineNumber()));
+		JVMInstructionBuffer code = ctx.code;
+		code.add(new JVMBytecodeDirective("line", node.getLineNumber()));
 		
 		ExpressionASTNode leftSideNode = node.getLeftSide();
 		VarType requiredType = leftSideNode.getExpressionType();
 		
 		ExpressionASTNode valueNode = node.getValueNode();
 		
-		List<JVMBytecodeEntity> valueCompInstrs = valueNode.accept(expressionVisitor, ctx.toBranchContext(null));
-		
 		switch (leftSideNode.getExpressionNodeType()) {
 			case VARIABLE_EXPR_NODE: {
 				VariableExpressionNode varExprNode = (VariableExpressionNode) leftSideNode;
 				
 				String assignVarName = varExprNode.getVariable();
 				
-				instructions.addAll(valueCompInstrs);
+				valueNode.accept(expressionVisitor, ctx.toBranchContext(null));
 				
 				if (ctx.localVarCtx.containsLocalVarIndex(assignVarName)) {
 					int lvIndex = ctx.localVarCtx.getLocalVarIndex(assignVarName);
 					
-					instructions.add(
+					JVMOpcode opcode = JVMOpcode.forMnemonic(JVMBytecodeUtils.getOpcodePrefix(requiredType) + "store");
+					
+					code.add(
 						lvIndex <= 3 
-						? new JVMBytecodeInstruction(
-								JVMBytecodeUtils.getOpcodePrefix(requiredType) + "store_" + lvIndex
-							)
-						: new JVMBytecodeInstruction(
-								JVMBytecodeUtils.getOpcodePrefix(requiredType) + "store", 
-								lvIndex
-							)
+						? new JVMBytecodeInstruction(opcode.getShortForm(lvIndex))
+						: new JVMBytecodeInstruction(opcode, lvIndex)
 					);
 				} else {
-					instructions.add(
+					code.add(
 						new JVMBytecodeInstruction(
-							"putstatic", 
-							PROGRAM_CLASS_NAME + "/" + assignVarName, 
-							JVMBytecodeUtils.getTypeDescriptor(requiredType)
+							JVMOpcode.PUTSTATIC, 
+							new JVMFieldRef(PROGRAM_CLASS_NAME, assignVarName, JVMBytecodeUtils.getTypeDescriptor(requiredType))
 						)
 					);
 				}
@@ -848,28 +1011,33 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			}
 			case ARRAY_ACCESS_EXPR_NODE: {
 				ArrayAccessExpressionNode arrAccNode = (ArrayAccessExpressionNode) leftSideNode;
+				Layout layout = flatArrays.getLayout(arrAccNode);
+				
+				if (layout != null) {
+					expressionVisitor.emitFlatElement(arrAccNode, layout, ctx.toBranchContext(null));
+					valueNode.accept(expressionVisitor, ctx.toBranchContext(null));
+					code.add(
+						new JVMBytecodeInstruction(JVMOpcode.forMnemonic(JVMBytecodeUtils.getOpcodePrefixForArray(layout.getElementType()) + "astore"))
+					);
+					
+					break;
+				}
 				
 				ExpressionASTNode holderExpr = arrAccNode.getHolder();
 				ArrayType arrayType = (ArrayType) holderExpr.getExpressionType();
 				
-				instructions.addAll(
-					holderExpr.accept(expressionVisitor, ctx.toBranchContext(null))
+				holderExpr.accept(expressionVisitor, ctx.toBranchContext(null));
+				arrAccNode.getIndex().accept(expressionVisitor, ctx.toBranchContext(null));
+				code.add(
+					JVMCodeEmitterExpressionVisitor.getLoadIntConstInstruction(-1),
+					new JVMBytecodeInstruction(JVMOpcode.IADD)
 				);
-				instructions.addAll(
-					arrAccNode.getIndex().accept(expressionVisitor, ctx.toBranchContext(null))
-				);
-				instructions.addAll(
-					Arrays.asList(
-						JVMCodeEmitterExpressionVisitor.getLoadIntConstInstruction(-1),
-						new JVMBytecodeInstruction("iadd")
-					)
-				);
-				instructions.addAll(valueCompInstrs);
+				valueNode.accept(expressionVisitor, ctx.toBranchContext(null));
 				
 				final String opcode = JVMBytecodeUtils.getOpcodePrefixForArray(arrayType.getElementType());
 				
-				instructions.add(
-					new JVMBytecodeInstruction(opcode + "astore")
+				code.add(
+					new JVMBytecodeInstruction(JVMOpcode.forMnemonic(opcode + "astore"))
 				);
 				
 				break;
@@ -878,9 +1046,7 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 				PropertyAccessExpressionNode propAccNode = (PropertyAccessExpressionNode) leftSideNode;
 				
 				ExpressionASTNode holder = propAccNode.getPropertyHolder();
-				instructions.addAll(
-					holder.accept(expressionVisitor, ctx.toBranchContext(null))
-				);
+				holder.accept(expressionVisitor, ctx.toBranchContext(null));
 				
 				RecordType recordType = (RecordType) holder.getExpressionType();
 				
@@ -899,11 +1065,14 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 					++fieldIndex;
 				}
 				
-				instructions.addAll(valueCompInstrs);
-				instructions.add(new JVMBytecodeInstruction(
-						"putfield", 
-						JVMCodeEmitterVisitor.PROGRAM_JVM_PACKAGE + "/" + JVMBytecodeUtils.getTypeDescriptor(recordType) + "/field" + fieldIndex,
-						JVMCodeEmitterVisitor.getMangledTypeName(fieldType)
+				valueNode.accept(expressionVisitor, ctx.toBranchContext(null));
+				code.add(new JVMBytecodeInstruction(
+						JVMOpcode.PUTFIELD, 
+						new JVMFieldRef(
+							JVMCodeEmitterVisitor.PROGRAM_JVM_PACKAGE + "/" + JVMBytecodeUtils.getTypeDescriptor(recordType),
+							"field" + fieldIndex,
+							JVMCodeEmitterVisitor.getMangledTypeName(fieldType)
+						)
 					)
 				);
 				
@@ -911,25 +1080,22 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			}
 		}
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(TypeDeclarationASTNode node, ExpressionVisitorContext ctx) {
-		return new ArrayList<>();
+		return null;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(RoutineDeclarationASTNode node, ExpressionVisitorContext ctx) {
 		VarType routineRetType = node.getResultType();
 		
-		if (routineRetType.getTag() == Tag.RECORD)
-			saveRecordVarDeclaration((RecordType) routineRetType);
+		saveRecordsOf(routineRetType);
 		
-		for (VariableDeclarationASTNode argDecl: node.getArgumentsDeclarations()) {
-			if (argDecl.getVarType().getTag() == Tag.RECORD)
-				saveRecordVarDeclaration((RecordType) argDecl.getVarType());
-		}
+		for (VariableDeclarationASTNode argDecl: node.getArgumentsDeclarations())
+			saveRecordsOf(argDecl.getVarType());
 		
 		return null;
 	}
@@ -949,7 +1115,8 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		int argnum = 0;
 		
 		LocalVariableContext routineLVCtx = new LocalVariableContext(ctx.localVarCtx);
-		ExpressionVisitorContext routineExprCtx = new ExpressionVisitorContext(routineLVCtx, new IntCounter(), null, null, null, null, null);
+		JVMInstructionBuffer code = new JVMInstructionBuffer();
+		ExpressionVisitorContext routineExprCtx = new ExpressionVisitorContext(routineLVCtx, new IntCounter(), null, null, null, null, null, code);
 		
 		for (VariableDeclarationASTNode argDecl: routineHeader.getArgumentsDeclarations()) {
 			String argName = argDecl.getVarName();
@@ -962,20 +1129,17 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 			argsTypesDescriptors.add(jvmTypeDescriptor);
 		}
 		
-		contextStack.add(new Limits(argsCount, 0));
-		maxLocalVarNumber = argsCount;
+		localVariablesCount = argsCount;
 		
 		currentRoutineType = new FunctionType(
 			routineHeader.getArgumentsDeclarations().stream().map(VariableDeclarationASTNode::getVarType).toList(),
 			routineHeader.getResultType()
 		);
 		
-		List<JVMBytecodeEntity> routineInstructions = node.getBody().accept(this, routineExprCtx);
+		node.getBody().accept(this, routineExprCtx);
 		
 //		if (routineHeader.getResultType() == VarType.VOID_TYPE)
-			routineInstructions.add(new JVMBytecodeInstruction("return"));
-		
-		int stackSize = JVMBytecodeUtils.maxStackSize(routineInstructions);
+			code.add(new JVMBytecodeInstruction(JVMOpcode.RETURN));
 
 		return Arrays.asList(
 				new JVMBytecodeMethod(
@@ -986,9 +1150,7 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 					methodName, 
 					argsTypesDescriptors,
 					returnTypeDescriptor, 
-					maxLocalVarNumber, 
-					stackSize,
-					routineInstructions
+					code.getInstructions()
 				)
 			);
 	}
@@ -999,64 +1161,54 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		
 		VarType requiredReturnType = currentRoutineType.getReturnType();
 		
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
-		instructions.add(new JVMBytecodeDirective("line", node.getLineNumber()));
+		JVMInstructionBuffer code = ctx.code;
+		code.add(new JVMBytecodeDirective("line", node.getLineNumber()));
 		
-		instructions.addAll(
-			returnValueExprNode.accept(expressionVisitor, ctx.toBranchContext(null))
-		);
-		instructions.add(
+		returnValueExprNode.accept(expressionVisitor, ctx.toBranchContext(null));
+		code.add(
 			new JVMBytecodeInstruction(
-				JVMBytecodeUtils.getOpcodePrefix(requiredReturnType) + "return"
+				JVMOpcode.forMnemonic(JVMBytecodeUtils.getOpcodePrefix(requiredReturnType) + "return")
 			)
 		);
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(IfThenElseStatementASTNode node, ExpressionVisitorContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
-		instructions.add(new JVMBytecodeDirective("line", node.getLineNumber()));
+		JVMInstructionBuffer code = ctx.code;
+		code.add(new JVMBytecodeDirective("line", node.getLineNumber()));
 		
-		String thenLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+		JVMLabel thenLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 		
-		String elseLabel = null;
+		JVMLabel elseLabel = null;
 		
 		ASTNode elseBranch = node.getElseBranch(); 
 		
 		if (elseBranch != null)
 			elseLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 		
-		String endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+		JVMLabel endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 		
 		if (elseLabel == null)
 			elseLabel = endLabel;
 		
-		instructions.addAll(
-			node.getConditionExpression().accept(expressionVisitor, ctx.toBranchContext(false, thenLabel, elseLabel))
-		);
+		node.getConditionExpression().accept(expressionVisitor, ctx.toBranchContext(false, thenLabel, elseLabel));
 		
-		instructions.add(new JVMBytecodeLabel(thenLabel));
-		instructions.addAll(
-			node.getTrueBranch().accept(this, ctx)
-		);
+		code.add(new JVMBytecodeLabel(thenLabel));
+		node.getTrueBranch().accept(this, ctx);
 		
 		if (elseBranch != null) {
-			instructions.addAll(
-				Arrays.asList(
-					new JVMBytecodeInstruction("goto", endLabel),
-					new JVMBytecodeLabel(elseLabel)
-				)
-			);
-			instructions.addAll(
-				elseBranch.accept(this, ctx)
+			code.add(
+				new JVMBytecodeInstruction(JVMOpcode.GOTO, endLabel),
+				new JVMBytecodeLabel(elseLabel)
 			);
+			elseBranch.accept(this, ctx);
 		}
 		
-		instructions.add(new JVMBytecodeLabel(endLabel));
+		code.add(new JVMBytecodeLabel(endLabel));
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
@@ -1100,7 +1252,12 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 		ExpressionASTNode mutExpr = new BinaryOperatorExpressionNode(null, fakeToken, node.isReversed() ? BinaryOperatorType.SUB_BINOP : BinaryOperatorType.ADD_BINOP, counterVarExpr, new IntegerValueExpressionNode(null, null, 1));
 		mutExpr.setExpressionType(VarType.INTEGER_PRIMITIVE_TYPE);
 		
-		WhileStatementASTNode whileStmt = new WhileStatementASTNode(null, conditionExpr, node.getBody());
+		// the step goes into a copy of the body: the loop node is left as it is, so the
+		// same (checked and cached) tree can be emitted again
+		CompoundStatementASTNode whileBody = new CompoundStatementASTNode(null);
+		whileBody.addChildren(node.getBody().getChildren());
+		
+		WhileStatementASTNode whileStmt = new WhileStatementASTNode(null, conditionExpr, whileBody);
 		whileStmt.addBodyStatement(
 			new VariableAssignmentASTNode(null,
 				counterVarExpr,
@@ -1162,151 +1319,138 @@ public class JVMCodeEmitterVisitor implements ASTVisitor<List<JVMBytecodeEntity>
 
 	@Override
 	public List<JVMBytecodeEntity> visit(WhileStatementASTNode node, ExpressionVisitorContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
+		JVMInstructionBuffer code = ctx.code;
 		
 		if (node.getToken() != null)
-			instructions.add(new JVMBytecodeDirective("line", node.getLineNumber()));
+			code.add(new JVMBytecodeDirective("line", node.getLineNumber()));
 		
-		String loopStartLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+		JVMLabel loopStartLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 		
-		instructions.add(new JVMBytecodeLabel(loopStartLabel));
+		code.add(new JVMBytecodeLabel(loopStartLabel));
 
-		String loopBodyLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
-		String loopConditionalLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
-		String loopEndLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+		JVMLabel loopBodyLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+		JVMLabel loopConditionalLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+		JVMLabel loopEndLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 
-		instructions.addAll(
-			node.getConditionExpression().accept(expressionVisitor, ctx.toBranchContext(false, loopBodyLabel, loopEndLabel))
-		);
-		instructions.addAll(
-			Arrays.asList(
-				new JVMBytecodeLabel(loopBodyLabel)
-			)
-		);
-		instructions.addAll(
-			node.getBody().accept(this, new ExpressionVisitorContext(
-											ctx.localVarCtx,
-											ctx.labelCounter,
-											null,
-											null,
-											loopStartLabel,
-											loopConditionalLabel,
-											loopEndLabel
-										))
-		);
-		instructions.addAll(
-			Arrays.asList(
-				new JVMBytecodeInstruction("goto", loopStartLabel),
-				new JVMBytecodeLabel(loopEndLabel)
-			)
+		node.getConditionExpression().accept(expressionVisitor, ctx.toBranchContext(false, loopBodyLabel, loopEndLabel));
+		code.add(new JVMBytecodeLabel(loopBodyLabel));
+		node.getBody().accept(this, new ExpressionVisitorContext(
+										ctx.localVarCtx,
+										ctx.labelCounter,
+										null,
+										null,
+										loopStartLabel,
+										loopConditionalLabel,
+										loopEndLabel,
+										ctx.code
+									));
+		code.add(
+			new JVMBytecodeInstruction(JVMOpcode.GOTO, loopStartLabel),
+			new JVMBytecodeLabel(loopEndLabel)
 		);
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(BreakStatementASTNode node, ExpressionVisitorContext ctx) {
-		return Arrays.asList(
-					new JVMBytecodeDirective("line", node.getLineNumber()),
-					new JVMBytecodeInstruction("goto", ctx.loopEndLabel)
-				);
+		ctx.code.add(
+			new JVMBytecodeDirective("line", node.getLineNumber()),
+			new JVMBytecodeInstruction(JVMOpcode.GOTO, ctx.loopEndLabel)
+		);
+		
+		return null;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(ContinueStatementASTNode node, ExpressionVisitorContext ctx) {
-		return Arrays.asList(
-					new JVMBytecodeDirective("line", node.getLineNumber()),
-					new JVMBytecodeInstruction("goto", ctx.loopConditionalLabel) // fixme
-				);
+		ctx.code.add(
+			new JVMBytecodeDirective("line", node.getLineNumber()),
+			new JVMBytecodeInstruction(JVMOpcode.GOTO, ctx.loopConditionalLabel) // fixme
+		);
+		
+		return null;
 	}
 
+	// A print statement is one call of the print method of JVMPrintRuntime for its argument
+	// types. Unless an argument but the first one calls a routine: the routine may print too,
+	// so then each value is written as soon as it is computed.
 	@Override
 	public List<JVMBytecodeEntity> visit(PrintStatementASTNode node, ExpressionVisitorContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
-		instructions.add(new JVMBytecodeDirective("line", node.getLineNumber()));
+		JVMInstructionBuffer code = ctx.code;
+		code.add(new JVMBytecodeDirective("line", node.getLineNumber()));
 		
-		JVMBytecodeInstruction getStdoutInstr = new JVMBytecodeInstruction("getstatic", "java/lang/System/out", "Ljava/io/PrintStream;");
-		JVMBytecodeInstruction invokePrint = new JVMBytecodeInstruction("invokevirtual", "java/io/PrintStream/print(Ljava/lang/String;)V");
-		
-		List<JVMBytecodeInstruction> printSpaceInstrs = Arrays.asList(
-			getStdoutInstr,
-			new JVMBytecodeInstruction("ldc", "\" \""),
-			invokePrint
-		);
+		List<ASTNode> args = node.getChildren();
+		boolean writeEach = args.stream().skip(1).anyMatch(arg -> ((ExpressionASTNode) arg).accept(ROUTINE_CALL_FINDER, null));
 		
-		boolean printSeparatorFlag = false;
+		StringBuilder printDescriptor = new StringBuilder();
 		
-		for (ASTNode child: node.getChildren()) {
-			if (printSeparatorFlag)
-				instructions.addAll(printSpaceInstrs);
-			else
-				printSeparatorFlag = true;
-			
+		for (ASTNode child: args) {
 			ExpressionASTNode arg = (ExpressionASTNode) child;
+			String typeDescriptor = getMangledTypeName(arg.getExpressionType());
 			
-			List<JVMBytecodeEntity> computeArgInstructions = arg.accept(expressionVisitor, ctx.toBranchContext(null));
+			if (writeEach && printDescriptor.length() > 0) {
+				code.add(
+					JVMCodeEmitterExpressionVisitor.getLoadIntConstInstruction(' '),
+					new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, JVMPrintRuntime.getWriteByteMethodRef())
+				);
+			}
 			
-			VarType argType = arg.getExpressionType();
+			arg.accept(expressionVisitor, ctx.toBranchContext(null));
 			
-			String typeDescriptor = getMangledTypeName(argType);
+			if (writeEach)
+				code.add(new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, JVMPrintRuntime.getWriteMethodRef(typeDescriptor)));
 			
-			instructions.add(getStdoutInstr);
-			instructions.addAll(computeArgInstructions);
-			instructions.add(
-				new JVMBytecodeInstruction("invokevirtual", "java/io/PrintStream/print(" + typeDescriptor + ")V")
-			);
+			printDescriptor.append(typeDescriptor);
 		}
 		
-		instructions.addAll(
-			Arrays.asList(
-				getStdoutInstr,
-				new JVMBytecodeInstruction("invokevirtual", "java/io/PrintStream/println()V")
-			)
-		);
+		if (writeEach) {
+			code.add(
+				JVMCodeEmitterExpressionVisitor.getLoadIntConstInstruction('\n'),
+				new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, JVMPrintRuntime.getWriteByteMethodRef())
+			);
+		} else {
+			printDescriptors.add(printDescriptor.toString());
+			code.add(
+				new JVMBytecodeInstruction(JVMOpcode.INVOKESTATIC, JVMPrintRuntime.getPrintMethodRef(printDescriptor.toString()))
+			);
+		}
 		
-		return instructions;
+		return null;
 	}
 
 	@Override
 	public List<JVMBytecodeEntity> visit(ExpressionASTNode node, ExpressionVisitorContext ctx) {
-		List<JVMBytecodeEntity> instructions = new ArrayList<>();
-		instructions.add(
+		JVMInstructionBuffer code = ctx.code;
+		code.add(
 			new JVMBytecodeDirective("line", node.getLineNumber())
 		);
 		
 		if (node.getExpressionType() == VarType.BOOLEAN_PRIMITIVE_TYPE) {
-			String thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
-			String elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
+			JVMLabel thenLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.thenLabel, ctx.labelCounter);
+			JVMLabel elseLabel = CodeEmitterUtils.getOrAllocateLabel(ctx.elseLabel, ctx.labelCounter);
 			
-			instructions.addAll(
-				node.accept(expressionVisitor, ctx.toBranchContext(null, thenLabel, elseLabel))
-			);
+			node.accept(expressionVisitor, ctx.toBranchContext(null, thenLabel, elseLabel));
 			
-			String endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
+			JVMLabel endLabel = CodeEmitterUtils.allocateLabel(ctx.labelCounter);
 			
 			if (ctx.thenLabel == null) {
-				instructions.addAll(
-					Arrays.asList(
-						new JVMBytecodeInstructionLabeled(thenLabel, "iconst_1"),
-						new JVMBytecodeInstruction("goto", endLabel)
-					)
+				code.add(
+					new JVMBytecodeInstructionLabeled(thenLabel, JVMOpcode.ICONST_1),
+					new JVMBytecodeInstruction(JVMOpcode.GOTO, endLabel)
 				);
 			}
 			
 			if (ctx.elseLabel == null) {
-				instructions.addAll(
-					Arrays.asList(
-							new JVMBytecodeInstructionLabeled(elseLabel, "iconst_0"),
-							new JVMBytecodeLabel(endLabel)
-						)
+				code.add(
+					new JVMBytecodeInstructionLabeled(elseLabel, JVMOpcode.ICONST_0),
+					new JVMBytecodeLabel(endLabel)
 				);
 			}
 		} else {
-			instructions.addAll(
-				node.accept(expressionVisitor, ctx.toBranchContext(null))
-			);
+			node.accept(expressionVisitor, ctx.toBranchContext(null));
 		}
 		
-		return instructions;
+		return null;
 	}
 }
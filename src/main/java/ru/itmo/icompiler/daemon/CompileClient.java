@@ -0,0 +1,58 @@
+package ru.itmo.icompiler.daemon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+// Sends one request to a CompileDaemon and replays its reply on stdout and stderr;
+// see CompileDaemon for the protocol
+public class CompileClient {
+	private CompileClient() {}
+
+	// returns the exit code the daemon replied with
+	public static int send(Path socketPath, List<String> args) throws IOException {
+		try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+			Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+
+			out.write(Path.of("").toAbsolutePath() + "\n");
+
+			for (String arg: args)
+				out.write(arg + "\n");
+
+			out.write("\n");
+			out.flush();
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				String text = line.substring(2);
+
+				switch (line.charAt(0)) {
+					case 'O':
+						System.out.println(text);
+						break;
+					case 'E':
+						System.err.println(text);
+						break;
+					case 'X':
+						return Integer.parseInt(text);
+				}
+			}
+
+			throw new IOException("the daemon closed the connection without an exit code");
+		}
+	}
+
+	// CompileClient <socket> <ICompiler arguments...>
+	public static void main(String[] args) throws IOException {
+		System.exit(send(Path.of(args[0]), Arrays.asList(args).subList(1, args.length)));
+	}
+}
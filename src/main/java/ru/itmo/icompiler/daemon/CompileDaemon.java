@@ -0,0 +1,343 @@
+package ru.itmo.icompiler.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import ru.itmo.icompiler.CompilerOptions;
+import ru.itmo.icompiler.ICompiler;
+import ru.itmo.icompiler.cache.CompileCache;
+import ru.itmo.icompiler.codegen.jvm.JVMJarWriter;
+import ru.itmo.icompiler.lex.DFALexer;
+import ru.itmo.icompiler.reader.SourceText;
+
+// Keeps the compiler resident behind a Unix domain socket, so a build that compiles many
+// small files pays the JVM start-up and the JIT warm-up once. The lexer, parser and
+// assembler tables are static, so every request shares them.
+//
+// One request per connection: the client sends its working directory, then its arguments,
+// one per line, then an empty line. The reply is a sequence of lines, "O <text>" for the
+// client's stdout and "E <text>" for its stderr, ended by "X <exit code>".
+public class CompileDaemon {
+	public static final String SHUTDOWN_REQUEST = "--shutdown";
+
+	private static final int WARM_UP_ROUNDS = 30;
+
+	private static final String WARM_UP_PROGRAM = String.join("\n",
+		"type point is record",
+		"  var x : integer",
+		"  var y : real",
+		"end",
+		"",
+		"var cells : array [8] array [8] integer",
+		"",
+		"routine norm(p: point) : real is",
+		"  return p.x * p.x + p.y * p.y",
+		"end",
+		"",
+		"routine main(n: integer) is",
+		"  var p : point",
+		"  var total is 0",
+		"  for i in 1..cells.length",
+		"  loop",
+		"    for j in 1..8 reverse",
+		"    loop",
+		"      cells[i][j] := i * j % 7",
+		"      total := total + cells[i][j]",
+		"    end",
+		"  end",
+		"  while total > n and not (total = 0)",
+		"  loop",
+		"    total := total / 2",
+		"  end",
+		"  p.x := total",
+		"  p.y := 0.5",
+		"  if norm(p) >= 1.0",
+		"  then",
+		"    print total, norm(p), true",
+		"  end",
+		"end",
+		""
+	);
+
+	private final Path socketPath;
+	private final ExecutorService requestExecutor;
+	private ServerSocketChannel serverChannel;
+
+	public CompileDaemon(Path socketPath, int threads) {
+		this.socketPath = socketPath;
+		this.requestExecutor = Executors.newFixedThreadPool(threads);
+	}
+
+	// compiles a sample program at every optimization level until the hot paths are compiled by the JIT
+	public void warmUp() {
+		SourceText source = SourceText.of(WARM_UP_PROGRAM, DFALexer.DEFAULT_TAB_SIZE);
+
+		for (int round = 0; round < WARM_UP_ROUNDS; ++round) {
+			ICompiler compiler = new ICompiler(source);
+
+			compiler.setOptimizationLevel(round % 3);
+			compiler.parseProgram();
+			compiler.checkSemantic();
+
+			if (!compiler.getCompilerErrors().isEmpty())
+				throw new IllegalStateException(compiler.formatCompilerErrors());
+
+			ICompiler.assembleClasses(compiler.emitCode());
+		}
+	}
+
+	// Accepts requests until shutdown is called or a client sends SHUTDOWN_REQUEST; the requests
+	// already accepted are finished before it returns. Connections made during the warm-up wait
+	// in the backlog.
+	public void serve() throws IOException, InterruptedException {
+		// bound under another name and renamed, so the socket never shows up before it listens
+		Path boundPath = socketPath.resolveSibling(socketPath.getFileName() + ".bind");
+
+		Files.deleteIfExists(boundPath);
+
+		synchronized (this) {
+			serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			serverChannel.bind(UnixDomainSocketAddress.of(boundPath));
+		}
+
+		Files.move(boundPath, socketPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		try {
+			warmUp();
+
+			while (true) {
+				SocketChannel client;
+
+				try {
+					client = serverChannel.accept();
+				} catch (ClosedChannelException e) {
+					break;
+				}
+
+				requestExecutor.execute(() -> handle(client));
+			}
+		} finally {
+			serverChannel.close();
+			requestExecutor.shutdown();
+			requestExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+			Files.deleteIfExists(socketPath);
+		}
+	}
+
+	public synchronized void shutdown() {
+		try {
+			if (serverChannel != null) {
+				serverChannel.close();
+				Files.deleteIfExists(socketPath);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return requestExecutor.awaitTermination(timeout, unit);
+	}
+
+	private void handle(SocketChannel client) {
+		try (
+			client;
+			BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+			Writer out = Channels.newWriter(client, StandardCharsets.UTF_8)
+		) {
+			String workingDirectory = in.readLine();
+			List<String> args = new ArrayList<>();
+
+			for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine())
+				args.add(line);
+
+			Reply reply = new Reply(out);
+			int exitCode;
+
+			if (args.equals(List.of(SHUTDOWN_REQUEST))) {
+				shutdown();
+
+				exitCode = 0;
+			} else if (workingDirectory == null) {
+				return;
+			} else {
+				try {
+					exitCode = compile(Path.of(workingDirectory), args, reply);
+				} catch (Exception e) {
+					StringWriter trace = new StringWriter();
+					e.printStackTrace(new PrintWriter(trace));
+
+					reply.err(trace.toString());
+					exitCode = 1;
+				}
+			}
+
+			reply.exit(exitCode);
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// The options and exit codes of ICompiler.main, for any number of input files; the jars
+	// are written to the client's working directory, and the paths in the options are taken
+	// from there too. A failed file does not stop the others, not even one the compiler or
+	// the file system fails on (exit code 1); the first failure gives the exit code.
+	private static int compile(Path workingDirectory, List<String> args, Reply reply) throws IOException {
+		CompilerOptions options;
+
+		try {
+			options = CompilerOptions.parse(CompilerOptions.Mode.DAEMON, args);
+		} catch (IllegalArgumentException e) {
+			reply.err(e.getMessage());
+
+			return -5;
+		}
+
+		CompileCache cache = options.getCacheDirectory() != null
+				? new CompileCache(workingDirectory.resolve(options.getCacheDirectory()), options.getCacheSize())
+				: null;
+		File classDirectory = options.getClassDirectory() != null
+				? workingDirectory.resolve(options.getClassDirectory().toPath()).toFile()
+				: null;
+
+		int exitCode = 0;
+
+		for (String inputPath: options.getInputPaths()) {
+			int fileExitCode = 0;
+			File inputProgram = workingDirectory.resolve(inputPath).toFile();
+
+			if (!inputProgram.exists()) {
+				reply.err(String.format("No such file '%s'.", inputPath));
+
+				fileExitCode = -1;
+			} else if (!inputProgram.canRead()) {
+				reply.err(String.format("Permissions denied for file '%s'.", inputPath));
+
+				fileExitCode = -2;
+			} else {
+				try {
+					String cacheKey = null;
+					CompileCache.Entry entry = null;
+
+					if (cache != null) {
+						cacheKey = CompileCache.key(Files.readAllBytes(inputProgram.toPath()), inputProgram.getName(), options.getOutputFlags());
+						entry = cache.load(cacheKey);
+					}
+
+					if (entry == null) {
+						ICompiler compiler = new ICompiler(inputProgram);
+
+						compiler.setPeepholeOptimizer(options.createPeepholeOptimizer());
+						compiler.setOptimizationLevel(options.getOptimizationLevel());
+						compiler.parseProgram();
+						compiler.checkSemantic();
+
+						entry = compiler.getCompilerErrors().isEmpty()
+								? CompileCache.Entry.compiled(ICompiler.assembleClasses(compiler.emitCode()))
+								: CompileCache.Entry.failed(compiler.formatCompilerErrors());
+
+						if (cache != null)
+							cache.store(cacheKey, entry);
+					}
+
+					if (entry.getDiagnostics() != null) {
+						reply.err(entry.getDiagnostics());
+
+						fileExitCode = -3;
+					} else if (classDirectory != null) {
+						JVMJarWriter.writeClassDirectory(classDirectory, entry.getClassFiles());
+						reply.out(classDirectory.getPath());
+					} else {
+						File outputFile = workingDirectory.resolve(ICompiler.replaceFileExtension(inputProgram.getName(), "jar")).toFile();
+
+						ICompiler.writeJar(outputFile, entry.getClassFiles(), options.getJarCompression());
+						reply.out(outputFile.getPath());
+					}
+				} catch (Exception e) {
+					// the other files are still compiled
+					reply.err(String.format("Could not compile '%s': %s", inputPath, e));
+
+					fileExitCode = 1;
+				}
+			}
+
+			if (exitCode == 0)
+				exitCode = fileExitCode;
+		}
+
+		if (cache != null && options.isPrintCacheStats())
+			reply.err(cache.getStatistics());
+
+		return exitCode;
+	}
+
+	private static class Reply {
+		private final Writer out;
+
+		public Reply(Writer out) {
+			this.out = out;
+		}
+
+		private void write(char channel, String text) throws IOException {
+			for (String line: text.split("\n", -1)) {
+				out.write(channel);
+				out.write(' ');
+				out.write(line);
+				out.write('\n');
+			}
+		}
+
+		public void out(String text) throws IOException {
+			write('O', text);
+		}
+
+		public void err(String text) throws IOException {
+			write('E', text);
+		}
+
+		public void exit(int exitCode) throws IOException {
+			out.write("X " + exitCode + "\n");
+		}
+	}
+
+	// CompileDaemon <socket> [threads]
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		CompileDaemon daemon = new CompileDaemon(Path.of(args[0]), threads);
+
+		// SIGTERM and SIGINT stop accepting and let the running requests finish
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			daemon.shutdown();
+
+			try {
+				daemon.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+
+		daemon.serve();
+	}
+}
@@ -0,0 +1,9 @@
+package ru.itmo.icompiler.lex;
+
+// A lexer over a char buffer that can tell where its current token,
+// the one last returned by lookupToken, lies in that buffer.
+public interface BufferLexer extends Lexer {
+	int getTokenStart();
+	
+	int getTokenEnd();
+}
@@ -0,0 +1,606 @@
+package ru.itmo.icompiler.lex;
+
+import java.nio.CharBuffer;
+import java.util.function.Predicate;
+
+import ru.itmo.icompiler.lex.Token.TokenType;
+
+// Scans a char[] window in place. A scanned token is kept as type + start/end
+// offsets + position, and only turned into a Token (and its text into a String)
+// when the parser looks it up. Keywords and operators reuse constant strings,
+// identifiers are interned as they are scanned.
+//
+// Produces exactly the same tokens as DFALexer, positions included.
+public class CharBufferLexer implements BufferLexer {
+	private static final int CACHED_SPACES = 64;
+	private static final String[] SPACES = new String[CACHED_SPACES + 1];
+	private static final String TAB_SPACES = LexUtils.tabToSpaces(DFALexer.DEFAULT_TAB_SIZE);
+
+	static {
+		for (int i = 0; i <= CACHED_SPACES; ++i)
+			SPACES[i] = " ".repeat(i);
+	}
+
+	private final char[] buffer;
+	private final int limit;
+	private final Symbols symbols;
+	private int pos;
+
+	private int lineNumber = 1, lineOffset;
+	// set once the scanner has looked past the last char, as TextReader does
+	private boolean eofSeen;
+
+	private TokenType tokenType;
+	private String tokenText;
+	// the interned name of an identifier
+	private int tokenSymbol;
+	private int tokenStart, tokenEnd;
+	private int tokenLineNumber, tokenLineOffset;
+
+	private Token currentToken;
+
+	public CharBufferLexer(char[] buffer, int offset, int length, Symbols symbols) {
+		this.buffer = buffer;
+		this.pos = offset;
+		this.limit = offset + length;
+		this.symbols = symbols;
+	}
+
+	public CharBufferLexer(char[] buffer, int offset, int length) {
+		this(buffer, offset, length, new Symbols());
+	}
+
+	// resumes lexing at a token start; lineOffset is the one before its first char
+	public CharBufferLexer(char[] buffer, int offset, int length, int lineNumber, int lineOffset, Symbols symbols) {
+		this(buffer, offset, length, symbols);
+
+		this.lineNumber = lineNumber;
+		this.lineOffset = lineOffset;
+	}
+
+	public CharBufferLexer(char[] buffer) {
+		this(buffer, 0, buffer.length);
+	}
+
+	public CharBufferLexer(CharBuffer buffer) {
+		this.symbols = new Symbols();
+
+		if (buffer.hasArray()) {
+			this.buffer = buffer.array();
+			this.pos = buffer.arrayOffset() + buffer.position();
+			this.limit = buffer.arrayOffset() + buffer.limit();
+		} else {
+			this.buffer = new char[buffer.remaining()];
+			buffer.duplicate().get(this.buffer);
+			this.pos = 0;
+			this.limit = this.buffer.length;
+		}
+	}
+
+	public CharBufferLexer(String text) {
+		this(text.toCharArray());
+	}
+
+	@Override
+	public Token lookupToken(Predicate<Token> p) {
+		while (!isEndReached() && (currentToken == null || !p.test(currentToken))) {
+			scanToken();
+			currentToken = makeToken();
+		}
+
+		return isEndReached() ? new Token(lineNumber, lineOffset, TokenType.END_OF_TEXT, "") : currentToken;
+	}
+
+	@Override
+	public Token lookupToken() {
+		return lookupToken(LexUtils::truePredicate);
+	}
+
+	@Override
+	public void skipToken() {
+		currentToken = null;
+	}
+
+	@Override
+	public Token nextToken(Predicate<Token> p) {
+		Token tok = lookupToken(p);
+
+		skipToken();
+
+		return tok;
+	}
+
+	@Override
+	public Token nextToken() {
+		return nextToken(LexUtils::truePredicate);
+	}
+
+	@Override
+	public boolean isEndReached() {
+		return (currentToken == null || currentToken.type == TokenType.END_OF_TEXT) && eofSeen;
+	}
+
+	char[] getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public int getTokenStart() {
+		return tokenStart;
+	}
+
+	@Override
+	public int getTokenEnd() {
+		return tokenEnd;
+	}
+
+	int getTokenLineNumber() {
+		return tokenLineNumber;
+	}
+
+	int getTokenLineOffset() {
+		return tokenLineOffset;
+	}
+
+	TokenType getTokenType() {
+		return tokenType;
+	}
+
+	// text that is not a plain slice of the buffer: keyword and operator constants,
+	// or a string literal cut by the end of text; null otherwise
+	String getTokenTextOverride() {
+		return tokenText;
+	}
+
+	int getTokenSymbol() {
+		return tokenSymbol;
+	}
+
+	boolean isEofSeen() {
+		return eofSeen;
+	}
+
+	private Token makeToken() {
+		return new Token(tokenLineNumber, tokenLineOffset, tokenType, getTokenText(), tokenType == TokenType.IDENTIFIER ? tokenSymbol : -1);
+	}
+
+	String getTokenText() {
+		if (tokenText != null)
+			return tokenText;
+
+		if (tokenType == TokenType.WHITESPACE)
+			return whitespaceText(buffer, tokenStart, tokenEnd);
+
+		if (tokenType == TokenType.IDENTIFIER)
+			return symbols.name(tokenSymbol);
+
+		return new String(buffer, tokenStart, tokenEnd - tokenStart);
+	}
+
+	static String whitespaceText(char[] buffer, int start, int end) {
+		int len = end - start;
+		boolean onlySpaces = true;
+
+		for (int i = start; i < end && onlySpaces; ++i)
+			onlySpaces = buffer[i] == ' ';
+
+		if (onlySpaces && len <= CACHED_SPACES)
+			return SPACES[len];
+
+		StringBuilder sb = new StringBuilder(len);
+
+		for (int i = start; i < end; ++i) {
+			if (buffer[i] == '\t')
+				sb.append(TAB_SPACES);
+			else
+				sb.append(buffer[i]);
+		}
+
+		return sb.toString();
+	}
+
+	private boolean peekEnd() {
+		if (pos >= limit) {
+			eofSeen = true;
+
+			return true;
+		}
+
+		return false;
+	}
+
+	TokenType scanToken() {
+		tokenText = null;
+
+		if (eofSeen)
+			return endOfText();
+
+		for (;;) {
+			if (pos >= limit) {
+				eofSeen = true;
+				++lineOffset;
+
+				return endOfText();
+			}
+
+			int start = pos;
+			char ch = buffer[pos++];
+			++lineOffset;
+
+			tokenStart = start;
+			tokenLineNumber = lineNumber;
+			tokenLineOffset = lineOffset;
+
+			if (isIdentifierStart(ch))
+				return scanWord(start);
+			else if (isDigit(ch))
+				return scanNumber(start);
+			else if (ch == '\n') {
+				++lineNumber;
+				lineOffset = 0;
+
+				return constant(TokenType.LINE_FEED_DELIMITER, "\n", pos);
+			} else if (ch == '"')
+				return scanString(start);
+			else if (Character.isWhitespace(ch)) {
+				while (!peekEnd() && buffer[pos] != '\n' && Character.isWhitespace(buffer[pos])) {
+					++pos;
+					++lineOffset;
+				}
+
+				tokenType = TokenType.WHITESPACE;
+				tokenEnd = pos;
+
+				return tokenType;
+			} else if ((ch == '/' || ch == '.') && peekEnd()) {
+				// DFALexer drops a trailing '/' or '.' while looking for a comment or a fraction
+				return endOfText();
+			} else if (ch == '/' && buffer[pos] == '/') {
+				while (!peekEnd() && buffer[pos] != '\n') {
+					++pos;
+					++lineOffset;
+				}
+
+				if (eofSeen)
+					return endOfText();
+			} else if (ch == '/' && buffer[pos] == '*') {
+				skipMultilineComment();
+
+				if (eofSeen)
+					return endOfText();
+			} else if (ch == '.' && isDigit(buffer[pos]))
+				return scanFraction(start);
+			else
+				return scanOperator(ch);
+		}
+	}
+
+	// mirrors DFALexer: the opening '*' and the closing "*/" are not counted
+	// in the line offset, so "/*/" is already a complete comment
+	private void skipMultilineComment() {
+		boolean ended = false;
+
+		while (!eofSeen && !ended) {
+			for (;;) {
+				if (peekEnd()) {
+					++lineOffset;
+
+					break;
+				}
+
+				if (buffer[pos] == '*')
+					break;
+
+				if (buffer[pos++] == '\n') {
+					++lineNumber;
+					lineOffset = 0;
+				} else
+					++lineOffset;
+			}
+
+			if (!eofSeen) {
+				++pos;
+
+				if (!peekEnd() && buffer[pos] == '/') {
+					++pos;
+					ended = true;
+				}
+			}
+		}
+	}
+
+	private TokenType scanWord(int start) {
+		while (!peekEnd() && isIdentifierPart(buffer[pos])) {
+			++pos;
+			++lineOffset;
+		}
+
+		String keyword = classifyWord(buffer, start, pos - start);
+
+		if (keyword != null)
+			return constant(Token.TEXT_TOKENS.get(keyword), keyword, pos);
+
+		tokenType = TokenType.IDENTIFIER;
+		tokenEnd = pos;
+		tokenSymbol = symbols.intern(buffer, start, pos - start);
+
+		return tokenType;
+	}
+
+	private TokenType scanNumber(int start) {
+		while (!peekEnd() && isDigit(buffer[pos])) {
+			++pos;
+			++lineOffset;
+		}
+
+		if (!eofSeen && buffer[pos] == '.') {
+			if (pos + 1 < limit && buffer[pos + 1] == '.') {
+				tokenType = TokenType.INTEGER_NUMERIC_LITERAL;
+				tokenEnd = pos;
+
+				return tokenType;
+			}
+
+			++pos;
+			++lineOffset;
+
+			return scanFraction(start);
+		}
+
+		tokenType = TokenType.INTEGER_NUMERIC_LITERAL;
+		tokenEnd = pos;
+
+		return tokenType;
+	}
+
+	private TokenType scanFraction(int start) {
+		while (!peekEnd() && isDigit(buffer[pos])) {
+			++pos;
+			++lineOffset;
+		}
+
+		tokenType = TokenType.REAL_NUMERIC_LITERAL;
+		tokenEnd = pos;
+
+		return tokenType;
+	}
+
+	private TokenType scanString(int start) {
+		tokenType = TokenType.STRING_LITERAL;
+
+		for (;;) {
+			if (pos >= limit) {
+				// an unterminated literal keeps the NUL DFALexer reads at end of text
+				eofSeen = true;
+				++lineOffset;
+				tokenText = new String(buffer, start, pos - start) + '\0';
+				tokenEnd = pos;
+
+				return tokenType;
+			}
+
+			char ch = buffer[pos++];
+			++lineOffset;
+
+			if (ch == '\\') {
+				if (pos >= limit) {
+					// and drops a trailing backslash
+					eofSeen = true;
+					tokenText = new String(buffer, start, pos - 1 - start);
+					tokenEnd = pos;
+
+					return tokenType;
+				}
+
+				++pos;
+				++lineOffset;
+			} else if (ch == '"')
+				break;
+		}
+
+		tokenEnd = pos;
+
+		return tokenType;
+	}
+
+	private TokenType scanOperator(char ch) {
+		TokenType type;
+		String text;
+
+		switch (ch) {
+			case '[': type = TokenType.LEFT_BRACKET; text = "["; break;
+			case ']': type = TokenType.RIGHT_BRACKET; text = "]"; break;
+			case '(': type = TokenType.LEFT_PARENTHESIS; text = "("; break;
+			case ')': type = TokenType.RIGHT_PARENTHESIS; text = ")"; break;
+			case '+': type = TokenType.PLUS_OPERATOR; text = "+"; break;
+			case '-': type = TokenType.MINUS_OPERATOR; text = "-"; break;
+			case '*': type = TokenType.MULTIPLY_OPERATOR; text = "*"; break;
+			case '%': type = TokenType.MODULO_OPERATOR; text = "%"; break;
+			case ',': type = TokenType.COMMA_OPERATOR; text = ","; break;
+			case ';': type = TokenType.SEMICOLON_DELIMITER; text = ";"; break;
+			case '/':
+				if (follows('=')) {
+					type = TokenType.NE_OPERATOR; text = "/=";
+				} else {
+					type = TokenType.DIVIDE_OPERATOR; text = "/";
+				}
+				break;
+			case '.':
+				if (follows('.')) {
+					type = TokenType.RANGE_OPERATOR; text = "..";
+				} else {
+					type = TokenType.DOT_OPERATOR; text = ".";
+				}
+				break;
+			case ':':
+				if (follows('=')) {
+					type = TokenType.ASSIGN_OPERATOR; text = ":=";
+				} else {
+					type = TokenType.COLON_OPERATOR; text = ":";
+				}
+				break;
+			case '<':
+				if (follows('=')) {
+					type = TokenType.LE_OPERATOR; text = "<=";
+				} else {
+					type = TokenType.LT_OPERATOR; text = "<";
+				}
+				break;
+			case '>':
+				if (follows('=')) {
+					type = TokenType.GE_OPERATOR; text = ">=";
+				} else {
+					type = TokenType.GT_OPERATOR; text = ">";
+				}
+				break;
+			case '=':
+				if (follows('>')) {
+					type = TokenType.ROUTINE_EXPRESSION_OPERATOR; text = "=>";
+				} else {
+					type = TokenType.EQ_OPERATOR; text = "=";
+				}
+				break;
+			default:
+				type = TokenType.INVALID_TOKEN; text = null;
+				break;
+		}
+
+		// DFALexer always looks one char past the operator
+		peekEnd();
+
+		if (text == null) {
+			tokenType = type;
+			tokenEnd = pos;
+
+			return type;
+		}
+
+		return constant(type, text, pos);
+	}
+
+	private boolean follows(char ch) {
+		if (!peekEnd() && buffer[pos] == ch) {
+			++pos;
+			++lineOffset;
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private TokenType constant(TokenType type, String text, int end) {
+		tokenType = type;
+		tokenText = text;
+		tokenEnd = end;
+
+		return type;
+	}
+
+	private TokenType endOfText() {
+		tokenStart = tokenEnd = pos;
+		tokenLineNumber = lineNumber;
+		tokenLineOffset = lineOffset;
+
+		return constant(TokenType.END_OF_TEXT, "", pos);
+	}
+
+	private static boolean isIdentifierStart(char ch) {
+		if (ch < 128)
+			return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
+
+		return Character.isAlphabetic(ch);
+	}
+
+	private static boolean isIdentifierPart(char ch) {
+		if (ch < 128)
+			return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+
+		return Character.isAlphabetic(ch) || Character.isDigit(ch);
+	}
+
+	private static boolean isDigit(char ch) {
+		if (ch < 128)
+			return ch >= '0' && ch <= '9';
+
+		return Character.isDigit(ch);
+	}
+
+	// returns the keyword spelled by buf[start, start + len), or null for a plain identifier
+	static String classifyWord(char[] buf, int start, int len) {
+		String candidate;
+
+		switch (len) {
+			case 2:
+				switch (buf[start]) {
+					case 'i':
+						candidate = buf[start + 1] == 'f' ? "if" : buf[start + 1] == 'n' ? "in" : "is";
+						break;
+					case 'o': candidate = "or"; break;
+					default: return null;
+				}
+				break;
+			case 3:
+				switch (buf[start]) {
+					case 'v': candidate = "var"; break;
+					case 'f': candidate = "for"; break;
+					case 'e': candidate = "end"; break;
+					case 'n': candidate = "not"; break;
+					case 'a': candidate = "and"; break;
+					case 'x': candidate = "xor"; break;
+					default: return null;
+				}
+				break;
+			case 4:
+				switch (buf[start]) {
+					case 't':
+						candidate = buf[start + 1] == 'y' ? "type" : buf[start + 1] == 'h' ? "then" : "true";
+						break;
+					case 'e': candidate = "else"; break;
+					case 'l': candidate = "loop"; break;
+					case 'r': candidate = "real"; break;
+					default: return null;
+				}
+				break;
+			case 5:
+				switch (buf[start]) {
+					case 'w': candidate = "while"; break;
+					case 'b': candidate = "break"; break;
+					case 'a': candidate = "array"; break;
+					case 'f': candidate = "false"; break;
+					case 'p': candidate = "print"; break;
+					default: return null;
+				}
+				break;
+			case 6:
+				switch (buf[start + 2]) {
+					case 't': candidate = "return"; break;
+					case 'c': candidate = "record"; break;
+					default: return null;
+				}
+				break;
+			case 7:
+				switch (buf[start]) {
+					case 'r':
+						candidate = buf[start + 2] == 'u' ? "routine" : "reverse";
+						break;
+					case 'b': candidate = "boolean"; break;
+					case 'i': candidate = "integer"; break;
+					default: return null;
+				}
+				break;
+			case 8:
+				candidate = "continue";
+				break;
+			default:
+				return null;
+		}
+
+		for (int i = 0; i < len; ++i) {
+			if (buf[start + i] != candidate.charAt(i))
+				return null;
+		}
+
+		return candidate;
+	}
+}
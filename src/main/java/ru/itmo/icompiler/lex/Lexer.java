@@ -14,4 +14,16 @@ public interface Lexer {
 	Token nextToken();
 	
 	boolean isEndReached();
+	
+	default Token lookupToken(TokenClass accepted) {
+		return lookupToken(accepted::contains);
+	}
+	
+	default Token nextToken(TokenClass accepted) {
+		Token tok = lookupToken(accepted);
+		
+		skipToken();
+		
+		return tok;
+	}
 }
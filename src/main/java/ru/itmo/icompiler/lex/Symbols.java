@@ -0,0 +1,116 @@
+package ru.itmo.icompiler.lex;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Identifiers interned into dense integer ids, one table per compilation: the lexers of a
+// program share it with the scopes that check it, and it goes away with them. The lexer
+// interns an identifier straight from its buffer, so all tokens of a name share one String,
+// and the id travels on the token to the nodes; scopes index their bindings by it.
+//
+// The char table is only touched by the lexers, which never run alongside the checker. The
+// checker, whose routine bodies may be checked in parallel, only has names as Strings for
+// the few bindings it makes itself, and interns those through the concurrent map.
+public class Symbols {
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private final AtomicInteger count = new AtomicInteger();
+
+	// open addressing over the ids, probed with the chars of a name
+	private int[] table = newTable(1024);
+	private int tableSize;
+	// the name of every id the lexers have produced
+	private String[] names = new String[512];
+
+	private static int[] newTable(int capacity) {
+		int[] table = new int[capacity];
+		Arrays.fill(table, -1);
+
+		return table;
+	}
+
+	private static int hash(char[] chars, int offset, int length) {
+		int h = 0;
+
+		for (int i = offset; i < offset + length; ++i)
+			h = 31 * h + chars[i];
+
+		return h;
+	}
+
+	public int intern(char[] chars, int offset, int length) {
+		int h = hash(chars, offset, length);
+		int mask = table.length - 1;
+
+		for (int slot = h & mask; ; slot = (slot + 1) & mask) {
+			int id = table[slot];
+
+			if (id < 0)
+				return add(new String(chars, offset, length), slot);
+
+			String name = names[id];
+
+			if (name.length() == length && name.hashCode() == h && regionEquals(name, chars, offset))
+				return id;
+		}
+	}
+
+	public int intern(String name) {
+		return ids.computeIfAbsent(name, n -> count.getAndIncrement());
+	}
+
+	// the id of an interned name, or -1
+	public int lookup(String name) {
+		Integer id = ids.get(name);
+
+		return id != null ? id : -1;
+	}
+
+	// the name of a symbol some lexer has produced
+	public String name(int symbol) {
+		return names[symbol];
+	}
+
+	private static boolean regionEquals(String name, char[] chars, int offset) {
+		for (int i = 0; i < name.length(); ++i) {
+			if (name.charAt(i) != chars[offset + i])
+				return false;
+		}
+
+		return true;
+	}
+
+	private int add(String name, int slot) {
+		// the checker may have interned the name first
+		int id = intern(name);
+
+		if (id >= names.length)
+			names = Arrays.copyOf(names, Math.max(names.length * 2, id + 1));
+
+		names[id] = name;
+		table[slot] = id;
+
+		// kept at most half full
+		if (++tableSize * 2 > table.length) {
+			int[] grown = newTable(table.length * 2);
+			int mask = grown.length - 1;
+
+			for (int i = 0; i < names.length; ++i) {
+				if (names[i] == null)
+					continue;
+
+				int s = names[i].hashCode() & mask;
+
+				while (grown[s] >= 0)
+					s = (s + 1) & mask;
+
+				grown[s] = i;
+			}
+
+			table = grown;
+		}
+
+		return id;
+	}
+}
@@ -1,6 +1,5 @@
 package ru.itmo.icompiler.lex;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 
@@ -9,12 +8,19 @@ public class Token {
 	public final int lineOffset;
 	public final TokenType type; 
 	public final String text;
+	// the interned name of an identifier from a lexer with a symbol table, -1 otherwise
+	public final int symbol;
 	
-	public Token(int lineNumber, int lineOffset, TokenType type, String text) {
+	public Token(int lineNumber, int lineOffset, TokenType type, String text, int symbol) {
 		this.lineNumber = lineNumber;
 		this.lineOffset = lineOffset;
 		this.type = type;
 		this.text = text;
+		this.symbol = symbol;
+	}
+	
+	public Token(int lineNumber, int lineOffset, TokenType type, String text) {
+		this(lineNumber, lineOffset, type, text, -1);
 	}
 	
 	public static enum TokenType {
@@ -121,13 +127,15 @@ public class Token {
 		;
 		
 		public boolean anyOf(TokenType... expected) {
-			return Arrays.stream(expected)
-					.anyMatch(this::equals);
+			for (TokenType type: expected)
+				if (this == type)
+					return true;
+			
+			return false;
 		}
 		
 		public boolean noneOf(TokenType... expected) {
-			return Arrays.stream(expected)
-						.noneMatch(this::equals);
+			return !anyOf(expected);
 		}
 	}
 	
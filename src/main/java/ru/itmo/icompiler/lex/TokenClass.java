@@ -0,0 +1,54 @@
+package ru.itmo.icompiler.lex;
+
+import ru.itmo.icompiler.lex.Token.TokenType;
+
+// An immutable set of token types kept as a bitmask over the ordinals,
+// so a lookahead test is a shift and a mask. The types are also kept
+// in the given order for diagnostics.
+public final class TokenClass {
+	static {
+		if (TokenType.values().length > Long.SIZE)
+			throw new AssertionError("TokenType no longer fits a long bitmask");
+	}
+
+	private final long mask;
+	private final TokenType[] types;
+
+	private TokenClass(long mask, TokenType[] types) {
+		this.mask = mask;
+		this.types = types;
+	}
+
+	public static TokenClass of(TokenType... types) {
+		long mask = 0;
+
+		for (TokenType type : types)
+			mask |= 1L << type.ordinal();
+
+		return new TokenClass(mask, types.clone());
+	}
+
+	public TokenClass complement() {
+		TokenType[] all = TokenType.values();
+		TokenType[] rest = new TokenType[all.length - Long.bitCount(mask)];
+		int i = 0;
+
+		for (TokenType type : all)
+			if (!contains(type))
+				rest[i++] = type;
+
+		return new TokenClass(~mask, rest);
+	}
+
+	public boolean contains(TokenType type) {
+		return (mask & (1L << type.ordinal())) != 0;
+	}
+
+	public boolean contains(Token tk) {
+		return contains(tk.type);
+	}
+
+	public TokenType[] getTypes() {
+		return types.clone();
+	}
+}
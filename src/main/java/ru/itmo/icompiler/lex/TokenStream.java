@@ -0,0 +1,179 @@
+package ru.itmo.icompiler.lex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ru.itmo.icompiler.lex.Token.TokenType;
+
+// A whole text lexed up front into parallel arrays: token i is
+// (types[i], starts[i], lengths[i], lineNumbers[i], lineOffsets[i]) over the shared buffer.
+// Token objects and token texts are only created on request; an identifier's text is its
+// interned name, symbols[i].
+//
+// The last token is always END_OF_TEXT.
+public class TokenStream {
+	private static final TokenType[] TOKEN_TYPES = TokenType.values();
+	private static final String[] FIXED_TEXTS = new String[TOKEN_TYPES.length];
+
+	static {
+		Token.TEXT_TOKENS.forEach((text, type) -> FIXED_TEXTS[type.ordinal()] = text);
+		FIXED_TEXTS[TokenType.END_OF_TEXT.ordinal()] = "";
+	}
+
+	private final char[] buffer;
+	private final boolean whitespaceKept;
+	private final Symbols symbolTable;
+
+	private byte[] types;
+	private int[] starts;
+	private int[] lengths;
+	private int[] lineNumbers;
+	private int[] lineOffsets;
+	private int[] symbols;
+	private int size;
+
+	// string literals cut by the end of text, whose text is not a slice of the buffer
+	private final Map<Integer, String> irregularTexts = new HashMap<>();
+
+	// index of the token after which the lexer had looked past the end of the buffer
+	private int eofIndex;
+
+	private TokenStream(char[] buffer, int capacity, boolean whitespaceKept, Symbols symbolTable) {
+		this.buffer = buffer;
+		this.whitespaceKept = whitespaceKept;
+		this.symbolTable = symbolTable;
+
+		types = new byte[capacity];
+		starts = new int[capacity];
+		lengths = new int[capacity];
+		lineNumbers = new int[capacity];
+		lineOffsets = new int[capacity];
+		symbols = new int[capacity];
+	}
+
+	public static TokenStream lex(char[] buffer, int offset, int length, boolean keepWhitespace, Symbols symbols) {
+		CharBufferLexer lexer = new CharBufferLexer(buffer, offset, length, symbols);
+		TokenStream stream = new TokenStream(buffer, Math.max(length / 4, 16), keepWhitespace, symbols);
+
+		int eofIndex = -1;
+		TokenType type;
+
+		do {
+			type = lexer.scanToken();
+
+			if (keepWhitespace || type != TokenType.WHITESPACE) {
+				stream.add(lexer);
+
+				if (type == TokenType.STRING_LITERAL && lexer.getTokenTextOverride() != null)
+					stream.irregularTexts.put(stream.size - 1, lexer.getTokenTextOverride());
+
+				// a dropped trailing whitespace run leaves this to the END_OF_TEXT after it
+				if (eofIndex < 0 && lexer.isEofSeen())
+					eofIndex = stream.size - 1;
+			}
+		} while (type != TokenType.END_OF_TEXT);
+
+		stream.eofIndex = eofIndex;
+		stream.trim();
+
+		return stream;
+	}
+
+	public static TokenStream lex(char[] buffer, boolean keepWhitespace) {
+		return lex(buffer, 0, buffer.length, keepWhitespace, new Symbols());
+	}
+
+	private void add(CharBufferLexer lexer) {
+		if (size == types.length) {
+			int capacity = size * 2;
+
+			types = Arrays.copyOf(types, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+			lineOffsets = Arrays.copyOf(lineOffsets, capacity);
+			symbols = Arrays.copyOf(symbols, capacity);
+		}
+
+		types[size] = (byte) lexer.getTokenType().ordinal();
+		starts[size] = lexer.getTokenStart();
+		lengths[size] = lexer.getTokenEnd() - lexer.getTokenStart();
+		lineNumbers[size] = lexer.getTokenLineNumber();
+		lineOffsets[size] = lexer.getTokenLineOffset();
+		symbols[size] = lexer.getTokenType() == TokenType.IDENTIFIER ? lexer.getTokenSymbol() : -1;
+
+		++size;
+	}
+
+	private void trim() {
+		types = Arrays.copyOf(types, size);
+		starts = Arrays.copyOf(starts, size);
+		lengths = Arrays.copyOf(lengths, size);
+		lineNumbers = Arrays.copyOf(lineNumbers, size);
+		lineOffsets = Arrays.copyOf(lineOffsets, size);
+		symbols = Arrays.copyOf(symbols, size);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isWhitespaceKept() {
+		return whitespaceKept;
+	}
+
+	public char[] getBuffer() {
+		return buffer;
+	}
+
+	public TokenType getType(int index) {
+		return TOKEN_TYPES[types[index]];
+	}
+
+	public int getStart(int index) {
+		return starts[index];
+	}
+
+	public int getLength(int index) {
+		return lengths[index];
+	}
+
+	public int getLineNumber(int index) {
+		return lineNumbers[index];
+	}
+
+	public int getLineOffset(int index) {
+		return lineOffsets[index];
+	}
+
+	// the interned name of an identifier, -1 for other tokens
+	public int getSymbol(int index) {
+		return symbols[index];
+	}
+
+	public String getText(int index) {
+		String text = FIXED_TEXTS[types[index]];
+
+		if (text != null)
+			return text;
+
+		if (types[index] == TokenType.WHITESPACE.ordinal())
+			return CharBufferLexer.whitespaceText(buffer, starts[index], starts[index] + lengths[index]);
+
+		if (symbols[index] >= 0)
+			return symbolTable.name(symbols[index]);
+
+		text = irregularTexts.get(index);
+
+		return text != null ? text : new String(buffer, starts[index], lengths[index]);
+	}
+
+	public Token getToken(int index) {
+		return new Token(lineNumbers[index], lineOffsets[index], getType(index), getText(index), symbols[index]);
+	}
+
+	int getEofIndex() {
+		return eofIndex;
+	}
+}
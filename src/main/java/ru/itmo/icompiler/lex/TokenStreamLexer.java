@@ -0,0 +1,104 @@
+package ru.itmo.icompiler.lex;
+
+import java.util.function.Predicate;
+
+import ru.itmo.icompiler.lex.Token.TokenType;
+
+// Replays a TokenStream through the Lexer interface by index, behaving exactly
+// like a CharBufferLexer over the same text. Only looked up tokens become Token objects;
+// tokens skipped by a TokenClass lookup are tested on their packed type alone.
+public class TokenStreamLexer implements BufferLexer {
+	private final TokenStream tokens;
+	private final Token endOfText;
+
+	// index of the next token to read
+	private int next;
+	private int current = -1;
+	private Token currentToken;
+
+	public TokenStreamLexer(TokenStream tokens) {
+		this.tokens = tokens;
+
+		int last = tokens.size() - 1;
+		this.endOfText = new Token(tokens.getLineNumber(last), tokens.getLineOffset(last), TokenType.END_OF_TEXT, "");
+	}
+
+	@Override
+	public Token lookupToken(Predicate<Token> p) {
+		while (!isEndReached() && (current < 0 || !p.test(currentToken())))
+			advance();
+
+		return isEndReached() ? endOfText : currentToken();
+	}
+
+	@Override
+	public Token lookupToken(TokenClass accepted) {
+		while (!isEndReached() && (current < 0 || !accepted.contains(tokens.getType(current))))
+			advance();
+
+		return isEndReached() ? endOfText : currentToken();
+	}
+
+	@Override
+	public Token lookupToken() {
+		if (current < 0 && !isEndReached())
+			advance();
+
+		return isEndReached() ? endOfText : currentToken();
+	}
+
+	@Override
+	public void skipToken() {
+		current = -1;
+		currentToken = null;
+	}
+
+	@Override
+	public Token nextToken(Predicate<Token> p) {
+		Token tok = lookupToken(p);
+
+		skipToken();
+
+		return tok;
+	}
+
+	@Override
+	public Token nextToken() {
+		Token tok = lookupToken();
+
+		skipToken();
+
+		return tok;
+	}
+
+	@Override
+	public boolean isEndReached() {
+		return (current < 0 || tokens.getType(current) == TokenType.END_OF_TEXT) && next > tokens.getEofIndex();
+	}
+
+	// with no current token these describe the final END_OF_TEXT
+	@Override
+	public int getTokenStart() {
+		return tokens.getStart(current < 0 ? tokens.size() - 1 : current);
+	}
+
+	@Override
+	public int getTokenEnd() {
+		int index = current < 0 ? tokens.size() - 1 : current;
+
+		return tokens.getStart(index) + tokens.getLength(index);
+	}
+
+	private void advance() {
+		// everything past the end reads as the final END_OF_TEXT
+		current = Math.min(next++, tokens.size() - 1);
+		currentToken = null;
+	}
+
+	private Token currentToken() {
+		if (currentToken == null)
+			currentToken = tokens.getToken(current);
+
+		return currentToken;
+	}
+}
@@ -0,0 +1,187 @@
+package ru.itmo.icompiler.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// The whole program text in one char[], shared by the lexer and diagnostics.
+// Line terminators are normalized to '\n', tabs are expanded and a non-empty text
+// always ends with '\n' (the same text BufferedReader.lines() used to rebuild).
+// Line starts are indexed only when a line is first requested.
+public class SourceText {
+	private final char[] chars;
+	private final int length;
+	private final int tabSize;
+
+	private int[] lineStarts;
+	private int lineCount;
+
+	private SourceText(char[] chars, int length, int tabSize) {
+		this.chars = chars;
+		this.length = length;
+		this.tabSize = tabSize;
+	}
+
+	public static SourceText map(File file, Charset charset, int tabSize) throws IOException {
+		// pipes and devices can't be mapped
+		if (!file.isFile()) {
+			try (InputStream in = Files.newInputStream(file.toPath())) {
+				return read(in, charset, tabSize);
+			}
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			return decode(bytes, charset, tabSize);
+		}
+	}
+
+	public static SourceText read(InputStream in, Charset charset, int tabSize) throws IOException {
+		return decode(ByteBuffer.wrap(in.readAllBytes()), charset, tabSize);
+	}
+
+	public static SourceText of(String text, int tabSize) {
+		return normalize(CharBuffer.wrap(text.toCharArray()), tabSize);
+	}
+
+	private static SourceText decode(ByteBuffer bytes, Charset charset, int tabSize) {
+		return normalize(charset.decode(bytes), tabSize);
+	}
+
+	private static SourceText normalize(CharBuffer decoded, int tabSize) {
+		char[] src = decoded.array();
+		int from = decoded.arrayOffset() + decoded.position();
+		int to = decoded.arrayOffset() + decoded.limit();
+		tabSize = Math.max(tabSize, 1);
+
+		int extra = 0;
+		boolean rewrite = false;
+
+		for (int i = from; i < to; ++i) {
+			char c = src[i];
+
+			if (c == '\t') {
+				extra += tabSize - 1;
+				rewrite = true;
+			} else if (c == '\r')
+				rewrite = true;
+		}
+
+		boolean missingLineFeed = to > from && src[to - 1] != '\n' && src[to - 1] != '\r';
+
+		// the decoder's array is used as is when nothing has to change
+		if (!rewrite && !missingLineFeed && from == 0)
+			return new SourceText(src, to, tabSize);
+
+		char[] dst = new char[to - from + extra + 1];
+		int len = 0;
+
+		for (int i = from; i < to; ++i) {
+			char c = src[i];
+
+			if (c == '\t') {
+				Arrays.fill(dst, len, len + tabSize, ' ');
+				len += tabSize;
+			} else if (c == '\r') {
+				dst[len++] = '\n';
+
+				if (i + 1 < to && src[i + 1] == '\n')
+					++i;
+			} else
+				dst[len++] = c;
+		}
+
+		if (missingLineFeed)
+			dst[len++] = '\n';
+
+		return new SourceText(dst, len, tabSize);
+	}
+
+	// the text with [offset, offset + removedLength) replaced by text, normalized the same way
+	public SourceText replace(int offset, int removedLength, String text) {
+		StringBuilder sb = new StringBuilder(length - removedLength + text.length());
+
+		sb.append(chars, 0, offset)
+			.append(text)
+			.append(chars, offset + removedLength, length - offset - removedLength);
+
+		return of(sb.toString(), tabSize);
+	}
+
+	public char[] getChars() {
+		return chars;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public int getLineCount() {
+		indexLines();
+
+		return lineCount;
+	}
+
+	// getLineCount of the text the bytes decode to, without decoding them: "\r\n", '\r' and
+	// '\n' end a line, and so does the end of a text that does not end with one. For charsets
+	// where the two are single bytes that nothing else uses, such as UTF-8.
+	public static int countLines(byte[] bytes) {
+		int count = 0;
+
+		for (int i = 0; i < bytes.length; ++i) {
+			if (bytes[i] == '\n')
+				++count;
+			else if (bytes[i] == '\r') {
+				++count;
+
+				if (i + 1 < bytes.length && bytes[i + 1] == '\n')
+					++i;
+			}
+		}
+
+		if (bytes.length > 0 && bytes[bytes.length - 1] != '\n' && bytes[bytes.length - 1] != '\r')
+			++count;
+
+		return count;
+	}
+
+	// lineNumber is 1-based, the returned line has no terminator
+	public String getLine(int lineNumber) {
+		indexLines();
+
+		int start = lineStarts[lineNumber - 1];
+		int end = lineNumber < lineCount ? lineStarts[lineNumber] - 1 : length - 1;
+
+		return new String(chars, start, Math.max(end - start, 0));
+	}
+
+	private void indexLines() {
+		if (lineStarts != null)
+			return;
+
+		int count = 0;
+
+		for (int i = 0; i < length; ++i)
+			if (chars[i] == '\n')
+				++count;
+
+		int[] starts = new int[Math.max(count, 1)];
+		int line = 1;
+
+		for (int i = 0; i < length - 1; ++i)
+			if (chars[i] == '\n')
+				starts[line++] = i + 1;
+
+		lineCount = count;
+		lineStarts = starts;
+	}
+}
@@ -0,0 +1,118 @@
+package ru.itmo.icompiler.semantic;
+
+import java.util.Arrays;
+
+import ru.itmo.icompiler.semantic.SemanticContext.Scope;
+import ru.itmo.icompiler.semantic.SemanticContext.Scope.VarTypeWithInfo;
+
+// The bindings of the block scopes nested in one root scope, as a stack of frames over flat
+// arrays indexed by symbol id. heads[symbol] is the innermost binding of the symbol, and
+// every binding links to the one it shadows, so a lookup is one array read whatever the
+// depth. Pushing a frame is O(1), popping one restores the bindings its own ones shadowed.
+class ScopeTable {
+	private int[] heads = new int[64];
+
+	// binding i is (bindingSymbols[i], bindingInfos[i]) in frame bindingFrames[i]
+	private int[] bindingSymbols = new int[32];
+	private VarTypeWithInfo[] bindingInfos = new VarTypeWithInfo[32];
+	private int[] bindingFrames = new int[32];
+	private int[] shadowed = new int[32];
+	private int bindingCount;
+
+	// frame f holds the bindings from frameStarts[f] on, of the block frameScopes[f]
+	private int[] frameStarts = new int[16];
+	private Scope[] frameScopes = new Scope[16];
+	private int frameCount;
+
+	public ScopeTable() {
+		Arrays.fill(heads, -1);
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	public Scope getFrameScope(int frame) {
+		return frameScopes[frame];
+	}
+
+	public int push(Scope scope) {
+		if (frameCount == frameStarts.length) {
+			frameStarts = Arrays.copyOf(frameStarts, frameCount * 2);
+			frameScopes = Arrays.copyOf(frameScopes, frameCount * 2);
+		}
+
+		frameStarts[frameCount] = bindingCount;
+		frameScopes[frameCount] = scope;
+
+		return frameCount++;
+	}
+
+	// pops the frames above the first frameCount ones
+	public void popTo(int frameCount) {
+		while (this.frameCount > frameCount) {
+			int frame = --this.frameCount;
+
+			for (int i = bindingCount - 1; i >= frameStarts[frame]; --i) {
+				heads[bindingSymbols[i]] = shadowed[i];
+				bindingInfos[i] = null;
+			}
+
+			bindingCount = frameStarts[frame];
+			frameScopes[frame] = null;
+		}
+	}
+
+	// binds symbol in the top frame, replacing its binding there if it has one
+	public void bind(int symbol, VarTypeWithInfo info) {
+		if (symbol >= heads.length) {
+			int oldLength = heads.length;
+
+			heads = Arrays.copyOf(heads, Math.max(oldLength * 2, symbol + 1));
+			Arrays.fill(heads, oldLength, heads.length, -1);
+		}
+
+		int frame = frameCount - 1;
+		int head = heads[symbol];
+
+		if (head >= 0 && bindingFrames[head] == frame) {
+			bindingInfos[head] = info;
+
+			return;
+		}
+
+		if (bindingCount == bindingSymbols.length) {
+			int capacity = bindingCount * 2;
+
+			bindingSymbols = Arrays.copyOf(bindingSymbols, capacity);
+			bindingInfos = Arrays.copyOf(bindingInfos, capacity);
+			bindingFrames = Arrays.copyOf(bindingFrames, capacity);
+			shadowed = Arrays.copyOf(shadowed, capacity);
+		}
+
+		bindingSymbols[bindingCount] = symbol;
+		bindingInfos[bindingCount] = info;
+		bindingFrames[bindingCount] = frame;
+		shadowed[bindingCount] = head;
+
+		heads[symbol] = bindingCount++;
+	}
+
+	// the innermost binding of symbol, or -1
+	public int lookup(int symbol) {
+		return symbol >= 0 && symbol < heads.length ? heads[symbol] : -1;
+	}
+
+	// the binding shadowed by binding, or -1
+	public int getShadowed(int binding) {
+		return shadowed[binding];
+	}
+
+	public int getFrame(int binding) {
+		return bindingFrames[binding];
+	}
+
+	public VarTypeWithInfo getInfo(int binding) {
+		return bindingInfos[binding];
+	}
+}
@@ -21,23 +21,32 @@ public class SemUtils {
 	}
 	
 	public static VarType checkEntity(String entity, SemanticContext ctx, boolean deepSearch, SemanticException e) throws SemanticException {
+		return checkEntity(-1, entity, ctx, deepSearch, e);
+	}
+	
+	// symbol is the interned name of entity, or -1
+	public static VarType checkEntity(int symbol, String entity, SemanticContext ctx, boolean deepSearch, SemanticException e) throws SemanticException {
 		VarType entityType = null;
 		
 		if (deepSearch)
-			entityType = ctx.getScope().deepLookupEntity(entity);
+			entityType = ctx.getScope().deepLookupEntity(symbol, entity);
 		else
-			entityType = ctx.getScope().lookupEntity(entity);
+			entityType = ctx.getScope().lookupEntity(symbol, entity);
 		
 		return Optional.ofNullable(entityType).orElseThrow(() -> e);
 	}
 	
 	public static VarType checkRoutine(String entity, SemanticContext ctx, boolean deepSearch, SemanticException e) throws SemanticException {
+		return checkRoutine(-1, entity, ctx, deepSearch, e);
+	}
+	
+	public static VarType checkRoutine(int symbol, String entity, SemanticContext ctx, boolean deepSearch, SemanticException e) throws SemanticException {
 		VarType type;
 		
 		if (deepSearch)
-			type = ctx.getScope().deepLookupEntity(entity);
+			type = ctx.getScope().deepLookupEntity(symbol, entity);
 		else
-			type = ctx.getScope().lookupEntity(entity);
+			type = ctx.getScope().lookupEntity(symbol, entity);
 
 		return Optional.ofNullable(type).orElseThrow(() -> e);
 	}
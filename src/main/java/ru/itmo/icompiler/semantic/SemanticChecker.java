@@ -0,0 +1,373 @@
+package ru.itmo.icompiler.semantic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+import ru.itmo.icompiler.exception.CompilerException;
+import ru.itmo.icompiler.lex.Symbols;
+import ru.itmo.icompiler.semantic.SemanticContext.Scope;
+import ru.itmo.icompiler.semantic.visitor.AbstractASTVisitor;
+import ru.itmo.icompiler.semantic.visitor.CFGASTVisitor;
+import ru.itmo.icompiler.semantic.visitor.SimpleASTVisitor;
+import ru.itmo.icompiler.semantic.visitor.SimpleExpressionVisitor;
+import ru.itmo.icompiler.semantic.visitor.TypealiasResolverASTVisitor;
+import ru.itmo.icompiler.syntax.IncrementalParser;
+import ru.itmo.icompiler.syntax.ast.ASTNode;
+import ru.itmo.icompiler.syntax.ast.ProgramASTNode;
+import ru.itmo.icompiler.syntax.ast.RoutineDefinitionASTNode;
+
+// Runs the semantic passes one top-level declaration at a time and remembers, for every
+// routine definition, the global names its check looked up (with what they were bound to)
+// and the errors it reported. On the next check a routine whose node the parser kept, so
+// whose tokens are unchanged, and whose global names are bound as before is only declared:
+// its errors are replayed and its expressions keep the types inferred last time.
+//
+// The passes rewrite the nodes they check (types are resolved in place, casts are inserted,
+// unresolved declarations are detached), so everything else that was checked before is
+// parsed again first.
+//
+// Global declarations and routine headers are visited in order. The routine bodies are then
+// checked in parallel, each against the global names as they were bound at its declaration,
+// and the errors are merged back in declaration order.
+public class SemanticChecker {
+	private static class RoutineCheck {
+		private final Map<String, Scope.VarTypeWithInfo> resolverLookups, checkerLookups;
+		private final List<CompilerException> errors;
+
+		public RoutineCheck(Map<String, Scope.VarTypeWithInfo> resolverLookups, Map<String, Scope.VarTypeWithInfo> checkerLookups, List<CompilerException> errors) {
+			this.resolverLookups = resolverLookups;
+			this.checkerLookups = checkerLookups;
+			this.errors = errors;
+		}
+	}
+
+	// A global scope that keeps every binding a name has had, and that can record the first
+	// lookup of every name, except for the names defined while recording: those are bound
+	// by the routine itself.
+	private static class RecordingScope extends Scope {
+		private static class Binding {
+			private final int version;
+			private final VarTypeWithInfo info;
+
+			public Binding(int version, VarTypeWithInfo info) {
+				this.version = version;
+				this.info = info;
+			}
+		}
+
+		private final Map<String, List<Binding>> bindings = new HashMap<>();
+		private int version;
+
+		private Map<String, VarTypeWithInfo> lookups;
+		private Set<String> defined;
+
+		public RecordingScope(Symbols symbols) {
+			super(symbols);
+		}
+
+		public void startRecording() {
+			lookups = new HashMap<>();
+			defined = new HashSet<>();
+		}
+
+		public Map<String, VarTypeWithInfo> stopRecording() {
+			Map<String, VarTypeWithInfo> recorded = lookups;
+
+			lookups = null;
+			defined = null;
+
+			return recorded;
+		}
+
+		// the names as they are bound now, for a routine body checked later;
+		// the names defined since startRecording are not recorded by it
+		public BodyScope bodyScope() {
+			return new BodyScope(this, version, defined);
+		}
+
+		public boolean isBoundAsBefore(Map<String, VarTypeWithInfo> recorded) {
+			for (Map.Entry<String, VarTypeWithInfo> lookup: recorded.entrySet()) {
+				if (!sameBinding(lookup.getValue(), super.getEntityInfo(lookup.getKey())))
+					return false;
+			}
+
+			return true;
+		}
+
+		private static boolean sameBinding(VarTypeWithInfo before, VarTypeWithInfo now) {
+			if (before == null || now == null)
+				return before == now;
+
+			return before.isTypeAlias == now.isTypeAlias
+				&& before.isMutable == now.isMutable
+				&& sameType(before.type, now.type);
+		}
+
+		// equals is looser than a check needs (an alias equals whatever its real type equals,
+		// function types only compare their arity and result), so types are compared by
+		// what they spell out, and an alias only matches itself
+		private static boolean sameType(VarType before, VarType now) {
+			if (before == now)
+				return true;
+
+			if (before == null || now == null || before.getClass() != now.getClass() || before.isAlias())
+				return false;
+
+			return before.toString().equals(now.toString());
+		}
+
+		private VarTypeWithInfo getEntityInfo(String name, int atVersion) {
+			List<Binding> history = bindings.get(name);
+
+			if (history != null) {
+				for (int i = history.size() - 1; i >= 0; --i) {
+					if (history.get(i).version <= atVersion)
+						return history.get(i).info;
+				}
+			}
+
+			return null;
+		}
+
+		@Override
+		protected VarTypeWithInfo getEntityInfo(String name) {
+			VarTypeWithInfo info = super.getEntityInfo(name);
+
+			if (lookups != null && !defined.contains(name) && !lookups.containsKey(name))
+				lookups.put(name, info);
+
+			return info;
+		}
+
+		@Override
+		protected void putEntityInfo(String name, VarTypeWithInfo info) {
+			if (lookups != null)
+				defined.add(name);
+
+			bindings.computeIfAbsent(name, key -> new ArrayList<>(1)).add(new Binding(++version, info));
+
+			super.putEntityInfo(name, info);
+		}
+	}
+
+	// A read-only view of a global scope as it was at some point, for one routine body.
+	// It only reads bindings made before it was created, so several of them can be used
+	// at the same time, and it records the first lookup of every name but the excluded ones.
+	private static class BodyScope extends Scope {
+		private final RecordingScope global;
+		private final int version;
+		private final Set<String> excluded;
+
+		private final Map<String, VarTypeWithInfo> lookups = new HashMap<>();
+
+		public BodyScope(RecordingScope global, int version, Set<String> excluded) {
+			super(global.getSymbols());
+
+			this.global = global;
+			this.version = version;
+			this.excluded = excluded;
+		}
+
+		@Override
+		protected VarTypeWithInfo getEntityInfo(String name) {
+			VarTypeWithInfo info = global.getEntityInfo(name, version);
+
+			if (!excluded.contains(name))
+				lookups.put(name, info);
+
+			return info;
+		}
+
+		@Override
+		protected void putEntityInfo(String name, VarTypeWithInfo info) {
+			throw new UnsupportedOperationException("a routine body defines its names in scopes of its own");
+		}
+	}
+
+	// a routine checked anew: the header is visited in order, the body later
+	private static class RoutineBodyCheck {
+		private final RoutineDefinitionASTNode routine;
+
+		private final Map<String, Scope.VarTypeWithInfo> resolverHeaderLookups, checkerHeaderLookups;
+		private final BodyScope resolverScope, checkerScope;
+
+		private final List<CompilerException> resolverHeaderErrors, checkerHeaderErrors;
+		private final List<CompilerException> resolverBodyErrors = new ArrayList<>();
+		private final List<CompilerException> checkerBodyErrors = new ArrayList<>();
+
+		public RoutineBodyCheck(
+					RoutineDefinitionASTNode routine,
+					Map<String, Scope.VarTypeWithInfo> resolverHeaderLookups, BodyScope resolverScope, List<CompilerException> resolverHeaderErrors,
+					Map<String, Scope.VarTypeWithInfo> checkerHeaderLookups, BodyScope checkerScope, List<CompilerException> checkerHeaderErrors
+				) {
+			this.routine = routine;
+			this.resolverHeaderLookups = resolverHeaderLookups;
+			this.resolverScope = resolverScope;
+			this.resolverHeaderErrors = resolverHeaderErrors;
+			this.checkerHeaderLookups = checkerHeaderLookups;
+			this.checkerScope = checkerScope;
+			this.checkerHeaderErrors = checkerHeaderErrors;
+		}
+
+		public void run(AbstractASTVisitor resolver, AbstractASTVisitor checker, AbstractASTVisitor cfgChecker) {
+			resolver.forRoutine().visitRoutineBody(routine, new SemanticContext(resolverBodyErrors, resolverScope));
+
+			SemanticContext checkerCtx = new SemanticContext(checkerBodyErrors, checkerScope);
+
+			checker.forRoutine().visitRoutineBody(routine, checkerCtx);
+			cfgChecker.forRoutine().visitRoutineBody(routine, checkerCtx);
+		}
+
+		// in the order the passes report them when run one routine after another
+		public List<CompilerException> getErrors() {
+			List<CompilerException> errors = new ArrayList<>();
+
+			errors.addAll(resolverHeaderErrors);
+			errors.addAll(resolverBodyErrors);
+			errors.addAll(checkerHeaderErrors);
+			errors.addAll(checkerBodyErrors);
+
+			return errors;
+		}
+
+		// the resolver detaches what it could not resolve, so such a routine
+		// could not be declared again from its node and is always checked anew
+		public boolean isResolved() {
+			return resolverHeaderErrors.isEmpty() && resolverBodyErrors.isEmpty();
+		}
+
+		public RoutineCheck toRoutineCheck() {
+			return new RoutineCheck(
+					lookups(resolverHeaderLookups, resolverScope),
+					lookups(checkerHeaderLookups, checkerScope),
+					List.copyOf(getErrors())
+				);
+		}
+
+		// the header looked its names up first
+		private static Map<String, Scope.VarTypeWithInfo> lookups(Map<String, Scope.VarTypeWithInfo> headerLookups, BodyScope bodyScope) {
+			Map<String, Scope.VarTypeWithInfo> lookups = new HashMap<>(bodyScope.lookups);
+			lookups.putAll(headerLookups);
+
+			return lookups;
+		}
+	}
+
+	private Map<ASTNode, RoutineCheck> routineChecks = new IdentityHashMap<>();
+	private Set<ASTNode> checked = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	public void check(IncrementalParser parser, List<CompilerException> errors) {
+		ProgramASTNode program = parser.reparse(node -> checked.contains(node) && !routineChecks.containsKey(node));
+
+		Map<ASTNode, RoutineCheck> newRoutineChecks = new IdentityHashMap<>();
+		Set<ASTNode> newChecked = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		SimpleExpressionVisitor exprVisitor = new SimpleExpressionVisitor();
+
+		TypealiasResolverASTVisitor resolver = new TypealiasResolverASTVisitor(exprVisitor);
+		SimpleASTVisitor checker = new SimpleASTVisitor(exprVisitor);
+		CFGASTVisitor cfgChecker = new CFGASTVisitor(exprVisitor);
+
+		RecordingScope resolverScope = new RecordingScope(parser.getSymbols());
+		RecordingScope checkerScope = new RecordingScope(parser.getSymbols());
+
+		SemanticContext resolverCtx = new SemanticContext(errors, resolverScope);
+		SemanticContext checkerCtx = new SemanticContext(errors, checkerScope);
+
+		// the errors of every declaration, those of a routine body once it is checked
+		List<Supplier<List<CompilerException>>> declarationErrors = new ArrayList<>();
+		List<RoutineBodyCheck> bodyChecks = new ArrayList<>();
+
+		resolver.startProgram(resolverCtx);
+		checker.startProgram(checkerCtx);
+		cfgChecker.startProgram(checkerCtx);
+
+		for (ASTNode node: List.copyOf(program.getChildren())) {
+			if (node instanceof RoutineDefinitionASTNode routine) {
+				RoutineCheck last = routineChecks.get(routine);
+
+				if (last != null
+						&& resolverScope.isBoundAsBefore(last.resolverLookups)
+						&& checkerScope.isBoundAsBefore(last.checkerLookups)) {
+					// the errors of a reused routine's header are among the replayed ones
+					List<CompilerException> headerErrors = new ArrayList<>();
+
+					resolver.visitRoutineHeader(routine, new SemanticContext(headerErrors, resolverScope));
+					checker.visitRoutineHeader(routine, new SemanticContext(headerErrors, checkerScope));
+
+					declarationErrors.add(() -> last.errors);
+
+					newRoutineChecks.put(routine, last);
+					newChecked.add(routine);
+
+					continue;
+				}
+
+				if (last != null)
+					routine = (RoutineDefinitionASTNode) parser.reparse(routine);
+
+				List<CompilerException> resolverHeaderErrors = new ArrayList<>();
+				List<CompilerException> checkerHeaderErrors = new ArrayList<>();
+
+				resolverScope.startRecording();
+				resolver.visitRoutineHeader(routine, new SemanticContext(resolverHeaderErrors, resolverScope));
+				BodyScope resolverBodyScope = resolverScope.bodyScope();
+				Map<String, Scope.VarTypeWithInfo> resolverLookups = resolverScope.stopRecording();
+
+				checkerScope.startRecording();
+				checker.visitRoutineHeader(routine, new SemanticContext(checkerHeaderErrors, checkerScope));
+				BodyScope checkerBodyScope = checkerScope.bodyScope();
+				Map<String, Scope.VarTypeWithInfo> checkerLookups = checkerScope.stopRecording();
+
+				RoutineBodyCheck bodyCheck = new RoutineBodyCheck(
+						routine,
+						resolverLookups, resolverBodyScope, resolverHeaderErrors,
+						checkerLookups, checkerBodyScope, checkerHeaderErrors
+					);
+
+				bodyChecks.add(bodyCheck);
+				declarationErrors.add(bodyCheck::getErrors);
+
+				node = routine;
+			} else {
+				List<CompilerException> nodeErrors = new ArrayList<>();
+
+				resolver.visitDeclaration(node, new SemanticContext(nodeErrors, resolverScope));
+				checker.visitDeclaration(node, new SemanticContext(nodeErrors, checkerScope));
+				cfgChecker.visitDeclaration(node, new SemanticContext(nodeErrors, checkerScope));
+
+				declarationErrors.add(() -> nodeErrors);
+			}
+
+			newChecked.add(node);
+		}
+
+		ForkJoinTask.invokeAll(
+			bodyChecks.stream()
+				.map(bodyCheck -> ForkJoinTask.adapt(() -> bodyCheck.run(resolver, checker, cfgChecker)))
+				.toList()
+		);
+
+		declarationErrors.forEach(declaration -> errors.addAll(declaration.get()));
+
+		for (RoutineBodyCheck bodyCheck: bodyChecks) {
+			if (bodyCheck.isResolved())
+				newRoutineChecks.put(bodyCheck.routine, bodyCheck.toRoutineCheck());
+		}
+
+		resolver.endProgram(resolverCtx);
+		checker.endProgram(checkerCtx);
+		cfgChecker.endProgram(checkerCtx);
+
+		routineChecks = newRoutineChecks;
+		checked = newChecked;
+	}
+}
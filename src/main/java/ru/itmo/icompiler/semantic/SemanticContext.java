@@ -1,11 +1,12 @@
 package ru.itmo.icompiler.semantic;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import ru.itmo.icompiler.exception.CompilerException;
+import ru.itmo.icompiler.lex.Symbols;
 
 public class SemanticContext {
 	private List<CompilerException> compilerErrors;
@@ -42,24 +43,61 @@ public class SemanticContext {
 		}
 
 		private Scope parentScope;
-
+		
+		// A root scope keeps its bindings in a map. The blocks nested in it, which the visitors
+		// enter and leave in a stack-like order, keep theirs in the root's table while they are
+		// on it, and in blockSymbols/blockInfos to be put back on it after a sibling block
+		// replaced them there.
+		//
+		// The table is indexed by the ids of the root's symbols, the ones the lexer gave the
+		// names of the program. The lookups that take a node's symbol along with its name
+		// never touch the name inside the blocks.
+		private final Scope root;
 		private Map<String, VarTypeWithInfo> entities;
+		private final Symbols symbols;
+		private ScopeTable table;
 		
-		public Scope(Scope parentScope, Map<String, VarType> entities, Map<String, VarType> immutableEntities, Map<String, VarType> typealiases) {
+		private final int frame;
+		private int[] blockSymbols;
+		private VarTypeWithInfo[] blockInfos;
+		private int blockSize;
+		
+		private Scope(Scope parentScope, Symbols symbols, Map<String, VarType> entities, Map<String, VarType> immutableEntities, Map<String, VarType> typealiases) {
 			this.parentScope = parentScope;
-			this.entities = new HashMap<>();
-			this.entities.putAll(
-				entities.entrySet().stream()
-				.collect(Collectors.toMap(Map.Entry::getKey, e -> new VarTypeWithInfo(e.getValue(), false, true)))
-			);
-			this.entities.putAll(
-				immutableEntities.entrySet().stream()
-				.collect(Collectors.toMap(Map.Entry::getKey, e -> new VarTypeWithInfo(e.getValue(), false, false)))
-			);
-			this.entities.putAll(
-				typealiases.entrySet().stream()
-				.collect(Collectors.toMap(Map.Entry::getKey, e -> new VarTypeWithInfo(e.getValue(), true, false)))
-			);
+			
+			if (parentScope == null) {
+				this.root = this;
+				this.entities = new HashMap<>();
+				this.symbols = symbols;
+				this.frame = -1;
+			} else {
+				this.root = parentScope.root;
+				this.symbols = root.symbols;
+				this.frame = parentScope.frame + 1;
+				
+				if (root.table == null)
+					root.table = new ScopeTable();
+				
+				int size = entities.size() + immutableEntities.size() + typealiases.size();
+				
+				blockSymbols = new int[Math.max(size, 2)];
+				blockInfos = new VarTypeWithInfo[blockSymbols.length];
+				
+				activate();
+			}
+			
+			entities.forEach((name, type) -> bind(name, new VarTypeWithInfo(type, false, true)));
+			immutableEntities.forEach((name, type) -> bind(name, new VarTypeWithInfo(type, false, false)));
+			typealiases.forEach((name, type) -> bind(name, new VarTypeWithInfo(type, true, false)));
+		}
+		
+		public Scope(Scope parentScope, Map<String, VarType> entities, Map<String, VarType> immutableEntities, Map<String, VarType> typealiases) {
+			this(parentScope, parentScope == null ? new Symbols() : null, entities, immutableEntities, typealiases);
+		}
+		
+		// a root scope over the symbols of a parsed program
+		public Scope(Symbols symbols) {
+			this(null, symbols, Map.of(), Map.of(), Map.of());
 		}
 		
 		public Scope(Scope parentScope, Map<String, VarType> entities, Map<String, VarType> immutableEntities) {
@@ -67,7 +105,7 @@ public class SemanticContext {
 		}
 		
 		public Scope() {
-			this(null);
+			this((Scope) null);
 		}
 		
 		public Scope(Scope parentScope) {
@@ -82,29 +120,141 @@ public class SemanticContext {
 			this(null, entities, immutableEntities);
 		}
 		
+		// makes this block the top frame of the table, leaving the blocks above it
+		// and entering again the ones below it that a sibling has replaced
+		private void activate() {
+			if (root == this) {
+				if (table != null)
+					table.popTo(0);
+				
+				return;
+			}
+			
+			ScopeTable table = root.table;
+			
+			if (table.getFrameCount() > frame && table.getFrameScope(frame) == this) {
+				table.popTo(frame + 1);
+				
+				return;
+			}
+			
+			parentScope.activate();
+			table.push(this);
+			
+			for (int i = 0; i < blockSize; ++i)
+				table.bind(blockSymbols[i], blockInfos[i]);
+		}
+		
+		public Symbols getSymbols() {
+			return symbols;
+		}
+		
+		private void bind(String name, VarTypeWithInfo info) {
+			if (root == this)
+				entities.put(name, info);
+			else
+				bind(symbols.intern(name), info);
+		}
+		
+		private void bind(int symbol, VarTypeWithInfo info) {
+			activate();
+			root.table.bind(symbol, info);
+			
+			for (int i = 0; i < blockSize; ++i) {
+				if (blockSymbols[i] == symbol) {
+					blockInfos[i] = info;
+					
+					return;
+				}
+			}
+			
+			if (blockSize == blockSymbols.length) {
+				blockSymbols = Arrays.copyOf(blockSymbols, blockSize * 2);
+				blockInfos = Arrays.copyOf(blockInfos, blockSize * 2);
+			}
+			
+			blockSymbols[blockSize] = symbol;
+			blockInfos[blockSize++] = info;
+		}
+		
+		// the symbol of a name a node carries, or -1 if the lexer did not give it one
+		private int symbolOf(int symbol, String name) {
+			return symbol >= 0 ? symbol : symbols.lookup(name);
+		}
+		
+		// the binding of name in the innermost scope from this one out that binds it
+		private VarTypeWithInfo findEntityInfo(int symbol, String name) {
+			if (root == this)
+				return getEntityInfo(name);
+			
+			activate();
+			
+			int binding = root.table.lookup(symbolOf(symbol, name));
+			
+			return binding >= 0 ? root.table.getInfo(binding) : root.getEntityInfo(name);
+		}
+		
+		private VarTypeWithInfo findEntityInfo(String name) {
+			return findEntityInfo(-1, name);
+		}
+		
+		// the binding of name in this scope
+		private VarTypeWithInfo getEntityInfo(int symbol, String name) {
+			if (root == this)
+				return getEntityInfo(name);
+			
+			return getBlockInfo(symbolOf(symbol, name));
+		}
+		
+		private VarTypeWithInfo getBlockInfo(int symbol) {
+			for (int i = 0; i < blockSize; ++i) {
+				if (blockSymbols[i] == symbol)
+					return blockInfos[i];
+			}
+			
+			return null;
+		}
+		
+		private void putEntityInfo(int symbol, String name, VarTypeWithInfo info) {
+			if (root == this || symbol < 0)
+				putEntityInfo(name, info);
+			else
+				bind(symbol, info);
+		}
+		
 		public void addEntity(String name, VarType type) {
-			entities.put(name, new VarTypeWithInfo(type, false, true));
+			putEntityInfo(name, new VarTypeWithInfo(type, false, true));
+		}
+		
+		// symbol is the one the name has on its node, -1 if it has none
+		public void addEntity(int symbol, String name, VarType type) {
+			putEntityInfo(symbol, name, new VarTypeWithInfo(type, false, true));
 		}
 		
 		public void addImmutableEntity(String name, VarType type) {
-			entities.put(name, new VarTypeWithInfo(type, false, false));
+			putEntityInfo(name, new VarTypeWithInfo(type, false, false));
 		}
 
 		public boolean isEntityImmutable(String name) {
-			VarTypeWithInfo entityInfo = entities.get(name);
+			return isEntityImmutable(-1, name);
+		}
+		
+		public boolean isEntityImmutable(int symbol, String name) {
+			VarTypeWithInfo entityInfo = findEntityInfo(symbol, name);
 			
-			if (entityInfo != null)
-				return !entityInfo.isMutable;
-	
-			return parentScope != null && parentScope.isEntityImmutable(name);
+			return entityInfo != null && !entityInfo.isMutable;
 		}
 		
 		public void addTypealias(String name, VarType type) {
-			entities.put(name, new VarTypeWithInfo(type, true, false));
+			putEntityInfo(name, new VarTypeWithInfo(type, true, false));
 		}
 		
 		public VarType lookupEntity(String entity) {
-			VarTypeWithInfo varType = entities.get(entity);
+			return lookupEntity(-1, entity);
+		}
+		
+		public VarType lookupEntity(int symbol, String entity) {
+			VarTypeWithInfo varType = getEntityInfo(symbol, entity);
 			
 			if (varType != null && !varType.isTypeAlias) {
 				return varType.type;
@@ -114,21 +264,21 @@ public class SemanticContext {
 		}
 		
 		public VarType deepLookupEntity(String entity) {
-			VarTypeWithInfo varType = entities.get(entity);
+			return deepLookupEntity(-1, entity);
+		}
+		
+		public VarType deepLookupEntity(int symbol, String entity) {
+			VarTypeWithInfo varType = findEntityInfo(symbol, entity);
 			
 			if (varType != null && !varType.isTypeAlias) {
 				return varType.type;
 			}
 
-			if (parentScope != null && varType == null) {
-				return parentScope.deepLookupEntity(entity);
-			}
-
 			return null;
 		}
 		
 		public VarType lookupTypealias(String typename) {
-			VarTypeWithInfo varType = entities.get(typename);
+			VarTypeWithInfo varType = getEntityInfo(typename);
 			
 			if (varType != null && varType.isTypeAlias) {
 				return varType.type;
@@ -138,21 +288,21 @@ public class SemanticContext {
 		}
 		
 		public VarType deepLookupTypealias(String typename) {
-			VarTypeWithInfo varType = entities.get(typename);
+			VarTypeWithInfo varType = findEntityInfo(typename);
 			
 			if (varType != null && varType.isTypeAlias) {
 				return varType.type;
 			}
 
-			if (parentScope != null && varType == null) {
-				return parentScope.deepLookupTypealias(typename);
-			}
-
 			return null;
 		}
 		
 		public VarType lookup(String name) {
-			VarTypeWithInfo varType = entities.get(name);
+			return lookup(-1, name);
+		}
+		
+		public VarType lookup(int symbol, String name) {
+			VarTypeWithInfo varType = getEntityInfo(symbol, name);
 			
 			if (varType != null) {
 				return varType.type;
@@ -162,16 +312,53 @@ public class SemanticContext {
 		}
 		
 		public VarType deepLookup(String name) {
-			VarType t = lookup(name);
+			return deepLookup(-1, name);
+		}
+		
+		// the first type bound to name from this scope out: a binding without a type is skipped
+		public VarType deepLookup(int symbol, String name) {
+			if (root == this)
+				return lookup(name);
 			
-			if (t != null)
-				return t;
+			activate();
 			
-			return parentScope != null ? parentScope.deepLookup(name) : null;
+			ScopeTable table = root.table;
+			
+			for (int binding = table.lookup(symbolOf(symbol, name)); binding >= 0; binding = table.getShadowed(binding)) {
+				VarType t = table.getInfo(binding).type;
+				
+				if (t != null)
+					return t;
+			}
+			
+			return root.lookup(name);
+		}
+		
+		// every lookup and definition of a root scope goes through these two, and so does
+		// every lookup through its blocks of a name that none of them binds
+		protected VarTypeWithInfo getEntityInfo(String name) {
+			if (root == this)
+				return entities.get(name);
+			
+			return getBlockInfo(symbols.lookup(name));
+		}
+		
+		protected void putEntityInfo(String name, VarTypeWithInfo info) {
+			bind(name, info);
 		}
 		
 		public void clear() {
-			entities.clear();
+			if (root == this) {
+				entities.clear();
+				
+				return;
+			}
+			
+			activate();
+			root.table.popTo(frame);
+			root.table.push(this);
+			
+			blockSize = 0;
 		}
 		
 		public Scope getParentScope() {
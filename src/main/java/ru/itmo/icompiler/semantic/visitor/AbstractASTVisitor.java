@@ -1,6 +1,7 @@
 package ru.itmo.icompiler.semantic.visitor;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
@@ -9,6 +10,7 @@ import ru.itmo.icompiler.semantic.SemanticContext;
 import ru.itmo.icompiler.syntax.ast.ASTNode;
 import ru.itmo.icompiler.syntax.ast.CompoundStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.ProgramASTNode;
+import ru.itmo.icompiler.syntax.ast.RoutineDefinitionASTNode;
 import ru.itmo.icompiler.syntax.ast.WhileBodyStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.expression.ExpressionASTNode;
 
@@ -39,9 +41,46 @@ public abstract class AbstractASTVisitor implements ASTVisitor<SemanticContext,
 		definitionsInfo.pop();
 	}
 	
+	// visit(ProgramASTNode) is startProgram, visitDeclaration for every top-level node and
+	// endProgram, so several visitors can also be run one declaration at a time
+	public void startProgram(SemanticContext ctx) {
+		
+	}
+	
+	public SemanticContext visitDeclaration(ASTNode node, SemanticContext ctx) {
+		return node.accept(this, ctx);
+	}
+	
+	public void endProgram(SemanticContext ctx) {
+		
+	}
+	
+	// declares a routine without checking its body, for a routine whose body is already checked
+	public SemanticContext visitRoutineHeader(RoutineDefinitionASTNode node, SemanticContext ctx) {
+		return node.getRoutineDeclaration().accept(this, ctx);
+	}
+	
+	// checks the body of a routine whose header has been visited
+	public abstract SemanticContext visitRoutineBody(RoutineDefinitionASTNode node, SemanticContext ctx);
+	
+	// A new visitor for the body of one routine. Everything a body check changes is kept in the
+	// visitor it runs on, so the bodies of different routines can be checked at the same time,
+	// each by a visitor of its own, as long as their scopes are not changed meanwhile.
+	public abstract AbstractASTVisitor forRoutine();
+	
+	public SemanticContext visit(RoutineDefinitionASTNode node, SemanticContext ctx) {
+		visitRoutineHeader(node, ctx);
+		
+		return visitRoutineBody(node, ctx);
+	}
+	
 	public SemanticContext visit(ProgramASTNode node, SemanticContext ctx) {
-		for (ASTNode child: node.getChildren())
-			child.accept(this, ctx);
+		startProgram(ctx);
+		
+		for (ASTNode child: List.copyOf(node.getChildren()))
+			visitDeclaration(child, ctx);
+		
+		endProgram(ctx);
 		
 		return ctx;
 	}
@@ -38,7 +38,12 @@ public class CFGASTVisitor extends AbstractASTVisitor {
     }
 
     @Override
-    public SemanticContext visit(RoutineDefinitionASTNode node, SemanticContext ctx) {
+    public CFGASTVisitor forRoutine() {
+        return new CFGASTVisitor(expressionVisitor);
+    }
+
+    @Override
+    public SemanticContext visitRoutineBody(RoutineDefinitionASTNode node, SemanticContext ctx) {
         cfg = new HashMap<>();
         parents = new ArrayList<>();
         parents.add(node.getRoutineDeclaration());
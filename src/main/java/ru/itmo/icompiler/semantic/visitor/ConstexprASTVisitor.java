@@ -1,5 +1,604 @@
 package ru.itmo.icompiler.semantic.visitor;
 
-public class ConstexprASTVisitor {
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import ru.itmo.icompiler.lex.Token;
+import ru.itmo.icompiler.semantic.VarType;
+import ru.itmo.icompiler.syntax.ast.ASTNode;
+import ru.itmo.icompiler.syntax.ast.BreakStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.CompoundStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.ContinueStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.ForEachStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.ForInRangeStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.IfThenElseStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.PrintStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.ProgramASTNode;
+import ru.itmo.icompiler.syntax.ast.ReturnStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.RoutineDeclarationASTNode;
+import ru.itmo.icompiler.syntax.ast.RoutineDefinitionASTNode;
+import ru.itmo.icompiler.syntax.ast.TypeDeclarationASTNode;
+import ru.itmo.icompiler.syntax.ast.VariableAssignmentASTNode;
+import ru.itmo.icompiler.syntax.ast.VariableDeclarationASTNode;
+import ru.itmo.icompiler.syntax.ast.WhileBodyStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.WhileStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.expression.ArrayAccessExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.BinaryOperatorExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.BinaryOperatorExpressionNode.BinaryOperatorType;
+import ru.itmo.icompiler.syntax.ast.expression.BooleanValueExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.EmptyExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.ExpressionASTNode;
+import ru.itmo.icompiler.syntax.ast.expression.ImplicitCastExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.IntegerValueExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.PropertyAccessExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.RealValueExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.RoutineCallExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.UnaryOperatorExpressionNode;
+import ru.itmo.icompiler.syntax.ast.expression.VariableExpressionNode;
+
+// Folds constant expressions, replaces reads of locals that are never reassigned with their
+// values and drops the branches a constant condition never takes. It runs on a checked tree
+// and rewrites it in place: a visit returns the node that takes the place of the visited one,
+// or null if the statement goes away. Values are computed the way the emitted code computes
+// them (int wraps around, real is float), and anything that can fail at run time, like
+// division by zero or an integer other than 0 and 1 cast to boolean, is left as it is.
+public class ConstexprASTVisitor implements ASTVisitor<ASTNode, ConstexprASTVisitor.Scope> {
+	public static class Scope {
+		private final Scope parentScope;
+		private final Map<String, VariableDeclarationASTNode> declarations = new HashMap<>();
+
+		public Scope(Scope parentScope) {
+			this.parentScope = parentScope;
+		}
+
+		// null declaration for arguments and loop variables
+		public void declare(String name, VariableDeclarationASTNode declaration) {
+			declarations.put(name, declaration);
+		}
+
+		// null for anything that is not a local variable declaration, globals included
+		public VariableDeclarationASTNode lookup(String name) {
+			for (Scope scope = this; scope != null; scope = scope.parentScope) {
+				if (scope.declarations.containsKey(name))
+					return scope.declarations.get(name);
+			}
+
+			return null;
+		}
+	}
+
+	private final ExpressionFolder expressionFolder = new ExpressionFolder();
+
+	private final Set<VariableDeclarationASTNode> reassigned = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Map<VariableDeclarationASTNode, Object> constants = new IdentityHashMap<>();
+	private boolean propagate;
+
+	private int foldedExpressions;
+	private int propagatedReads;
+	private int prunedBranches;
+
+	public Map<String, Integer> getCounts() {
+		Map<String, Integer> counts = new LinkedHashMap<>();
+
+		counts.put("folded-expressions", foldedExpressions);
+		counts.put("propagated-reads", propagatedReads);
+		counts.put("pruned-branches", prunedBranches);
+
+		return counts;
+	}
+
+	private ExpressionASTNode fold(ExpressionASTNode expr, Scope scope) {
+		return expr != null ? expr.accept(expressionFolder, scope) : null;
+	}
+
+	private static Object constantValue(ExpressionASTNode expr) {
+		if (expr instanceof IntegerValueExpressionNode intValue)
+			return intValue.getValue();
+		else if (expr instanceof RealValueExpressionNode realValue)
+			return realValue.getValue();
+		else if (expr instanceof BooleanValueExpressionNode booleanValue)
+			return booleanValue.getValue();
+
+		return null;
+	}
+
+	private static VarType constantType(Object value) {
+		if (value instanceof Integer)
+			return VarType.INTEGER_PRIMITIVE_TYPE;
+		else if (value instanceof Float)
+			return VarType.REAL_PRIMITIVE_TYPE;
+		else if (value instanceof Boolean)
+			return VarType.BOOLEAN_PRIMITIVE_TYPE;
+
+		return null;
+	}
+
+	private static ExpressionASTNode literal(Token token, Object value) {
+		ExpressionASTNode literal;
+
+		if (value instanceof Integer i)
+			literal = new IntegerValueExpressionNode(null, token, i);
+		else if (value instanceof Float f)
+			literal = new RealValueExpressionNode(null, token, f);
+		else
+			literal = new BooleanValueExpressionNode(null, token, (Boolean) value);
+
+		literal.setExpressionType(constantType(value));
+
+		return literal;
+	}
+
+	// the literal for value in place of expr, if it has the type of expr and can be written
+	// down (the assembler has no syntax for infinite and NaN reals)
+	private ExpressionASTNode folded(ExpressionASTNode expr, Object value) {
+		if (value == null || !constantType(value).equals(expr.getExpressionType()))
+			return expr;
+
+		if (value instanceof Float f && (f.isNaN() || f.isInfinite()))
+			return expr;
+
+		++foldedExpressions;
+
+		return literal(expr.getStartToken(), value);
+	}
+
+	private static boolean compare(BinaryOperatorType binopType, int cmp) {
+		switch (binopType) {
+			case LT_BINOP:
+				return cmp < 0;
+			case LE_BINOP:
+				return cmp <= 0;
+			case EQ_BINOP:
+				return cmp == 0;
+			case NE_BINOP:
+				return cmp != 0;
+			case GT_BINOP:
+				return cmp > 0;
+			default:
+				return cmp >= 0;
+		}
+	}
+
+	// fcmpg for > and >=, fcmpl for the others, just like the emitted comparisons
+	private static int compareReals(BinaryOperatorType binopType, float left, float right) {
+		if (left > right)
+			return 1;
+		else if (left == right)
+			return 0;
+		else if (left < right)
+			return -1;
+
+		return binopType == BinaryOperatorType.GT_BINOP || binopType == BinaryOperatorType.GE_BINOP ? 1 : -1;
+	}
+
+	private static boolean isComparison(BinaryOperatorType binopType) {
+		switch (binopType) {
+			case LT_BINOP:
+			case LE_BINOP:
+			case EQ_BINOP:
+			case NE_BINOP:
+			case GT_BINOP:
+			case GE_BINOP:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static Object evaluate(BinaryOperatorType binopType, Object left, Object right) {
+		if (left instanceof Integer l && right instanceof Integer r) {
+			if (isComparison(binopType))
+				return compare(binopType, Integer.compare(l, r));
+
+			switch (binopType) {
+				case ADD_BINOP:
+					return l + r;
+				case SUB_BINOP:
+					return l - r;
+				case MUL_BINOP:
+					return l * r;
+				case DIV_BINOP:
+					return r != 0 ? l / r : null;
+				case MOD_BINOP:
+					return r != 0 ? l % r : null;
+				default:
+					return null;
+			}
+		} else if (left instanceof Float l && right instanceof Float r) {
+			if (isComparison(binopType))
+				return compare(binopType, compareReals(binopType, l, r));
+
+			switch (binopType) {
+				case ADD_BINOP:
+					return l + r;
+				case SUB_BINOP:
+					return l - r;
+				case MUL_BINOP:
+					return l * r;
+				case DIV_BINOP:
+					return l / r;
+				case MOD_BINOP:
+					return l % r;
+				default:
+					return null;
+			}
+		} else if (left instanceof Boolean l && right instanceof Boolean r) {
+			switch (binopType) {
+				case AND_BINOP:
+					return l && r;
+				case OR_BINOP:
+					return l || r;
+				case XOR_BINOP:
+					return l ^ r;
+				default:
+					return null;
+			}
+		}
+
+		return null;
+	}
+
+	private static Object cast(Object value, VarType targetType) {
+		if (targetType.equals(VarType.INTEGER_PRIMITIVE_TYPE)) {
+			if (value instanceof Float f)
+				return (int) (float) f;
+			else if (value instanceof Boolean b)
+				return b ? 1 : 0;
+		} else if (targetType.equals(VarType.REAL_PRIMITIVE_TYPE)) {
+			if (value instanceof Integer i)
+				return (float) i;
+			else if (value instanceof Boolean b)
+				return b ? 1.0f : 0.0f;
+		} else if (targetType.equals(VarType.BOOLEAN_PRIMITIVE_TYPE)) {
+			if (value instanceof Integer i && (i == 0 || i == 1))
+				return i == 1;
+		}
+
+		return targetType.equals(constantType(value)) ? value : null;
+	}
+
+	private static Object defaultValue(VarType type) {
+		if (type.equals(VarType.INTEGER_PRIMITIVE_TYPE))
+			return 0;
+		else if (type.equals(VarType.REAL_PRIMITIVE_TYPE))
+			return 0.0f;
+		else if (type.equals(VarType.BOOLEAN_PRIMITIVE_TYPE))
+			return false;
+
+		return null;
+	}
+
+	// Statements that go away are removed, or replaced with empty blocks where positions
+	// matter: the emitter puts the continue label of a while loop before its last statement.
+	private void visitStatements(List<ASTNode> statements, Scope scope, boolean keepPositions) {
+		for (int i = 0; i < statements.size(); ) {
+			ASTNode statement = statements.get(i).accept(this, scope);
+
+			if (statement == null && !keepPositions) {
+				statements.remove(i);
+
+				continue;
+			}
+
+			statements.set(i++, statement != null ? statement : new CompoundStatementASTNode(null));
+		}
+	}
+
+	// The first walk folds and finds out which locals are reassigned, the second one
+	// propagates the values of the others and folds what it makes constant.
+	@Override
+	public ASTNode visit(ProgramASTNode node, Scope scope) {
+		for (boolean propagate: new boolean[] { false, true }) {
+			this.propagate = propagate;
+
+			for (ASTNode child: List.copyOf(node.getChildren()))
+				child.accept(this, null);
+		}
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(CompoundStatementASTNode node, Scope scope) {
+		visitStatements(node.getChildren(), new Scope(scope), false);
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(WhileBodyStatementASTNode node, Scope scope) {
+		visitStatements(node.getChildren(), new Scope(scope), true);
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(VariableDeclarationASTNode node, Scope scope) {
+		VariableAssignmentASTNode assignNode = node.getChildren().isEmpty() ? null : (VariableAssignmentASTNode) node.getChild(0);
+
+		if (assignNode != null)
+			assignNode.setValueNode(fold(assignNode.getValueNode(), scope));
+
+		// globals are left alone: any routine may assign them
+		if (scope != null) {
+			scope.declare(node.getVarName(), node);
+
+			if (propagate && !reassigned.contains(node)) {
+				Object value = assignNode != null
+						? constantValue(assignNode.getValueNode())
+						: defaultValue(node.getVarType());
+
+				if (value != null && constantType(value).equals(node.getVarType()))
+					constants.put(node, value);
+			}
+		}
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(VariableAssignmentASTNode node, Scope scope) {
+		ExpressionASTNode lhs = node.getLeftSide();
+
+		if (lhs instanceof VariableExpressionNode variable) {
+			VariableDeclarationASTNode declaration = scope != null ? scope.lookup(variable.getVariable()) : null;
+
+			if (declaration != null)
+				reassigned.add(declaration);
+		} else
+			lhs.accept(expressionFolder, scope); // folds indices, the target itself stays
+
+		node.setValueNode(fold(node.getValueNode(), scope));
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(TypeDeclarationASTNode node, Scope scope) {
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(RoutineDeclarationASTNode node, Scope scope) {
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(RoutineDefinitionASTNode node, Scope scope) {
+		Scope routineScope = new Scope(null);
+
+		for (VariableDeclarationASTNode argDecl: node.getRoutineDeclaration().getArgumentsDeclarations())
+			routineScope.declare(argDecl.getVarName(), null);
+
+		node.getBody().accept(this, routineScope);
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(ReturnStatementASTNode node, Scope scope) {
+		node.setResultValue(fold(node.getResultNode(), scope));
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(IfThenElseStatementASTNode node, Scope scope) {
+		ExpressionASTNode conditionExpr = fold(node.getConditionExpression(), scope);
+		node.setConditionExpression(conditionExpr);
+
+		if (conditionExpr instanceof BooleanValueExpressionNode condition) {
+			ASTNode branch = condition.getValue() ? node.getTrueBranch() : node.getElseBranch();
+
+			++prunedBranches;
+
+			return branch != null ? branch.accept(this, scope) : null;
+		}
+
+		node.getTrueBranch().accept(this, scope);
+
+		if (node.getElseBranch() != null)
+			node.getElseBranch().accept(this, scope);
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(ForInRangeStatementASTNode node, Scope scope) {
+		node.setFromExpression(fold(node.getFromExpression(), scope));
+		node.setToExpression(fold(node.getToExpression(), scope));
+
+		Scope bodyScope = new Scope(scope);
+		bodyScope.declare(node.getIterVariable(), null);
+
+		visitStatements(node.getBodyNode().getChildren(), bodyScope, false);
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(ForEachStatementASTNode node, Scope scope) {
+		node.getArrayExpression().accept(expressionFolder, scope);
+
+		Scope bodyScope = new Scope(scope);
+		bodyScope.declare(node.getIterVariable(), null);
+
+		visitStatements(node.getBodyNode().getChildren(), bodyScope, false);
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(WhileStatementASTNode node, Scope scope) {
+		ExpressionASTNode conditionExpr = fold(node.getConditionExpression(), scope);
+		node.setConditionExpression(conditionExpr);
+
+		if (conditionExpr instanceof BooleanValueExpressionNode condition && !condition.getValue()) {
+			++prunedBranches;
+
+			return null;
+		}
+
+		visitStatements(node.getBodyNode().getChildren(), new Scope(scope), true);
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(BreakStatementASTNode node, Scope scope) {
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(ContinueStatementASTNode node, Scope scope) {
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(PrintStatementASTNode node, Scope scope) {
+		List<ASTNode> children = node.getChildren();
+
+		for (int i = 0; i < children.size(); ++i)
+			children.set(i, fold((ExpressionASTNode) children.get(i), scope));
+
+		return node;
+	}
+
+	@Override
+	public ASTNode visit(ExpressionASTNode node, Scope scope) {
+		return fold(node, scope);
+	}
+
+	private class ExpressionFolder implements ExpressionNodeVisitor<ExpressionASTNode, Scope> {
+		@Override
+		public ExpressionASTNode visit(BooleanValueExpressionNode node, Scope scope) {
+			return node;
+		}
+
+		@Override
+		public ExpressionASTNode visit(IntegerValueExpressionNode node, Scope scope) {
+			return node;
+		}
+
+		@Override
+		public ExpressionASTNode visit(RealValueExpressionNode node, Scope scope) {
+			return node;
+		}
+
+		@Override
+		public ExpressionASTNode visit(VariableExpressionNode node, Scope scope) {
+			VariableDeclarationASTNode declaration = scope != null ? scope.lookup(node.getVariable()) : null;
+			Object value = declaration != null ? constants.get(declaration) : null;
+
+			if (value == null || !constantType(value).equals(node.getExpressionType()))
+				return node;
+
+			++propagatedReads;
+
+			return literal(node.getStartToken(), value);
+		}
+
+		@Override
+		public ExpressionASTNode visit(RoutineCallExpressionNode node, Scope scope) {
+			List<ExpressionASTNode> arguments = node.getArguments();
+
+			for (int i = 0; i < arguments.size(); ++i)
+				node.setArgument(i, fold(arguments.get(i), scope));
+
+			return node;
+		}
+
+		@Override
+		public ExpressionASTNode visit(UnaryOperatorExpressionNode node, Scope scope) {
+			ExpressionASTNode unopValue = fold(node.getValue(), scope);
+			node.setValue(unopValue);
+
+			Object value = constantValue(unopValue);
+
+			switch (node.getUnaryOperatorType()) {
+				case PLUS_BINOP:
+					return value instanceof Boolean ? node : folded(node, value);
+				case MINUS_BINOP:
+					if (value instanceof Integer i)
+						return folded(node, -i);
+					else if (value instanceof Float f)
+						return folded(node, -f);
+
+					return node;
+				default:
+					return value instanceof Boolean b ? folded(node, !b) : node;
+			}
+		}
+
+		@Override
+		public ExpressionASTNode visit(BinaryOperatorExpressionNode node, Scope scope) {
+			ExpressionASTNode leftChild = fold(node.getLeftChild(), scope);
+			ExpressionASTNode rightChild = fold(node.getRightChild(), scope);
+
+			node.setLeftChild(leftChild);
+			node.setRightChild(rightChild);
+
+			BinaryOperatorType binopType = node.getBinaryOperatorType();
+			Object left = constantValue(leftChild);
+			Object right = constantValue(rightChild);
+
+			// the right operand of and/or is not evaluated when the left one decides,
+			// and a right operand that never decides can be dropped
+			if (binopType == BinaryOperatorType.AND_BINOP || binopType == BinaryOperatorType.OR_BINOP) {
+				boolean decisive = binopType == BinaryOperatorType.OR_BINOP;
+
+				if (left instanceof Boolean l && right == null) {
+					++foldedExpressions;
+
+					return l == decisive ? literal(node.getStartToken(), decisive) : rightChild;
+				} else if (right instanceof Boolean r && left == null && r != decisive) {
+					++foldedExpressions;
+
+					return leftChild;
+				}
+			}
+
+			if (left == null || right == null)
+				return node;
+
+			return folded(node, evaluate(binopType, left, right));
+		}
+
+		@Override
+		public ExpressionASTNode visit(ArrayAccessExpressionNode node, Scope scope) {
+			node.getHolder().accept(this, scope);
+			node.setIndex(fold(node.getIndex(), scope));
+
+			return node;
+		}
+
+		@Override
+		public ExpressionASTNode visit(PropertyAccessExpressionNode node, Scope scope) {
+			node.getPropertyHolder().accept(this, scope);
+
+			return node;
+		}
+
+		@Override
+		public ExpressionASTNode visit(ImplicitCastExpressionNode node, Scope scope) {
+			ExpressionASTNode castExpr = fold(node.getArgument(), scope);
+
+			if (castExpr != node.getArgument())
+				node.setArgument(castExpr);
+
+			Object value = constantValue(castExpr);
+
+			return value != null ? folded(node, cast(value, node.getTargetType())) : node;
+		}
+
+		@Override
+		public ExpressionASTNode visit(EmptyExpressionNode node, Scope scope) {
+			return node;
+		}
+	}
 }
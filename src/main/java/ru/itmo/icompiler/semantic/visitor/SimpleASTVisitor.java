@@ -28,7 +28,6 @@ import ru.itmo.icompiler.syntax.ast.ForEachStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.ForInRangeStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.IfThenElseStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.PrintStatementASTNode;
-import ru.itmo.icompiler.syntax.ast.ProgramASTNode;
 import ru.itmo.icompiler.syntax.ast.ReturnStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.RoutineDeclarationASTNode;
 import ru.itmo.icompiler.syntax.ast.RoutineDefinitionASTNode;
@@ -58,29 +57,29 @@ public class SimpleASTVisitor extends AbstractASTVisitor {
 		VarType varType = node.getVarType();
 		Token tk = node.getToken();
 		
-		if (ctx.getScope().lookup(varName) != null) {
+		if (ctx.getScope().lookup(node.getSymbol(), varName) != null) {
 			if (reportRedefintion)
 				ctx.addCompilerError(new EntityRedefinitionSemanticException(varName, tk.lineNumber, tk.lineOffset, lookupDefinitionInfo(varName)));
 		} else {
 			addDefinitionInfo(varName, new int[] { tk.lineNumber });
-			ctx.getScope().addEntity(varName, varType);
+			ctx.getScope().addEntity(node.getSymbol(), varName, varType);
 		}
 	}
 	
 	private SemanticContext visitRoutineArgDecl(VariableDeclarationASTNode node, SemanticContext ctx) {
-		if (ctx.getScope().lookup(node.getVarName()) == null)
+		if (ctx.getScope().lookup(node.getSymbol(), node.getVarName()) == null)
 			tryAddVariableToScope(node, ctx, false);
 		
 		return ctx;
 	}
 	
 	@Override
-	public SemanticContext visit(ProgramASTNode node, SemanticContext ctx) {
+	public void startProgram(SemanticContext ctx) {
 		routines = new HashMap<>();
-
-		for (ASTNode child: node.getChildren())
-			child.accept(this, ctx);
-		
+	}
+	
+	@Override
+	public void endProgram(SemanticContext ctx) {
 		for(Map.Entry<String, FunctionType> entry : routines.entrySet()) {
 			if (entry.getValue() == null) {
 				String routineName = entry.getKey();
@@ -88,8 +87,6 @@ public class SimpleASTVisitor extends AbstractASTVisitor {
 				ctx.addCompilerError(new RoutineNotDefinedSemanticException(routineName, routineDecl[0], 1));
 			}
 		}
-
-		return ctx;
 	}
 
 	@Override
@@ -187,8 +184,8 @@ public class SimpleASTVisitor extends AbstractASTVisitor {
 			checkPrimaryAssignable(lhs);
 			
 			VarType leftType = lhs.inferType(lhsCtx);
-			if (lhs.getExpressionNodeType() == VARIABLE_EXPR_NODE
-					&& lhsCtx.getScope().isEntityImmutable(((VariableExpressionNode) lhs).getVariable())) {
+			if (lhs instanceof VariableExpressionNode variable
+					&& lhsCtx.getScope().isEntityImmutable(variable.getSymbol(), variable.getVariable())) {
 				throw new ImmutableLeftPartSemanticExceptionImpl(lhs.getStartToken().lineNumber, lhs.getStartToken().lineOffset);
 			}
 
@@ -271,11 +268,22 @@ public class SimpleASTVisitor extends AbstractASTVisitor {
 	}
 
 	@Override
-	public SemanticContext visit(RoutineDefinitionASTNode node, SemanticContext ctx) {
+	public SemanticContext visitRoutineHeader(RoutineDefinitionASTNode node, SemanticContext ctx) {
 		visit(node.getRoutineDeclaration(), ctx);
 		
+		routines.put(node.getRoutineDeclaration().getRoutineName(), parseRoutineTypeFromDecl(node.getRoutineDeclaration(), ctx));
+		
+		return ctx;
+	}
+
+	@Override
+	public SimpleASTVisitor forRoutine() {
+		return new SimpleASTVisitor(expressionVisitor);
+	}
+
+	@Override
+	public SemanticContext visitRoutineBody(RoutineDefinitionASTNode node, SemanticContext ctx) {
 		FunctionType funcType = parseRoutineTypeFromDecl(node.getRoutineDeclaration(), ctx);
-		routines.put(node.getRoutineDeclaration().getRoutineName(), funcType);
 		
 		Scope subscope = new Scope(ctx.getScope(), funcType.getArgumentsTypes());
 		
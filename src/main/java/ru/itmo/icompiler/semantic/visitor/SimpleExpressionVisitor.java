@@ -51,7 +51,7 @@ public class SimpleExpressionVisitor extends AbstractExpressionASTVisitor {
 	public SemanticContext visit(RoutineCallExpressionNode node, SemanticContext ctx) {
 		String routineName = node.getRoutineName();
 		
-		FunctionType routineType = (FunctionType)ctx.getScope().deepLookup(routineName);
+		FunctionType routineType = (FunctionType)ctx.getScope().deepLookup(node.getRoutineSymbol(), routineName);
 		node.setRoutineType(routineType);
 		
 		if (routineType == null)
@@ -23,7 +23,6 @@ import ru.itmo.icompiler.syntax.ast.ForEachStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.ForInRangeStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.IfThenElseStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.PrintStatementASTNode;
-import ru.itmo.icompiler.syntax.ast.ProgramASTNode;
 import ru.itmo.icompiler.syntax.ast.ReturnStatementASTNode;
 import ru.itmo.icompiler.syntax.ast.RoutineDeclarationASTNode;
 import ru.itmo.icompiler.syntax.ast.RoutineDefinitionASTNode;
@@ -98,11 +97,30 @@ public class TypealiasResolverASTVisitor extends AbstractASTVisitor {
 		return realVarType;
 	}
 	
+	private void detachCandidates() {
+		detachingCandidates.forEach(ASTNode::detach);
+		detachingCandidates.clear();
+	}
+	
+	@Override
+	public TypealiasResolverASTVisitor forRoutine() {
+		return new TypealiasResolverASTVisitor(expressionVisitor);
+	}
+	
 	@Override
-	public SemanticContext visit(ProgramASTNode node, SemanticContext ctx) {
-		SemanticContext res = super.visit(node, ctx);
+	public SemanticContext visitDeclaration(ASTNode node, SemanticContext ctx) {
+		SemanticContext res = super.visitDeclaration(node, ctx);
 		
-		detachingCandidates.forEach(ASTNode::detach);
+		detachCandidates();
+		
+		return res;
+	}
+	
+	@Override
+	public SemanticContext visitRoutineHeader(RoutineDefinitionASTNode node, SemanticContext ctx) {
+		SemanticContext res = super.visitRoutineHeader(node, ctx);
+		
+		detachCandidates();
 		
 		return res;
 	}
@@ -114,7 +132,7 @@ public class TypealiasResolverASTVisitor extends AbstractASTVisitor {
 		if (realVarType != null) {
 			node.setVarType(realVarType);
 			
-			ctx.getScope().addEntity(node.getVarName(), realVarType);
+			ctx.getScope().addEntity(node.getSymbol(), node.getVarName(), realVarType);
 		} else
 			detachingCandidates.add(node);
 		
@@ -157,11 +175,11 @@ public class TypealiasResolverASTVisitor extends AbstractASTVisitor {
 	}
 
 	@Override
-	public SemanticContext visit(RoutineDefinitionASTNode node, SemanticContext ctx) {
-		node.getRoutineDeclaration().accept(this, ctx);
-		
+	public SemanticContext visitRoutineBody(RoutineDefinitionASTNode node, SemanticContext ctx) {
 		node.getBody().accept(this, new SemanticContext(ctx.getCompilerErrors(), new Scope(ctx.getScope())));
 		
+		detachCandidates();
+		
 		return ctx;
 	}
 
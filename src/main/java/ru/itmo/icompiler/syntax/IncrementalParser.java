@@ -0,0 +1,262 @@
+package ru.itmo.icompiler.syntax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import ru.itmo.icompiler.exception.CompilerException;
+import ru.itmo.icompiler.lex.BufferLexer;
+import ru.itmo.icompiler.lex.CharBufferLexer;
+import ru.itmo.icompiler.lex.Symbols;
+import ru.itmo.icompiler.lex.Token;
+import ru.itmo.icompiler.lex.TokenStream;
+import ru.itmo.icompiler.lex.TokenStreamLexer;
+import ru.itmo.icompiler.reader.SourceText;
+import ru.itmo.icompiler.syntax.ast.ASTNode;
+import ru.itmo.icompiler.syntax.ast.ProgramASTNode;
+
+// Parses a program one top-level declaration at a time and remembers where each of them
+// starts. After an edit, lexing and parsing restart at the last declaration before it and
+// stop as soon as a declaration starts exactly where an old one did (shifted by the edit);
+// the old declarations from there on, and their nodes, are kept.
+//
+// Tokens carry absolute positions, so a declaration below the edit is only kept if it has
+// not moved: an edit that adds or removes lines reparses everything after it.
+public class IncrementalParser implements Parser {
+	private static class Declaration {
+		// first token: [start, firstTokenEnd), at lineNumber:lineOffset
+		private int start, firstTokenEnd;
+		private final int lineNumber, lineOffset;
+
+		private ASTNode node;
+		private List<CompilerException> errors;
+
+		public Declaration(int start, int firstTokenEnd, Token firstToken) {
+			this.start = start;
+			this.firstTokenEnd = firstTokenEnd;
+			this.lineNumber = firstToken.lineNumber;
+			this.lineOffset = firstToken.lineOffset;
+		}
+	}
+
+	private SourceText source;
+	// shared by every lexing of the source, so a name keeps its id across edits
+	private final Symbols symbols = new Symbols();
+	private ProgramASTNode program;
+	private List<Declaration> declarations = new ArrayList<>();
+
+	public IncrementalParser(SourceText source) {
+		this.source = source;
+	}
+
+	public SourceText getSource() {
+		return source;
+	}
+
+	public Symbols getSymbols() {
+		return symbols;
+	}
+
+	@Override
+	public ProgramASTNode parse() {
+		if (program == null) {
+			TokenStream tokens = TokenStream.lex(source.getChars(), 0, source.length(), false, symbols);
+			TokenStreamLexer lexer = new TokenStreamLexer(tokens);
+
+			parseDeclarations(new SimpleParser(lexer, false), lexer, declarations, -1, 0);
+
+			program = new ProgramASTNode();
+
+			for (Declaration decl: declarations)
+				program.addChild(decl.node);
+		}
+
+		return program;
+	}
+
+	// Replaces [offset, offset + removedLength) of the source with text and updates the program.
+	public ProgramASTNode edit(int offset, int removedLength, String text) {
+		parse();
+
+		int oldLength = source.length();
+		source = source.replace(offset, removedLength, text);
+
+		int delta = source.length() - oldLength;
+		int editEnd = offset + removedLength + delta;
+
+		// the declaration before also looked at the first token of the edited one
+		int first = findLastStartingAt(offset);
+
+		if (first > 0 && offset <= declarations.get(first).firstTokenEnd)
+			--first;
+
+		CharBufferLexer lexer;
+
+		if (first < 0) {
+			first = 0;
+			lexer = new CharBufferLexer(source.getChars(), 0, source.length(), symbols);
+		} else {
+			Declaration from = declarations.get(first);
+
+			lexer = new CharBufferLexer(
+					source.getChars(), from.start, source.length() - from.start,
+					from.lineNumber, from.lineOffset - 1, symbols
+				);
+		}
+
+		List<Declaration> reparsed = new ArrayList<>();
+		int resume = parseDeclarations(new SimpleParser(lexer), lexer, reparsed, editEnd, delta);
+
+		replaceDeclarations(first, resume, reparsed, delta);
+		relink();
+
+		return program;
+	}
+
+	// Parses the declaration of node again, for a node no semantic check has modified yet.
+	// Returns the new node, which takes the place of the old one in the program.
+	public ASTNode reparse(ASTNode node) {
+		parse();
+
+		for (int i = 0; i < declarations.size(); ++i) {
+			if (declarations.get(i).node == node) {
+				reparseDeclaration(i);
+				relink();
+
+				return declarations.get(i).node;
+			}
+		}
+
+		throw new IllegalArgumentException("not a top-level node of this program");
+	}
+
+	// Parses the declarations whose nodes are stale again and puts back the ones
+	// the semantic checks have detached.
+	public ProgramASTNode reparse(Predicate<ASTNode> stale) {
+		parse();
+
+		for (int i = 0; i < declarations.size(); ++i) {
+			ASTNode node = declarations.get(i).node;
+
+			if (node != null && stale.test(node))
+				i = reparseDeclaration(i) - 1;
+		}
+
+		relink();
+
+		return program;
+	}
+
+	// returns the index of the first declaration after the reparsed ones
+	private int reparseDeclaration(int index) {
+		Declaration decl = declarations.get(index);
+
+		CharBufferLexer lexer = new CharBufferLexer(
+				source.getChars(), decl.start, source.length() - decl.start,
+				decl.lineNumber, decl.lineOffset - 1, symbols
+			);
+
+		// the text is the same, so parsing resyncs with the next declaration
+		List<Declaration> reparsed = new ArrayList<>();
+		int resume = parseDeclarations(new SimpleParser(lexer), lexer, reparsed, decl.start + 1, 0);
+
+		replaceDeclarations(index, resume, reparsed, 0);
+
+		return index + reparsed.size();
+	}
+
+	private void replaceDeclarations(int first, int resume, List<Declaration> reparsed, int delta) {
+		for (int i = first; i < resume; ++i) {
+			ASTNode node = declarations.get(i).node;
+
+			if (node != null)
+				node.detach();
+		}
+
+		List<Declaration> updated = new ArrayList<>(declarations.size() - (resume - first) + reparsed.size());
+		updated.addAll(declarations.subList(0, first));
+		updated.addAll(reparsed);
+
+		for (Declaration decl: declarations.subList(resume, declarations.size())) {
+			decl.start += delta;
+			decl.firstTokenEnd += delta;
+
+			updated.add(decl);
+		}
+
+		declarations = updated;
+	}
+
+	// semantic checks detach the top-level nodes they reject, so the children
+	// are rebuilt from the declarations rather than patched
+	private void relink() {
+		program.getChildren().clear();
+
+		for (Declaration decl: declarations)
+			program.addChild(decl.node);
+	}
+
+	// Parses declarations into parsed until the end of text or until one starts at or after
+	// resyncOffset where an old declaration started before the edit, at the same position.
+	// Returns the index of that old declaration, or the number of old declarations.
+	private int parseDeclarations(SimpleParser parser, BufferLexer lexer, List<Declaration> parsed, int resyncOffset, int delta) {
+		for (;;) {
+			Token first = parser.peekNodeStart();
+
+			if (parser.isEndReached())
+				return declarations.size();
+
+			Declaration decl = new Declaration(lexer.getTokenStart(), lexer.getTokenEnd(), first);
+
+			if (resyncOffset >= 0 && decl.start >= resyncOffset) {
+				int old = findLastStartingAt(decl.start - delta);
+
+				if (old >= 0) {
+					Declaration oldDecl = declarations.get(old);
+
+					if (oldDecl.start == decl.start - delta && oldDecl.lineNumber == decl.lineNumber && oldDecl.lineOffset == decl.lineOffset)
+						return old;
+				}
+			}
+
+			int errorCount = parser.getParseErrors().size();
+
+			decl.node = parser.parseSingleNode();
+			decl.errors = List.copyOf(parser.getParseErrors().subList(errorCount, parser.getParseErrors().size()));
+
+			parsed.add(decl);
+		}
+	}
+
+	// index of the last declaration starting at or before offset, or -1
+	private int findLastStartingAt(int offset) {
+		int lo = 0, hi = declarations.size() - 1, found = -1;
+
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+
+			if (declarations.get(mid).start <= offset) {
+				found = mid;
+				lo = mid + 1;
+			} else
+				hi = mid - 1;
+		}
+
+		return found;
+	}
+
+	@Override
+	public List<CompilerException> getParseErrors() {
+		List<CompilerException> errors = new ArrayList<>();
+
+		for (Declaration decl: declarations)
+			errors.addAll(decl.errors);
+
+		return errors;
+	}
+
+	@Override
+	public boolean isEndReached() {
+		return program != null;
+	}
+}
@@ -13,6 +13,9 @@ import ru.itmo.icompiler.lex.LexUtils;
 import ru.itmo.icompiler.lex.Lexer;
 import ru.itmo.icompiler.lex.Token;
 import ru.itmo.icompiler.lex.Token.TokenType;
+import ru.itmo.icompiler.lex.TokenClass;
+import ru.itmo.icompiler.lex.TokenStream;
+import ru.itmo.icompiler.lex.TokenStreamLexer;
 import ru.itmo.icompiler.semantic.ArrayType;
 import ru.itmo.icompiler.semantic.ArrayType.SizedArrayType;
 import ru.itmo.icompiler.semantic.RecordType;
@@ -85,6 +88,96 @@ public class SimpleParser implements Parser {
 				Map.entry(TokenType.NOT_OPERATOR, UnaryOperatorType.NOT_BINOP)
 			));
 	
+	private static final TokenClass DELIMITERS = TokenClass.of(TokenType.LINE_FEED_DELIMITER, TokenType.SEMICOLON_DELIMITER);
+	private static final TokenClass NOT_DELIMITERS = DELIMITERS.complement();
+	private static final TokenClass STATEMENT_END = TokenClass.of(TokenType.SEMICOLON_DELIMITER, TokenType.LINE_FEED_DELIMITER);
+	
+	private static final TokenClass THEN_KEYWORD = TokenClass.of(TokenType.THEN_KEYWORD);
+	private static final TokenClass LOOP_KEYWORD = TokenClass.of(TokenType.LOOP_KEYWORD);
+	private static final TokenClass END_KEYWORD = TokenClass.of(TokenType.END_KEYWORD);
+	private static final TokenClass COMMA_OPERATOR = TokenClass.of(TokenType.COMMA_OPERATOR);
+	
+	private static final TokenClass IF_BODY_END = TokenClass.of(TokenType.ELSE_KEYWORD, TokenType.END_KEYWORD);
+	private static final TokenClass RANGE_END = TokenClass.of(TokenType.REVERSE_KEYWORD, TokenType.LOOP_KEYWORD);
+	private static final TokenClass ARGUMENT_END = TokenClass.of(TokenType.COMMA_OPERATOR, TokenType.RIGHT_PARENTHESIS);
+	private static final TokenClass PRINT_ARGUMENT_END = TokenClass.of(
+				TokenType.LINE_FEED_DELIMITER,
+				TokenType.SEMICOLON_DELIMITER,
+				TokenType.COMMA_OPERATOR
+			);
+	
+	private static final TokenClass ROUTINE_BODY_START = TokenClass.of(
+				TokenType.LINE_FEED_DELIMITER,
+				TokenType.SEMICOLON_DELIMITER,
+				TokenType.IS_KEYWORD,
+				TokenType.ROUTINE_EXPRESSION_OPERATOR
+			);
+	private static final TokenClass BLOCK_BOUNDARIES = TokenClass.of(TokenType.THEN_KEYWORD, TokenType.LOOP_KEYWORD, TokenType.END_KEYWORD);
+	private static final TokenClass BLOCK_STARTS = TokenClass.of(TokenType.THEN_KEYWORD, TokenType.LOOP_KEYWORD);
+	
+	private static final TokenClass TYPE_START = TokenClass.of(
+				TokenType.BOOLEAN_KEYWORD,
+				TokenType.INTEGER_KEYWORD,
+				TokenType.REAL_KEYWORD,
+				
+				TokenType.ARRAY_KEYWORD,
+				TokenType.RECORD_KEYWORD,
+				
+				TokenType.IDENTIFIER
+			);
+	
+	private static final TokenClass ACCESS_OPERATORS = TokenClass.of(TokenType.DOT_OPERATOR, TokenType.LEFT_BRACKET);
+	private static final TokenClass UNARY_OPERATORS = TokenClass.of(
+				TokenType.PLUS_OPERATOR,
+				TokenType.MINUS_OPERATOR,
+				TokenType.NOT_OPERATOR
+			);
+	private static final TokenClass ATOM_START = TokenClass.of(
+				TokenType.TRUE_BOOLEAN_LITERAL,
+				TokenType.FALSE_BOOLEAN_LITERAL,
+				TokenType.INTEGER_NUMERIC_LITERAL,
+				TokenType.REAL_NUMERIC_LITERAL,
+				TokenType.IDENTIFIER,
+				
+				TokenType.LEFT_BRACKET,
+				TokenType.DOT_OPERATOR,
+				
+				TokenType.LEFT_PARENTHESIS
+			);
+	// everything that may follow an operand without ending the expression
+	private static final TokenClass EXPRESSION_CONTINUATION = TokenClass.of(
+				TokenType.TRUE_BOOLEAN_LITERAL,
+				TokenType.FALSE_BOOLEAN_LITERAL,
+				TokenType.INTEGER_NUMERIC_LITERAL,
+				TokenType.REAL_NUMERIC_LITERAL,
+				TokenType.IDENTIFIER,
+				
+				TokenType.PLUS_OPERATOR,
+				TokenType.MINUS_OPERATOR,
+				TokenType.MULTIPLY_OPERATOR,
+				TokenType.DIVIDE_OPERATOR,
+				TokenType.MODULO_OPERATOR,
+				
+				TokenType.NOT_OPERATOR,
+				TokenType.AND_OPERATOR,
+				TokenType.OR_OPERATOR,
+				TokenType.XOR_OPERATOR,
+				
+				TokenType.LT_OPERATOR,
+				TokenType.LE_OPERATOR,
+				TokenType.EQ_OPERATOR,
+				TokenType.NE_OPERATOR,
+				TokenType.GT_OPERATOR,
+				TokenType.GE_OPERATOR,
+				
+				TokenType.LEFT_BRACKET,
+				TokenType.DOT_OPERATOR,
+				
+				TokenType.LEFT_PARENTHESIS
+			);
+	
+	// Hides whitespace from the parser for lexers that produce it. Tokens are filtered
+	// one at a time, so no predicate is composed per lookup.
 	private static class LexerWrapper implements Lexer {
 		private Lexer lexer;
 		
@@ -94,9 +187,26 @@ public class SimpleParser implements Parser {
 
 		@Override
 		public Token lookupToken(Predicate<Token> p) {
-			return lexer.lookupToken(p.and(
-					Predicate.not(LexUtils::isWhitespace)
-				));
+			for (;;) {
+				Token tk = lexer.lookupToken();
+				
+				if (lexer.isEndReached() || (tk.type != TokenType.WHITESPACE && p.test(tk)))
+					return tk;
+				
+				lexer.skipToken();
+			}
+		}
+		
+		@Override
+		public Token lookupToken(TokenClass accepted) {
+			for (;;) {
+				Token tk = lexer.lookupToken();
+				
+				if (lexer.isEndReached() || (tk.type != TokenType.WHITESPACE && accepted.contains(tk.type)))
+					return tk;
+				
+				lexer.skipToken();
+			}
 		}
 
 		@Override
@@ -134,28 +244,66 @@ public class SimpleParser implements Parser {
 	private List<CompilerException> syntaxErrors;
 	
 	public SimpleParser(Lexer lexer) {
-		this.lexer = new LexerWrapper(lexer);
+		this(lexer, true);
+	}
+	
+	// a lexer that never produces whitespace is read directly, without the wrapper
+	SimpleParser(Lexer lexer, boolean filterWhitespace) {
+		this.lexer = filterWhitespace ? new LexerWrapper(lexer) : lexer;
 		this.syntaxErrors = new ArrayList<>();
 	}
 	
-	private static void checkToken(Token tok, TokenType... expectedTypes) throws CompilerException {
-		if (tok.type.noneOf(expectedTypes))
-			throwUnexpectedTokenException(tok, expectedTypes);
+	public SimpleParser(TokenStream tokens) {
+		this(new TokenStreamLexer(tokens), tokens.isWhitespaceKept());
+	}
+	
+	private static void checkToken(Token tok, TokenType expectedType) throws CompilerException {
+		if (tok.type != expectedType)
+			throwUnexpectedTokenException(tok, expectedType);
+	}
+	
+	private static void checkToken(Token tok, TokenClass expectedTypes) throws CompilerException {
+		if (!expectedTypes.contains(tok))
+			throwUnexpectedTokenException(tok, expectedTypes.getTypes());
+	}
+	
+	private Token lookupToken(boolean ignoreDelimeters) {
+		return ignoreDelimeters ? lexer.lookupToken(NOT_DELIMITERS) : lexer.lookupToken();
+	}
+	
+	protected Token expectToken(boolean ignoreDelimeters, TokenType expectedType) throws CompilerException {
+		Token tok = lookupToken(ignoreDelimeters);
+		
+		checkToken(tok, expectedType);
+		
+		return tok;
 	}
 	
-	protected Token expectToken(boolean ignoreDelimeters, TokenType... expectedTypes) throws CompilerException {
-		Token tok = lexer.lookupToken(ignoreDelimeters ? Predicate.not(LexUtils::isDelimeter) : LexUtils::truePredicate);
+	protected Token expectToken(boolean ignoreDelimeters, TokenClass expectedTypes) throws CompilerException {
+		Token tok = lookupToken(ignoreDelimeters);
 		
 		checkToken(tok, expectedTypes);
 		
 		return tok;
 	}
 	
-	protected Token expectToken(TokenType... expectedTypes) throws CompilerException {
+	protected Token expectToken(TokenType expectedType) throws CompilerException {
+		return expectToken(false, expectedType);
+	}
+	
+	protected Token expectToken(TokenClass expectedTypes) throws CompilerException {
 		return expectToken(false, expectedTypes);
 	}
 	
-	protected Token skipToken(boolean ignoreDelimiters, TokenType... expectedTypes) throws CompilerException {
+	protected Token skipToken(boolean ignoreDelimiters, TokenType expectedType) throws CompilerException {
+		Token tok = expectToken(ignoreDelimiters, expectedType);
+			
+		lexer.skipToken();
+		
+		return tok;
+	}
+	
+	protected Token skipToken(boolean ignoreDelimiters, TokenClass expectedTypes) throws CompilerException {
 		Token tok = expectToken(ignoreDelimiters, expectedTypes);
 			
 		lexer.skipToken();
@@ -163,16 +311,20 @@ public class SimpleParser implements Parser {
 		return tok;
 	}
 	
-	protected Token skipToken(TokenType... expectedTypes) throws CompilerException {
+	protected Token skipToken(TokenType expectedType) throws CompilerException {
+		return skipToken(false, expectedType);
+	}
+	
+	protected Token skipToken(TokenClass expectedTypes) throws CompilerException {
 		return skipToken(false, expectedTypes);
 	}
 	
 	protected Token skipDelimeter() {
-		return lexer.lookupToken(Predicate.not(LexUtils::isDelimeter));
+		return lexer.lookupToken(NOT_DELIMITERS);
 	}
 	
 	protected Token goToDelimeter() {
-		return lexer.lookupToken(LexUtils::isDelimeter); 
+		return lexer.lookupToken(DELIMITERS); 
 	}
 	
 	private static void throwUnexpectedTokenException(Token tk, TokenType... expected) throws CompilerException {
@@ -193,10 +345,6 @@ public class SimpleParser implements Parser {
 		}
 	}
 	
-	private static boolean isNotDelimeter(Token tk) {
-		return !LexUtils.isDelimeter(tk);
-	}
-	
 	protected ASTNode parseIfStatement() throws CompilerException {
 		skipToken(TokenType.IF_KEYWORD);
 		
@@ -207,12 +355,12 @@ public class SimpleParser implements Parser {
 		} catch (ExpressionSyntaxException e) {
 			syntaxErrors.add(e);
 			
-			lexer.lookupToken(tok -> tok.type == TokenType.THEN_KEYWORD);
+			lexer.lookupToken(THEN_KEYWORD);
 		}
 		
 		skipToken(true, TokenType.THEN_KEYWORD);
 
-		ASTNode ifBody = parseBody(tk -> tk.type.noneOf(TokenType.ELSE_KEYWORD, TokenType.END_KEYWORD));
+		ASTNode ifBody = parseBody(IF_BODY_END);
 		
 		ASTNode elseBody = null;
 		
@@ -255,7 +403,7 @@ public class SimpleParser implements Parser {
 		} catch (SyntaxException e) {
 			syntaxErrors.add(e);
 			
-			lexer.lookupToken(tok -> tok.type.anyOf(TokenType.REVERSE_KEYWORD, TokenType.LOOP_KEYWORD));
+			lexer.lookupToken(RANGE_END);
 		}
 		
 		boolean reversed = lexer.lookupToken().type == TokenType.REVERSE_KEYWORD;
@@ -285,7 +433,7 @@ public class SimpleParser implements Parser {
 		} catch (ExpressionSyntaxException e) {
 			syntaxErrors.add(e);
 			
-			lexer.lookupToken(tok -> tok.type == TokenType.LOOP_KEYWORD);
+			lexer.lookupToken(LOOP_KEYWORD);
 		}
 		
 		skipToken(true, TokenType.LOOP_KEYWORD); skipDelimeter();
@@ -298,9 +446,9 @@ public class SimpleParser implements Parser {
 	}
 	
 	private void skipRoutineBlock() {
-		Token next = lexer.nextToken(t -> LexUtils.isDelimeter(t) || t.type.anyOf(TokenType.IS_KEYWORD, TokenType.ROUTINE_EXPRESSION_OPERATOR));
+		Token next = lexer.nextToken(ROUTINE_BODY_START);
 		
-		if (lexer.isEndReached() || LexUtils.isDelimeter(next))
+		if (lexer.isEndReached() || DELIMITERS.contains(next))
 			return;
 		else if (next.type == TokenType.ROUTINE_EXPRESSION_OPERATOR) {
 			skipDelimeter();
@@ -308,19 +456,17 @@ public class SimpleParser implements Parser {
 			return;
 		}
 		
-		Predicate<Token> pred = tok -> tok.type.anyOf(TokenType.THEN_KEYWORD, TokenType.LOOP_KEYWORD, TokenType.END_KEYWORD);
-		
 		Token t1, t2;
 		
 		do {
-			t1 = lexer.nextToken(pred);
+			t1 = lexer.nextToken(BLOCK_BOUNDARIES);
 			
 			if (t1.type == TokenType.END_KEYWORD)
 				break;
 			
-			t2 = lexer.nextToken(pred);
+			t2 = lexer.nextToken(BLOCK_BOUNDARIES);
 		} while (
-			t1.type.anyOf(TokenType.THEN_KEYWORD, TokenType.LOOP_KEYWORD) && t2.type == TokenType.END_KEYWORD
+			BLOCK_STARTS.contains(t1) && t2.type == TokenType.END_KEYWORD
 		);
 	}
 	
@@ -336,11 +482,11 @@ public class SimpleParser implements Parser {
 		return argDecl;
 	}
 	
-	protected CompoundStatementASTNode parseBody(Predicate<Token> pred) throws CompilerException {
+	protected CompoundStatementASTNode parseBody(TokenClass terminators) throws CompilerException {
 		CompoundStatementASTNode compoundStmtNode = new CompoundStatementASTNode(null);
 		
-		while (pred.test(
-			lexer.lookupToken(SimpleParser::isNotDelimeter)
+		while (!terminators.contains(
+			lexer.lookupToken(NOT_DELIMITERS)
 		)) {
 			try {
 				ASTNode stmt = parseStatement();
@@ -359,7 +505,7 @@ public class SimpleParser implements Parser {
 	}
 	
 	protected CompoundStatementASTNode parseBody() throws CompilerException {
-		return parseBody(tk -> tk.type != TokenType.END_KEYWORD);
+		return parseBody(END_KEYWORD);
 	}
 	
 	protected RoutineDeclarationASTNode parseRoutineHeader() throws CompilerException {
@@ -388,7 +534,7 @@ public class SimpleParser implements Parser {
 		
 		boolean commaFlag = false;
 		
-		while (lexer.lookupToken(SimpleParser::isNotDelimeter).type != TokenType.RIGHT_PARENTHESIS) {
+		while (lexer.lookupToken(NOT_DELIMITERS).type != TokenType.RIGHT_PARENTHESIS) {
 			try {
 				if (commaFlag)
 					skipToken(TokenType.COMMA_OPERATOR);
@@ -401,7 +547,7 @@ public class SimpleParser implements Parser {
 			} catch (SyntaxException e) {
 				syntaxErrors.add(e);
 				
-				lexer.lookupToken(t -> t.type.anyOf(TokenType.COMMA_OPERATOR, TokenType.RIGHT_PARENTHESIS));
+				lexer.lookupToken(ARGUMENT_END);
 			}
 		}
 		
@@ -449,16 +595,7 @@ public class SimpleParser implements Parser {
 		Token posToken = lexer.lookupToken(); 
 		
 		try {
-			Token start = skipToken(
-					TokenType.BOOLEAN_KEYWORD,
-					TokenType.INTEGER_KEYWORD,
-					TokenType.REAL_KEYWORD,
-					
-					TokenType.ARRAY_KEYWORD,
-					TokenType.RECORD_KEYWORD,
-					
-					TokenType.IDENTIFIER
-				);
+			Token start = skipToken(TYPE_START);
 		
 			switch (start.type) {
 				case BOOLEAN_KEYWORD:
@@ -487,7 +624,7 @@ public class SimpleParser implements Parser {
 					List<RecordProperty> properties = new ArrayList<>();
 					Map<String, Integer> fieldDeclarations = new HashMap<>();
 					
-					while (lexer.lookupToken(Predicate.not(LexUtils::isDelimeter)).type != TokenType.END_KEYWORD) {
+					while (lexer.lookupToken(NOT_DELIMITERS).type != TokenType.END_KEYWORD) {
 						skipToken(TokenType.VAR_KEYWORD);
 						
 						Token iden = skipToken(TokenType.IDENTIFIER);
@@ -496,7 +633,7 @@ public class SimpleParser implements Parser {
 						Integer line = fieldDeclarations.get(fieldName);
 						
 						if (line != null) {
-							lexer.lookupToken(t -> t.type == TokenType.END_KEYWORD);
+							lexer.lookupToken(END_KEYWORD);
 							lexer.skipToken();
 							
 							throw new RecordDuplicateFieldSemanticException(fieldName, iden.lineNumber, iden.lineOffset, line.intValue());
@@ -547,7 +684,7 @@ public class SimpleParser implements Parser {
 				} catch (ExpressionSyntaxException e) {
 					syntaxErrors.add(e);
 					
-					lexer.lookupToken(tk -> tk.type.anyOf(TokenType.COMMA_OPERATOR, TokenType.RIGHT_PARENTHESIS));
+					lexer.lookupToken(ARGUMENT_END);
 				}
 			}
 			
@@ -559,7 +696,7 @@ public class SimpleParser implements Parser {
 			
 			Token tk = lexer.lookupToken();
 			
-			while (tk.type.anyOf(TokenType.DOT_OPERATOR, TokenType.LEFT_BRACKET)) {
+			while (ACCESS_OPERATORS.contains(tk)) {
 				lexer.skipToken();
 				
 				switch (tk.type) {
@@ -605,11 +742,7 @@ public class SimpleParser implements Parser {
 		
 		Token token = lexer.lookupToken();
 		
-		while (token.type.anyOf(
-					TokenType.PLUS_OPERATOR,
-					TokenType.MINUS_OPERATOR,
-					TokenType.NOT_OPERATOR
-				)) {
+		while (UNARY_OPERATORS.contains(token)) {
 			lexer.skipToken();
 			
 			UnaryOperatorType unopType = UNOP_TYPE_BY_TOKEN_TYPE.get(token.type);
@@ -619,18 +752,7 @@ public class SimpleParser implements Parser {
 			token = lexer.lookupToken();
 		}
 		
-		if (token.type.noneOf(
-				TokenType.TRUE_BOOLEAN_LITERAL,
-				TokenType.FALSE_BOOLEAN_LITERAL,
-				TokenType.INTEGER_NUMERIC_LITERAL,
-				TokenType.REAL_NUMERIC_LITERAL,
-				TokenType.IDENTIFIER,
-				
-				TokenType.LEFT_BRACKET,
-				TokenType.DOT_OPERATOR,
-				
-				TokenType.LEFT_PARENTHESIS
-			))
+		if (!ATOM_START.contains(token))
 			throw new ExpectedAnExpessionSyntaxException(token.lineNumber, token.lineOffset);
 		
 		lexer.skipToken();
@@ -675,7 +797,7 @@ public class SimpleParser implements Parser {
 						} catch (ExpressionSyntaxException e) {
 							syntaxErrors.add(e);
 							
-							lexer.lookupToken(tk -> tk.type == TokenType.COMMA_OPERATOR);
+							lexer.lookupToken(COMMA_OPERATOR);
 						}
 					}
 					
@@ -686,7 +808,7 @@ public class SimpleParser implements Parser {
 				} else {
 					newExprNode = new VariableExpressionNode(null, token);
 					
-					while (tok.type.anyOf(TokenType.DOT_OPERATOR, TokenType.LEFT_BRACKET)) {
+					while (ACCESS_OPERATORS.contains(tok)) {
 						lexer.skipToken();
 						
 						switch (tok.type) {
@@ -750,36 +872,7 @@ public class SimpleParser implements Parser {
 		
 		Token token = lexer.lookupToken();
 		
-		while (token.type.anyOf(
-				TokenType.TRUE_BOOLEAN_LITERAL,
-				TokenType.FALSE_BOOLEAN_LITERAL,
-				TokenType.INTEGER_NUMERIC_LITERAL,
-				TokenType.REAL_NUMERIC_LITERAL,
-				TokenType.IDENTIFIER,
-				
-				TokenType.PLUS_OPERATOR,
-				TokenType.MINUS_OPERATOR,
-				TokenType.MULTIPLY_OPERATOR,
-				TokenType.DIVIDE_OPERATOR,
-				TokenType.MODULO_OPERATOR,
-				
-				TokenType.NOT_OPERATOR,
-				TokenType.AND_OPERATOR,
-				TokenType.OR_OPERATOR,
-				TokenType.XOR_OPERATOR,
-				
-				TokenType.LT_OPERATOR,
-				TokenType.LE_OPERATOR,
-				TokenType.EQ_OPERATOR,
-				TokenType.NE_OPERATOR,
-				TokenType.GT_OPERATOR,
-				TokenType.GE_OPERATOR,
-				
-				TokenType.LEFT_BRACKET,
-				TokenType.DOT_OPERATOR,
-				
-				TokenType.LEFT_PARENTHESIS
-				)) {
+		while (EXPRESSION_CONTINUATION.contains(token)) {
 			if (!BINOP_TYPE_BY_TOKEN_TYPE.containsKey(token.type))
 				throw new ExpectedAnOperatorSyntaxException(token);
 			
@@ -836,7 +929,7 @@ public class SimpleParser implements Parser {
 		
 		boolean commaExpected = false;
 		
-		while (!LexUtils.isDelimeter(lexer.lookupToken())) {
+		while (!DELIMITERS.contains(lexer.lookupToken())) {
 			if (commaExpected)
 				skipToken(TokenType.COMMA_OPERATOR);
 			else
@@ -847,7 +940,7 @@ public class SimpleParser implements Parser {
 			} catch (SyntaxException e) {
 				syntaxErrors.add(e);
 				
-				lexer.lookupToken(tk -> LexUtils.isDelimeter(tk) || tk.type == TokenType.COMMA_OPERATOR);
+				lexer.lookupToken(PRINT_ARGUMENT_END);
 			}
 		}
 		
@@ -861,19 +954,19 @@ public class SimpleParser implements Parser {
 		
 		Token tk = lexer.lookupToken();
 		
-		if (LexUtils.isDelimeter(tk))
+		if (DELIMITERS.contains(tk))
 			returnValueNode = new EmptyExpressionNode(null, tk);
 		else {
 			returnValueNode = parseExpression();
 			
-			expectToken(TokenType.LINE_FEED_DELIMITER, TokenType.SEMICOLON_DELIMITER);
+			expectToken(DELIMITERS);
 		}
 		
 		return new ReturnStatementASTNode(null, returnValueNode);
 	}
 	
 	protected ASTNode parseStatement() throws CompilerException {		
-		Token tok = lexer.lookupToken(SimpleParser::isNotDelimeter);
+		Token tok = lexer.lookupToken(NOT_DELIMITERS);
 		
 		ASTNode stmtNode = null;
 		
@@ -897,12 +990,12 @@ public class SimpleParser implements Parser {
 			case BREAK_KEYWORD:
 				stmtNode = new BreakStatementASTNode(null, tok);
 				lexer.skipToken();
-				expectToken(TokenType.SEMICOLON_DELIMITER, TokenType.LINE_FEED_DELIMITER);
+				expectToken(STATEMENT_END);
 				break;
 			case CONTINUE_KEYWORD:
 				stmtNode = new ContinueStatementASTNode(null, tok);
 				lexer.skipToken();
-				expectToken(TokenType.SEMICOLON_DELIMITER, TokenType.LINE_FEED_DELIMITER);
+				expectToken(STATEMENT_END);
 				break;
 			case PRINT_OPERATOR:
 				stmtNode = parsePrintStatement();
@@ -998,7 +1091,7 @@ public class SimpleParser implements Parser {
 	}
 	
 	protected ASTNode parseSingleNode() {
-		Token tok = lexer.lookupToken(SimpleParser::isNotDelimeter);
+		Token tok = lexer.lookupToken(NOT_DELIMITERS);
 		
 		try {
 			switch (tok.type) {
@@ -1038,6 +1131,11 @@ public class SimpleParser implements Parser {
 		return lexer.isEndReached();
 	}
 	
+	// the first token of the next top-level node, which parseSingleNode starts at
+	Token peekNodeStart() {
+		return lexer.lookupToken(NOT_DELIMITERS);
+	}
+	
 	public List<CompilerException> getParseErrors() {
 		return syntaxErrors;
 	}
@@ -1,7 +1,9 @@
 package ru.itmo.icompiler.syntax.ast;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 import ru.itmo.icompiler.exception.CompilerException;
 import ru.itmo.icompiler.lex.Token;
@@ -9,14 +11,156 @@ import ru.itmo.icompiler.semantic.SemanticContext;
 import ru.itmo.icompiler.semantic.visitor.ASTVisitor;
 
 public abstract class ASTNode {
+	private static final ASTNode[] NO_CHILDREN = {};
+	
 	private ASTNode parentNode;
 	private ASTNodeType nodeType;
-	protected List<ASTNode> children;
+	// the children are kept in the node itself, and a leaf allocates nothing for them;
+	// getChildren() is a view over these
+	private ASTNode[] childNodes = NO_CHILDREN;
+	private int childCount = 0;
+	// where the node was last put in a child list, and how many child lists hold it
+	private int indexInParent = -1;
+	private int childListCount = 0;
+	// the view over childNodes, made on first use and kept, so that walking the tree allocates
+	// nothing and an iterator sees the modifications made through any other access
+	private ChildList childList;
 	
 	public ASTNode(ASTNode parentNode, ASTNodeType nodeType) {
 		setParentNode(parentNode);
 		this.nodeType = nodeType;
-		this.children = new ArrayList<>();
+	}
+	
+	// A child list where every node knows its index, so contains, indexOf and remove of a node
+	// take constant time instead of a search; inserting or removing renumbers the nodes after it,
+	// which costs no more than shifting them. A node can sit in two lists at once (a while body
+	// shares its statements); the index then belongs to the list that took it last, and only
+	// such shared nodes are searched for.
+	private class ChildList extends AbstractList<ASTNode> implements RandomAccess {
+		private void renumber(int from) {
+			for (int i = from; i < childCount; ++i)
+				childNodes[i].indexInParent = i;
+		}
+		
+		private void checkIndex(int index, int size) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+		}
+		
+		@Override
+		public ASTNode get(int index) {
+			checkIndex(index, childCount);
+			
+			return childNodes[index];
+		}
+		
+		@Override
+		public int size() {
+			return childCount;
+		}
+		
+		@Override
+		public ASTNode set(int index, ASTNode node) {
+			checkIndex(index, childCount);
+			
+			ASTNode old = childNodes[index];
+			childNodes[index] = node;
+			
+			--old.childListCount;
+			++node.childListCount;
+			node.indexInParent = index;
+			
+			return old;
+		}
+		
+		@Override
+		public void add(int index, ASTNode node) {
+			checkIndex(index, childCount + 1);
+			
+			// most nodes have one or two children
+			if (childCount == childNodes.length)
+				childNodes = Arrays.copyOf(childNodes, Math.max(2 * childCount, 1));
+			
+			System.arraycopy(childNodes, index, childNodes, index + 1, childCount - index);
+			childNodes[index] = node;
+			++childCount;
+			++modCount;
+			
+			++node.childListCount;
+			renumber(index);
+		}
+		
+		@Override
+		public ASTNode remove(int index) {
+			checkIndex(index, childCount);
+			
+			ASTNode old = childNodes[index];
+			
+			System.arraycopy(childNodes, index + 1, childNodes, index, childCount - index - 1);
+			childNodes[--childCount] = null;
+			++modCount;
+			
+			--old.childListCount;
+			renumber(index);
+			
+			return old;
+		}
+		
+		@Override
+		public boolean remove(Object o) {
+			int index = indexOf(o);
+			
+			if (index < 0)
+				return false;
+			
+			remove(index);
+			
+			return true;
+		}
+		
+		@Override
+		public int indexOf(Object o) {
+			if (!(o instanceof ASTNode node) || node.childListCount == 0)
+				return -1;
+			
+			int index = node.indexInParent;
+			
+			if (index >= 0 && index < childCount && childNodes[index] == node)
+				return index;
+			
+			if (node.childListCount > 1) {
+				for (int i = 0; i < childCount; ++i) {
+					if (childNodes[i] == node)
+						return i;
+				}
+			}
+			
+			return -1;
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			return indexOf(o) >= 0;
+		}
+		
+		@Override
+		public void clear() {
+			for (int i = 0; i < childCount; ++i)
+				--childNodes[i].childListCount;
+			
+			childNodes = NO_CHILDREN;
+			childCount = 0;
+			++modCount;
+		}
+	}
+	
+	// the node's own children, also where a subclass keeps its children elsewhere
+	// and overrides getChildren()
+	protected List<ASTNode> childList() {
+		if (childList == null)
+			childList = new ChildList();
+		
+		return childList;
 	}
 	
 	public ASTNodeType getNodeType() {
@@ -35,7 +179,7 @@ public abstract class ASTNode {
 			return;
 		
 		if (parentNode != null) {
-			int index = parentNode.children.indexOf(this);
+			int index = parentNode.childList().indexOf(this);
 						
 			parentNode.addChild(index, node);
 		}
@@ -58,7 +202,7 @@ public abstract class ASTNode {
 		if (node == null)
 			return;
 		
-		children.add(index, node);
+		childList().add(index, node);
 		
 		if (node.parentNode != this)
 			node.setParentNode(this);
@@ -68,7 +212,7 @@ public abstract class ASTNode {
 		if (node == null)
 			return;
 		
-		children.add(node);
+		childList().add(node);
 		
 		if (node.parentNode != this)
 			node.setParentNode(this);
@@ -83,16 +227,16 @@ public abstract class ASTNode {
 		if (child == null || this != child.getParentNode())
 			return;
 		
-		children.remove(child);
+		childList().remove(child);
 		child.setParentNode(null);
 	}
 	
 	public List<ASTNode> getChildren() {
-		return children;
+		return childList();
 	}
 	
 	public ASTNode getChild(int i) {
-		return children.get(i);
+		return childList().get(i);
 	}
 	
 	public void validate(SemanticContext ctx) throws CompilerException {
@@ -116,13 +260,13 @@ public abstract class ASTNode {
 	protected List<String> stringifyChildren(int tabs) {
 		String sep = "\n" + " ".repeat((tabs + 1) * 4);
 		
-		return children.stream().map(t -> String.format("%s%s", sep, t.toString(tabs))).toList();
+		return childList().stream().map(t -> String.format("%s%s", sep, t.toString(tabs))).toList();
 	}
 	
 	public abstract<R, A> R accept(ASTVisitor<R, A> visitor, A arg);
 	
 	public String toString(int tabs) {
-		return children.isEmpty()
+		return childList().isEmpty()
 				? toString()
 				: String.format(
 					"%s[%s]",
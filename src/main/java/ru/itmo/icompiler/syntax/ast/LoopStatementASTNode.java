@@ -17,4 +17,9 @@ public abstract class LoopStatementASTNode extends ASTNode {
 	public CompoundStatementASTNode getBody() {
 		return bodyNode;
 	}
+	
+	// the body node itself, where getBody() may return a copy of it
+	public CompoundStatementASTNode getBodyNode() {
+		return bodyNode;
+	}
 }
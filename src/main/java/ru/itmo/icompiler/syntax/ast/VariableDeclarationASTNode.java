@@ -7,12 +7,14 @@ import ru.itmo.icompiler.semantic.visitor.ASTVisitor;
 public class VariableDeclarationASTNode extends ASTNode {
 	private VarType varType;
 	private String varName;
+	private int symbol;
 	private Token token;
 	
 	public VariableDeclarationASTNode(ASTNode parentNode, VarType type, Token token, String variable) {
 		super(parentNode, ASTNodeType.VAR_DECL_NODE);
 		this.varType = type;
 		this.varName = variable;
+		this.symbol = token != null && variable.equals(token.text) ? token.symbol : -1;
 		this.token = token;
 	}
 	
@@ -28,6 +30,11 @@ public class VariableDeclarationASTNode extends ASTNode {
 		return varName;
 	}
 	
+	// the interned name of the variable, -1 for a node no lexer made
+	public int getSymbol() {
+		return symbol;
+	}
+	
 	public Token getToken() {
 		return token;
 	}
@@ -37,6 +37,13 @@ public class ImplicitCastExpressionNode extends ExpressionASTNode {
 		return argument;
 	}
 	
+	public void setArgument(ExpressionASTNode argument) {
+		childList().remove(this.argument);
+		
+		this.argument = argument;
+		addChild(argument);
+	}
+	
 	public String toString() {
 		return toString(0);
 	}
@@ -22,6 +22,7 @@ import ru.itmo.icompiler.syntax.ast.ASTNode;
 
 public class RoutineCallExpressionNode extends ExpressionASTNode {
 	private String routineName;
+	private int routineSymbol;
 	private FunctionType routineType;
 	private List<ExpressionASTNode> arguments;
 	
@@ -30,6 +31,7 @@ public class RoutineCallExpressionNode extends ExpressionASTNode {
 		
 		this.routineType = routineType;
 		this.routineName = routineName;
+		this.routineSymbol = routineName != null && routineName.equals(startToken.text) ? startToken.symbol : -1;
 		this.arguments = new ArrayList<>(arguments);
 	}
 	
@@ -61,6 +63,11 @@ public class RoutineCallExpressionNode extends ExpressionASTNode {
 		return routineName;
 	}
 	
+	// the interned name of the routine, -1 for a node no lexer made
+	public int getRoutineSymbol() {
+		return routineSymbol;
+	}
+	
 	public void setArguments(List<ExpressionASTNode> arguments) {
 		this.arguments = arguments;
 	}
@@ -97,7 +104,7 @@ public class RoutineCallExpressionNode extends ExpressionASTNode {
 	private void validatePresence(SemanticContext ctx) throws SemanticException {
 		Token tk = getStartToken();
 		
-		VarType type = SemUtils.checkRoutine(routineName, ctx, true, new UndefinedRoutineSemanticException(routineName, tk.lineNumber, tk.lineOffset));
+		VarType type = SemUtils.checkRoutine(routineSymbol, routineName, ctx, true, new UndefinedRoutineSemanticException(routineName, tk.lineNumber, tk.lineOffset));
 		
 		if (type.getTag() != VarType.Tag.FUNCTION)
 			throw new AttemptToCallNonCallableSemanticException(type, tk.lineNumber, tk.lineOffset);
@@ -106,7 +113,7 @@ public class RoutineCallExpressionNode extends ExpressionASTNode {
 	public void validate(SemanticContext ctx) throws CompilerException {
 		validatePresence(ctx);
 
-		FunctionType funcType = (FunctionType) ctx.getScope().deepLookup(routineName);
+		FunctionType funcType = (FunctionType) ctx.getScope().deepLookup(routineSymbol, routineName);
 
 		Iterator<Entry<String, VarType>> argsIter = funcType.getArgumentsTypes().entrySet().iterator();
 		Iterator<ExpressionASTNode> iter = arguments.iterator();
@@ -141,7 +148,7 @@ public class RoutineCallExpressionNode extends ExpressionASTNode {
 
 	@Override
 	protected VarType doTypeInference(SemanticContext ctx) throws SemanticException {
-		FunctionType varType = (FunctionType)ctx.getScope().deepLookup(routineName);
+		FunctionType varType = (FunctionType)ctx.getScope().deepLookup(routineSymbol, routineName);
 		
 		return varType.getReturnType();
 	}
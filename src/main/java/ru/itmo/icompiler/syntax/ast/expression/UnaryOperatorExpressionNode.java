@@ -1,5 +1,6 @@
 package ru.itmo.icompiler.syntax.ast.expression;
 
+import java.util.List;
 import java.util.Locale;
 
 import ru.itmo.icompiler.exception.CompilerException;
@@ -39,6 +40,7 @@ public class UnaryOperatorExpressionNode extends ExpressionASTNode {
 	@Override
 	public void addChild(ASTNode child) {
 		ExpressionASTNode exprNode = (ExpressionASTNode) child;
+		List<ASTNode> children = childList();
 		
 		if (children.isEmpty())
 			children.add(exprNode);
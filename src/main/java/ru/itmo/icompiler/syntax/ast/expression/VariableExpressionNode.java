@@ -11,17 +11,24 @@ import ru.itmo.icompiler.syntax.ast.ASTNode;
 
 public class VariableExpressionNode extends ExpressionASTNode {
 	private String variable;
+	private int symbol;
 	
 	public VariableExpressionNode(ASTNode parentNode, Token token) {
 		super(parentNode, token, ExpressionNodeType.VARIABLE_EXPR_NODE);
 		
 		this.variable = token.text;
+		this.symbol = token.symbol;
 	}
 	
 	public String getVariable() {
 		return variable;
 	}
 	
+	// the interned name of the variable, -1 for a node no lexer made
+	public int getSymbol() {
+		return symbol;
+	}
+	
 	@Override
 	public<R, A> R accept(ExpressionNodeVisitor<R, A> visitor, A arg) {
 		return visitor.visit(this, arg); 
@@ -35,12 +42,12 @@ public class VariableExpressionNode extends ExpressionASTNode {
 	}
 	
 	public void validate(SemanticContext ctx) throws SemanticException {
-		SemUtils.checkEntity(variable, ctx, true, new UndefinedVariableSemanticException(variable, getStartToken().lineNumber, getStartToken().lineOffset));
+		SemUtils.checkEntity(symbol, variable, ctx, true, new UndefinedVariableSemanticException(variable, getStartToken().lineNumber, getStartToken().lineOffset));
 	}
 	
 	@Override
 	protected VarType doTypeInference(SemanticContext ctx) throws SemanticException {
-		VarType varType = ctx.getScope().deepLookupEntity(variable);
+		VarType varType = ctx.getScope().deepLookupEntity(symbol, variable);
 			
 		return varType;
 	}
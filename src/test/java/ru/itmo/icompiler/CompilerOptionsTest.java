@@ -0,0 +1,79 @@
+package ru.itmo.icompiler;
+
+import org.junit.jupiter.api.Test;
+import ru.itmo.icompiler.CompilerOptions.Mode;
+import ru.itmo.icompiler.codegen.jvm.JVMJarWriter;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompilerOptionsTest {
+
+    @Test
+    void testEveryModeTakesTheOutputOptions() {
+        List<String> args = List.of("-O2", "--peephole=iinc,short-form", "--stored", "--class-dir=classes", "--cache=cache", "f.ilang");
+
+        for (Mode mode : Mode.values()) {
+            CompilerOptions options = CompilerOptions.parse(mode, args);
+
+            assertEquals(2, options.getOptimizationLevel());
+            assertEquals(List.of("iinc", "short-form"), options.getPeepholeRules());
+            assertEquals(JVMJarWriter.Compression.STORED, options.getJarCompression());
+            assertEquals(new File("classes"), options.getClassDirectory());
+            assertEquals("cache", options.getCacheDirectory());
+            assertEquals(List.of("f.ilang"), options.getInputPaths());
+            assertEquals("-O2 --peephole=iinc,short-form", options.getOutputFlags());
+        }
+
+        assertEquals("-O1 --no-peephole", CompilerOptions.parse(Mode.COMPILE, List.of("-O", "--no-peephole", "f.ilang")).getOutputFlags());
+        assertEquals("-O0 ", CompilerOptions.parse(Mode.COMPILE, List.of("f.ilang")).getOutputFlags());
+    }
+
+    @Test
+    void testPeepholeFollowsTheOptimizationLevel() {
+        assertFalse(CompilerOptions.parse(Mode.COMPILE, List.of("f.ilang")).isPeephole());
+        assertNull(CompilerOptions.parse(Mode.COMPILE, List.of("f.ilang")).createPeepholeOptimizer());
+        assertTrue(CompilerOptions.parse(Mode.COMPILE, List.of("-O1", "f.ilang")).isPeephole());
+        assertFalse(CompilerOptions.parse(Mode.COMPILE, List.of("-O2", "--no-peephole", "f.ilang")).isPeephole());
+        assertTrue(CompilerOptions.parse(Mode.COMPILE, List.of("--peephole", "f.ilang")).isPeephole());
+
+        assertEquals("-O1 ", CompilerOptions.parse(Mode.COMPILE, List.of("-O1", "f.ilang")).getOutputFlags());
+        assertEquals("-O0 --peephole", CompilerOptions.parse(Mode.COMPILE, List.of("--peephole", "f.ilang")).getOutputFlags());
+        assertEquals("-O0 ", CompilerOptions.parse(Mode.COMPILE, List.of("--no-peephole", "f.ilang")).getOutputFlags());
+    }
+
+    @Test
+    void testRunPassesTheRestToTheProgram() {
+        CompilerOptions options = CompilerOptions.parse(Mode.COMPILE, List.of("--run", "f.ilang", "--time", "x"));
+
+        assertTrue(options.isRunInMemory());
+        assertFalse(options.isPrintPhaseTimes());
+        assertEquals(List.of("f.ilang"), options.getInputPaths());
+        assertEquals(List.of("--time", "x"), options.getProgramArgs());
+    }
+
+    @Test
+    void testBadArgumentsAreRejected() {
+        List<List<String>> compileArgs = List.of(
+                List.of("--bogus", "f.ilang"),
+                List.of("--peephole=no-such-rule", "f.ilang"),
+                List.of("--threads=4", "f.ilang"),
+                List.of("--cache-size=big", "f.ilang"),
+                List.of("f.ilang", "g.ilang"),
+                List.of()
+        );
+
+        for (List<String> args : compileArgs)
+            assertThrows(IllegalArgumentException.class, () -> CompilerOptions.parse(Mode.COMPILE, args), args.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> CompilerOptions.parse(Mode.BATCH, List.of("--run", "f.ilang")));
+        assertThrows(IllegalArgumentException.class, () -> CompilerOptions.parse(Mode.BATCH, List.of("--threads=0", "f.ilang")));
+        assertThrows(IllegalArgumentException.class, () -> CompilerOptions.parse(Mode.DAEMON, List.of("--time", "f.ilang")));
+        assertThrows(IllegalArgumentException.class, () -> CompilerOptions.parse(Mode.DAEMON, List.of("-", "f.ilang")));
+        assertThrows(IllegalArgumentException.class, () -> CompilerOptions.parse(Mode.DAEMON, List.of("--class-dir=c", "f.ilang", "g.ilang")));
+
+        assertEquals(3, CompilerOptions.parse(Mode.BATCH, List.of("--threads=3", "src")).getThreads());
+    }
+}
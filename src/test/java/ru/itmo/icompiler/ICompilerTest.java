@@ -6,7 +6,6 @@ import org.junit.jupiter.params.provider.MethodSource;
 import ru.itmo.icompiler.syntax.ast.ASTNode;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
@@ -35,7 +34,7 @@ class ICompilerTest {
 
     @ParameterizedTest
     @MethodSource("provideGoodTestCases")
-    void testGood(URI file) throws FileNotFoundException {
+    void testGood(URI file) throws IOException {
         ICompiler compiler = new ICompiler(new File(file));
 
         ASTNode n = compiler.parseProgram();
@@ -46,7 +45,7 @@ class ICompilerTest {
 
     @ParameterizedTest
     @MethodSource("provideBadTestCases")
-    void testBad(URI file) throws FileNotFoundException {
+    void testBad(URI file) throws IOException {
         ICompiler compiler = new ICompiler(new File(file));
 
         ASTNode n = compiler.parseProgram();
@@ -57,7 +56,7 @@ class ICompilerTest {
 
     @ParameterizedTest
     @MethodSource("provideGoodOtherTestCases")
-    void testGoodOther(URI file) throws FileNotFoundException {
+    void testGoodOther(URI file) throws IOException {
         ICompiler compiler = new ICompiler(new File(file));
 
         ASTNode n = compiler.parseProgram();
@@ -68,7 +67,7 @@ class ICompilerTest {
 
     @ParameterizedTest
     @MethodSource("provideBadOtherTestCases")
-    void testBadOther(URI file) throws FileNotFoundException {
+    void testBadOther(URI file) throws IOException {
         ICompiler compiler = new ICompiler(new File(file));
 
         ASTNode n = compiler.parseProgram();
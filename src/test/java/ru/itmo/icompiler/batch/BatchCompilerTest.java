@@ -0,0 +1,184 @@
+package ru.itmo.icompiler.batch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.itmo.icompiler.cache.CompileCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchCompilerTest {
+
+    @Test
+    void testDiagnosticsComeOutInInputOrder(@TempDir Path dir) throws Exception {
+        List<File> inputFiles = new ArrayList<>();
+
+        for (int i = 0; i < 20; ++i) {
+            Path source = dir.resolve("prog" + i + ".ilang");
+            Files.writeString(source, "routine main() is\n  print " + (i % 3 == 0 ? "x" + i : "" + i) + "\nend\n");
+            inputFiles.add(source.toFile());
+        }
+
+        inputFiles.add(dir.resolve("sub").resolve("prog1.ilang").toFile());
+
+        BatchCompiler batch = new BatchCompiler(4);
+        batch.setOutputDirectory(dir.toFile());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        int exitCode;
+
+        try {
+            exitCode = batch.compile(inputFiles);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            batch.shutdown();
+        }
+
+        assertEquals(-3, exitCode);
+
+        List<String> jars = out.toString(StandardCharsets.UTF_8).lines().toList();
+        List<String> errors = err.toString(StandardCharsets.UTF_8).lines()
+                .filter(line -> line.contains("error") || line.startsWith("No such file")).toList();
+
+        List<String> expectedJars = new ArrayList<>();
+        List<String> expectedErrors = new ArrayList<>();
+
+        for (int i = 0; i < 20; ++i) {
+            if (i % 3 == 0)
+                expectedErrors.add("prog" + i + ".ilang:2:9: Semantic error: undefined variable x" + i);
+            else
+                expectedJars.add(dir.resolve("prog" + i + ".jar").toString());
+        }
+
+        expectedErrors.add("No such file '" + inputFiles.get(20).getPath() + "'.");
+
+        assertEquals(expectedJars, jars);
+        assertEquals(expectedErrors, errors);
+        assertTrue(err.toString(StandardCharsets.UTF_8).lines().anyMatch(line -> line.startsWith("13 files, 39 lines") && line.endsWith("; 8 failed")));
+    }
+
+    @Test
+    void testClassDirectoryHasOneDirectoryPerFile(@TempDir Path dir) throws Exception {
+        Path classes = dir.resolve("classes");
+        List<File> inputFiles = new ArrayList<>();
+
+        for (int i = 0; i < 2; ++i) {
+            Path source = dir.resolve("prog" + i + ".ilang");
+            Files.writeString(source, "routine main() is\n  print " + i + "\nend\n");
+            inputFiles.add(source.toFile());
+        }
+
+        BatchCompiler batch = new BatchCompiler(2);
+        batch.setOutputDirectory(dir.toFile());
+        batch.setClassDirectory(classes.toFile());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+
+        int exitCode;
+
+        try {
+            exitCode = batch.compile(inputFiles);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            batch.shutdown();
+        }
+
+        assertEquals(0, exitCode);
+        assertEquals(List.of(classes.resolve("prog0").toString(), classes.resolve("prog1").toString()),
+                out.toString(StandardCharsets.UTF_8).lines().toList());
+
+        for (int i = 0; i < 2; ++i) {
+            assertTrue(Files.isRegularFile(classes.resolve("prog" + i).resolve("ilang").resolve("Program.class")));
+            assertFalse(Files.exists(dir.resolve("prog" + i + ".jar")));
+        }
+    }
+
+    @Test
+    void testCacheHitsCountLinesAsMissesDo(@TempDir Path dir) throws Exception {
+        Path source = dir.resolve("prog.ilang");
+        Files.writeString(source, "routine main() is\r\n  print 1\r\nend");
+
+        BatchCompiler batch = new BatchCompiler(1);
+        batch.setOutputDirectory(dir.toFile());
+        batch.setCache(new CompileCache(dir.resolve("cache")));
+
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        List<String> summaries = new ArrayList<>();
+
+        try {
+            // a miss, then a hit
+            for (int i = 0; i < 2; ++i) {
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+                System.setOut(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+                System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+
+                assertEquals(0, batch.compile(List.of(source.toFile())));
+                summaries.add(err.toString(StandardCharsets.UTF_8).lines().filter(line -> line.contains(" lines in ")).findFirst().orElseThrow());
+            }
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            batch.shutdown();
+        }
+
+        for (String summary : summaries)
+            assertTrue(summary.startsWith("1 files, 3 lines"), summary);
+    }
+
+    @Test
+    void testFailedWriteIsOneLine(@TempDir Path dir) throws Exception {
+        Path source = dir.resolve("prog.ilang");
+        Files.writeString(source, "routine main() is\n  print 1\nend\n");
+
+        BatchCompiler batch = new BatchCompiler(1);
+        batch.setOutputDirectory(dir.resolve("missing").toFile());
+
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        int exitCode;
+
+        try {
+            exitCode = batch.compile(List.of(source.toFile()));
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            batch.shutdown();
+        }
+
+        List<String> lines = err.toString(StandardCharsets.UTF_8).lines().toList();
+
+        assertEquals(1, exitCode);
+        assertEquals(2, lines.size(), lines.toString());
+        assertTrue(lines.get(0).startsWith("Could not compile '" + source + "': java.nio.file.NoSuchFileException"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("0 files, 0 lines") && lines.get(1).endsWith("; 1 failed"), lines.get(1));
+    }
+}
@@ -0,0 +1,61 @@
+package ru.itmo.icompiler.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.itmo.icompiler.lex.Token;
+import ru.itmo.icompiler.lex.Token.TokenType;
+import ru.itmo.icompiler.syntax.ast.ASTNode;
+import ru.itmo.icompiler.syntax.ast.BreakStatementASTNode;
+import ru.itmo.icompiler.syntax.ast.CompoundStatementASTNode;
+
+import java.util.concurrent.TimeUnit;
+
+// Building and taking apart one long body, as the parser and the tree rewrites do,
+// without lexing or parsing in the way.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ASTBuildBenchmark {
+
+    @Param({"100000"})
+    public int statements;
+
+    private final Token token = new Token(1, 1, TokenType.BREAK_KEYWORD, "break");
+
+    private ASTNode buildBody() {
+        ASTNode body = new CompoundStatementASTNode(null);
+
+        for (int i = 0; i < statements; ++i)
+            new BreakStatementASTNode(body, token);
+
+        return body;
+    }
+
+    // every statement attaches itself to the body from its constructor
+    @Benchmark
+    public ASTNode build() {
+        return buildBody();
+    }
+
+    // building, then detaching the statements from the last one
+    @Benchmark
+    public ASTNode buildAndDetach() {
+        ASTNode body = buildBody();
+
+        for (int i = statements - 1; i >= 0; --i)
+            body.getChild(i).detach();
+
+        return body;
+    }
+}
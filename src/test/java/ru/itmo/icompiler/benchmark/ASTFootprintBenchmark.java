@@ -0,0 +1,69 @@
+package ru.itmo.icompiler.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.itmo.icompiler.lex.TokenStream;
+import ru.itmo.icompiler.syntax.SimpleParser;
+import ru.itmo.icompiler.syntax.ast.ASTNode;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.util.concurrent.TimeUnit;
+
+// setUp prints the heap a parsed tree keeps alive, with its Token objects, per source line;
+// the benchmark itself times parsing the already lexed text.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class ASTFootprintBenchmark {
+
+    @Param({"1000000"})
+    public int programLines;
+
+    private TokenStream tokens;
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; ++i)
+            System.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        String program = BenchmarkCorpus.buildLines("src/test/resources/sem/good", programLines);
+        long lines = program.lines().count();
+
+        tokens = TokenStream.lex(program.toCharArray(), false);
+
+        long before = usedHeap();
+        ASTNode tree = new SimpleParser(tokens).parse();
+        long retained = usedHeap() - before;
+
+        System.out.printf(
+            "%n%d lines, %.1f MB retained by the tree, %.0f bytes per line%n",
+            lines, retained / 1e6, (double) retained / lines
+        );
+
+        Reference.reachabilityFence(tree);
+    }
+
+    @Benchmark
+    public ASTNode parse() {
+        return new SimpleParser(tokens).parse();
+    }
+}
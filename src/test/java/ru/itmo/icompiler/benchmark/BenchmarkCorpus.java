@@ -0,0 +1,58 @@
+package ru.itmo.icompiler.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class BenchmarkCorpus {
+    // Concatenates the programs in the directory (tabs expanded as ICompiler does)
+    // until the text is at least minChars long.
+    public static String build(String dir, int minChars) throws IOException {
+        List<String> programs = readPrograms(dir);
+        StringBuilder sb = new StringBuilder(minChars + (1 << 16));
+
+        while (sb.length() < minChars) {
+            for (String program : programs)
+                sb.append(program).append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    // Same, until the text has at least minLines lines.
+    public static String buildLines(String dir, int minLines) throws IOException {
+        List<String> programs = readPrograms(dir);
+        StringBuilder sb = new StringBuilder();
+        long lines = 0;
+
+        while (lines < minLines) {
+            for (String program : programs) {
+                sb.append(program).append('\n');
+                lines += program.lines().count() + 1;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static List<String> readPrograms(String dir) throws IOException {
+        try (var files = Files.list(Paths.get(dir))) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .map(BenchmarkCorpus::read)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String read(Path path) {
+        try {
+            return Files.readString(path).replace("\t", "    ");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.itmo.icompiler.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.itmo.icompiler.ICompiler;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeEntity;
+import ru.itmo.icompiler.lex.DFALexer;
+import ru.itmo.icompiler.reader.SourceText;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Emits the code of one routine made of deeply nested expressions or of deeply nested
+// loops. One routine is emitted on the calling thread, so run with -prof gc to see the
+// allocation of the emitters in gc.alloc.rate.norm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodegenBenchmark {
+
+    @Param({"expressions", "loops"})
+    public String shape;
+
+    // how deep the expressions or the loops are nested
+    @Param({"48"})
+    public int depth;
+
+    // how many of them the routine has
+    @Param({"100"})
+    public int count;
+
+    private ICompiler compiler;
+
+    @Setup
+    public void setUp() {
+        String program = shape.equals("loops") ? loops() : expressions();
+
+        compiler = new ICompiler(SourceText.of(program, DFALexer.DEFAULT_TAB_SIZE));
+        // the peephole pass would outweigh the emitters on methods this long
+        compiler.setPeepholeOptimizer(null);
+        compiler.parseProgram();
+        compiler.checkSemantic();
+
+        if (!compiler.formatCompilerErrors().isBlank())
+            throw new IllegalStateException(compiler.formatCompilerErrors());
+    }
+
+    // y := (((x + 0) * 1) - 2) ... and an if on (((y > 0 and y < 1) or y = 2) and ...) ...
+    private String expressions() {
+        StringBuilder sb = new StringBuilder("routine f(x: integer) : integer is\n  var y is 0\n");
+        String[] operators = {" + ", " * ", " - "};
+
+        for (int i = 0; i < count; ++i) {
+            StringBuilder value = new StringBuilder("x");
+            StringBuilder condition = new StringBuilder("y > 0");
+
+            for (int level = 0; level < depth; ++level) {
+                value.insert(0, '(').append(operators[level % operators.length]).append(level).append(')');
+                condition.insert(0, '(').append(level % 2 == 0 ? " and " : " or ").append("y < ").append(level).append(')');
+            }
+
+            sb.append("  y := ").append(value).append('\n')
+                .append("  if ").append(condition).append(" then y := y + 1 end\n");
+        }
+
+        return sb.append("  return y\nend\n").toString();
+    }
+
+    // for i1 in 1..n loop s := s + i1 for i2 in 1..n loop ... end end
+    private String loops() {
+        StringBuilder sb = new StringBuilder("routine g(n: integer) : integer is\n  var s is 0\n");
+
+        for (int i = 0; i < count; ++i) {
+            for (int level = 0; level < depth; ++level)
+                sb.append("  for i").append(level).append(" in 1..n loop s := s + i").append(level).append('\n');
+
+            sb.append("  ").append("end ".repeat(depth)).append('\n');
+        }
+
+        return sb.append("  return s\nend\n").toString();
+    }
+
+    @Benchmark
+    public List<JVMBytecodeEntity> emitCode() {
+        return compiler.emitCode();
+    }
+}
@@ -0,0 +1,65 @@
+package ru.itmo.icompiler.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.itmo.icompiler.lex.CharBufferLexer;
+import ru.itmo.icompiler.lex.DFALexer;
+import ru.itmo.icompiler.lex.Lexer;
+import ru.itmo.icompiler.lex.Token;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"4"})
+    public int corpusMegabytes;
+
+    private String corpus;
+    private char[] corpusChars;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = BenchmarkCorpus.build("src/test/resources/lexer/good", corpusMegabytes << 20);
+        corpusChars = corpus.toCharArray();
+    }
+
+    private static int drain(Lexer lexer, Blackhole bh) {
+        int count = 0;
+        Token tok;
+
+        do {
+            tok = lexer.nextToken();
+            bh.consume(tok);
+            ++count;
+        } while (tok.type != Token.TokenType.END_OF_TEXT);
+
+        return count;
+    }
+
+    @Benchmark
+    public int dfaLexer(Blackhole bh) {
+        return drain(new DFALexer(corpus), bh);
+    }
+
+    @Benchmark
+    public int charBufferLexer(Blackhole bh) {
+        return drain(new CharBufferLexer(corpusChars), bh);
+    }
+}
@@ -0,0 +1,63 @@
+package ru.itmo.icompiler.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.itmo.icompiler.lex.CharBufferLexer;
+import ru.itmo.icompiler.lex.TokenStream;
+import ru.itmo.icompiler.syntax.SimpleParser;
+import ru.itmo.icompiler.syntax.ast.ASTNode;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Run with -prof gc and divide gc.alloc.rate.norm by the token count printed
+// from setUp to get the allocation per token.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"20000"})
+    public int programLines;
+
+    private char[] program;
+    private TokenStream tokens;
+
+    @Setup
+    public void setUp() throws IOException {
+        program = BenchmarkCorpus.buildLines("src/test/resources/sem/good", programLines).toCharArray();
+        tokens = TokenStream.lex(program, false);
+
+        System.out.printf("%n%d non-whitespace tokens%n", tokens.size());
+    }
+
+    // lexing and parsing through the Lexer interface, whitespace filtered per lookup
+    @Benchmark
+    public ASTNode charBufferLexer() {
+        return new SimpleParser(new CharBufferLexer(program)).parse();
+    }
+
+    // lexing without whitespace into a token stream, then parsing it by index
+    @Benchmark
+    public ASTNode tokenStream() {
+        return new SimpleParser(TokenStream.lex(program, false)).parse();
+    }
+
+    // parsing an already lexed stream
+    @Benchmark
+    public ASTNode tokenStreamParseOnly() {
+        return new SimpleParser(tokens).parse();
+    }
+}
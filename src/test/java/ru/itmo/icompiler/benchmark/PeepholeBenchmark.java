@@ -0,0 +1,116 @@
+package ru.itmo.icompiler.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.itmo.icompiler.ICompiler;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeClass;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeEntity;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeMethod;
+import ru.itmo.icompiler.codegen.jvm.JVMClassAssembler;
+import ru.itmo.icompiler.codegen.jvm.JVMPeepholeOptimizer;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Compiles src/test/resources/benchmark/loops.ilang with and without the peephole pass and
+// runs its routines. The instruction count and class file size of each variant are printed
+// from setUp.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeepholeBenchmark {
+
+    @Param({"true", "false"})
+    public boolean peephole;
+
+    private MethodHandle sieve;
+    private MethodHandle sort;
+    private MethodHandle collatz;
+
+    @Setup
+    public void setUp() throws Exception {
+        ICompiler compiler = new ICompiler(new File("src/test/resources/benchmark/loops.ilang"));
+        JVMPeepholeOptimizer optimizer = peephole ? new JVMPeepholeOptimizer() : null;
+
+        compiler.setPeepholeOptimizer(optimizer);
+        compiler.parseProgram();
+        compiler.checkSemantic();
+
+        JVMClassAssembler assembler = new JVMClassAssembler();
+        Map<String, byte[]> classes = new HashMap<>();
+        int instructions = 0;
+        int classBytes = 0;
+
+        for (JVMBytecodeEntity entity : compiler.emitCode()) {
+            JVMBytecodeClass jvmClass = (JVMBytecodeClass) entity;
+            byte[] bytes = assembler.assemble(jvmClass);
+
+            classes.put(jvmClass.getClassName().replace('/', '.'), bytes);
+            classBytes += bytes.length;
+
+            for (JVMBytecodeMethod method : jvmClass.getMethods()) {
+                for (JVMBytecodeEntity instruction : method.getInstructions()) {
+                    if (instruction instanceof JVMBytecodeInstruction jvmInstruction && jvmInstruction.getOpcode() != null)
+                        ++instructions;
+                }
+            }
+        }
+
+        System.out.printf("%npeephole %s: %d instructions, %d class file bytes%n", peephole ? "on" : "off", instructions, classBytes);
+
+        if (optimizer != null)
+            System.out.println(optimizer.getHitCounts());
+
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+
+                if (bytes == null)
+                    throw new ClassNotFoundException(name);
+
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+
+        Class<?> program = Class.forName("ilang.Program", true, loader);
+        MethodType type = MethodType.methodType(int.class, int.class);
+
+        sieve = MethodHandles.publicLookup().findStatic(program, "_sieve", type);
+        sort = MethodHandles.publicLookup().findStatic(program, "_sort", type);
+        collatz = MethodHandles.publicLookup().findStatic(program, "_collatz", type);
+    }
+
+    @Benchmark
+    public int sieve() throws Throwable {
+        return (int) sieve.invokeExact(100000);
+    }
+
+    @Benchmark
+    public int sort() throws Throwable {
+        return (int) sort.invokeExact(1000);
+    }
+
+    @Benchmark
+    public int collatz() throws Throwable {
+        return (int) collatz.invokeExact(10000);
+    }
+}
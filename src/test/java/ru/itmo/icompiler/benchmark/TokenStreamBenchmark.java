@@ -0,0 +1,77 @@
+package ru.itmo.icompiler.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+import ru.itmo.icompiler.lex.DFALexer;
+import ru.itmo.icompiler.lex.Token;
+import ru.itmo.icompiler.lex.TokenStream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Retained heap of a fully lexed program is printed once per fork from setUp;
+// run with -prof gc to also compare allocation per lexing pass.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenStreamBenchmark {
+
+    @Param({"100000"})
+    public int programLines;
+
+    private String program;
+    private char[] programChars;
+
+    @Setup
+    public void setUp() throws IOException {
+        program = BenchmarkCorpus.buildLines("src/test/resources/lexer/good", programLines);
+        programChars = program.toCharArray();
+
+        List<Token> tokens = dfaLexerTokens();
+        TokenStream stream = tokenStream();
+
+        GraphLayout tokensLayout = GraphLayout.parseInstance(tokens);
+        GraphLayout streamLayout = GraphLayout.parseInstance(stream).subtract(GraphLayout.parseInstance((Object) programChars));
+
+        System.out.printf(
+                "%n%d tokens: DFALexer -> List<Token>: %,d bytes in %,d objects; TokenStream: %,d bytes in %,d objects%n",
+                tokens.size(),
+                tokensLayout.totalSize(), tokensLayout.totalCount(),
+                streamLayout.totalSize(), streamLayout.totalCount()
+        );
+    }
+
+    @Benchmark
+    public List<Token> dfaLexerTokens() {
+        DFALexer lexer = new DFALexer(program);
+        List<Token> tokens = new ArrayList<>();
+        Token tok;
+
+        do {
+            tok = lexer.nextToken();
+            tokens.add(tok);
+        } while (tok.type != Token.TokenType.END_OF_TEXT);
+
+        return tokens;
+    }
+
+    @Benchmark
+    public TokenStream tokenStream() {
+        return TokenStream.lex(programChars, true);
+    }
+}
@@ -0,0 +1,67 @@
+package ru.itmo.icompiler.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileCacheTest {
+
+    private static String key(String source) {
+        return CompileCache.key(source.getBytes(StandardCharsets.UTF_8), "prog.ilang", "-O0 ");
+    }
+
+    @Test
+    void testEntriesRoundTrip(@TempDir Path dir) throws Exception {
+        CompileCache cache = new CompileCache(dir);
+
+        assertNotEquals(key("a"), key("b"));
+        assertNotEquals(key("a"), CompileCache.key("a".getBytes(StandardCharsets.UTF_8), "prog.ilang", "-O2 "));
+        assertNull(cache.load(key("a")));
+
+        cache.store(key("a"), CompileCache.Entry.compiled(Map.of("ilang/Program", new byte[] { 1, 2, 3 })));
+        cache.store(key("b"), CompileCache.Entry.failed("prog.ilang:1:1: error"));
+
+        CompileCache reopened = new CompileCache(dir);
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, reopened.load(key("a")).getClassFiles().get("ilang/Program"));
+        assertNull(reopened.load(key("a")).getDiagnostics());
+        assertEquals("prog.ilang:1:1: error", reopened.load(key("b")).getDiagnostics());
+        assertEquals(3, reopened.getHits());
+        assertEquals(0, reopened.getMisses());
+        assertEquals(1, cache.getMisses());
+
+        try (var files = Files.list(dir)) {
+            assertTrue(files.allMatch(file -> file.toString().endsWith(".entry")));
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntriesAreEvicted(@TempDir Path dir) throws Exception {
+        CompileCache cache = new CompileCache(dir, 3500);
+        CompileCache.Entry entry = CompileCache.Entry.compiled(Map.of("ilang/Program", new byte[1000]));
+
+        for (String source : new String[] { "a", "b", "c" })
+            cache.store(key(source), entry);
+
+        long time = 1_000_000;
+
+        for (String source : new String[] { "a", "b", "c" })
+            Files.setLastModifiedTime(dir.resolve(key(source) + ".entry"), FileTime.fromMillis(time += 1000));
+
+        assertNotNull(cache.load(key("a")));
+        cache.store(key("d"), entry);
+
+        assertEquals(2, cache.getEvictions());
+        assertNull(cache.load(key("b")));
+        assertNull(cache.load(key("c")));
+        assertNotNull(cache.load(key("a")));
+        assertNotNull(cache.load(key("d")));
+    }
+}
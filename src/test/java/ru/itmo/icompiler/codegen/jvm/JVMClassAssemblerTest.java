@@ -0,0 +1,125 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import jasmin.ClassFile;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import ru.itmo.icompiler.ICompiler;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static ru.itmo.icompiler.common.Common.getTestFiles;
+
+class JVMClassAssemblerTest {
+
+    static Stream<Arguments> provideGoodTestCases() throws IOException {
+        return getTestFiles("src/test/resources/sem/good");
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideGoodTestCases")
+    void testSameAsJasmin(URI file) throws Exception {
+        ICompiler compiler = new ICompiler(new File(file));
+
+        compiler.parseProgram();
+        compiler.checkSemantic();
+        assumeTrue(compiler.getCompilerErrors().isEmpty());
+
+        List<JVMBytecodeEntity> entities = compiler.emitCode();
+        JVMClassAssembler assembler = new JVMClassAssembler();
+
+        for (JVMBytecodeEntity entity : entities) {
+            JVMBytecodeClass jvmClass = (JVMBytecodeClass) entity;
+
+            ClassFile jasminClassFile = new ClassFile();
+            jasminClassFile.readJasmin(
+                    new BufferedReader(new StringReader(jvmClass.toString())),
+                    jvmClass.getSourceName(),
+                    false
+            );
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            jasminClassFile.write(expected);
+
+            assertArrayEquals(expected.toByteArray(), assembler.assemble(jvmClass), jvmClass.getClassName());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideGoodTestCases")
+    void testParallelAssemblyIsDeterministic(URI file) throws Exception {
+        ICompiler compiler = new ICompiler(new File(file));
+
+        compiler.parseProgram();
+        compiler.checkSemantic();
+        assumeTrue(compiler.getCompilerErrors().isEmpty());
+
+        List<JVMBytecodeEntity> entities = compiler.emitCode();
+        JVMClassAssembler assembler = new JVMClassAssembler();
+
+        List<byte[]> expected = new ArrayList<>();
+        for (JVMBytecodeEntity entity : entities)
+            expected.add(assembler.assemble((JVMBytecodeClass) entity));
+
+        List<byte[]> actual = IntStream.range(0, 32 * entities.size())
+                .parallel()
+                .mapToObj(i -> {
+                    try {
+                        return assembler.assemble((JVMBytecodeClass) entities.get(i % entities.size()));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .toList();
+
+        for (int i = 0; i < actual.size(); ++i)
+            assertArrayEquals(expected.get(i % entities.size()), actual.get(i));
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideGoodTestCases")
+    void testClassesPassVerifier(URI file) throws Exception {
+        ICompiler compiler = new ICompiler(new File(file));
+
+        compiler.parseProgram();
+        compiler.checkSemantic();
+        assumeTrue(compiler.getCompilerErrors().isEmpty());
+
+        JVMClassAssembler assembler = new JVMClassAssembler();
+        Map<String, byte[]> classes = new HashMap<>();
+
+        for (JVMBytecodeEntity entity : compiler.emitCode()) {
+            JVMBytecodeClass jvmClass = (JVMBytecodeClass) entity;
+            classes.put(jvmClass.getClassName().replace('/', '.'), assembler.assemble(jvmClass));
+        }
+
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+
+                if (bytes == null)
+                    throw new ClassNotFoundException(name);
+
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+
+        // initializing a class links it, and linking runs the verifier
+        for (String className : classes.keySet())
+            assertDoesNotThrow(() -> Class.forName(className, true, loader), className);
+    }
+}
@@ -0,0 +1,81 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JVMJarWriterTest {
+
+    private static final byte[] MANIFEST = "Manifest-Version: 1.0\r\nMain-Class: ilang.Program\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+
+    private static Map<String, byte[]> classFiles() {
+        Map<String, byte[]> classFiles = new LinkedHashMap<>();
+
+        for (int i = 0; i < 20; ++i)
+            classFiles.put("ilang/Record" + i, ("class " + i + " ").repeat(50 + i).getBytes(StandardCharsets.UTF_8));
+
+        return classFiles;
+    }
+
+    @Test
+    void testEveryCompressionWritesAReadableJar(@TempDir Path dir) throws Exception {
+        for (JVMJarWriter.Compression compression : JVMJarWriter.Compression.values()) {
+            File jar = dir.resolve(compression + ".jar").toFile();
+            JVMJarWriter writer = new JVMJarWriter();
+            writer.setCompression(compression);
+
+            assertTrue(writer.write(jar, MANIFEST, classFiles()));
+
+            try (JarFile jarFile = new JarFile(jar)) {
+                assertEquals("ilang.Program", jarFile.getManifest().getMainAttributes().getValue("Main-Class"));
+                assertEquals(21, jarFile.size());
+
+                for (Map.Entry<String, byte[]> classFile : classFiles().entrySet()) {
+                    ZipEntry entry = jarFile.getEntry(classFile.getKey() + ".class");
+
+                    assertEquals(compression == JVMJarWriter.Compression.STORED ? ZipEntry.STORED : ZipEntry.DEFLATED, entry.getMethod());
+                    assertArrayEquals(classFile.getValue(), jarFile.getInputStream(entry).readAllBytes());
+                }
+            }
+        }
+
+        assertArrayEquals(Files.readAllBytes(dir.resolve("DEFLATED.jar")), Files.readAllBytes(dir.resolve("PARALLEL_DEFLATED.jar")));
+    }
+
+    @Test
+    void testUnchangedOutputIsNotRewritten(@TempDir Path dir) throws Exception {
+        File jar = dir.resolve("out.jar").toFile();
+        JVMJarWriter writer = new JVMJarWriter();
+        FileTime old = FileTime.fromMillis(1_000_000_000L);
+
+        writer.write(jar, MANIFEST, classFiles());
+        Files.setLastModifiedTime(jar.toPath(), old);
+
+        assertFalse(writer.write(jar, MANIFEST, classFiles()));
+        assertEquals(old, Files.getLastModifiedTime(jar.toPath()));
+
+        writer.setCompression(JVMJarWriter.Compression.STORED);
+        assertTrue(writer.write(jar, MANIFEST, classFiles()));
+
+        File classes = dir.resolve("classes").toFile();
+
+        assertEquals(20, JVMJarWriter.writeClassDirectory(classes, classFiles()));
+
+        Map<String, byte[]> changed = classFiles();
+        changed.put("ilang/Record3", new byte[] { 1 });
+
+        assertEquals(1, JVMJarWriter.writeClassDirectory(classes, changed));
+        assertArrayEquals(new byte[] { 1 }, Files.readAllBytes(dir.resolve("classes/ilang/Record3.class")));
+    }
+}
@@ -0,0 +1,121 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import org.junit.jupiter.api.Test;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.JVMBytecodeLabel;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.LookupSwitchInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JVMMethodLimitsTest {
+
+    private static JVMBytecodeMethod method(JVMBytecodeMethod.AccessSpec[] accessSpecs, JVMBytecodeEntity... instructions) {
+        return new JVMBytecodeMethod(
+                accessSpecs,
+                "f",
+                List.of("I"),
+                "I",
+                new ArrayList<>(List.of(instructions))
+        );
+    }
+
+    private static JVMBytecodeMethod method(JVMBytecodeEntity... instructions) {
+        return method(new JVMBytecodeMethod.AccessSpec[] { JVMBytecodeMethod.AccessSpec.STATIC }, instructions);
+    }
+
+    private static JVMBytecodeInstruction insn(JVMOpcode opcode, Object... operands) {
+        return new JVMBytecodeInstruction(opcode, operands);
+    }
+
+    @Test
+    void testBranchesAreNotSummed() {
+        // x = 0 ? 0 : 1, the two arms leave one value each
+        JVMLabel l1 = new JVMLabel("L1");
+        JVMLabel l2 = new JVMLabel("L2");
+
+        JVMBytecodeMethod method = JVMMethodLimits.computeLimits(method(
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.IFEQ, l1),
+                insn(JVMOpcode.ICONST_1),
+                insn(JVMOpcode.GOTO, l2),
+                new JVMBytecodeLabel(l1),
+                insn(JVMOpcode.ICONST_0),
+                new JVMBytecodeLabel(l2),
+                insn(JVMOpcode.IRETURN)
+        ));
+
+        assertEquals(1, method.getStackLimit());
+        assertEquals(1, method.getLocalVariablesLimit());
+    }
+
+    @Test
+    void testLookupSwitchTargetsAndLocals() {
+        JVMLabel l1 = new JVMLabel("L1");
+        JVMLabel l2 = new JVMLabel("L2");
+
+        JVMBytecodeMethod method = JVMMethodLimits.computeLimits(method(
+                insn(JVMOpcode.ILOAD_0),
+                new LookupSwitchInstruction(Map.of(1, l1), l2),
+                new JVMBytecodeLabel(l1),
+                insn(JVMOpcode.ICONST_1),
+                insn(JVMOpcode.ICONST_2),
+                insn(JVMOpcode.ICONST_3),
+                insn(JVMOpcode.IADD),
+                insn(JVMOpcode.IADD),
+                insn(JVMOpcode.ISTORE, 5),
+                new JVMBytecodeLabel(l2),
+                insn(JVMOpcode.IINC, 3, 1),
+                insn(JVMOpcode.ICONST_0),
+                insn(JVMOpcode.IRETURN)
+        ));
+
+        assertEquals(3, method.getStackLimit());
+        assertEquals(6, method.getLocalVariablesLimit());
+    }
+
+    @Test
+    void testUnreachableCodeDoesNotCount() {
+        JVMBytecodeMethod method = JVMMethodLimits.computeLimits(method(
+                insn(JVMOpcode.ICONST_0),
+                insn(JVMOpcode.IRETURN),
+                insn(JVMOpcode.ICONST_0),
+                insn(JVMOpcode.ICONST_0),
+                insn(JVMOpcode.ISTORE, 7),
+                insn(JVMOpcode.IRETURN)
+        ));
+
+        assertEquals(1, method.getStackLimit());
+        assertEquals(1, method.getLocalVariablesLimit());
+    }
+
+    @Test
+    void testReceiverTakesALocal() {
+        JVMBytecodeMethod method = JVMMethodLimits.computeLimits(method(
+                new JVMBytecodeMethod.AccessSpec[] { JVMBytecodeMethod.AccessSpec.PUBLIC },
+                insn(JVMOpcode.ICONST_0),
+                insn(JVMOpcode.IRETURN)
+        ));
+
+        assertEquals(2, method.getLocalVariablesLimit());
+    }
+
+    @Test
+    void testDifferentHeightsAtTargetAreRejected() {
+        JVMLabel l1 = new JVMLabel("L1");
+
+        JVMBytecodeMethod method = method(
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.ICONST_1),
+                insn(JVMOpcode.SWAP),
+                insn(JVMOpcode.IFEQ, l1),
+                insn(JVMOpcode.ICONST_1),
+                new JVMBytecodeLabel(l1),
+                insn(JVMOpcode.IRETURN)
+        );
+
+        assertThrows(IllegalStateException.class, () -> JVMMethodLimits.computeLimits(method));
+    }
+}
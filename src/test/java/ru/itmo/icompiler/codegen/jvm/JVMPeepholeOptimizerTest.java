@@ -0,0 +1,130 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import org.junit.jupiter.api.Test;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction.JVMBytecodeLabel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JVMPeepholeOptimizerTest {
+
+    private static JVMBytecodeMethod method(JVMBytecodeEntity... instructions) {
+        return new JVMBytecodeMethod(
+                new JVMBytecodeMethod.AccessSpec[] { JVMBytecodeMethod.AccessSpec.STATIC },
+                "f",
+                List.of("I"),
+                "I",
+                2,
+                2,
+                new ArrayList<>(List.of(instructions))
+        );
+    }
+
+    private static JVMBytecodeInstruction insn(JVMOpcode opcode, Object... operands) {
+        return new JVMBytecodeInstruction(opcode, operands);
+    }
+
+    private static List<String> render(JVMBytecodeMethod method) {
+        return method.getInstructions().stream().map(entity -> entity.toString().strip()).toList();
+    }
+
+    @Test
+    void testIncrementBecomesIinc() {
+        JVMBytecodeMethod method = method(
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.ICONST_1),
+                insn(JVMOpcode.IADD),
+                insn(JVMOpcode.ISTORE, 0),
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.IRETURN)
+        );
+
+        new JVMPeepholeOptimizer().optimize(method);
+
+        assertEquals(List.of("iinc 0 1", "iload_0", "ireturn"), render(method));
+    }
+
+    @Test
+    void testMaterialisedBooleanTestedRightAway() {
+        // if (x = 0 ? false : true) then return 5 else return 0
+        JVMLabel l1 = new JVMLabel("L1");
+        JVMLabel l2 = new JVMLabel("L2");
+        JVMLabel l3 = new JVMLabel("L3");
+
+        JVMBytecodeMethod method = method(
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.IFEQ, l1),
+                insn(JVMOpcode.ICONST_1),
+                insn(JVMOpcode.GOTO, l2),
+                new JVMBytecodeLabel(l1),
+                insn(JVMOpcode.ICONST_0),
+                new JVMBytecodeLabel(l2),
+                insn(JVMOpcode.IFEQ, l3),
+                insn(JVMOpcode.ICONST_5),
+                insn(JVMOpcode.IRETURN),
+                new JVMBytecodeLabel(l3),
+                insn(JVMOpcode.ICONST_0),
+                insn(JVMOpcode.IRETURN)
+        );
+
+        new JVMPeepholeOptimizer().optimize(method);
+
+        assertEquals(List.of("iload_0", "ifeq L3", "iconst_5", "ireturn", "L3:", "iconst_0", "ireturn"), render(method));
+    }
+
+    @Test
+    void testJumpIsRevisitedWhenItsTargetChanges() {
+        // the test after L1 only becomes a goto once the jump to L1 has been looked at
+        JVMLabel l1 = new JVMLabel("L1");
+        JVMLabel l2 = new JVMLabel("L2");
+
+        JVMBytecodeMethod method = method(
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.IFEQ, l1),
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.IMUL),
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.IADD),
+                insn(JVMOpcode.IRETURN),
+                new JVMBytecodeLabel(l1),
+                insn(JVMOpcode.ICONST_0),
+                insn(JVMOpcode.IFEQ, l2),
+                insn(JVMOpcode.ICONST_2),
+                insn(JVMOpcode.IRETURN),
+                new JVMBytecodeLabel(l2),
+                insn(JVMOpcode.ICONST_3),
+                insn(JVMOpcode.IRETURN)
+        );
+
+        new JVMPeepholeOptimizer().optimize(method);
+
+        assertEquals(List.of("iload_0", "ifeq L2", "iload_0", "iload_0", "imul", "iload_0", "iadd", "ireturn", "L2:", "iconst_3", "ireturn"), render(method));
+    }
+
+    @Test
+    void testOnlyEnabledRulesFire() {
+        JVMBytecodeMethod method = method(
+                insn(JVMOpcode.ICONST_0),
+                insn(JVMOpcode.ISTORE, 1),
+                insn(JVMOpcode.ILOAD_0),
+                insn(JVMOpcode.ISTORE, 1),
+                insn(JVMOpcode.ILOAD_1),
+                insn(JVMOpcode.ICONST_1),
+                insn(JVMOpcode.IADD),
+                insn(JVMOpcode.ISTORE_1),
+                insn(JVMOpcode.ILOAD_1),
+                insn(JVMOpcode.IRETURN)
+        );
+
+        JVMPeepholeOptimizer optimizer = new JVMPeepholeOptimizer(List.of("iinc"));
+        optimizer.optimize(method);
+
+        assertEquals(List.of("iconst_0", "istore 1", "iload_0", "istore 1", "iinc 1 1", "iload_1", "ireturn"), render(method));
+
+        optimizer.getHitCounts().forEach((rule, hits) -> assertEquals(rule.equals("iinc") ? 1L : 0L, hits, rule));
+        assertThrows(IllegalArgumentException.class, () -> new JVMPeepholeOptimizer(List.of("no-such-rule")));
+    }
+}
@@ -0,0 +1,40 @@
+package ru.itmo.icompiler.codegen.jvm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JVMStackMapFramesTest {
+
+    private static JVMBytecodeInstruction insn(JVMOpcode opcode, Object... operands) {
+        return new JVMBytecodeInstruction(opcode, operands);
+    }
+
+    @Test
+    void testAaloadFromANonArrayIsRejected() {
+        // an int stored where an array of records was expected
+        JVMBytecodeMethod method = new JVMBytecodeMethod(
+                new JVMBytecodeMethod.AccessSpec[] { JVMBytecodeMethod.AccessSpec.STATIC },
+                "f",
+                List.of(),
+                "V",
+                new ArrayList<>(List.of(
+                        insn(JVMOpcode.ICONST_2),
+                        insn(JVMOpcode.ASTORE_0),
+                        insn(JVMOpcode.ALOAD_0),
+                        insn(JVMOpcode.ICONST_0),
+                        insn(JVMOpcode.AALOAD),
+                        insn(JVMOpcode.POP),
+                        insn(JVMOpcode.RETURN)
+                ))
+        );
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> JVMStackMapFrames.insertFrames(method, "C"));
+
+        assertTrue(e.getMessage().contains("Integer"), e.getMessage());
+        assertTrue(e.getMessage().endsWith(" in f"), e.getMessage());
+    }
+}
@@ -0,0 +1,153 @@
+package ru.itmo.icompiler.codegen.jvm.visitor;
+
+import org.junit.jupiter.api.Test;
+import ru.itmo.icompiler.ICompiler;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeClass;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeEntity;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeMethod;
+import ru.itmo.icompiler.codegen.jvm.JVMClassAssembler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlatArrayASTVisitorTest {
+
+    private static final String PROGRAM = String.join("\n",
+            "var g : array [3] array [4] integer",
+            "",
+            "routine sum(row: array [4] integer) : integer is",
+            "  var s is 0",
+            "  for x in row",
+            "  loop",
+            "    s := s + x",
+            "  end",
+            "  return s",
+            "end",
+            "",
+            "routine main() is",
+            "  for i in 1..g.length",
+            "  loop",
+            "    for j in 1..g[i].length",
+            "    loop",
+            "      g[i][j] := i * 10 + j",
+            "    end",
+            "  end",
+            "  var m : array [2] array [3] array [2] real",
+            "  m[2][3][1] := 1.5",
+            "  m[2][3][2] := 0.25",
+            "  var t : real is 0.0",
+            "  for x in m[2][3]",
+            "  loop",
+            "    t := t + x",
+            "  end",
+            "  var e : array [2] array [4] integer",
+            "  e[1][2] := 5",
+            "  print g[2][3], g[3][4], t, m[1].length, sum(e[1])",
+            "end",
+            "",
+            "routine cell(i: integer, j: integer) : integer is",
+            "  var a : array [2] array [3] integer",
+            "  return a[i][j]",
+            "end",
+            ""
+    );
+
+    private static List<JVMBytecodeEntity> emit(int optimizationLevel) {
+        ICompiler compiler = new ICompiler(new ByteArrayInputStream(PROGRAM.getBytes(StandardCharsets.UTF_8)));
+
+        compiler.setOptimizationLevel(optimizationLevel);
+        compiler.parseProgram();
+        compiler.checkSemantic();
+        assertEquals(List.of(), compiler.getCompilerErrors());
+
+        return compiler.emitCode();
+    }
+
+    private static List<String> arrayAllocations(List<JVMBytecodeEntity> entities) {
+        List<String> allocations = new ArrayList<>();
+
+        JVMBytecodeClass program = (JVMBytecodeClass) entities.get(0);
+
+        for (JVMBytecodeMethod method : program.getMethods()) {
+            for (JVMBytecodeEntity instruction : method.getInstructions()) {
+                if (instruction instanceof JVMBytecodeInstruction jvmInstruction && jvmInstruction.getOpcode() != null
+                        && jvmInstruction.getOpcode().getMnemonic().endsWith("newarray"))
+                    allocations.add(jvmInstruction.toString().strip());
+            }
+        }
+
+        return allocations;
+    }
+
+    private static Class<?> load(List<JVMBytecodeEntity> entities) throws Exception {
+        JVMClassAssembler assembler = new JVMClassAssembler();
+        Map<String, byte[]> classes = new HashMap<>();
+
+        for (JVMBytecodeEntity entity : entities) {
+            JVMBytecodeClass jvmClass = (JVMBytecodeClass) entity;
+            classes.put(jvmClass.getClassName().replace('/', '.'), assembler.assemble(jvmClass));
+        }
+
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+
+                if (bytes == null)
+                    throw new ClassNotFoundException(name);
+
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+
+        return Class.forName("ilang.Program", true, loader);
+    }
+
+    private static String run(Class<?> program) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Class<?> output = Class.forName("ilang.Output", true, program.getClassLoader());
+
+        output.getField("channel").set(null, Channels.newChannel(out));
+        program.getMethod("_main").invoke(null);
+        output.getMethod("flush").invoke(null);
+
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testFlattenedArraysPrintTheSame() throws Exception {
+        List<JVMBytecodeEntity> nested = emit(1);
+        List<JVMBytecodeEntity> flat = emit(2);
+
+        // e passes a row to sum, so it is the only one left nested
+        assertEquals(4, arrayAllocations(nested).stream().filter(insn -> insn.startsWith("multianewarray")).count());
+        assertEquals(List.of("newarray float", "multianewarray [[I 2", "newarray int", "newarray int"), arrayAllocations(flat));
+
+        assertEquals("23 34 1.75 3 5\n", run(load(nested)));
+        assertEquals(run(load(nested)), run(load(flat)));
+    }
+
+    @Test
+    void testRowIndexIsCheckedAgainstItsDimension() throws Exception {
+        Class<?> program = load(emit(2));
+
+        assertEquals(0, program.getMethod("_cell", int.class, int.class).invoke(null, 2, 3));
+
+        for (int[] indices : new int[][] { { 1, 4 }, { 3, 1 }, { 0, 1 }, { 1, 0 } }) {
+            InvocationTargetException e = assertThrows(InvocationTargetException.class,
+                    () -> program.getMethod("_cell", int.class, int.class).invoke(null, indices[0], indices[1]));
+
+            assertInstanceOf(IndexOutOfBoundsException.class, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ru.itmo.icompiler.codegen.jvm.visitor;
+
+import org.junit.jupiter.api.Test;
+import ru.itmo.icompiler.ICompiler;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeClass;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeEntity;
+import ru.itmo.icompiler.codegen.jvm.JVMClassAssembler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JVMCodeEmitterExpressionVisitorTest {
+
+    private static ClassLoader compile(String source, int optimizationLevel) throws Exception {
+        ICompiler compiler = new ICompiler(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)));
+
+        compiler.setOptimizationLevel(optimizationLevel);
+        compiler.parseProgram();
+        compiler.checkSemantic();
+        assertEquals(List.of(), compiler.getCompilerErrors());
+
+        JVMClassAssembler assembler = new JVMClassAssembler();
+        Map<String, byte[]> classes = new HashMap<>();
+
+        for (JVMBytecodeEntity entity : compiler.emitCode()) {
+            JVMBytecodeClass jvmClass = (JVMBytecodeClass) entity;
+            classes.put(jvmClass.getClassName().replace('/', '.'), assembler.assemble(jvmClass));
+        }
+
+        return new ClassLoader(null) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+
+                if (bytes == null)
+                    throw new ClassNotFoundException(name);
+
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+    }
+
+    private static String compileAndRun(String source, int optimizationLevel) throws Exception {
+        ClassLoader loader = compile(source, optimizationLevel);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Class<?> program = Class.forName("ilang.Program", true, loader);
+        Class<?> output = Class.forName("ilang.Output", true, loader);
+
+        output.getField("channel").set(null, Channels.newChannel(out));
+        program.getMethod("_main").invoke(null);
+        output.getMethod("flush").invoke(null);
+
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testXor() throws Exception {
+        String source = String.join("\n",
+                "routine main() is",
+                "  var t is true",
+                "  var f is false",
+                "  print true xor false",
+                "  print t xor f, t xor t, f xor f, f xor t",
+                "end",
+                ""
+        );
+
+        assertEquals("true\ntrue false false true\n", compileAndRun(source, 0));
+        assertEquals("true\ntrue false false true\n", compileAndRun(source, 1));
+    }
+
+    @Test
+    void testIntegerAndRealArithmetic() throws Exception {
+        String source = String.join("\n",
+                "routine main() is",
+                "  var i is 7",
+                "  var r is 2.5",
+                "  print i + 3, i - 3, i * 3, i / 3, i % 3",
+                "  print r + 0.5, r - 0.5, r * 2.0, r / 2.0",
+                "end",
+                ""
+        );
+
+        assertEquals("10 4 21 2 1\n3.0 2.0 5.0 1.25\n", compileAndRun(source, 0));
+        assertEquals(compileAndRun(source, 0), compileAndRun(source, 1));
+    }
+
+    @Test
+    void testArraysOfRecords() throws Exception {
+        String source = String.join("\n",
+                "type Point is record",
+                "  var x : integer",
+                "  var y : integer",
+                "end",
+                "type Shape is record",
+                "  var ps : array[3] Point",
+                "end",
+                "var g : array[2] Point",
+                "routine main() is",
+                "  var ps : array[2] Point",
+                "  var sh : Shape",
+                "  ps[1].x := 11",
+                "  sh.ps[3].y := 7",
+                "  g[2].y := 5",
+                "  print ps[1].x, ps[2].x, sh.ps[3].y, g[2].y",
+                "end",
+                ""
+        );
+
+        assertEquals("11 0 7 5\n", compileAndRun(source, 0));
+        assertEquals("11 0 7 5\n", compileAndRun(source, 1));
+    }
+
+    @Test
+    void testOutputComesBeforeAnUncaughtException() throws Exception {
+        String source = String.join("\n",
+                "routine main() is",
+                "  var a: array [2] integer",
+                "  var i is 5",
+                "  print 7",
+                "  print a[i]",
+                "end",
+                ""
+        );
+
+        ClassLoader loader = compile(source, 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Class<?> program = Class.forName("ilang.Program", true, loader);
+        Class<?> output = Class.forName("ilang.Output", true, loader);
+
+        output.getField("channel").set(null, Channels.newChannel(out));
+
+        // the thread group of main hands the exception on to the default handler,
+        // which stands in for the report on stderr
+        AtomicReference<String> printedBeforeReport = new AtomicReference<>();
+        AtomicReference<Throwable> reported = new AtomicReference<>();
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
+            printedBeforeReport.set(out.toString(StandardCharsets.UTF_8));
+            reported.set(e);
+        });
+
+        try {
+            Thread thread = new Thread(() -> {
+                try {
+                    program.getMethod("main", String[].class).invoke(null, (Object) new String[] {"main"});
+                } catch (InvocationTargetException e) {
+                    throw (RuntimeException) e.getCause();
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            thread.start();
+            thread.join();
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        }
+
+        assertInstanceOf(ArrayIndexOutOfBoundsException.class, reported.get());
+        assertEquals("7\n", printedBeforeReport.get());
+    }
+}
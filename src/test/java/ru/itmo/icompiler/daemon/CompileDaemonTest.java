@@ -0,0 +1,88 @@
+package ru.itmo.icompiler.daemon;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileDaemonTest {
+
+    private static List<String> request(Path socket, Path workingDirectory, String... args) throws Exception {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            StringBuilder request = new StringBuilder(workingDirectory + "\n");
+
+            for (String arg : args)
+                request.append(arg).append('\n');
+
+            channel.write(StandardCharsets.UTF_8.encode(request.append('\n').toString()));
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            List<String> reply = new ArrayList<>();
+
+            for (String line = in.readLine(); line != null; line = in.readLine())
+                reply.add(line);
+
+            return reply;
+        }
+    }
+
+    @Test
+    void testCompilesRequestsUntilShutdown(@TempDir Path dir) throws Exception {
+        Path socket = dir.resolve("icompiler.sock");
+        Files.writeString(dir.resolve("good.ilang"), "routine main() is\n  print 1\nend\n");
+        Files.writeString(dir.resolve("bad.ilang"), "routine main() is\n  print x\nend\n");
+
+        CompileDaemon daemon = new CompileDaemon(socket, 2);
+        CompletableFuture<Void> served = CompletableFuture.runAsync(() -> {
+            try {
+                daemon.serve();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        while (!Files.exists(socket))
+            Thread.sleep(10);
+
+        assertEquals(List.of("O " + dir.resolve("good.jar"), "X 0"), request(socket, dir, "-O2", "good.ilang"));
+        assertTrue(Files.size(dir.resolve("good.jar")) > 0);
+
+        List<String> reply = request(socket, dir, "bad.ilang", "missing.ilang");
+        assertEquals("E bad.ilang:2:9: Semantic error: undefined variable x", reply.get(0));
+        assertTrue(reply.contains("E No such file 'missing.ilang'."));
+        assertEquals("X -3", reply.get(reply.size() - 1));
+
+        reply = request(socket, dir, "--stored", "--cache=cache", "--cache-stats", "good.ilang");
+        assertEquals(List.of("O " + dir.resolve("good.jar"), "X 0"), List.of(reply.get(0), reply.get(reply.size() - 1)));
+        assertTrue(Files.list(dir.resolve("cache")).findAny().isPresent());
+
+        assertEquals(List.of("O " + dir.resolve("classes"), "X 0"), request(socket, dir, "--class-dir=classes", "good.ilang"));
+        assertTrue(Files.isRegularFile(dir.resolve("classes").resolve("ilang").resolve("Program.class")));
+
+        assertEquals(List.of("E Unknown option --bogus.", "X -5"), request(socket, dir, "--bogus", "good.ilang"));
+        assertEquals(List.of("E --run cannot be used in daemon mode.", "X -5"), request(socket, dir, "--run", "good.ilang"));
+
+        // a file the compiler cannot even read does not stop the ones after it
+        Files.createDirectory(dir.resolve("dir.ilang"));
+        reply = request(socket, dir, "dir.ilang", "good.ilang");
+        assertTrue(reply.get(0).startsWith("E Could not compile 'dir.ilang': java.io."), reply.get(0));
+        assertEquals(List.of("O " + dir.resolve("good.jar"), "X 1"), reply.subList(reply.size() - 2, reply.size()));
+
+        assertEquals(List.of("X 0"), request(socket, dir, CompileDaemon.SHUTDOWN_REQUEST));
+        served.get(1, TimeUnit.MINUTES);
+        assertFalse(Files.exists(socket));
+    }
+}
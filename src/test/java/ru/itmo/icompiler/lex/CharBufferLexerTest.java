@@ -0,0 +1,74 @@
+package ru.itmo.icompiler.lex;
+
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CharBufferLexerTest {
+
+    static Stream<Arguments> provideSources() throws IOException {
+        return Files.walk(Paths.get("src/test/resources"))
+                .filter(Files::isRegularFile)
+                .sorted()
+                .map(path -> Arguments.of(Named.of(path.toString(), path)));
+    }
+
+    private static List<Token> lexAll(Lexer lexer, Predicate<Token> p) {
+        List<Token> tokens = new ArrayList<>();
+        Token tok;
+
+        do {
+            tok = lexer.nextToken(p);
+            tokens.add(tok);
+        } while (tok.type != Token.TokenType.END_OF_TEXT);
+
+        tokens.add(lexer.lookupToken());
+
+        return tokens;
+    }
+
+    private static void assertSameTokens(String text) {
+        assertEquals(
+                lexAll(new DFALexer(text), LexUtils::truePredicate),
+                lexAll(new CharBufferLexer(text), LexUtils::truePredicate)
+        );
+        assertEquals(
+                lexAll(new DFALexer(text), Predicate.not(LexUtils::isWhitespace)),
+                lexAll(new CharBufferLexer(text), Predicate.not(LexUtils::isWhitespace))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideSources")
+    void testSameTokensAsDFALexer(Path path) throws IOException {
+        String text = Files.readString(path);
+
+        assertSameTokens(text);
+        assertSameTokens(text + "\n");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", "\n", "x", "x:=1..10", "1.", "1.5.6", ".5", "a.b", "/", ".", "..", "...",
+            "/*/ x", "/* a\n * b */ c", "/* open", "// line\nx", "a/=b", "a=>b", "<=>=",
+            "\"str\"", "\"open", "\"esc\\\"", "\"esc\\", "\t x \t\r\n", "? ! @", "variable var",
+            "_x1 x_1 1x", "routine reverse record return continue integer boolean",
+            "переменная := 1"
+    })
+    void testEdgeCasesSameAsDFALexer(String text) {
+        assertSameTokens(text);
+    }
+}
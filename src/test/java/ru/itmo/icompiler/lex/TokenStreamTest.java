@@ -0,0 +1,96 @@
+package ru.itmo.icompiler.lex;
+
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.itmo.icompiler.syntax.SimpleParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenStreamTest {
+
+    static Stream<Arguments> provideSources() throws IOException {
+        return Files.walk(Paths.get("src/test/resources"))
+                .filter(Files::isRegularFile)
+                .sorted()
+                .map(path -> Arguments.of(Named.of(path.toString(), path)));
+    }
+
+    private static List<Object> lexAll(Lexer lexer, Predicate<Token> p) {
+        List<Object> tokens = new ArrayList<>();
+        Token tok;
+
+        do {
+            tok = lexer.nextToken(p);
+            tokens.add(tok);
+            tokens.add(lexer.isEndReached());
+        } while (tok.type != Token.TokenType.END_OF_TEXT);
+
+        tokens.add(lexer.lookupToken());
+
+        return tokens;
+    }
+
+    private static List<String> parseErrors(SimpleParser parser) {
+        parser.parse();
+
+        return parser.getParseErrors().stream()
+                .map(e -> e.getErrorLine() + ":" + e.getErrorOffset() + ": " + e.getMessage())
+                .toList();
+    }
+
+    private static void assertSameAsCharBufferLexer(String text) {
+        char[] chars = text.toCharArray();
+        Predicate<Token> notWhitespace = Predicate.not(LexUtils::isWhitespace);
+
+        assertEquals(
+                lexAll(new CharBufferLexer(text), LexUtils::truePredicate),
+                lexAll(new TokenStreamLexer(TokenStream.lex(chars, true)), LexUtils::truePredicate)
+        );
+        assertEquals(
+                lexAll(new CharBufferLexer(text), notWhitespace),
+                lexAll(new TokenStreamLexer(TokenStream.lex(chars, true)), notWhitespace)
+        );
+        assertEquals(
+                lexAll(new CharBufferLexer(text), notWhitespace),
+                lexAll(new TokenStreamLexer(TokenStream.lex(chars, false)), notWhitespace)
+        );
+        assertEquals(
+                parseErrors(new SimpleParser(new CharBufferLexer(text))),
+                parseErrors(new SimpleParser(TokenStream.lex(chars, false)))
+        );
+        assertEquals(
+                parseErrors(new SimpleParser(new CharBufferLexer(text))),
+                parseErrors(new SimpleParser(TokenStream.lex(chars, true)))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideSources")
+    void testSameAsCharBufferLexer(Path path) throws IOException {
+        String text = Files.readString(path);
+
+        assertSameAsCharBufferLexer(text);
+        assertSameAsCharBufferLexer(text + "\n");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", "\n", " ", "x", "x ", "x\n ", "1.", "a.b", "/", "/*/ x", "/* open", "// line",
+            "\"str\"", "\"open", "\"esc\\\"", "\"esc\\", "\t x \t\r\n", "? ! @"
+    })
+    void testEdgeCasesSameAsCharBufferLexer(String text) {
+        assertSameAsCharBufferLexer(text);
+    }
+}
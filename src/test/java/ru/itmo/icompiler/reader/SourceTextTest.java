@@ -0,0 +1,72 @@
+package ru.itmo.icompiler.reader;
+
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceTextTest {
+
+    static Stream<Arguments> provideSources() throws IOException {
+        return Files.walk(Paths.get("src/test/resources"))
+                .filter(Files::isRegularFile)
+                .sorted()
+                .map(path -> Arguments.of(Named.of(path.toString(), path)));
+    }
+
+    // what ICompiler used to build from BufferedReader.lines()
+    private static String[] readLines(String text) {
+        return new BufferedReader(new StringReader(text))
+                .lines()
+                .map(line -> line.replace("\t", "    "))
+                .toArray(String[]::new);
+    }
+
+    private static void assertSameAsLines(String text, SourceText source) {
+        String[] lines = readLines(text);
+
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines)
+            sb.append(line).append('\n');
+
+        assertEquals(sb.toString(), new String(source.getChars(), 0, source.length()));
+        assertEquals(lines.length, source.getLineCount());
+        assertEquals(lines.length, SourceText.countLines(text.getBytes(StandardCharsets.UTF_8)));
+        assertArrayEquals(lines, IntStream.rangeClosed(1, lines.length).mapToObj(source::getLine).toArray());
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideSources")
+    void testMappedSameAsLines(Path path) throws IOException {
+        assertSameAsLines(
+                Files.readString(path),
+                SourceText.map(path.toFile(), StandardCharsets.UTF_8, 4)
+        );
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", "\n", "\n\n", "x", "x\n", "a\r\nb", "a\rb\r", "a\r\n\r\n", "\tx\t\n\t", "переменная\n"
+    })
+    void testEdgeCasesSameAsLines(String text) throws IOException {
+        assertSameAsLines(text, SourceText.of(text, 4));
+        assertSameAsLines(
+                text,
+                SourceText.read(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, 4)
+        );
+    }
+}
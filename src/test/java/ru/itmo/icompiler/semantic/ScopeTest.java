@@ -0,0 +1,107 @@
+package ru.itmo.icompiler.semantic;
+
+import org.junit.jupiter.api.Test;
+import ru.itmo.icompiler.lex.Symbols;
+import ru.itmo.icompiler.lex.TokenStream;
+import ru.itmo.icompiler.semantic.SemanticContext.Scope;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScopeTest {
+
+    @Test
+    void testInnermostBindingWins() {
+        Scope global = new Scope();
+        global.addEntity("x", VarType.INTEGER_PRIMITIVE_TYPE);
+        global.addTypealias("t", VarType.REAL_PRIMITIVE_TYPE);
+
+        Scope outer = new Scope(global, Map.of("x", VarType.REAL_PRIMITIVE_TYPE));
+        Scope inner = new Scope(outer, Map.of(), Map.of("y", VarType.BOOLEAN_PRIMITIVE_TYPE));
+
+        assertEquals(VarType.REAL_PRIMITIVE_TYPE, inner.deepLookupEntity("x"));
+        assertNull(inner.lookup("x"));
+        assertEquals(VarType.REAL_PRIMITIVE_TYPE, inner.deepLookupTypealias("t"));
+        assertTrue(inner.isEntityImmutable("y"));
+        assertFalse(inner.isEntityImmutable("x"));
+
+        // a typealias hides an entity of the same name further out
+        inner.addTypealias("x", VarType.BOOLEAN_PRIMITIVE_TYPE);
+        assertNull(inner.deepLookupEntity("x"));
+        assertEquals(VarType.BOOLEAN_PRIMITIVE_TYPE, inner.deepLookup("x"));
+
+        assertEquals(VarType.REAL_PRIMITIVE_TYPE, outer.deepLookupEntity("x"));
+        assertEquals(VarType.INTEGER_PRIMITIVE_TYPE, global.deepLookupEntity("x"));
+    }
+
+    @Test
+    void testBlockUsedAgainAfterASibling() {
+        Scope global = new Scope();
+        Scope routine = new Scope(global, Map.of("a", VarType.INTEGER_PRIMITIVE_TYPE));
+
+        Scope first = new Scope(routine);
+        first.addEntity("b", VarType.INTEGER_PRIMITIVE_TYPE);
+
+        Scope second = new Scope(routine);
+        second.addEntity("b", VarType.REAL_PRIMITIVE_TYPE);
+        assertEquals(VarType.REAL_PRIMITIVE_TYPE, second.deepLookupEntity("b"));
+
+        routine.addEntity("c", VarType.BOOLEAN_PRIMITIVE_TYPE);
+
+        assertEquals(VarType.INTEGER_PRIMITIVE_TYPE, first.deepLookupEntity("b"));
+        assertEquals(VarType.BOOLEAN_PRIMITIVE_TYPE, first.deepLookupEntity("c"));
+        assertEquals(VarType.INTEGER_PRIMITIVE_TYPE, first.deepLookupEntity("a"));
+        assertEquals(VarType.REAL_PRIMITIVE_TYPE, second.deepLookupEntity("b"));
+        assertNull(routine.deepLookupEntity("b"));
+
+        second.clear();
+        assertNull(second.deepLookupEntity("b"));
+        assertEquals(VarType.BOOLEAN_PRIMITIVE_TYPE, second.deepLookupEntity("c"));
+    }
+
+    @Test
+    void testBlocksAreIndexedByTheSymbolsOfTheLexer() {
+        Symbols symbols = new Symbols();
+        TokenStream tokens = TokenStream.lex("x y".toCharArray(), 0, 3, false, symbols);
+        int x = tokens.getSymbol(0);
+        int y = tokens.getSymbol(1);
+
+        Scope global = new Scope(symbols);
+        Scope block = new Scope(global, Map.of("x", VarType.INTEGER_PRIMITIVE_TYPE));
+        block.addEntity(y, "y", VarType.REAL_PRIMITIVE_TYPE);
+
+        assertEquals(VarType.INTEGER_PRIMITIVE_TYPE, block.deepLookupEntity(x, "x"));
+        assertEquals(VarType.REAL_PRIMITIVE_TYPE, block.lookupEntity(y, "y"));
+        assertEquals(VarType.REAL_PRIMITIVE_TYPE, block.deepLookupEntity("y"));
+
+        // a name bound by the checker first keeps its id when a lexer meets it later
+        block.addEntity("z", VarType.BOOLEAN_PRIMITIVE_TYPE);
+        TokenStream more = TokenStream.lex("z x".toCharArray(), 0, 3, false, symbols);
+
+        assertEquals(symbols.lookup("z"), more.getSymbol(0));
+        assertEquals(x, more.getSymbol(1));
+        assertEquals("z", more.getText(0));
+        assertEquals(VarType.BOOLEAN_PRIMITIVE_TYPE, block.deepLookupEntity(more.getSymbol(0), "z"));
+
+        // another compilation has a table of its own
+        assertEquals(-1, new Symbols().lookup("x"));
+    }
+
+    @Test
+    void testNamesInternedConcurrentlyGetOneIdEach() {
+        Symbols symbols = new Symbols();
+
+        List<Integer> ids = IntStream.range(0, 20_000).parallel()
+                .mapToObj(i -> symbols.intern("n" + i % 1000))
+                .toList();
+
+        for (int i = 0; i < ids.size(); ++i)
+            assertEquals(symbols.lookup("n" + i % 1000), ids.get(i));
+
+        assertEquals(1000, ids.stream().distinct().count());
+        assertTrue(ids.stream().allMatch(id -> id >= 0 && id < 1000));
+    }
+}
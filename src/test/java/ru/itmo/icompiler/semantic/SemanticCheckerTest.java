@@ -0,0 +1,143 @@
+package ru.itmo.icompiler.semantic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import ru.itmo.icompiler.ICompiler;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeEntity;
+import ru.itmo.icompiler.reader.SourceText;
+import ru.itmo.icompiler.syntax.ast.ASTNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.itmo.icompiler.common.Common.getTestFiles;
+
+class SemanticCheckerTest {
+
+    static Stream<Arguments> provideSources() throws IOException {
+        return Stream.of("good", "bad", "good_other", "bad_other")
+                .flatMap(dir -> {
+                    try {
+                        return getTestFiles("src/test/resources/sem/" + dir);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+    }
+
+    // the errors, or the emitted code when there are none
+    private static String describe(ICompiler compiler) {
+        if (!compiler.getCompilerErrors().isEmpty()) {
+            return compiler.getCompilerErrors().stream()
+                    .map(e -> e.getClass().getSimpleName() + " " + e.getErrorLine() + ":" + e.getErrorOffset() + ": " + e.getMessage())
+                    .collect(Collectors.joining("\n"));
+        }
+
+        return compiler.emitCode().stream()
+                .map(JVMBytecodeEntity::toString)
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static String compileFresh(String text) {
+        ICompiler compiler = new ICompiler(SourceText.of(text, 4));
+        compiler.parseProgram();
+        compiler.checkSemantic();
+
+        return describe(compiler);
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideSources")
+    void testRecheckSameAsFullCheck(URI file) throws IOException {
+        SourceText source = SourceText.of(Files.readString(Path.of(file)), 4);
+        String text = new String(source.getChars(), 0, source.length());
+
+        ICompiler compiler = new ICompiler(source);
+        compiler.parseProgram();
+        compiler.checkSemantic();
+
+        assertEquals(compileFresh(text), describe(compiler));
+
+        // a trailing space on every line in turn: one declaration is reparsed, the others are reused
+        for (int lineEnd = text.indexOf('\n'); lineEnd >= 0; lineEnd = text.indexOf('\n', lineEnd + 2)) {
+            text = text.substring(0, lineEnd) + " " + text.substring(lineEnd);
+
+            compiler.applyEdit(lineEnd, 0, " ");
+            compiler.checkSemantic();
+
+            assertEquals(compileFresh(text), describe(compiler), "after a space at " + lineEnd);
+        }
+    }
+
+    @Test
+    void testRoutinesRecheckedOnlyWhenTheirGlobalsChange() {
+        String text = "var n: integer is 1\n" +
+                "routine h(x: integer): integer is\n" +
+                "    return x\n" +
+                "end\n" +
+                "routine f(): integer is\n" +
+                "    return h(n)\n" +
+                "end\n" +
+                "routine g() is\n" +
+                "    print f()\n" +
+                "end\n";
+
+        ICompiler compiler = new ICompiler(SourceText.of(text, 4));
+        ASTNode program = compiler.parseProgram();
+        compiler.checkSemantic();
+
+        assertEquals(List.of(), compiler.getCompilerErrors());
+
+        // f reads n; h and g don't, and the type of f stays the same
+        List<ASTNode> before = new ArrayList<>(program.getChildren());
+        text = edit(compiler, text, "var n: integer is 1", "var n: real is 1.5");
+
+        assertSame(before.get(1), program.getChild(1));
+        assertNotSame(before.get(2), program.getChild(2));
+        assertSame(before.get(3), program.getChild(3));
+        assertEquals(compileFresh(text), describe(compiler));
+
+        // g itself is edited
+        before = new ArrayList<>(program.getChildren());
+        text = edit(compiler, text, "print f()", "print f() + 1");
+
+        assertSame(before.get(1), program.getChild(1));
+        assertSame(before.get(2), program.getChild(2));
+        assertNotSame(before.get(3), program.getChild(3));
+        assertEquals(compileFresh(text), describe(compiler));
+
+        // h takes another argument: f is checked again and reports the call
+        before = new ArrayList<>(program.getChildren());
+        text = edit(compiler, text, "h(x: integer)", "h(x: integer, y: integer)");
+
+        assertNotSame(before.get(2), program.getChild(2));
+        assertSame(before.get(3), program.getChild(3));
+        assertFalse(compiler.getCompilerErrors().isEmpty());
+        assertEquals(compileFresh(text), describe(compiler));
+
+        // and its errors are replayed while nothing changes
+        before = new ArrayList<>(program.getChildren());
+        compiler.checkSemantic();
+
+        assertSame(before.get(2), program.getChild(2));
+        assertEquals(compileFresh(text), describe(compiler));
+    }
+
+    private static String edit(ICompiler compiler, String text, String from, String to) {
+        int offset = text.indexOf(from);
+
+        compiler.applyEdit(offset, from.length(), to);
+        compiler.checkSemantic();
+
+        return text.substring(0, offset) + to + text.substring(offset + from.length());
+    }
+}
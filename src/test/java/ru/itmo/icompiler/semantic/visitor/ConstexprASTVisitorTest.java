@@ -0,0 +1,134 @@
+package ru.itmo.icompiler.semantic.visitor;
+
+import org.junit.jupiter.api.Test;
+import ru.itmo.icompiler.ICompiler;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeClass;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeEntity;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeInstruction;
+import ru.itmo.icompiler.codegen.jvm.JVMBytecodeMethod;
+import ru.itmo.icompiler.codegen.jvm.JVMClassAssembler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstexprASTVisitorTest {
+
+    private static final String PROGRAM = String.join("\n",
+            "routine div(a: integer, b: integer) : integer is",
+            "  return a / b",
+            "end",
+            "",
+            "routine main() is",
+            "  var big is 2147483647",
+            "  var zero is 0",
+            "  var r : real is 0.0",
+            "  var flag is false",
+            "  print big + 1, -(-2147483647 - 1), 7 / -2, -7 % 3, 7 / 2 * 2.0",
+            "  print 1.5 * 2, 10 / 4.0, 0.1 + 0.2, 3.7 + 0, -0.5 * 0",
+            "  print 1 < 2, 2.5 >= 2.5, 1 = 1.0, not true or flag, r / r < 1.0",
+            "  print zero / 1, r * 3, 2.9 + big",
+            "  var n is 0",
+            "  while n < 3",
+            "  loop",
+            "    n := n + 1",
+            "    if flag",
+            "    then",
+            "      print 0",
+            "    end",
+            "  end",
+            "  if big > 0",
+            "  then",
+            "    print n",
+            "  else",
+            "    print -n",
+            "  end",
+            "  var shadow is 5",
+            "  for i in 1..2",
+            "  loop",
+            "    var shadow is i",
+            "    print shadow",
+            "  end",
+            "  print shadow, div(1, zero + 1)",
+            "end",
+            ""
+    );
+
+    private static ICompiler compile(int optimizationLevel) {
+        ICompiler compiler = new ICompiler(new ByteArrayInputStream(PROGRAM.getBytes(StandardCharsets.UTF_8)));
+
+        compiler.setOptimizationLevel(optimizationLevel);
+        compiler.parseProgram();
+        compiler.checkSemantic();
+        assertEquals(List.of(), compiler.getCompilerErrors());
+
+        return compiler;
+    }
+
+    private static int countInstructions(List<JVMBytecodeEntity> entities) {
+        int instructions = 0;
+
+        for (JVMBytecodeEntity entity : entities) {
+            for (JVMBytecodeMethod method : ((JVMBytecodeClass) entity).getMethods()) {
+                for (JVMBytecodeEntity instruction : method.getInstructions()) {
+                    if (instruction instanceof JVMBytecodeInstruction jvmInstruction && jvmInstruction.getOpcode() != null)
+                        ++instructions;
+                }
+            }
+        }
+
+        return instructions;
+    }
+
+    private static String run(List<JVMBytecodeEntity> entities) throws Exception {
+        JVMClassAssembler assembler = new JVMClassAssembler();
+        Map<String, byte[]> classes = new HashMap<>();
+
+        for (JVMBytecodeEntity entity : entities) {
+            JVMBytecodeClass jvmClass = (JVMBytecodeClass) entity;
+            classes.put(jvmClass.getClassName().replace('/', '.'), assembler.assemble(jvmClass));
+        }
+
+        ClassLoader loader = new ClassLoader(null) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+
+                if (bytes == null)
+                    throw new ClassNotFoundException(name);
+
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Class<?> output = Class.forName("ilang.Output", true, loader);
+
+        output.getField("channel").set(null, Channels.newChannel(out));
+        Class.forName("ilang.Program", true, loader).getMethod("_main").invoke(null);
+        output.getMethod("flush").invoke(null);
+
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testOptimizedProgramPrintsTheSame() throws Exception {
+        ICompiler plain = compile(0);
+        ICompiler optimized = compile(1);
+
+        List<JVMBytecodeEntity> plainCode = plain.emitCode();
+        List<JVMBytecodeEntity> optimizedCode = optimized.emitCode();
+
+        assertEquals(Map.of(), plain.getConstexprCounts());
+        optimized.getConstexprCounts().forEach((name, count) -> assertTrue(count > 0, name));
+
+        assertTrue(countInstructions(optimizedCode) < countInstructions(plainCode));
+        assertEquals(run(plainCode), run(optimizedCode));
+    }
+}
@@ -0,0 +1,161 @@
+package ru.itmo.icompiler.syntax;
+
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import ru.itmo.icompiler.reader.SourceText;
+import ru.itmo.icompiler.syntax.ast.ASTNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalParserTest {
+
+    // edits at whitespace keep the token sequence, so they can't drive the parser into
+    // inputs it does not finish on; they still move declarations around and across lines
+    private static final String[] INSERTIONS = {
+            "", " ", "\n", "\n\n", " // c\n", " /* c */ ", " /* c\n */ "
+    };
+
+    static Stream<Arguments> provideSources() throws IOException {
+        return Stream.of("parser", "sem")
+                .flatMap(dir -> {
+                    try {
+                        return Files.walk(Paths.get("src/test/resources", dir));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .filter(Files::isRegularFile)
+                .sorted()
+                .map(path -> Arguments.of(Named.of(path.toString(), path)));
+    }
+
+    private static String describe(IncrementalParser parser, ASTNode program) {
+        List<String> errors = parser.getParseErrors().stream()
+                .map(e -> e.getErrorLine() + ":" + e.getErrorOffset() + ": " + e.getMessage())
+                .toList();
+
+        return program.toString(0) + "\n" + String.join("\n", errors);
+    }
+
+    private static String parseFresh(SourceText source) {
+        IncrementalParser parser = new IncrementalParser(source);
+
+        return describe(parser, parser.parse());
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideSources")
+    void testEditsSameAsFullParse(Path path) throws IOException {
+        SourceText source = SourceText.of(Files.readString(path), 4);
+        IncrementalParser parser = new IncrementalParser(source);
+        parser.parse();
+
+        Random random = new Random(path.toString().hashCode());
+
+        for (int i = 0; i < 40; ++i) {
+            char[] chars = parser.getSource().getChars();
+            int length = parser.getSource().length();
+            int offset = random.nextInt(length);
+
+            while (offset < length && chars[offset] != ' ' && chars[offset] != '\n')
+                ++offset;
+
+            int removed = offset < length && chars[offset] == ' ' ? random.nextInt(2) : 0;
+            String text = INSERTIONS[random.nextInt(INSERTIONS.length)];
+
+            ASTNode program = parser.edit(offset, removed, text);
+
+            assertEquals(
+                    parseFresh(parser.getSource()),
+                    describe(parser, program),
+                    String.format("edit #%d: [%d, %d) -> \"%s\"", i, offset, offset + removed, text)
+            );
+        }
+    }
+
+    @Test
+    void testStructuralEditsSameAsFullParse() {
+        String text = "var a: integer is 1\n" +
+                "routine f(x: integer): integer is\n" +
+                "    return x + 1\n" +
+                "end\n" +
+                "type t is record var b: integer end\n" +
+                "routine g() is\n" +
+                "    print f(2)\n" +
+                "end\n";
+
+        IncrementalParser parser = new IncrementalParser(SourceText.of(text, 4));
+        ASTNode program = parser.parse();
+
+        String[][] edits = {
+                // {anchor, removed, inserted}: the edit happens at the first occurrence of anchor
+                {"end\ntype", "end", ""},
+                {"type t", "", "end\n"},
+                {"routine g", "routine", "routin"},
+                {"routin g", "routin", "routine"},
+                {"var a", "var a", "var aa"},
+                {"is 1", "1", "1 + 2 * 3"},
+                {"type t", "", "var c: boolean is true "},
+                {"record", "record", "array [3] integer"},
+                {"var aa", "", "routine h() is end\n"},
+        };
+
+        for (String[] edit: edits) {
+            int offset = new String(parser.getSource().getChars(), 0, parser.getSource().length()).indexOf(edit[0]);
+            assertTrue(offset >= 0, edit[0]);
+
+            parser.edit(offset, edit[1].length(), edit[2]);
+
+            assertEquals(parseFresh(parser.getSource()), describe(parser, program), String.join(" | ", edit));
+        }
+    }
+
+    @Test
+    void testUnchangedDeclarationsKeepTheirNodes() {
+        String text = "var a: integer is 1\n" +
+                "routine f(x: integer): integer is\n" +
+                "    return x + 1\n" +
+                "end\n" +
+                "type t is record var b: integer end\n" +
+                "routine g() is\n" +
+                "    print f(2)\n" +
+                "end\n";
+
+        IncrementalParser parser = new IncrementalParser(SourceText.of(text, 4));
+        ASTNode program = parser.parse();
+        List<ASTNode> before = new ArrayList<>(program.getChildren());
+
+        // same number of lines: everything but f is kept
+        int offset = text.indexOf("x + 1") + 4;
+        assertSame(program, parser.edit(offset, 1, "41"));
+
+        assertEquals(before.size(), program.getChildren().size());
+        assertSame(before.get(0), program.getChild(0));
+        assertNotSame(before.get(1), program.getChild(1));
+        assertSame(before.get(2), program.getChild(2));
+        assertSame(before.get(3), program.getChild(3));
+
+        // an added line moves everything below it, so only what is above is kept
+        before = new ArrayList<>(program.getChildren());
+        parser.edit(parser.getSource().length() - "end\n".length(), 0, "    print 1\n");
+
+        assertSame(before.get(0), program.getChild(0));
+        assertSame(before.get(1), program.getChild(1));
+        assertSame(before.get(2), program.getChild(2));
+        assertNotSame(before.get(3), program.getChild(3));
+
+        assertEquals(parseFresh(parser.getSource()), describe(parser, program));
+    }
+}